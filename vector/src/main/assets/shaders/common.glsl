@@ -0,0 +1,13 @@
+uniform vec3 u_position_scale;
+uniform vec3 u_position_offset;
+uniform vec4 u_texture_region;
+
+// Quantized positions are stored relative to the mesh's bounds
+vec3 decodePosition(vec3 position) {
+    return position * u_position_scale + u_position_offset;
+}
+
+// Maps texture coordinates into the texture's region of its atlas page
+vec2 regionCoord(vec2 xy) {
+    return u_texture_region.xy + xy * u_texture_region.zw;
+}
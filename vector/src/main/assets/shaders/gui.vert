@@ -1,4 +1,7 @@
 uniform mat4 u_model;
+uniform vec4 u_texture_region;
+uniform vec3 u_position_scale;
+uniform vec3 u_position_offset;
 
 attribute vec3 a_position;
 attribute vec2 a_texture_xy;
@@ -6,6 +9,7 @@ attribute vec2 a_texture_xy;
 varying vec2 v_texture_xy;
 
 void main() {
-    gl_Position = u_model * vec4(a_position, 1.0);
-    v_texture_xy = a_texture_xy;
+    vec3 position = a_position * u_position_scale + u_position_offset;
+    gl_Position = u_model * vec4(position, 1.0);
+    v_texture_xy = u_texture_region.xy + a_texture_xy * u_texture_region.zw;
 }
@@ -0,0 +1,10 @@
+precision mediump float;
+
+uniform sampler2D u_texture;
+
+varying vec2 v_texture_xy;
+varying vec4 v_colour;
+
+void main() {
+    gl_FragColor = v_colour * texture2D(u_texture, v_texture_xy);
+}
@@ -0,0 +1,20 @@
+#include "common.glsl"
+
+uniform mat4 u_view;
+uniform mat4 u_projection;
+
+attribute vec3 a_center;
+attribute float a_size;
+attribute vec4 a_colour;
+attribute vec2 a_corner;
+
+varying vec2 v_texture_xy;
+varying vec4 v_colour;
+
+void main() {
+    // The corner is offset in view space, so the quad always faces the camera
+    vec4 center = u_view * vec4(a_center, 1.0);
+    gl_Position = u_projection * (center + vec4(a_corner * a_size, 0.0, 0.0));
+    v_texture_xy = regionCoord(vec2(a_corner.x + 0.5, 0.5 - a_corner.y));
+    v_colour = a_colour;
+}
@@ -1,5 +1,8 @@
 uniform mat4 u_view_rotate;
 uniform mat4 u_projection;
+uniform vec4 u_texture_region;
+uniform vec3 u_position_scale;
+uniform vec3 u_position_offset;
 
 attribute vec3 a_position;
 attribute vec2 a_texture_xy;
@@ -7,6 +10,7 @@ attribute vec2 a_texture_xy;
 varying vec2 v_texture_xy;
 
 void main() {
-    gl_Position = u_projection * u_view_rotate * vec4(a_position, 1.0);
-    v_texture_xy = a_texture_xy;
+    vec3 position = a_position * u_position_scale + u_position_offset;
+    gl_Position = (u_projection * u_view_rotate * vec4(position, 1.0)).xyww;
+    v_texture_xy = u_texture_region.xy + a_texture_xy * u_texture_region.zw;
 }
@@ -0,0 +1,12 @@
+attribute vec3 a_position;
+attribute vec2 a_texture_xy;
+attribute vec4 a_colour;
+
+varying vec2 v_texture_xy;
+varying vec4 v_colour;
+
+void main() {
+    gl_Position = vec4(a_position, 1.0);
+    v_texture_xy = a_texture_xy;
+    v_colour = a_colour;
+}
@@ -1,10 +1,22 @@
 precision mediump float;
 
+#ifndef INSTANCED
 uniform vec4 u_colour;
+#endif
+#ifdef TEXTURED
 uniform sampler2D u_texture;
+#endif
 
 varying vec2 v_texture_xy;
+varying vec4 v_colour;
 
 void main() {
-    gl_FragColor = u_colour * texture2D(u_texture, v_texture_xy);
+    vec4 colour = v_colour;
+#ifndef INSTANCED
+    colour *= u_colour;
+#endif
+#ifdef TEXTURED
+    colour *= texture2D(u_texture, v_texture_xy);
+#endif
+    gl_FragColor = colour;
 }
@@ -1,13 +1,39 @@
-uniform mat4 u_model;
+#include "common.glsl"
+
 uniform mat4 u_view;
 uniform mat4 u_projection;
 
 attribute vec3 a_position;
 attribute vec2 a_texture_xy;
 
+#ifdef INSTANCED
+attribute vec4 a_model_0;
+attribute vec4 a_model_1;
+attribute vec4 a_model_2;
+attribute vec4 a_model_3;
+attribute vec4 a_instance_colour;
+#else
+uniform mat4 u_model;
+#endif
+
+#ifdef VERTEX_COLOUR
+attribute vec4 a_colour;
+#endif
+
 varying vec2 v_texture_xy;
+varying vec4 v_colour;
 
 void main() {
-    gl_Position = u_projection * u_view * u_model * vec4(a_position, 1.0);
-    v_texture_xy = a_texture_xy;
+#ifdef INSTANCED
+    mat4 model = mat4(a_model_0, a_model_1, a_model_2, a_model_3);
+    v_colour = a_instance_colour;
+#else
+    mat4 model = u_model;
+    v_colour = vec4(1.0);
+#endif
+#ifdef VERTEX_COLOUR
+    v_colour *= a_colour;
+#endif
+    gl_Position = u_projection * u_view * model * vec4(decodePosition(a_position), 1.0);
+    v_texture_xy = regionCoord(a_texture_xy);
 }
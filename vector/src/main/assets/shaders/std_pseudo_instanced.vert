@@ -0,0 +1,19 @@
+uniform mat4 u_view;
+uniform mat4 u_projection;
+uniform mat4 u_models[20];
+uniform vec4 u_colours[20];
+uniform vec4 u_texture_region;
+
+attribute vec3 a_position;
+attribute vec2 a_texture_xy;
+attribute float a_instance;
+
+varying vec2 v_texture_xy;
+varying vec4 v_colour;
+
+void main() {
+    int instance = int(a_instance);
+    gl_Position = u_projection * u_view * u_models[instance] * vec4(a_position, 1.0);
+    v_texture_xy = u_texture_region.xy + a_texture_xy * u_texture_region.zw;
+    v_colour = u_colours[instance];
+}
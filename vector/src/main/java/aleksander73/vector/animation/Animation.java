@@ -52,6 +52,13 @@ public class Animation extends Component {
         return t;
     }
 
+    /**
+     * Whether the animation has been started and hasn't finished yet.
+     */
+    public boolean isPlaying() {
+        return !finished && timer.isRunning();
+    }
+
     public boolean hasFinished() {
         return finished;
     }
@@ -0,0 +1,242 @@
+package aleksander73.vector.assets;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import aleksander73.vector.rendering.GLCapabilities;
+
+/**
+ * A pre-compressed texture read from a KTX 1.1 or PKM container, ready for glCompressedTexImage2D.
+ * KTX files may carry a full mipmap chain; PKM files hold a single ETC1 or ETC2 level.
+ */
+public class CompressedImage {
+    public static final int GL_ETC1_RGB8_OES = 0x8D64;
+    public static final int GL_COMPRESSED_R11_EAC = 0x9270;
+    public static final int GL_COMPRESSED_SIGNED_RG11_EAC = 0x9273;
+    public static final int GL_COMPRESSED_RGB8_ETC2 = 0x9274;
+    public static final int GL_COMPRESSED_SRGB8_ETC2 = 0x9275;
+    public static final int GL_COMPRESSED_RGB8_PUNCHTHROUGH_ALPHA1_ETC2 = 0x9276;
+    public static final int GL_COMPRESSED_RGBA8_ETC2_EAC = 0x9278;
+    public static final int GL_COMPRESSED_SRGB8_ALPHA8_ETC2_EAC = 0x9279;
+    public static final int GL_COMPRESSED_RGBA_ASTC_4x4_KHR = 0x93B0;
+    public static final int GL_COMPRESSED_RGBA_ASTC_12x12_KHR = 0x93BD;
+    public static final int GL_COMPRESSED_SRGB8_ALPHA8_ASTC_4x4_KHR = 0x93D0;
+    public static final int GL_COMPRESSED_SRGB8_ALPHA8_ASTC_12x12_KHR = 0x93DD;
+
+    private static final byte[] KTX_IDENTIFIER = new byte[] {
+        (byte)0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte)0xBB, '\r', '\n', 0x1A, '\n'
+    };
+    private static final int KTX_ENDIANNESS = 0x04030201;
+    private static final int KTX_HEADER_SIZE = 64;
+    private static final int PKM_HEADER_SIZE = 16;
+
+    private final int internalFormat;
+    private final int width;
+    private final int height;
+    private final List<ByteBuffer> levels;
+
+    private CompressedImage(int internalFormat, int width, int height, List<ByteBuffer> levels) {
+        this.internalFormat = internalFormat;
+        this.width = width;
+        this.height = height;
+        this.levels = levels;
+    }
+
+    /**
+     * Reads a KTX or PKM container, told apart by their signatures. Returns null if the file is neither.
+     */
+    public static CompressedImage read(InputStream input) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(CompressedImage.readFully(input));
+        if(data.remaining() >= KTX_HEADER_SIZE && CompressedImage.startsWith(data, KTX_IDENTIFIER)) {
+            return CompressedImage.readKTX(data);
+        }
+        if(data.remaining() >= PKM_HEADER_SIZE && data.get(0) == 'P' && data.get(1) == 'K' && data.get(2) == 'M' && data.get(3) == ' ') {
+            return CompressedImage.readPKM(data);
+        }
+        return null;
+    }
+
+    private static CompressedImage readKTX(ByteBuffer data) throws IOException {
+        data.order(ByteOrder.LITTLE_ENDIAN);
+        data.position(KTX_IDENTIFIER.length);
+        if(data.getInt() != KTX_ENDIANNESS) {
+            data.order(ByteOrder.BIG_ENDIAN);
+        }
+        int glType = data.getInt();
+        data.getInt();  // glTypeSize
+        data.getInt();  // glFormat
+        int internalFormat = data.getInt();
+        data.getInt();  // glBaseInternalFormat
+        int width = data.getInt();
+        int height = data.getInt();
+        int depth = data.getInt();
+        int arrayElements = data.getInt();
+        int faces = data.getInt();
+        int mipmapLevels = Math.max(1, data.getInt());
+        int keyValueBytes = data.getInt();
+        if(glType != 0 || depth > 0 || arrayElements > 0 || faces != 1) {
+            throw new IOException("only compressed 2D textures are supported");
+        }
+
+        data.position(data.position() + keyValueBytes);
+        List<ByteBuffer> levels = new ArrayList<>();
+        for(int level = 0; level < mipmapLevels; level++) {
+            int imageSize = data.getInt();
+            if(imageSize < 0 || imageSize > data.remaining()) {
+                throw new IOException("truncated mipmap level " + level);
+            }
+            levels.add(CompressedImage.slice(data, imageSize));
+            data.position(data.position() + imageSize + (3 - (imageSize + 3) % 4));
+        }
+        return new CompressedImage(internalFormat, width, height, levels);
+    }
+
+    /**
+     * The header is big-endian: magic, version, format, padded width and height, original width and height.
+     */
+    private static CompressedImage readPKM(ByteBuffer data) throws IOException {
+        data.order(ByteOrder.BIG_ENDIAN);
+        boolean version2 = data.get(4) == '2';
+        int format = data.getShort(6) & 0xFFFF;
+        int paddedWidth = data.getShort(8) & 0xFFFF;
+        int paddedHeight = data.getShort(10) & 0xFFFF;
+        int width = data.getShort(12) & 0xFFFF;
+        int height = data.getShort(14) & 0xFFFF;
+
+        int internalFormat;
+        int blockBytes = 8;
+        if(!version2 || format == 0) {
+            internalFormat = GL_ETC1_RGB8_OES;
+        } else if(format == 1) {
+            internalFormat = GL_COMPRESSED_RGB8_ETC2;
+        } else if(format == 3) {
+            internalFormat = GL_COMPRESSED_RGBA8_ETC2_EAC;
+            blockBytes = 16;
+        } else if(format == 4) {
+            internalFormat = GL_COMPRESSED_RGB8_PUNCHTHROUGH_ALPHA1_ETC2;
+        } else {
+            throw new IOException("unsupported PKM format " + format);
+        }
+
+        int imageSize = (paddedWidth / 4) * (paddedHeight / 4) * blockBytes;
+        data.position(PKM_HEADER_SIZE);
+        if(imageSize > data.remaining()) {
+            throw new IOException("truncated image data");
+        }
+        List<ByteBuffer> levels = new ArrayList<>();
+        levels.add(CompressedImage.slice(data, imageSize));
+        return new CompressedImage(internalFormat, width, height, levels);
+    }
+
+    /**
+     * Returns whether the device can sample the format.
+     * ETC1 data is valid ETC2, so it is also accepted on OpenGL ES 3.0 contexts without the ETC1 extension.
+     */
+    public static boolean isSupported(int internalFormat) {
+        if(internalFormat == GL_ETC1_RGB8_OES) {
+            return GLCapabilities.supportsETC1() || GLCapabilities.supportsETC2();
+        }
+        if(internalFormat >= GL_COMPRESSED_R11_EAC && internalFormat <= GL_COMPRESSED_SRGB8_ALPHA8_ETC2_EAC) {
+            return GLCapabilities.supportsETC2();
+        }
+        if((internalFormat >= GL_COMPRESSED_RGBA_ASTC_4x4_KHR && internalFormat <= GL_COMPRESSED_RGBA_ASTC_12x12_KHR)
+                || (internalFormat >= GL_COMPRESSED_SRGB8_ALPHA8_ASTC_4x4_KHR && internalFormat <= GL_COMPRESSED_SRGB8_ALPHA8_ASTC_12x12_KHR)) {
+            return GLCapabilities.supportsASTC();
+        }
+        return false;
+    }
+
+    /**
+     * The format to pass to glCompressedTexImage2D on this device.
+     */
+    public int getUploadFormat() {
+        if(internalFormat == GL_ETC1_RGB8_OES && !GLCapabilities.supportsETC1()) {
+            return GL_COMPRESSED_RGB8_ETC2;
+        }
+        return internalFormat;
+    }
+
+    public boolean isSupported() {
+        return CompressedImage.isSupported(internalFormat);
+    }
+
+    /**
+     * ETC1, RGB ETC2 and the single and dual channel EAC formats have no alpha channel.
+     */
+    public boolean hasAlpha() {
+        return internalFormat != GL_ETC1_RGB8_OES && internalFormat != GL_COMPRESSED_RGB8_ETC2 && internalFormat != GL_COMPRESSED_SRGB8_ETC2
+                && (internalFormat < GL_COMPRESSED_R11_EAC || internalFormat > GL_COMPRESSED_SIGNED_RG11_EAC);
+    }
+
+    public int getInternalFormat() {
+        return internalFormat;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getLevelCount() {
+        return levels.size();
+    }
+
+    /**
+     * Returns the compressed data of a mipmap level, 0 being the full-size image.
+     */
+    public ByteBuffer getLevel(int level) {
+        return levels.get(level);
+    }
+
+    public int getLevelWidth(int level) {
+        return Math.max(1, width >> level);
+    }
+
+    public int getLevelHeight(int level) {
+        return Math.max(1, height >> level);
+    }
+
+    public long getByteCount() {
+        long bytes = 0;
+        for(ByteBuffer level : levels) {
+            bytes += level.capacity();
+        }
+        return bytes;
+    }
+
+    private static ByteBuffer slice(ByteBuffer data, int size) {
+        ByteBuffer level = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+        ByteBuffer source = data.duplicate();
+        source.limit(source.position() + size);
+        level.put(source);
+        level.position(0);
+        return level;
+    }
+
+    private static boolean startsWith(ByteBuffer data, byte[] prefix) {
+        for(int i = 0; i < prefix.length; i++) {
+            if(data.get(i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] readFully(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[16 * 1024];
+        int read;
+        while((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+        return output.toByteArray();
+    }
+}
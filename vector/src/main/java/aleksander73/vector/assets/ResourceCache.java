@@ -0,0 +1,185 @@
+package aleksander73.vector.assets;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import aleksander73.vector.core.GameEngine;
+import aleksander73.vector.rendering.GPUResource;
+
+/**
+ * Keeps loaded GPU resources with their reference counts in least recently used order.
+ * Whenever the resident size exceeds the budget, unreferenced resources are deleted starting with the least recently used.
+ * Deletion is deferred to the OpenGL thread.
+ */
+public class ResourceCache {
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long budget;
+    private long residentBytes;
+    private int hits;
+    private int misses;
+    private int evictions;
+
+    public ResourceCache(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Returns the cached resource or null, counting a hit or a miss.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T extends GPUResource> T get(String key) {
+        Entry entry = entries.get(key);
+        if(entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return (T)entry.resource;
+    }
+
+    /**
+     * Returns the cached resource or null without affecting the statistics.
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T extends GPUResource> T peek(String key) {
+        Entry entry = entries.get(key);
+        return (entry != null) ? (T)entry.resource : null;
+    }
+
+    /**
+     * Adds an unreferenced resource. The budget is enforced once it has been acquired or pinned,
+     * so that it can't be evicted before the caller gets hold of it.
+     */
+    public synchronized void put(String key, GPUResource resource) {
+        Entry previous = entries.put(key, new Entry(resource));
+        if(previous != null) {
+            residentBytes -= previous.resource.getGPUBytes();
+        }
+        residentBytes += resource.getGPUBytes();
+    }
+
+    public synchronized void acquire(String key) {
+        Entry entry = entries.get(key);
+        if(entry != null) {
+            entry.references++;
+        }
+        this.trim();
+    }
+
+    public synchronized void release(String key) {
+        Entry entry = entries.get(key);
+        if(entry == null || entry.references == 0) {
+            Log.d("game_engine", "error: Released \"" + key + "\" more often than it was acquired");
+            return;
+        }
+        entry.references--;
+        this.trim();
+    }
+
+    /**
+     * Pinned resources are never evicted, regardless of their reference count.
+     */
+    public synchronized void pin(String key) {
+        Entry entry = entries.get(key);
+        if(entry != null) {
+            entry.pinned = true;
+        }
+        this.trim();
+    }
+
+    /**
+     * Evicts unreferenced resources, least recently used first, until the resident size fits the budget.
+     */
+    public synchronized void trim() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while(residentBytes > budget && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if(entry.isEvictable()) {
+                iterator.remove();
+                this.evict(entry);
+            }
+        }
+    }
+
+    /**
+     * Evicts every unreferenced resource, e.g. after switching levels.
+     */
+    public synchronized void evictUnused() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while(iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if(entry.isEvictable()) {
+                iterator.remove();
+                this.evict(entry);
+            }
+        }
+    }
+
+    private void evict(Entry entry) {
+        residentBytes -= entry.resource.getGPUBytes();
+        evictions++;
+        final GPUResource resource = entry.resource;
+        GameEngine.getRenderingSystem().runOnOpenGLThread(new Runnable() {
+            @Override
+            public void run() {
+                resource.delete();
+            }
+        });
+    }
+
+    public synchronized List<String> getKeys() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    public synchronized long getBudget() {
+        return budget;
+    }
+
+    public synchronized void setBudget(long budget) {
+        this.budget = budget;
+        this.trim();
+    }
+
+    public synchronized long getResidentBytes() {
+        return residentBytes;
+    }
+
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    public synchronized int getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return entries.size() + " resources, " + residentBytes / 1024 + "/" + budget / 1024 + " KB resident, "
+                + hits + " hits, " + misses + " misses, " + evictions + " evictions";
+    }
+
+    // --------------------------------------------------
+
+    private static class Entry {
+        private final GPUResource resource;
+        private int references;
+        private boolean pinned;
+
+        public Entry(GPUResource resource) {
+            this.resource = resource;
+        }
+
+        public boolean isEvictable() {
+            return references == 0 && !pinned;
+        }
+    }
+}
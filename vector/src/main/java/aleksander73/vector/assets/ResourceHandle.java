@@ -0,0 +1,38 @@
+package aleksander73.vector.assets;
+
+import aleksander73.vector.rendering.GPUResource;
+
+/**
+ * Counted reference to a cached resource. The resource stays loaded at least until the handle is released.
+ */
+public class ResourceHandle<T extends GPUResource> {
+    private final ResourceCache cache;
+    private final String key;
+    private final T resource;
+    private boolean released;
+
+    public ResourceHandle(ResourceCache cache, String key, T resource) {
+        this.cache = cache;
+        this.key = key;
+        this.resource = resource;
+        cache.acquire(key);
+    }
+
+    public T get() {
+        return resource;
+    }
+
+    /**
+     * Releasing a handle more than once has no effect.
+     */
+    public void release() {
+        if(!released) {
+            released = true;
+            cache.release(key);
+        }
+    }
+
+    public boolean isReleased() {
+        return released;
+    }
+}
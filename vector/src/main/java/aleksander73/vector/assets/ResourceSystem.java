@@ -7,46 +7,94 @@ import android.graphics.BitmapFactory;
 import android.graphics.Rect;
 import android.media.MediaPlayer;
 import android.opengl.GLES20;
-import android.opengl.GLUtils;
 import android.util.Log;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import aleksander73.vector.core.GameEngine;
 import aleksander73.vector.core.System;
+import aleksander73.vector.rendering.GLCapabilities;
+import aleksander73.vector.rendering.RenderingSystem;
+import aleksander73.vector.rendering.backend.RenderBackend;
 import aleksander73.vector.rendering.materials.Texture;
+import aleksander73.vector.rendering.materials.TextureSettings;
 import aleksander73.vector.rendering.mesh.Face;
 import aleksander73.vector.rendering.mesh.Mesh;
+import aleksander73.vector.rendering.mesh.MeshData;
+import aleksander73.vector.rendering.mesh.MeshOptimizer;
 import aleksander73.vector.rendering.mesh.Vertex;
 import aleksander73.math.linear_algebra.Vector2d;
 import aleksander73.math.linear_algebra.Vector3d;
 
 public class ResourceSystem extends System {
+    private static final int ATLAS_PADDING = 2;
+    private static final int MAX_ATLAS_SIZE = 2048;
+    private static final String DEFAULT_TEXTURE = "white1x1.bmp";
+    private static final String DEFAULT_TEXTURE_KEY = "texture:" + DEFAULT_TEXTURE;
+    public static final long DEFAULT_GPU_BUDGET = 128L * 1024 * 1024;
+    // Atlas pages keep their padding only at the base level, mipmaps would bleed neighbouring images in
+    private static final TextureSettings ATLAS_SETTINGS = new TextureSettings(false, TextureSettings.Filter.NEAREST, 1.0f, GLES20.GL_CLAMP_TO_EDGE, GLES20.GL_CLAMP_TO_EDGE);
+
     private final AssetManager assetManager;
+    private final File cacheDir;
     private MediaPlayer mediaPlayer = new MediaPlayer();
+    private boolean optimizeMeshes = false;
+    private TextureSettings defaultTextureSettings = TextureSettings.DEFAULT;
+    private int skippedMipLevels = 0;
 
     private final Map<String, String> shaders = new HashMap<>();
-    private final Map<String, Mesh> meshes = new HashMap<>();
-    private final Map<String, Texture> textures = new HashMap<>();
+    private final ResourceCache cache = new ResourceCache(DEFAULT_GPU_BUDGET);
+    // Atlas regions share the GL texture of their page, which is what the cache tracks
+    private final Map<String, Texture> atlasRegions = new HashMap<>();
+    private final Map<String, Set<String>> assetListings = new HashMap<>();
+    private final Map<String, TextureSettings> textureSettings = new HashMap<>();
 
     public ResourceSystem(GameEngine gameEngine, AssetManager assetManager) {
+        this(gameEngine, assetManager, null);
+    }
+
+    /**
+     * @param cacheDir - directory for generated data such as packed atlases, caching is disabled if null
+     */
+    public ResourceSystem(GameEngine gameEngine, AssetManager assetManager, File cacheDir) {
         super(gameEngine);
         this.assetManager = assetManager;
+        this.cacheDir = cacheDir;
         this.setReady(true);
     }
 
+    /**
+     * Returns the source of a shader in the shaders directory, with its includes resolved.
+     */
     public String loadShader(final String filepath) {
         String text = shaders.get(filepath);
         if(text != null) {
             return text;
         }
+        text = this.readShader(filepath, new HashSet<String>());
+        shaders.put(filepath, text);
+
+        return text;
+    }
+
+    /**
+     * Lines keep their line breaks, so // comments and preprocessor directives stay intact.
+     * A line #include "file" is replaced by that file from the shaders directory. Every file is included at most once.
+     */
+    private String readShader(String filepath, Set<String> included) {
+        included.add(filepath);
         StringBuilder builder = new StringBuilder();
         try {
             InputStreamReader input = new InputStreamReader(assetManager.open("shaders/" + filepath));
@@ -54,98 +102,550 @@ public class ResourceSystem extends System {
 
             String line;
             while ((line = reader.readLine()) != null) {
-                builder.append(line);
+                String directive = line.trim();
+                if(directive.startsWith("#include")) {
+                    int start = directive.indexOf('"');
+                    int end = directive.lastIndexOf('"');
+                    if(start < 0 || end <= start) {
+                        Log.d("game_engine", "error: Malformed include in \"" + filepath + "\": " + directive);
+                    } else if(!included.contains(directive.substring(start + 1, end))) {
+                        builder.append(this.readShader(directive.substring(start + 1, end), included));
+                    }
+                    continue;
+                }
+                builder.append(line).append('\n');
             }
+            reader.close();
         } catch(IOException e) {
             Log.d("game_engine", "error: Could not load resource \"" + filepath + "\"");
             e.printStackTrace();
         }
+        return builder.toString();
+    }
 
-        text = builder.toString();
-        shaders.put(filepath, text);
+    /**
+     * Returns the texture, loading it if needed, and takes a reference to it on the caller's behalf.
+     * The texture stays loaded until releaseTexture() has been called as often as this, so code that never releases
+     * keeps it for the rest of the session. New code should use acquireTexture(), whose handle owns its reference;
+     * existing code migrates by releasing the texture where it stops using it, e.g. when a level is left.
+     * Atlas regions belong to their atlas and aren't counted.
+     */
+    public Texture getTexture(String filepath) {
+        Texture region = atlasRegions.get(filepath);
+        if(region != null) {
+            return region;
+        }
+        String key = this.findTexture(filepath);
+        cache.acquire(key);
+        return cache.peek(key);
+    }
 
-        return text;
+    /**
+     * Gives up a reference taken by getTexture(); once none are left the texture may be evicted to stay within the budget.
+     */
+    public void releaseTexture(String filepath) {
+        if(atlasRegions.containsKey(filepath)) {
+            return;
+        }
+        String key = "texture:" + filepath;
+        // Textures that couldn't be loaded were referenced as the default texture
+        cache.release((cache.peek(key) != null) ? key : DEFAULT_TEXTURE_KEY);
     }
 
-    public Texture getTexture(String filepath) {
-        Texture texture;
+    /**
+     * Returns a counted reference to the texture, loading it if needed.
+     * Once all references are released the texture may be evicted to stay within the GPU memory budget.
+     */
+    public ResourceHandle<Texture> acquireTexture(String filepath) {
+        String key = this.findTexture(filepath);
+        Texture texture = cache.peek(key);
+        return new ResourceHandle<>(cache, key, texture);
+    }
 
-        Texture stored = textures.get(filepath);
-        if(stored != null) {
-            texture = stored;
-        } else {
-            Texture loadedTexture = this.loadTexture(filepath);
-            if(loadedTexture != null) {
-                textures.put(filepath, loadedTexture);
-                texture = loadedTexture;
-            } else {
-                texture = this.getTexture("white1x1.bmp");
+    /**
+     * Makes sure the texture is cached and returns its key. Textures that can't be loaded resolve to the default texture.
+     */
+    private String findTexture(String filepath) {
+        String key = "texture:" + filepath;
+        if(cache.get(key) != null) {
+            return key;
+        }
+        Texture loadedTexture = this.loadTexture(filepath);
+        if(loadedTexture != null) {
+            cache.put(key, loadedTexture);
+            if(key.equals(DEFAULT_TEXTURE_KEY)) {
+                // Shared by every texture that couldn't be loaded, so it is never evicted
+                cache.pin(key);
             }
+            return key;
         }
+        return this.findTexture(DEFAULT_TEXTURE);
+    }
 
-        return texture;
+    /**
+     * Deletes every loaded texture and mesh which is neither referenced nor pinned, e.g. after switching levels.
+     */
+    public void unloadUnused() {
+        cache.evictUnused();
+        Log.d("game_engine", "Unloaded unused resources: " + cache);
     }
 
+    /**
+     * Gives access to the GPU memory budget and the cache statistics.
+     */
+    public ResourceCache getCache() {
+        return cache;
+    }
+
+    /**
+     * The fallback for textures that can't be loaded. It is pinned, so it needs no reference.
+     */
     public Texture getDefaultTex() {
-        return this.getTexture("white1x1.bmp");
+        return cache.peek(this.findTexture(DEFAULT_TEXTURE));
     }
 
+    /**
+     * Prefers a pre-compressed variant of the image in the best format the device supports and decodes the image otherwise.
+     * Variants sit next to the image with its extension replaced: "stone.png" may come with "stone.astc.ktx",
+     * "stone.etc2.ktx", "stone.etc1.ktx" or "stone.pkm". KTX and PKM files can also be requested directly.
+     * The texture keeps its path as source, so it can be reloaded after a context loss.
+     */
     private Texture loadTexture(final String filepath) {
-        Texture texture = null;
+        Texture texture = this.uploadTexture(filepath);
+        if(texture != null) {
+            texture.setSource(new Texture.Source() {
+                @Override
+                public int create() {
+                    return ResourceSystem.this.reloadTexture(filepath);
+                }
+            });
+        }
+        return texture;
+    }
 
-        final int[] handles = new int[1];
+    private Texture uploadTexture(String filepath) {
+        TextureSettings settings = this.getTextureSettings(filepath);
+        for(String candidate : this.compressedCandidates(filepath)) {
+            CompressedImage image = this.readCompressedImage(candidate);
+            if(image == null) {
+                continue;
+            }
+            if(image.isSupported()) {
+                return this.uploadCompressedImage(image, settings);
+            }
+            Log.d("game_engine", "Texture format 0x" + Integer.toHexString(image.getInternalFormat()) + " of \"" + candidate + "\" is not supported by the device");
+        }
+        if(this.isCompressedContainer(filepath)) {
+            return null;
+        }
+        Bitmap bitmap = this.decodeBitmap(filepath);
+        if(bitmap == null) {
+            return null;
+        }
+        Texture texture = this.uploadBitmap(bitmap, settings);
+        bitmap.recycle();
+        return texture;
+    }
+
+    private List<String> compressedCandidates(String filepath) {
+        List<String> candidates = new ArrayList<>();
+        if(this.isCompressedContainer(filepath)) {
+            candidates.add(filepath);
+            return candidates;
+        }
+        int extension = filepath.lastIndexOf('.');
+        String base = (extension > filepath.lastIndexOf('/')) ? filepath.substring(0, extension) : filepath;
+        if(GLCapabilities.supportsASTC()) {
+            candidates.add(base + ".astc.ktx");
+        }
+        if(GLCapabilities.supportsETC2()) {
+            candidates.add(base + ".etc2.ktx");
+        }
+        if(GLCapabilities.supportsETC1() || GLCapabilities.supportsETC2()) {
+            candidates.add(base + ".etc1.ktx");
+            candidates.add(base + ".pkm");
+        }
+        List<String> existing = new ArrayList<>();
+        for(String candidate : candidates) {
+            if(this.assetExists("textures/" + candidate)) {
+                existing.add(candidate);
+            }
+        }
+        return existing;
+    }
 
+    private boolean isCompressedContainer(String filepath) {
+        return filepath.endsWith(".ktx") || filepath.endsWith(".pkm");
+    }
+
+    /**
+     * Directory listings are cached, probing for variants that mostly don't exist would otherwise cost an exception each.
+     */
+    private boolean assetExists(String path) {
+        int separator = path.lastIndexOf('/');
+        String directory = (separator >= 0) ? path.substring(0, separator) : "";
+        Set<String> files = assetListings.get(directory);
+        if(files == null) {
+            files = new HashSet<>();
+            try {
+                String[] list = assetManager.list(directory);
+                if(list != null) {
+                    files.addAll(Arrays.asList(list));
+                }
+            } catch(IOException e) {
+                Log.d("game_engine", "error: Could not list the assets in \"" + directory + "\"");
+            }
+            assetListings.put(directory, files);
+        }
+        return files.contains(path.substring(separator + 1));
+    }
+
+    private CompressedImage readCompressedImage(String filepath) {
+        try {
+            InputStream input = assetManager.open("textures/" + filepath);
+            CompressedImage image = CompressedImage.read(input);
+            input.close();
+            if(image == null) {
+                Log.d("game_engine", "error: \"" + filepath + "\" is neither a KTX nor a PKM file");
+            }
+            return image;
+        } catch(IOException e) {
+            Log.d("game_engine", "error: Could not load resource \"" + filepath + "\": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * The file is read on the calling thread, only the upload itself runs on the OpenGL thread.
+     * Mipmaps come from the file, compressed textures can't be mipmapped by the driver.
+     */
+    private Texture uploadCompressedImage(final CompressedImage image, final TextureSettings settings) {
+        final int[] handles = new int[1];
         final boolean[] readyFlag = new boolean[1];
-        final boolean[] loadedFlag = new boolean[1];
         GameEngine.getRenderingSystem().runOnOpenGLThread(new Runnable() {
             @Override
             public void run() {
-                Bitmap bitmap = null;
-                BitmapFactory.Options options = new BitmapFactory.Options();
-                options.inScaled = false;
-
-                try {
-                    InputStream input = assetManager.open("textures/" + filepath);
-                    bitmap = BitmapFactory.decodeStream(input, new Rect(), options);
-                } catch(IOException e) {
-                    Log.d("game_engine", "error: Could not load resource \"" + filepath + "\"");
-                    e.printStackTrace();
-                }
+                handles[0] = ResourceSystem.this.createTexture(image, settings);
+                readyFlag[0] = true;
+            }
+        });
 
-                if(bitmap != null) {
-                    GLES20.glGenTextures(1, handles, 0);
-                    GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, handles[0]);
-                    GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST);
-                    GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST);
-                    GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
-                    bitmap.recycle();
+        while(!readyFlag[0]) {
+            Thread.yield();
+        }
+
+        int firstLevel = Math.min(skippedMipLevels, image.getLevelCount() - 1);
+        int lastLevel = ResourceSystem.lastMipLevel(image, settings, firstLevel);
+        long bytes = 0;
+        for(int level = firstLevel; level <= lastLevel; level++) {
+            bytes += image.getLevel(level).capacity();
+        }
+        Texture texture = new Texture(handles[0], bytes);
+        texture.setAlpha(image.hasAlpha());
+        return texture;
+    }
+
+    /**
+     * Must be called on the OpenGL thread.
+     */
+    private int createTexture(CompressedImage image, TextureSettings settings) {
+        RenderBackend gl = RenderingSystem.getBackend();
+        int firstLevel = Math.min(skippedMipLevels, image.getLevelCount() - 1);
+        int lastLevel = ResourceSystem.lastMipLevel(image, settings, firstLevel);
+        boolean mipmapped = lastLevel > firstLevel;
+        int[] handles = new int[1];
+        gl.glGenTextures(1, handles, 0);
+        gl.glBindTexture(GLES20.GL_TEXTURE_2D, handles[0]);
+        int width = image.getLevelWidth(firstLevel);
+        int height = image.getLevelHeight(firstLevel);
+        settings.apply(gl, mipmapped, TextureSettings.isPowerOfTwo(width, height));
+        for(int level = firstLevel; level <= lastLevel; level++) {
+            ByteBuffer data = image.getLevel(level);
+            gl.glCompressedTexImage2D(GLES20.GL_TEXTURE_2D, level - firstLevel, image.getUploadFormat(),
+                    image.getLevelWidth(level), image.getLevelHeight(level), 0, data.capacity(), data);
+        }
+        return handles[0];
+    }
 
-                    loadedFlag[0] = true;
+    /**
+     * Only the first level is used where the device can't sample mipmaps of the image's dimensions,
+     * as an NPOT texture with a mipmap filter would be incomplete and sample black. The same rule as for bitmaps.
+     */
+    private static int lastMipLevel(CompressedImage image, TextureSettings settings, int firstLevel) {
+        boolean mipmapped = settings.canGenerateMipmaps(image.getLevelWidth(firstLevel), image.getLevelHeight(firstLevel))
+                && image.getLevelCount() - firstLevel > 1;
+        return mipmapped ? image.getLevelCount() - 1 : firstLevel;
+    }
+
+    /**
+     * Decodes the image on the calling thread, downscaled by the skipped mip levels.
+     */
+    private Bitmap decodeBitmap(String filepath) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inScaled = false;
+        Bitmap bitmap;
+        try {
+            InputStream input = assetManager.open("textures/" + filepath);
+            bitmap = BitmapFactory.decodeStream(input, new Rect(), options);
+            input.close();
+        } catch(IOException e) {
+            Log.d("game_engine", "error: Could not load resource \"" + filepath + "\"");
+            e.printStackTrace();
+            return null;
+        }
+        if(bitmap != null && skippedMipLevels > 0) {
+            int width = Math.max(1, bitmap.getWidth() >> skippedMipLevels);
+            int height = Math.max(1, bitmap.getHeight() >> skippedMipLevels);
+            Bitmap scaled = Bitmap.createScaledBitmap(bitmap, width, height, true);
+            if(scaled != bitmap) {
+                bitmap.recycle();
+            }
+            bitmap = scaled;
+        }
+        return bitmap;
+    }
+
+    /**
+     * Packs the given images into one or more atlas pages. Afterwards getTexture() returns the atlas region
+     * of each packed image, so materials using it can share texture binds and be batched together.
+     * Texture coordinates outside [0, 1] are not supported on atlas regions.
+     */
+    public TextureAtlas loadAtlas(final String name, final String... filepaths) {
+        int maxSize = Math.min(MAX_ATLAS_SIZE, GLCapabilities.getMaxTextureSize());
+        TextureAtlasBuilder builder = new TextureAtlasBuilder(assetManager, cacheDir, maxSize, ATLAS_PADDING);
+        builder.build(name, filepaths);
+
+        List<Texture> pages = new ArrayList<>();
+        for(Bitmap page : builder.getPages()) {
+            Texture texture = this.uploadBitmap(page, ATLAS_SETTINGS);
+            final int pageIndex = pages.size();
+            texture.setSource(new Texture.Source() {
+                @Override
+                public int create() {
+                    return ResourceSystem.this.reloadAtlasPage(name, filepaths, pageIndex);
                 }
+            });
+            String key = "atlas:" + name + "#" + pages.size();
+            cache.put(key, texture);
+            cache.pin(key);
+            pages.add(texture);
+        }
+        TextureAtlas atlas = new TextureAtlas(name, pages);
+
+        Map<String, int[]> placements = builder.getPlacements();
+        for(String filepath : placements.keySet()) {
+            int[] placement = placements.get(filepath);
+            Bitmap page = builder.getPages().get(placement[0]);
+            float width = page.getWidth();
+            float height = page.getHeight();
+            Texture region = new Texture(
+                pages.get(placement[0]),
+                placement[1] / width,
+                placement[2] / height,
+                placement[3] / width,
+                placement[4] / height
+            );
+            region.setAlpha(ResourceSystem.hasTranslucentPixels(page, placement[1], placement[2], placement[3], placement[4]));
+            atlas.getRegions().put(filepath, region);
+            atlasRegions.put(filepath, region);
+        }
+        for(Bitmap page : builder.getPages()) {
+            page.recycle();
+        }
 
+        return atlas;
+    }
+
+    private Texture uploadBitmap(final Bitmap bitmap, final TextureSettings settings) {
+        final int[] handles = new int[1];
+        final boolean[] readyFlag = new boolean[1];
+        GameEngine.getRenderingSystem().runOnOpenGLThread(new Runnable() {
+            @Override
+            public void run() {
+                handles[0] = ResourceSystem.this.createTexture(bitmap, settings);
                 readyFlag[0] = true;
             }
         });
 
-        try {
-            Thread.sleep(50);
-            while(!readyFlag[0]) {}
-        } catch(InterruptedException e) {
-            e.printStackTrace();
+        while(!readyFlag[0]) {
+            Thread.yield();
         }
 
-        if(loadedFlag[0]) {
-            texture = new Texture(handles[0]);
+        // A full mipmap chain adds a third to the base level
+        long bytes = (long)bitmap.getWidth() * bitmap.getHeight() * 4;
+        Texture texture = new Texture(handles[0], settings.canGenerateMipmaps(bitmap.getWidth(), bitmap.getHeight()) ? bytes * 4 / 3 : bytes);
+        texture.setAlpha(ResourceSystem.hasTranslucentPixels(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight()));
+        return texture;
+    }
+
+    /**
+     * Whether any pixel in the rectangle is less than fully opaque.
+     * Decoded PNGs report an alpha channel even when every pixel is opaque, which would send opaque meshes to the transparent queue.
+     */
+    private static boolean hasTranslucentPixels(Bitmap bitmap, int x, int y, int width, int height) {
+        if(!bitmap.hasAlpha()) {
+            return false;
+        }
+        int[] row = new int[width];
+        for(int r = y; r < y + height; r++) {
+            bitmap.getPixels(row, 0, width, x, r, width, 1);
+            for(int pixel : row) {
+                if((pixel >>> 24) != 0xFF) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Must be called on the OpenGL thread.
+     */
+    private int createTexture(Bitmap bitmap, TextureSettings settings) {
+        RenderBackend gl = RenderingSystem.getBackend();
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        boolean mipmapped = settings.canGenerateMipmaps(width, height);
+        int[] handles = new int[1];
+        gl.glGenTextures(1, handles, 0);
+        gl.glBindTexture(GLES20.GL_TEXTURE_2D, handles[0]);
+        settings.apply(gl, mipmapped, TextureSettings.isPowerOfTwo(width, height));
+        gl.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
+        if(mipmapped) {
+            gl.glGenerateMipmap(GLES20.GL_TEXTURE_2D);
+        }
+        return handles[0];
+    }
+
+    /**
+     * Reloads a texture from its asset after a context loss, on the OpenGL thread.
+     * The variant is chosen again, as the new context may support different formats. Returns 0 if nothing can be loaded.
+     */
+    private int reloadTexture(String filepath) {
+        TextureSettings settings = this.getTextureSettings(filepath);
+        for(String candidate : this.compressedCandidates(filepath)) {
+            CompressedImage image = this.readCompressedImage(candidate);
+            if(image != null && image.isSupported()) {
+                return this.createTexture(image, settings);
+            }
+        }
+        if(this.isCompressedContainer(filepath)) {
+            return 0;
+        }
+        Bitmap bitmap = this.decodeBitmap(filepath);
+        if(bitmap == null) {
+            return 0;
         }
+        int texture = this.createTexture(bitmap, settings);
+        bitmap.recycle();
+        return texture;
+    }
 
+    /**
+     * Rebuilds the atlas, normally from the cached pages, and uploads one of its pages on the OpenGL thread.
+     */
+    private int reloadAtlasPage(String name, String[] filepaths, int page) {
+        int maxSize = Math.min(MAX_ATLAS_SIZE, GLCapabilities.getMaxTextureSize());
+        TextureAtlasBuilder builder = new TextureAtlasBuilder(assetManager, cacheDir, maxSize, ATLAS_PADDING);
+        builder.build(name, filepaths);
+        int texture = (page < builder.getPages().size()) ? this.createTexture(builder.getPages().get(page), ATLAS_SETTINGS) : 0;
+        for(Bitmap bitmap : builder.getPages()) {
+            bitmap.recycle();
+        }
         return texture;
     }
 
-    public Mesh loadMesh(final String filepath ) {
-        Mesh mesh = meshes.get(filepath);
-        if(mesh != null) {
-            return mesh;
+    /**
+     * Settings used by textures loaded from now on, unless they have their own.
+     */
+    public void setDefaultTextureSettings(TextureSettings settings) {
+        defaultTextureSettings = settings;
+    }
+
+    public TextureSettings getDefaultTextureSettings() {
+        return defaultTextureSettings;
+    }
+
+    /**
+     * Registers import settings for one texture. Must be called before the texture is loaded.
+     */
+    public void setTextureSettings(String filepath, TextureSettings settings) {
+        textureSettings.put(filepath, settings);
+    }
+
+    public TextureSettings getTextureSettings(String filepath) {
+        TextureSettings settings = textureSettings.get(filepath);
+        return (settings != null) ? settings : defaultTextureSettings;
+    }
+
+    /**
+     * Drops the given number of top mip levels from textures loaded from now on, e.g. 1 on low-memory devices,
+     * which quarters their memory. Images are downscaled, pre-compressed textures lose levels if their file has them.
+     */
+    public void setSkippedMipLevels(int levels) {
+        skippedMipLevels = Math.max(0, levels);
+    }
+
+    public int getSkippedMipLevels() {
+        return skippedMipLevels;
+    }
+
+    /**
+     * Returns null if caching is disabled.
+     */
+    public File getCacheDir() {
+        return cacheDir;
+    }
+
+    public boolean isOptimizingMeshes() {
+        return optimizeMeshes;
+    }
+
+    /**
+     * Meshes loaded while enabled get their duplicate vertices welded and their triangles and vertices reordered
+     * for the GPU's vertex caches. Vertex ids then no longer match the file, which is why it is off by default.
+     */
+    public void setOptimizeMeshes(boolean optimizeMeshes) {
+        this.optimizeMeshes = optimizeMeshes;
+    }
+
+    /**
+     * Returns the mesh, loading it if needed, and takes a reference to it on the caller's behalf.
+     * The mesh stays loaded until releaseMesh() has been called as often as this; see getTexture() for migrating to acquireMesh().
+     */
+    public Mesh loadMesh(final String filepath) {
+        String key = this.findMesh(filepath);
+        cache.acquire(key);
+        return cache.peek(key);
+    }
+
+    /**
+     * Gives up a reference taken by loadMesh(); once none are left the mesh may be evicted to stay within the budget.
+     */
+    public void releaseMesh(String filepath) {
+        cache.release("mesh:" + filepath);
+    }
+
+    /**
+     * Returns a counted reference to the mesh, loading it if needed.
+     * Once all references are released the mesh may be evicted to stay within the GPU memory budget.
+     */
+    public ResourceHandle<Mesh> acquireMesh(String filepath) {
+        String key = this.findMesh(filepath);
+        Mesh mesh = cache.peek(key);
+        return new ResourceHandle<>(cache, key, mesh);
+    }
+
+    private String findMesh(String filepath) {
+        String key = "mesh:" + filepath;
+        if(cache.get(key) == null) {
+            cache.put(key, this.parseMesh(filepath));
         }
+        return key;
+    }
+
+    private Mesh parseMesh(final String filepath) {
+        Mesh mesh;
 
         List<Vertex> vertices = new ArrayList<>();
         List<Face> faces = new ArrayList<>();
@@ -201,8 +701,15 @@ public class ResourceSystem extends System {
             faceArray[i] = faces.get(i);
         }
 
-        mesh = new Mesh(vertexArray, faceArray);
-        meshes.put(filepath, mesh);
+        if(vertexArray.length > Mesh.MAX_SHORT_INDEXED_VERTICES) {
+            String handling = GLCapabilities.supportsUnsignedIntIndices() ? "32-bit indices" : "chunks drawn separately";
+            Log.d("game_engine", "\"" + filepath + "\" has " + vertexArray.length + " vertices, more than 16-bit indices can address; using " + handling);
+        }
+        if(optimizeMeshes) {
+            mesh = new Mesh(MeshOptimizer.optimize(MeshData.fromVertices(vertexArray, faceArray), filepath));
+        } else {
+            mesh = new Mesh(vertexArray, faceArray);
+        }
 
         return mesh;
     }
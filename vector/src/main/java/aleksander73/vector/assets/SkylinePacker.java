@@ -0,0 +1,109 @@
+package aleksander73.vector.assets;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Packs rectangles into a fixed-size bin with the skyline bottom-left heuristic.
+ */
+public class SkylinePacker {
+    private final int width;
+    private final int height;
+    private final List<int[]> skyline = new ArrayList<>();  // { x, y, width }
+    private int usedHeight;
+
+    public SkylinePacker(int width, int height) {
+        this.width = width;
+        this.height = height;
+        skyline.add(new int[] { 0, 0, width });
+    }
+
+    /**
+     * Finds the lowest position the rectangle fits at and reserves it.
+     * Returns { x, y }, or null if the bin has no room left for it.
+     */
+    public int[] pack(int w, int h) {
+        int bestIndex = -1;
+        int bestX = 0;
+        int bestY = Integer.MAX_VALUE;
+        int bestWidth = Integer.MAX_VALUE;
+        for(int i = 0; i < skyline.size(); i++) {
+            int y = this.fit(i, w, h);
+            if(y < 0) {
+                continue;
+            }
+            int[] node = skyline.get(i);
+            if(y < bestY || (y == bestY && node[2] < bestWidth)) {
+                bestIndex = i;
+                bestX = node[0];
+                bestY = y;
+                bestWidth = node[2];
+            }
+        }
+        if(bestIndex < 0) {
+            return null;
+        }
+
+        this.addNode(bestIndex, bestX, bestY + h, w);
+        usedHeight = Math.max(usedHeight, bestY + h);
+        return new int[] { bestX, bestY };
+    }
+
+    private int fit(int index, int w, int h) {
+        int x = skyline.get(index)[0];
+        if(x + w > width) {
+            return -1;
+        }
+        int y = 0;
+        int remaining = w;
+        for(int i = index; remaining > 0; i++) {
+            if(i >= skyline.size()) {
+                return -1;
+            }
+            int[] node = skyline.get(i);
+            y = Math.max(y, node[1]);
+            if(y + h > height) {
+                return -1;
+            }
+            remaining -= node[2];
+        }
+        return y;
+    }
+
+    private void addNode(int index, int x, int y, int w) {
+        skyline.add(index, new int[] { x, y, w });
+
+        // Shrink or remove the nodes now covered by the new one
+        for(int i = index + 1; i < skyline.size(); i++) {
+            int[] previous = skyline.get(i - 1);
+            int[] node = skyline.get(i);
+            int overlap = previous[0] + previous[2] - node[0];
+            if(overlap <= 0) {
+                break;
+            }
+            node[0] += overlap;
+            node[2] -= overlap;
+            if(node[2] <= 0) {
+                skyline.remove(i);
+                i--;
+            } else {
+                break;
+            }
+        }
+
+        // Merge neighbours at the same height
+        for(int i = 0; i < skyline.size() - 1; i++) {
+            int[] node = skyline.get(i);
+            int[] next = skyline.get(i + 1);
+            if(node[1] == next[1]) {
+                node[2] += next[2];
+                skyline.remove(i + 1);
+                i--;
+            }
+        }
+    }
+
+    public int getUsedHeight() {
+        return usedHeight;
+    }
+}
@@ -0,0 +1,37 @@
+package aleksander73.vector.assets;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import aleksander73.vector.rendering.materials.Texture;
+
+public class TextureAtlas {
+    private final String name;
+    private final List<Texture> pages;
+    private final Map<String, Texture> regions = new HashMap<>();
+
+    public TextureAtlas(String name, List<Texture> pages) {
+        this.name = name;
+        this.pages = pages;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<Texture> getPages() {
+        return pages;
+    }
+
+    /**
+     * Returns the region of the image with the given filepath, or null if it hasn't been packed into this atlas.
+     */
+    public Texture getTexture(String filepath) {
+        return regions.get(filepath);
+    }
+
+    public Map<String, Texture> getRegions() {
+        return regions;
+    }
+}
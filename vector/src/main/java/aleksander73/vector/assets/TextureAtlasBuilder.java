@@ -0,0 +1,274 @@
+package aleksander73.vector.assets;
+
+import android.content.res.AssetManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Rect;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Packs images from the textures asset folder into power-of-two pages.
+ * Every image is surrounded by padding filled with its own edge pixels, so that filtering doesn't bleed neighbouring images in.
+ * Packed pages are cached as PNG files, so later launches only have to decode them.
+ */
+public class TextureAtlasBuilder {
+    private final AssetManager assetManager;
+    private final File cacheDir;
+    private final int maxSize;
+    private final int padding;
+
+    private final List<Bitmap> pages = new ArrayList<>();
+    private final Map<String, int[]> placements = new HashMap<>();  // { page, x, y, width, height }
+
+    public TextureAtlasBuilder(AssetManager assetManager, File cacheDir, int maxSize, int padding) {
+        this.assetManager = assetManager;
+        this.cacheDir = (cacheDir != null) ? new File(cacheDir, "atlases") : null;
+        this.maxSize = maxSize;
+        this.padding = padding;
+    }
+
+    public void build(String name, String[] filepaths) {
+        String key = this.cacheKey(name, filepaths);
+        if(key != null && this.loadFromCache(key)) {
+            Log.d("game_engine", "Loaded atlas \"" + name + "\" from cache");
+            return;
+        }
+
+        final Map<String, Bitmap> bitmaps = new HashMap<>();
+        for(String filepath : filepaths) {
+            Bitmap bitmap = this.decode(filepath);
+            if(bitmap == null) {
+                continue;
+            }
+            if(bitmap.getWidth() + 2 * padding > maxSize || bitmap.getHeight() + 2 * padding > maxSize) {
+                Log.d("game_engine", "error: \"" + filepath + "\" is too large to be packed into an atlas");
+                bitmap.recycle();
+                continue;
+            }
+            bitmaps.put(filepath, bitmap);
+        }
+
+        List<String> order = new ArrayList<>(bitmaps.keySet());
+        Collections.sort(order, new Comparator<String>() {
+            @Override
+            public int compare(String f1, String f2) {
+                return bitmaps.get(f2).getHeight() - bitmaps.get(f1).getHeight();
+            }
+        });
+
+        List<SkylinePacker> packers = new ArrayList<>();
+        for(String filepath : order) {
+            Bitmap bitmap = bitmaps.get(filepath);
+            int w = bitmap.getWidth() + 2 * padding;
+            int h = bitmap.getHeight() + 2 * padding;
+            int[] position = null;
+            int page = 0;
+            for(; page < packers.size(); page++) {
+                position = packers.get(page).pack(w, h);
+                if(position != null) {
+                    break;
+                }
+            }
+            if(position == null) {
+                packers.add(new SkylinePacker(maxSize, maxSize));
+                position = packers.get(page).pack(w, h);
+            }
+            placements.put(filepath, new int[] { page, position[0] + padding, position[1] + padding, bitmap.getWidth(), bitmap.getHeight() });
+        }
+
+        for(SkylinePacker packer : packers) {
+            int height = 1;
+            while(height < packer.getUsedHeight()) {
+                height *= 2;
+            }
+            int[] pixels = new int[maxSize * height];
+            for(String filepath : order) {
+                int[] placement = placements.get(filepath);
+                if(placement[0] == pages.size()) {
+                    this.blit(bitmaps.get(filepath), pixels, maxSize, placement[1], placement[2]);
+                }
+            }
+            Bitmap page = Bitmap.createBitmap(maxSize, height, Bitmap.Config.ARGB_8888);
+            page.setPixels(pixels, 0, maxSize, 0, 0, maxSize, height);
+            pages.add(page);
+        }
+        for(Bitmap bitmap : bitmaps.values()) {
+            bitmap.recycle();
+        }
+
+        if(key != null) {
+            this.saveToCache(key);
+        }
+    }
+
+    /**
+     * Copies the image into the page and extrudes its edge pixels into the surrounding padding.
+     */
+    private void blit(Bitmap bitmap, int[] target, int stride, int x, int y) {
+        int w = bitmap.getWidth();
+        int h = bitmap.getHeight();
+        int[] source = new int[w * h];
+        bitmap.getPixels(source, 0, w, 0, 0, w, h);
+        for(int py = -padding; py < h + padding; py++) {
+            int sy = Math.min(Math.max(py, 0), h - 1);
+            for(int px = -padding; px < w + padding; px++) {
+                int sx = Math.min(Math.max(px, 0), w - 1);
+                target[(y + py) * stride + x + px] = source[sy * w + sx];
+            }
+        }
+    }
+
+    private Bitmap decode(String filepath) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inScaled = false;
+        try {
+            InputStream input = assetManager.open("textures/" + filepath);
+            Bitmap bitmap = BitmapFactory.decodeStream(input, new Rect(), options);
+            input.close();
+            return bitmap;
+        } catch(IOException e) {
+            Log.d("game_engine", "error: Could not load resource \"" + filepath + "\"");
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * The key covers everything the packing depends on: the atlas name, the page size limit, the padding,
+     * the image paths and the bytes of every image. Any edit to an image's file is therefore detected,
+     * including one that keeps its size; changes to how this class packs images are not, and need a new atlas name.
+     */
+    private String cacheKey(String name, String[] filepaths) {
+        if(cacheDir == null) {
+            return null;
+        }
+        String[] sorted = Arrays.copyOf(filepaths, filepaths.length);
+        Arrays.sort(sorted);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update((name + '|' + maxSize + '|' + padding).getBytes("UTF-8"));
+            byte[] buffer = new byte[16 * 1024];
+            for(String filepath : sorted) {
+                digest.update(('|' + filepath + '|').getBytes("UTF-8"));
+                InputStream input = assetManager.open("textures/" + filepath);
+                int read;
+                while((read = input.read(buffer)) > 0) {
+                    digest.update(buffer, 0, read);
+                }
+                input.close();
+            }
+            StringBuilder hex = new StringBuilder();
+            for(byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch(NoSuchAlgorithmException | IOException e) {
+            return null;
+        }
+    }
+
+    private boolean loadFromCache(String key) {
+        File descriptor = new File(cacheDir, key + ".atlas");
+        if(!descriptor.exists()) {
+            return false;
+        }
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader(descriptor));
+            String line;
+            while((line = reader.readLine()) != null) {
+                String[] parts = line.split(" ");
+                switch(parts[0]) {
+                    case "p" : {
+                        Bitmap page = BitmapFactory.decodeFile(new File(cacheDir, key + "_" + parts[1] + ".png").getPath());
+                        if(page == null) {
+                            reader.close();
+                            this.clear();
+                            return false;
+                        }
+                        pages.add(page);
+                        break;
+                    }
+                    case "r" : {
+                        placements.put(parts[1], new int[] {
+                            Integer.parseInt(parts[2]),
+                            Integer.parseInt(parts[3]),
+                            Integer.parseInt(parts[4]),
+                            Integer.parseInt(parts[5]),
+                            Integer.parseInt(parts[6])
+                        });
+                        break;
+                    }
+                }
+            }
+            reader.close();
+        } catch(IOException | RuntimeException e) {
+            Log.d("game_engine", "error: Could not read the cached atlas " + key);
+            this.clear();
+            return false;
+        }
+        return true;
+    }
+
+    private void saveToCache(String key) {
+        if(!cacheDir.exists() && !cacheDir.mkdirs()) {
+            return;
+        }
+        try {
+            for(int i = 0; i < pages.size(); i++) {
+                FileOutputStream output = new FileOutputStream(new File(cacheDir, key + "_" + i + ".png"));
+                pages.get(i).compress(Bitmap.CompressFormat.PNG, 100, output);
+                output.close();
+            }
+            // Filepaths come from the asset folder and contain no spaces
+            PrintWriter writer = new PrintWriter(new FileWriter(new File(cacheDir, key + ".atlas")));
+            for(int i = 0; i < pages.size(); i++) {
+                writer.println("p " + i);
+            }
+            for(String filepath : placements.keySet()) {
+                int[] p = placements.get(filepath);
+                writer.println("r " + filepath + " " + p[0] + " " + p[1] + " " + p[2] + " " + p[3] + " " + p[4]);
+            }
+            writer.close();
+        } catch(IOException e) {
+            Log.d("game_engine", "error: Could not cache the atlas " + key);
+            e.printStackTrace();
+        }
+    }
+
+    private void clear() {
+        for(Bitmap page : pages) {
+            page.recycle();
+        }
+        pages.clear();
+        placements.clear();
+    }
+
+    public List<Bitmap> getPages() {
+        return pages;
+    }
+
+    /**
+     * Returns { page, x, y, width, height } of every packed image, in pixels.
+     */
+    public Map<String, int[]> getPlacements() {
+        return placements;
+    }
+}
@@ -5,6 +5,8 @@ import android.util.Log;
 import java.util.ArrayList;
 import java.util.List;
 
+import aleksander73.vector.rendering.QualityGovernor;
+import aleksander73.vector.rendering.batching.StaticBatcher;
 import aleksander73.vector.rendering.renderers.Renderer;
 import aleksander73.vector.scene.Scene;
 import aleksander73.vector.time.Time;
@@ -25,6 +27,7 @@ public abstract class Game {
     public Game() {
         this.setupInput();
         Scene scene = this.buildScene();
+        StaticBatcher.combine(scene);
         scenes.add(scene);
         Scene.setCurrentScene(scene);
     }
@@ -48,12 +51,17 @@ public abstract class Game {
         while(running) {
             long elapsedTime = timer.elapsedTimeNano();
             if(elapsedTime > 1000000000L / FPS) {
+                long tickStart = Time.currentTime();
                 GameEngine.getPhysicsSystem().gatherInformation(Scene.getCurrentScene());
                 this.update();
                 this.clearInput();
                 Scene.getCurrentScene().onUpdated();
                 GameEngine.getPhysicsSystem().simulatePhysics(Scene.getCurrentScene());
-                GameEngine.getRenderingSystem().requestRender();
+                QualityGovernor governor = GameEngine.getRenderingSystem().getQualityGovernor();
+                if(governor != null) {
+                    governor.reportUpdateTime(Time.currentTime() - tickStart);
+                }
+                GameEngine.getRenderingSystem().requestRender(Scene.getCurrentScene());
                 Time.setDeltaTime(elapsedTime);
                 timer.restart();
                 frames++;
@@ -92,9 +100,7 @@ public abstract class Game {
                 return renderer.isActive();
             }
         });
-        for(Renderer renderer : activeRenderers) {
-            renderer.render();
-        }
+        GameEngine.getRenderingSystem().render(activeRenderers);
     }
 
     public void stop() {
@@ -1,6 +1,8 @@
 package aleksander73.vector.core;
 
 import android.app.Activity;
+import android.content.res.AssetManager;
+import android.os.Build;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -11,6 +13,8 @@ import java.util.TimerTask;
 import aleksander73.vector.assets.ResourceSystem;
 import aleksander73.vector.input.InputSystem;
 import aleksander73.vector.physics.PhysicsSystem;
+import aleksander73.vector.rendering.EGLSurfaceView;
+import aleksander73.vector.rendering.RenderSurface;
 import aleksander73.vector.rendering.RenderingSystem;
 import aleksander73.vector.rendering.SurfaceView;
 import aleksander73.vector.utility.Event;
@@ -22,13 +26,20 @@ public class GameEngine {
     private Timer gameTimer;
 
     public void initialize(Activity activity) {
-        SurfaceView surfaceView = new SurfaceView(activity);
-        activity.setContentView(surfaceView);
+        this.initialize(activity, true);
+    }
+
+    /**
+     * @param renderThread - whether to render on an engine-owned RenderThread where the device allows it, instead of GLSurfaceView's thread
+     */
+    public void initialize(Activity activity, boolean renderThread) {
+        RenderSurface surface = (renderThread && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) ? new EGLSurfaceView(activity) : new SurfaceView(activity);
+        activity.setContentView(surface.getView());
         systems.addAll(Arrays.asList(
-            new RenderingSystem(this, surfaceView),
-            new InputSystem(this, surfaceView),
+            new RenderingSystem(this, surface),
+            new InputSystem(this, surface),
             new PhysicsSystem(this),
-            new ResourceSystem(this, activity.getAssets())
+            new ResourceSystem(this, activity.getAssets(), activity.getCacheDir())
         ));
         final Timer timer = new Timer();
         timer.schedule(new TimerTask() {
@@ -42,6 +53,21 @@ public class GameEngine {
         }, 0, 50);
     }
 
+    /**
+     * Sets up the systems without a surface, e.g. for tests and benchmarks with a HeadlessBackend set on the RenderingSystem.
+     * OpenGL work runs on the calling thread. Systems of a previous initialization are replaced.
+     * @param assetManager - may be null if no assets are loaded
+     */
+    public void initializeHeadless(AssetManager assetManager) {
+        systems.clear();
+        systems.addAll(Arrays.asList(
+            new RenderingSystem(this, null),
+            new InputSystem(this, null),
+            new PhysicsSystem(this),
+            new ResourceSystem(this, assetManager, null)
+        ));
+    }
+
     private boolean isInitialized() {
         for(System system : systems) {
             if(!system.isReady()) {
@@ -65,6 +91,10 @@ public class GameEngine {
     public void shutdown() {
         game.stop();
         gameTimer.cancel();
+        RenderSurface surface = GameEngine.getRenderingSystem().getSurface();
+        if(surface != null) {
+            surface.release();
+        }
     }
 
     public Event getOnInitialized() {
@@ -11,6 +11,7 @@ public class GameObject implements Script {
     private final List<Component> components = new ArrayList<>();
     private Scene scene;
     private boolean active = true;
+    private boolean staticObject = false;
 
     protected GameObject(String name) {
         this.name = name;
@@ -110,4 +111,15 @@ public class GameObject implements Script {
     public void setActive(boolean active) {
         this.active = active;
     }
+
+    public boolean isStatic() {
+        return staticObject;
+    }
+
+    /**
+     * Static game objects are expected to never move or change their mesh and material, which allows them to be batched.
+     */
+    public void setStatic(boolean staticObject) {
+        this.staticObject = staticObject;
+    }
 }
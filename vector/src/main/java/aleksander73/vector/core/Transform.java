@@ -21,6 +21,8 @@ public class Transform extends Component {
     private Vector3d up = Vector3d.yUnitVector;
     private Vector3d back = Vector3d.zUnitVector;
 
+    private int version;
+
     public Transform() {}
 
     public Transform(Vector3d position) {
@@ -49,6 +51,7 @@ public class Transform extends Component {
                 .add(reference.up.mul(v.getY()))
                 .add(reference.back.mul(v.getZ()))
                 .toVector3d();
+        version++;
         for(Transform child : children) {
             child.translate(reference, v);
         }
@@ -65,6 +68,7 @@ public class Transform extends Component {
         Vector3d delta = Quaternion.toRotationQuaternion(axis, angle).toEulerAngles();
         rotation = rotation.add(delta).toVector3d();
         this.rotateNormals(axis, angle);
+        version++;
 
         for(Transform child : children) {
             child.rotate(point, axis, angle);
@@ -93,6 +97,7 @@ public class Transform extends Component {
 
     public void scale(Vector3d v) {
         scale = scale.hadamardProduct(v).toVector3d();
+        version++;
         for(Transform child : children) {
             child.scale(v);
         }
@@ -129,11 +134,19 @@ public class Transform extends Component {
     public void setPosition(Vector3d position) {
         Vector3d r = position.sub(this.position).toVector3d();
         this.position = position;
+        version++;
         for(Transform child : children) {
             child.translate(r);
         }
     }
 
+    /**
+     * Incremented whenever the transform moves, rotates or scales.
+     */
+    public int getVersion() {
+        return version;
+    }
+
     public Vector3d getRotation() {
         return rotation;
     }
@@ -7,7 +7,7 @@ import aleksander73.vector.rendering.materials.Colour;
 import aleksander73.vector.rendering.materials.Material;
 import aleksander73.vector.rendering.materials.Texture;
 import aleksander73.vector.rendering.mesh.Mesh;
-import aleksander73.vector.rendering.renderers.MeshRenderer;
+import aleksander73.vector.rendering.renderers.SpriteRenderer;
 import aleksander73.math.linear_algebra.Vector2d;
 import aleksander73.math.linear_algebra.Vector3d;
 
@@ -26,10 +26,11 @@ public class GUIElement extends GameObject {
         height = dimensions.getY();
         this.layer = layer;
         Transform transform = new Transform(new Vector3d(position.getX(), position.getY(), 0.0f));
+        // The quad is drawn by the sprite batch; the mesh stays for code measuring the element and for non-sprite shaders
         Mesh mesh = Mesh.generateGUITexture(width, height);
-        Material material = new Material(colour, texture, Shaders.getGuiShader());
-        MeshRenderer meshRenderer = new MeshRenderer(mesh);
-        this.addComponents(transform, mesh, material, meshRenderer);
+        Material material = new Material(colour, texture, Shaders.getSpriteShader());
+        SpriteRenderer spriteRenderer = new SpriteRenderer(width, height, layer);
+        this.addComponents(transform, mesh, material, spriteRenderer);
     }
 
     public float getWidth() {
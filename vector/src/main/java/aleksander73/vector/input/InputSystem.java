@@ -1,22 +1,26 @@
 package aleksander73.vector.input;
 
+import android.view.MotionEvent;
 import android.view.View;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import aleksander73.vector.core.GameEngine;
 import aleksander73.vector.core.System;
-import aleksander73.vector.rendering.SurfaceView;
+import aleksander73.vector.rendering.RenderSurface;
 import aleksander73.vector.rendering.Transformation;
 import aleksander73.math.linear_algebra.Matrix;
 import aleksander73.math.linear_algebra.Vector2d;
 import aleksander73.math.linear_algebra.Vector3d;
 
 public class InputSystem extends System {
-    private final SurfaceView surfaceView;
+    private final RenderSurface surface;
     private Matrix screenToNDCMatrix;
+    private final AtomicLong inputTime = new AtomicLong();
 
-    public InputSystem(GameEngine gameEngine, SurfaceView surfaceView) {
+    public InputSystem(GameEngine gameEngine, RenderSurface surface) {
         super(gameEngine);
-        this.surfaceView = surfaceView;
+        this.surface = surface;
         this.setReady(true);
     }
 
@@ -32,7 +36,24 @@ public class InputSystem extends System {
         return vec3d.transform(screenToNDCMatrix).toVector2d();
     }
 
-    public void setOnTouchListener(View.OnTouchListener listener) {
-        surfaceView.setOnTouchListener(listener);
+    /**
+     * The listener is wrapped to note when input arrives, which the rendering system reports the input latency against.
+     */
+    public void setOnTouchListener(final View.OnTouchListener listener) {
+        surface.setOnTouchListener(new View.OnTouchListener() {
+            @Override
+            public boolean onTouch(View view, MotionEvent event) {
+                // MotionEvent times are uptimeMillis, which runs on the same monotonic clock as System.nanoTime
+                inputTime.compareAndSet(0L, event.getEventTime() * 1000000L);
+                return listener.onTouch(view, event);
+            }
+        });
+    }
+
+    /**
+     * Returns the time of the oldest input since the last call, or 0 if there was none.
+     */
+    public long takeInputTime() {
+        return inputTime.getAndSet(0L);
     }
 }
@@ -0,0 +1,156 @@
+package aleksander73.vector.rendering;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Direct byte buffers for staging GPU uploads, reused instead of allocated per upload.
+ * Direct buffers are slow to allocate and their native memory is only freed once the garbage collector finalizes them,
+ * so streaming meshes through fresh buffers lets native memory grow until a collection happens to run.
+ * Requests are rounded up to power-of-two size classes; buffers above the largest class are allocated exactly and never kept.
+ * Buffers have to be released once the data has been handed to OpenGL, and must not be used afterwards. Thread-safe.
+ */
+public class BufferPool {
+    public static final long DEFAULT_RETAINED_BYTES = 16L * 1024 * 1024;
+    private static final int MIN_CLASS_SHIFT = 8;
+    private static final int MAX_CLASS_SHIFT = 22;
+
+    private final long maxRetainedBytes;
+    private final Deque<ByteBuffer>[] classes;
+    private long retainedBytes;
+    private long bytesInUse;
+    private long highWaterMark;
+    private int requests;
+    private int allocations;
+
+    /**
+     * @param maxRetainedBytes - released buffers beyond this are dropped and left to the garbage collector
+     */
+    @SuppressWarnings("unchecked")
+    public BufferPool(long maxRetainedBytes) {
+        this.maxRetainedBytes = maxRetainedBytes;
+        classes = new Deque[MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1];
+        for(int i = 0; i < classes.length; i++) {
+            classes[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Returns a native-ordered buffer with position 0 and its limit set to the requested size. The capacity may be larger.
+     */
+    public synchronized ByteBuffer acquire(int bytes) {
+        requests++;
+        int sizeClass = BufferPool.sizeClass(bytes);
+        ByteBuffer buffer = null;
+        if(sizeClass >= 0) {
+            buffer = classes[sizeClass].poll();
+            if(buffer != null) {
+                retainedBytes -= buffer.capacity();
+            } else {
+                buffer = this.allocate(1 << (sizeClass + MIN_CLASS_SHIFT));
+            }
+        } else {
+            buffer = this.allocate(bytes);
+        }
+        bytesInUse += buffer.capacity();
+        highWaterMark = Math.max(highWaterMark, bytesInUse);
+        buffer.clear();
+        buffer.limit(bytes);
+        return buffer;
+    }
+
+    public ByteBuffer acquire(float[] data) {
+        ByteBuffer buffer = this.acquire(data.length * RenderingUtility.BYTES_PER_FLOAT);
+        for(float value : data) {
+            buffer.putFloat(value);
+        }
+        buffer.position(0);
+        return buffer;
+    }
+
+    public ByteBuffer acquire(short[] data) {
+        ByteBuffer buffer = this.acquire(data.length * RenderingUtility.BYTES_PER_SHORT);
+        for(short value : data) {
+            buffer.putShort(value);
+        }
+        buffer.position(0);
+        return buffer;
+    }
+
+    public synchronized void release(ByteBuffer buffer) {
+        bytesInUse -= buffer.capacity();
+        int sizeClass = BufferPool.sizeClass(buffer.capacity());
+        if(sizeClass < 0 || buffer.capacity() != 1 << (sizeClass + MIN_CLASS_SHIFT) || retainedBytes + buffer.capacity() > maxRetainedBytes) {
+            return;
+        }
+        classes[sizeClass].push(buffer);
+        retainedBytes += buffer.capacity();
+    }
+
+    /**
+     * Drops every pooled buffer, e.g. when the app is trimming memory.
+     */
+    public synchronized void trim() {
+        for(Deque<ByteBuffer> sizeClass : classes) {
+            sizeClass.clear();
+        }
+        retainedBytes = 0L;
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        allocations++;
+        return ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Returns -1 for sizes above the largest class.
+     */
+    private static int sizeClass(int bytes) {
+        int shift = MIN_CLASS_SHIFT;
+        while((1 << shift) < bytes) {
+            shift++;
+            if(shift > MAX_CLASS_SHIFT) {
+                return -1;
+            }
+        }
+        return shift - MIN_CLASS_SHIFT;
+    }
+
+    public synchronized long getBytesInUse() {
+        return bytesInUse;
+    }
+
+    /**
+     * The most bytes ever acquired at once, since creation or the last reset.
+     */
+    public synchronized long getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    public synchronized void resetHighWaterMark() {
+        highWaterMark = bytesInUse;
+    }
+
+    public synchronized long getRetainedBytes() {
+        return retainedBytes;
+    }
+
+    public synchronized int getRequests() {
+        return requests;
+    }
+
+    /**
+     * Requests that needed a new direct buffer.
+     */
+    public synchronized int getAllocations() {
+        return allocations;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return bytesInUse / 1024 + " KB in use, peak " + highWaterMark / 1024 + " KB, " + retainedBytes / 1024 + " KB pooled, "
+                + allocations + " allocations for " + requests + " requests";
+    }
+}
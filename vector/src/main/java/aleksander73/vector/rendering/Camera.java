@@ -73,6 +73,10 @@ public class Camera extends Component {
         });
     }
 
+    public Frustum frustum() {
+        return new Frustum(this.projectionMatrix().mul(this.viewMatrix()));
+    }
+
     public void setViewport(int width, int height) {
         this.width = width;
         this.height = height;
@@ -86,6 +90,10 @@ public class Camera extends Component {
         return height;
     }
 
+    public float getFov() {
+        return fov;
+    }
+
     public void setFov(float fov) {
         this.fov = fov;
     }
@@ -0,0 +1,102 @@
+package aleksander73.vector.rendering;
+
+import android.content.Context;
+import android.view.SurfaceHolder;
+import android.view.View;
+
+/**
+ * Render surface driven by an engine-owned RenderThread, which gives control over the swap interval and the frames in flight.
+ * Detaching the view only releases the window surface; the thread and its context live until release() is called,
+ * so moving the view to another window doesn't lose the resources.
+ * Requires API level 17; SurfaceView is the fallback.
+ */
+public class EGLSurfaceView extends android.view.SurfaceView implements RenderSurface, SurfaceHolder.Callback {
+    private RenderingSystem renderingSystem;
+    private RenderThread renderThread;
+    private boolean released;
+
+    public EGLSurfaceView(Context context) {
+        super(context);
+        this.getHolder().addCallback(this);
+    }
+
+    @Override
+    public void setRenderingSystem(RenderingSystem renderingSystem) {
+        this.renderingSystem = renderingSystem;
+        renderThread = new RenderThread(renderingSystem);
+        renderThread.start();
+    }
+
+    @Override
+    public void surfaceCreated(SurfaceHolder holder) {
+        renderThread.setSurface(holder.getSurface());
+    }
+
+    @Override
+    public void surfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+        renderThread.setSize(width, height);
+    }
+
+    @Override
+    public void surfaceDestroyed(SurfaceHolder holder) {
+        renderThread.releaseSurfaceAndWait();
+    }
+
+    /**
+     * Starts a new render thread if the previous one has ended unexpectedly. Its new context is handled like a lost one.
+     */
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if(!released && renderThread != null && !renderThread.isAlive()) {
+            RenderThread previous = renderThread;
+            renderThread = new RenderThread(renderingSystem);
+            renderThread.setFramesInFlight(previous.getFramesInFlight());
+            renderThread.setSwapInterval(previous.getSwapInterval());
+            renderThread.start();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if(renderThread != null) {
+            renderThread.releaseSurfaceAndWait();
+        }
+    }
+
+    /**
+     * Ends the render thread and destroys its context for good.
+     */
+    @Override
+    public void release() {
+        released = true;
+        if(renderThread != null) {
+            renderThread.quit();
+        }
+    }
+
+    @Override
+    public void requestRender() {
+        renderThread.requestRender();
+    }
+
+    @Override
+    public void queueEvent(Runnable runnable) {
+        renderThread.queueEvent(runnable);
+    }
+
+    @Override
+    public boolean performClick() {
+        return super.performClick();
+    }
+
+    @Override
+    public View getView() {
+        return this;
+    }
+
+    public RenderThread getRenderThread() {
+        return renderThread;
+    }
+}
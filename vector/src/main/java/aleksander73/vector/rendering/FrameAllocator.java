@@ -0,0 +1,79 @@
+package aleksander73.vector.rendering;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Staging memory for data uploaded once per frame, such as sprite vertices and instance attributes.
+ * Allocations are carved out of one arena and all freed together when the next frame begins.
+ * OpenGL copies the data during glBufferData, so nothing is held back for frames still in flight.
+ * A frame needing more than the arena is served from the buffer pool, and the arena grows to fit for later frames.
+ * Must only be used on the OpenGL thread.
+ */
+public class FrameAllocator {
+    public static final int DEFAULT_CAPACITY = 256 * 1024;
+    private static final int ALIGNMENT = 16;
+
+    private final BufferPool pool;
+    private ByteBuffer arena;
+    private int offset;
+    private int frameBytes;
+    private int highWaterMark;
+    private final List<ByteBuffer> overflow = new ArrayList<>();
+
+    public FrameAllocator(BufferPool pool, int capacity) {
+        this.pool = pool;
+        arena = ByteBuffer.allocateDirect(Math.max(ALIGNMENT, capacity)).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Returns a native-ordered buffer of exactly the requested size, valid until the next reset().
+     */
+    public ByteBuffer allocate(int bytes) {
+        int start = (offset + ALIGNMENT - 1) & -ALIGNMENT;
+        frameBytes += bytes + (start - offset);
+        if(start + bytes <= arena.capacity()) {
+            offset = start + bytes;
+            ByteBuffer view = arena.duplicate();
+            view.limit(start + bytes);
+            view.position(start);
+            return view.slice().order(ByteOrder.nativeOrder());
+        }
+        ByteBuffer buffer = pool.acquire(bytes);
+        overflow.add(buffer);
+        return buffer;
+    }
+
+    /**
+     * Frees everything allocated during the previous frame. Called when a frame begins.
+     */
+    public void reset() {
+        highWaterMark = Math.max(highWaterMark, frameBytes);
+        for(ByteBuffer buffer : overflow) {
+            pool.release(buffer);
+        }
+        overflow.clear();
+        if(frameBytes > arena.capacity()) {
+            int capacity = arena.capacity();
+            while(capacity < frameBytes) {
+                capacity *= 2;
+            }
+            arena = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+        }
+        offset = 0;
+        frameBytes = 0;
+    }
+
+    public int getCapacity() {
+        return arena.capacity();
+    }
+
+    /**
+     * The most bytes a single frame has allocated.
+     */
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+}
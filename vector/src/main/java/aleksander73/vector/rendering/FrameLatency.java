@@ -0,0 +1,54 @@
+package aleksander73.vector.rendering;
+
+/**
+ * Time from an input event until the frame reflecting it was presented, over the most recent frames that had input.
+ */
+public class FrameLatency {
+    private final long[] samples;
+    private int next;
+    private int count;
+    private long last;
+
+    public FrameLatency(int capacity) {
+        samples = new long[capacity];
+    }
+
+    public synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+        last = nanos;
+    }
+
+    public synchronized long getLast() {
+        return last;
+    }
+
+    public synchronized long getAverage() {
+        if(count == 0) {
+            return 0L;
+        }
+        long total = 0L;
+        for(int i = 0; i < count; i++) {
+            total += samples[i];
+        }
+        return total / count;
+    }
+
+    public synchronized long getMax() {
+        long max = 0L;
+        for(int i = 0; i < count; i++) {
+            max = Math.max(max, samples[i]);
+        }
+        return max;
+    }
+
+    public synchronized int getSampleCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return "input latency " + this.getAverage() / 1000000 + " ms (max " + this.getMax() / 1000000 + " ms)";
+    }
+}
@@ -0,0 +1,44 @@
+package aleksander73.vector.rendering;
+
+import aleksander73.vector.rendering.mesh.Bounds;
+import aleksander73.math.linear_algebra.Matrix;
+
+public class Frustum {
+    private static final int PLANES = 6;
+    private final float[] planes = new float[PLANES * 4];
+
+    /**
+     * Extracts the clipping planes (left, right, bottom, top, near, far) of a view-projection matrix.
+     */
+    public Frustum(Matrix viewProjection) {
+        float[] m = viewProjection.getValues();
+        for(int i = 0; i < PLANES; i++) {
+            int row = i / 2;
+            float sign = (i % 2 == 0) ? 1.0f : -1.0f;
+            for(int j = 0; j < 4; j++) {
+                planes[i * 4 + j] = m[12 + j] + sign * m[row * 4 + j];
+            }
+        }
+    }
+
+    public boolean intersects(Bounds bounds) {
+        if(bounds.isEmpty()) {
+            return false;
+        }
+        for(int i = 0; i < PLANES; i++) {
+            float a = planes[i * 4];
+            float b = planes[i * 4 + 1];
+            float c = planes[i * 4 + 2];
+            float d = planes[i * 4 + 3];
+
+            // Test the corner of the box which lies furthest along the plane normal
+            float x = (a > 0.0f) ? bounds.getMaxX() : bounds.getMinX();
+            float y = (b > 0.0f) ? bounds.getMaxY() : bounds.getMinY();
+            float z = (c > 0.0f) ? bounds.getMaxZ() : bounds.getMinZ();
+            if(a * x + b * y + c * z + d < 0.0f) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
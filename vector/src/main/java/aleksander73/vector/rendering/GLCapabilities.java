@@ -0,0 +1,150 @@
+package aleksander73.vector.rendering;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.os.Build;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import aleksander73.vector.rendering.backend.RenderBackend;
+
+public class GLCapabilities {
+    private static final int GL_MAX_TEXTURE_MAX_ANISOTROPY_EXT = 0x84FF;
+
+    private static int majorVersion = 2;
+    private static int minorVersion = 0;
+    private static Set<String> extensions = new HashSet<>();
+    private static int maxTextureSize = 2048;
+    private static float maxAnisotropy = 1.0f;
+    private static int programBinaryFormats = 0;
+    private static boolean gles3Bindings = false;
+
+    /**
+     * Must be called on the OpenGL thread once the context has been created.
+     */
+    public static void initialize() {
+        RenderBackend gl = RenderingSystem.getBackend();
+        gles3Bindings = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+        String version = gl.glGetString(GLES20.GL_VERSION);
+        majorVersion = 2;
+        minorVersion = 0;
+        if(version != null) {
+            // Format: "OpenGL ES <major>.<minor> <vendor-specific information>"
+            String[] parts = version.split(" ");
+            if(parts.length > 2) {
+                String[] numbers = parts[2].split("\\.");
+                try {
+                    majorVersion = Integer.parseInt(numbers[0]);
+                    minorVersion = (numbers.length > 1) ? Integer.parseInt(numbers[1].replaceAll("[^0-9]", "")) : 0;
+                } catch(NumberFormatException e) {
+                    Log.d("game_engine", "error: Could not parse the OpenGL ES version \"" + version + "\"");
+                }
+            }
+        }
+
+        String extensionString = gl.glGetString(GLES20.GL_EXTENSIONS);
+        extensions = (extensionString != null) ? new HashSet<>(Arrays.asList(extensionString.trim().split(" +"))) : new HashSet<String>();
+
+        int[] values = new int[1];
+        gl.glGetIntegerv(GLES20.GL_MAX_TEXTURE_SIZE, values, 0);
+        maxTextureSize = (values[0] > 0) ? values[0] : 2048;
+
+        float[] anisotropy = new float[1];
+        if(hasExtension("GL_EXT_texture_filter_anisotropic")) {
+            gl.glGetFloatv(GL_MAX_TEXTURE_MAX_ANISOTROPY_EXT, anisotropy, 0);
+        }
+        maxAnisotropy = Math.max(1.0f, anisotropy[0]);
+
+        values[0] = 0;
+        if(isGLES3()) {
+            gl.glGetIntegerv(GLES30.GL_NUM_PROGRAM_BINARY_FORMATS, values, 0);
+        }
+        programBinaryFormats = values[0];
+
+        Log.d("game_engine", "OpenGL ES " + majorVersion + "." + minorVersion + " context (" + extensions.size() + " extensions)");
+    }
+
+    /**
+     * Sets the capabilities without querying a context or the Android framework, e.g. for tests on the JVM with a HeadlessBackend.
+     * Limits that aren't given take their minimum values and program binaries are reported as unsupported.
+     */
+    public static void initialize(int majorVersion, int minorVersion, String... extensions) {
+        GLCapabilities.majorVersion = majorVersion;
+        GLCapabilities.minorVersion = minorVersion;
+        GLCapabilities.extensions = new HashSet<>(Arrays.asList(extensions));
+        maxTextureSize = 2048;
+        maxAnisotropy = 1.0f;
+        programBinaryFormats = 0;
+        gles3Bindings = true;
+    }
+
+    /**
+     * The GLES30 bindings are only available from API level 18 on, regardless of what the driver reports.
+     */
+    public static boolean isGLES3() {
+        return majorVersion >= 3 && gles3Bindings;
+    }
+
+    public static boolean hasExtension(String extension) {
+        return extensions.contains(extension);
+    }
+
+    public static boolean supportsVertexArrayObjects() {
+        return isGLES3();
+    }
+
+    public static boolean supportsUnsignedIntIndices() {
+        return isGLES3() || hasExtension("GL_OES_element_index_uint");
+    }
+
+    public static boolean supportsETC1() {
+        return hasExtension("GL_OES_compressed_ETC1_RGB8_texture");
+    }
+
+    /**
+     * ETC2 and EAC are part of OpenGL ES 3.0.
+     */
+    public static boolean supportsETC2() {
+        return isGLES3();
+    }
+
+    public static boolean supportsASTC() {
+        return hasExtension("GL_KHR_texture_compression_astc_ldr") || hasExtension("GL_OES_texture_compression_astc");
+    }
+
+    /**
+     * OpenGL ES 2.0 only allows mipmaps and repeating wrap modes on power-of-two textures unless the extension is present.
+     */
+    public static boolean supportsNonPowerOfTwoMipmaps() {
+        return isGLES3() || hasExtension("GL_OES_texture_npot");
+    }
+
+    /**
+     * Drivers may support glProgramBinary but no format to save programs in.
+     */
+    public static boolean supportsProgramBinaries() {
+        return isGLES3() && programBinaryFormats > 0;
+    }
+
+    /**
+     * Returns 1 if anisotropic filtering isn't supported.
+     */
+    public static float getMaxAnisotropy() {
+        return maxAnisotropy;
+    }
+
+    public static int getMaxTextureSize() {
+        return maxTextureSize;
+    }
+
+    public static int getMajorVersion() {
+        return majorVersion;
+    }
+
+    public static int getMinorVersion() {
+        return minorVersion;
+    }
+}
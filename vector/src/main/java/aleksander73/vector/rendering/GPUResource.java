@@ -0,0 +1,16 @@
+package aleksander73.vector.rendering;
+
+/**
+ * Object owning OpenGL objects which have to be deleted explicitly.
+ */
+public interface GPUResource {
+    /**
+     * Estimated size of the resource in GPU memory.
+     */
+    long getGPUBytes();
+
+    /**
+     * Deletes the OpenGL objects. Must be called on the OpenGL thread; the resource can't be used afterwards.
+     */
+    void delete();
+}
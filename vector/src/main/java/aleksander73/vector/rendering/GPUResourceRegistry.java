@@ -0,0 +1,111 @@
+package aleksander73.vector.rendering;
+
+import android.util.Log;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import aleksander73.vector.time.Time;
+
+/**
+ * Keeps track of every live Restorable and the context generation its OpenGL objects belong to.
+ * When the context is lost all of them become stale at once. Resources check the generation before they are used,
+ * so whatever the next frame draws is restored first; the rest is restored a few at a time at the end of later frames.
+ * Resources are held weakly, dropping a resource is enough to stop tracking it.
+ */
+public class GPUResourceRegistry {
+    private static final Map<Restorable, Integer> resources = new WeakHashMap<>();
+    private static final List<WeakReference<Restorable>> pending = new ArrayList<>();
+    private static volatile int generation;
+    private static int nextPending;
+    private static int restoredCount;
+    private static long restoreTime;
+
+    public static synchronized void register(Restorable resource) {
+        resources.put(resource, generation);
+    }
+
+    /**
+     * Stops tracking the resource. Returns false if its OpenGL objects belonged to a lost context, they must not be deleted then.
+     */
+    public static synchronized boolean release(Restorable resource) {
+        Integer resourceGeneration = resources.remove(resource);
+        return resourceGeneration == null || resourceGeneration == generation;
+    }
+
+    /**
+     * Called on the OpenGL thread once a new context has replaced a lost one. Every registered resource becomes stale.
+     */
+    public static synchronized void contextLost() {
+        generation++;
+        pending.clear();
+        for(Restorable resource : resources.keySet()) {
+            pending.add(new WeakReference<>(resource));
+        }
+        nextPending = 0;
+        restoredCount = 0;
+        restoreTime = 0L;
+        Log.d("game_engine", "OpenGL context lost, " + pending.size() + " resources to restore");
+    }
+
+    /**
+     * Restores the resource if it is registered and stale. Must be called on the OpenGL thread.
+     */
+    public static void restore(Restorable resource) {
+        synchronized(GPUResourceRegistry.class) {
+            Integer resourceGeneration = resources.get(resource);
+            if(resourceGeneration == null || resourceGeneration == generation) {
+                return;
+            }
+            resources.put(resource, generation);
+        }
+        long start = Time.currentTime();
+        resource.restore();
+        synchronized(GPUResourceRegistry.class) {
+            restoredCount++;
+            restoreTime += Time.currentTime() - start;
+        }
+    }
+
+    /**
+     * Restores stale resources in registration order until the time budget is spent. Must be called on the OpenGL thread.
+     */
+    public static void restorePending(long budget) {
+        long end = Time.currentTime() + budget;
+        while(Time.currentTime() < end) {
+            Restorable resource;
+            synchronized(GPUResourceRegistry.class) {
+                if(nextPending >= pending.size()) {
+                    if(!pending.isEmpty()) {
+                        Log.d("game_engine", "Restored " + restoredCount + " resources in " + restoreTime / 1000000 + " ms");
+                        pending.clear();
+                        nextPending = 0;
+                    }
+                    return;
+                }
+                resource = pending.get(nextPending++).get();
+            }
+            if(resource != null) {
+                GPUResourceRegistry.restore(resource);
+            }
+        }
+    }
+
+    /**
+     * Incremented with every lost context. A resource whose generation differs has to be restored before it is used.
+     */
+    public static int getGeneration() {
+        return generation;
+    }
+
+    public static synchronized int getPendingCount() {
+        return pending.size() - nextPending;
+    }
+
+    public static synchronized int getRegisteredCount() {
+        return resources.size();
+    }
+}
@@ -0,0 +1,102 @@
+package aleksander73.vector.rendering;
+
+import android.opengl.GLES30;
+
+import aleksander73.vector.rendering.backend.RenderBackend;
+
+/**
+ * Measures the time the GPU spends on each frame with GL_EXT_disjoint_timer_query.
+ * Results arrive a few frames late, so the queries are kept in a ring and only read once available, which never stalls.
+ * Frames during which the GPU's timer was disjoint, e.g. because its clock changed, are discarded.
+ * Requires OpenGL ES 3.0 and must only be used on the OpenGL thread.
+ */
+public class GPUTimer {
+    public static final int GL_TIME_ELAPSED_EXT = 0x88BF;
+    public static final int GL_GPU_DISJOINT_EXT = 0x8FBB;
+    private static final int QUERIES = 4;
+
+    private final int[] queries = new int[QUERIES];
+    private final boolean[] pending = new boolean[QUERIES];
+    private final int[] result = new int[1];
+    private int generation = GPUResourceRegistry.getGeneration();
+    private int next;
+    private boolean measuring;
+
+    public static boolean isSupported() {
+        return GLCapabilities.isGLES3() && GLCapabilities.hasExtension("GL_EXT_disjoint_timer_query");
+    }
+
+    /**
+     * Starts measuring the frame, unless all queries still wait for their results.
+     */
+    public void begin() {
+        RenderBackend gl = RenderingSystem.getBackend();
+        if(generation != GPUResourceRegistry.getGeneration()) {
+            // The queries belonged to the lost context
+            generation = GPUResourceRegistry.getGeneration();
+            queries[0] = 0;
+            measuring = false;
+        }
+        if(queries[0] == 0) {
+            gl.glGenQueries(QUERIES, queries, 0);
+            for(int i = 0; i < QUERIES; i++) {
+                pending[i] = false;
+            }
+            next = 0;
+        }
+        if(pending[next]) {
+            return;
+        }
+        gl.glBeginQuery(GL_TIME_ELAPSED_EXT, queries[next]);
+        measuring = true;
+    }
+
+    public void end() {
+        RenderBackend gl = RenderingSystem.getBackend();
+        if(!measuring) {
+            return;
+        }
+        gl.glEndQuery(GL_TIME_ELAPSED_EXT);
+        pending[next] = true;
+        next = (next + 1) % QUERIES;
+        measuring = false;
+    }
+
+    /**
+     * Returns the GPU time of the latest measured frame whose result has arrived since the last call, or -1 if there is none.
+     */
+    public long poll() {
+        RenderBackend gl = RenderingSystem.getBackend();
+        if(queries[0] == 0) {
+            return -1L;
+        }
+        // Reading the flag also resets it
+        gl.glGetIntegerv(GL_GPU_DISJOINT_EXT, result, 0);
+        boolean disjoint = result[0] != 0;
+        long time = -1L;
+        // From the oldest query on, as results arrive in order
+        for(int i = 0; i < QUERIES; i++) {
+            int query = (next + i) % QUERIES;
+            if(!pending[query]) {
+                continue;
+            }
+            gl.glGetQueryObjectuiv(queries[query], GLES30.GL_QUERY_RESULT_AVAILABLE, result, 0);
+            if(result[0] == 0) {
+                break;
+            }
+            gl.glGetQueryObjectuiv(queries[query], GLES30.GL_QUERY_RESULT, result, 0);
+            pending[query] = false;
+            time = result[0] & 0xFFFFFFFFL;
+        }
+        return disjoint ? -1L : time;
+    }
+
+    public void delete() {
+        RenderBackend gl = RenderingSystem.getBackend();
+        if(queries[0] != 0 && generation == GPUResourceRegistry.getGeneration()) {
+            gl.glDeleteQueries(QUERIES, queries, 0);
+        }
+        queries[0] = 0;
+        measuring = false;
+    }
+}
@@ -0,0 +1,227 @@
+package aleksander73.vector.rendering;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import aleksander73.vector.utility.Event;
+
+/**
+ * Keeps the frame rate steady by trading image quality for frame time.
+ * Frame times are averaged over windows of frames. A window over budget moves one level down the ladder,
+ * while moving up requires several consecutive windows in which the next level's cost, estimated from its pixel count,
+ * stays well below that level's budget. A cooldown after every change keeps the governor from oscillating.
+ * A thermal hint limits how high up the ladder it may go.
+ * The cost of a frame is the longest of the game thread's update, the OpenGL thread's CPU time and the GPU time.
+ * The GPU time is measured with GPUTimer where GL_EXT_disjoint_timer_query is available; elsewhere it is unknown
+ * and only the OpenGL thread's time, which includes the stalls of a GPU-bound driver, stands in for it.
+ */
+public class QualityGovernor {
+    public static final List<Level> DEFAULT_LEVELS = Collections.unmodifiableList(Arrays.asList(
+        new Level(1.0f, 60, 0.0f),
+        new Level(0.9f, 60, 0.0f),
+        new Level(0.8f, 60, 0.5f),
+        new Level(0.7f, 60, 1.0f),
+        new Level(0.6f, 60, 1.0f),
+        new Level(0.5f, 60, 2.0f),
+        new Level(0.75f, 30, 1.0f),
+        new Level(0.5f, 30, 2.0f)
+    ));
+
+    private static final int WINDOW_FRAMES = 30;
+    private static final float DOWNGRADE_LOAD = 0.9f;
+    private static final float UPGRADE_LOAD = 0.75f;
+    private static final int UPGRADE_WINDOWS = 4;
+    private static final int COOLDOWN_WINDOWS = 2;
+
+    private final List<Level> levels;
+    private volatile int level;
+    private volatile long updateTime;
+    private volatile long gpuTime;
+    private volatile float thermalHint;
+    private volatile boolean deterministic;
+    private final Event onLevelChanged = new Event();
+
+    private long windowTotal;
+    private int windowFrames;
+    private int fastWindows;
+    private int cooldown;
+
+    public QualityGovernor() {
+        this(DEFAULT_LEVELS);
+    }
+
+    /**
+     * @param levels - ordered from the highest quality to the lowest
+     */
+    public QualityGovernor(List<Level> levels) {
+        this.levels = new ArrayList<>(levels);
+    }
+
+    /**
+     * Called by the game loop with the time the last tick took on the game thread.
+     */
+    public void reportUpdateTime(long nanos) {
+        updateTime = nanos;
+    }
+
+    /**
+     * Called on the OpenGL thread whenever a GPU timer result arrives, which is a few frames after the frame it measured.
+     */
+    public void reportGPUTime(long nanos) {
+        gpuTime = nanos;
+    }
+
+    /**
+     * Called on the OpenGL thread after every frame with the CPU time the OpenGL thread spent on it.
+     */
+    public void reportFrame(long renderNanos) {
+        this.reportFrame(Math.max(updateTime, renderNanos), gpuTime);
+    }
+
+    /**
+     * The slower of the two threads decides the cost of the frame.
+     */
+    public void reportFrame(long cpuNanos, long gpuNanos) {
+        if(deterministic) {
+            return;
+        }
+        windowTotal += Math.max(cpuNanos, gpuNanos);
+        windowFrames++;
+        if(windowFrames == WINDOW_FRAMES) {
+            this.evaluate(windowTotal / windowFrames);
+            windowTotal = 0L;
+            windowFrames = 0;
+        }
+    }
+
+    private void evaluate(long frameTime) {
+        int highest = this.getHighestAllowedLevel();
+        if(level < highest) {
+            this.changeLevel(highest);
+            return;
+        }
+        if(cooldown > 0) {
+            cooldown--;
+            return;
+        }
+
+        Level current = levels.get(level);
+        if(frameTime > current.getFrameBudget() * DOWNGRADE_LOAD && level < levels.size() - 1) {
+            this.changeLevel(level + 1);
+            return;
+        }
+        if(level > highest) {
+            Level better = levels.get(level - 1);
+            float pixelRatio = (better.getRenderScale() * better.getRenderScale()) / (current.getRenderScale() * current.getRenderScale());
+            fastWindows = (frameTime * Math.max(1.0f, pixelRatio) < better.getFrameBudget() * UPGRADE_LOAD) ? fastWindows + 1 : 0;
+            if(fastWindows >= UPGRADE_WINDOWS) {
+                this.changeLevel(level - 1);
+            }
+        }
+    }
+
+    private void changeLevel(int level) {
+        this.level = level;
+        fastWindows = 0;
+        cooldown = COOLDOWN_WINDOWS;
+        onLevelChanged.fire();
+    }
+
+    private int getHighestAllowedLevel() {
+        return Math.round(thermalHint * (levels.size() - 1));
+    }
+
+    public Level getLevel() {
+        return levels.get(level);
+    }
+
+    public int getLevelIndex() {
+        return level;
+    }
+
+    /**
+     * Jumps to a level, e.g. the starting level for a device class or a fixed level in deterministic mode.
+     */
+    public void setLevel(int level) {
+        if(level < 0 || level >= levels.size()) {
+            throw new IndexOutOfBoundsException("level " + level + " of " + levels.size());
+        }
+        this.changeLevel(level);
+    }
+
+    public List<Level> getLevels() {
+        return Collections.unmodifiableList(levels);
+    }
+
+    /**
+     * @param severity - 0 when the device is cool, 1 when it is about to throttle; e.g. derived from PowerManager's thermal status.
+     *                 The governor won't go higher up the ladder than the matching fraction of it.
+     */
+    public void setThermalHint(float severity) {
+        thermalHint = Math.max(0.0f, Math.min(1.0f, severity));
+    }
+
+    public float getThermalHint() {
+        return thermalHint;
+    }
+
+    /**
+     * In deterministic mode frame times are ignored and the level only changes through setLevel(),
+     * so that tests and benchmarks render the same way on every device.
+     */
+    public void setDeterministic(boolean deterministic) {
+        this.deterministic = deterministic;
+    }
+
+    public boolean isDeterministic() {
+        return deterministic;
+    }
+
+    /**
+     * Fired on the thread reporting the frame that caused the change, usually the OpenGL thread.
+     */
+    public Event getOnLevelChanged() {
+        return onLevelChanged;
+    }
+
+    // --------------------------------------------------
+
+    public static class Level {
+        private final float renderScale;
+        private final int frameRateCap;
+        private final float lodBias;
+
+        /**
+         * @param renderScale - fraction of the surface's width and height the scene is rendered at, upscaled afterwards
+         * @param lodBias - for the game's own level of detail selection, higher values prefer coarser detail
+         */
+        public Level(float renderScale, int frameRateCap, float lodBias) {
+            this.renderScale = renderScale;
+            this.frameRateCap = frameRateCap;
+            this.lodBias = lodBias;
+        }
+
+        public float getRenderScale() {
+            return renderScale;
+        }
+
+        public int getFrameRateCap() {
+            return frameRateCap;
+        }
+
+        public float getLodBias() {
+            return lodBias;
+        }
+
+        public long getFrameBudget() {
+            return 1000000000L / frameRateCap;
+        }
+
+        @Override
+        public String toString() {
+            return Math.round(renderScale * 100) + "% at " + frameRateCap + " fps, LOD bias " + lodBias;
+        }
+    }
+}
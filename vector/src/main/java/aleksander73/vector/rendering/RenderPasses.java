@@ -0,0 +1,143 @@
+package aleksander73.vector.rendering;
+
+import android.opengl.GLES20;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import aleksander73.vector.core.Transform;
+import aleksander73.vector.rendering.backend.RenderBackend;
+import aleksander73.vector.rendering.batching.InstanceBatcher;
+import aleksander73.vector.rendering.batching.SpriteBatch;
+import aleksander73.vector.rendering.materials.RenderQueue;
+import aleksander73.vector.rendering.renderers.Renderer;
+import aleksander73.math.linear_algebra.Vector3d;
+
+/**
+ * Sorts the renderers of a frame into their render queues and draws the queues in order:
+ * opaque front-to-back with blending off, the skybox behind everything, transparent back-to-front
+ * without writing depth, and finally the overlay without depth testing.
+ * Queue entries are pooled and reused from frame to frame.
+ */
+public class RenderPasses {
+    private static final Comparator<Entry> FRONT_TO_BACK = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry a, Entry b) {
+            return Float.compare(a.distance, b.distance);
+        }
+    };
+    private static final Comparator<Entry> BACK_TO_FRONT = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry a, Entry b) {
+            return Float.compare(b.distance, a.distance);
+        }
+    };
+
+    private final List<List<Entry>> queues = new ArrayList<>();
+    private final List<Entry> pool = new ArrayList<>();
+
+    public RenderPasses() {
+        for(int i = 0; i < RenderQueue.values().length; i++) {
+            queues.add(new ArrayList<Entry>());
+        }
+    }
+
+    /**
+     * @param beforeOverlay - run between the transparent and the overlay pass, may be null
+     */
+    public void render(List<Renderer> renderers, InstanceBatcher instanceBatcher, SpriteBatch spriteBatch, Runnable beforeOverlay) {
+        RenderBackend gl = RenderingSystem.getBackend();
+        this.sort(renderers);
+
+        gl.glEnable(GLES20.GL_DEPTH_TEST);
+        gl.glDepthMask(true);
+        gl.glDisable(GLES20.GL_BLEND);
+        List<Entry> opaque = this.getQueue(RenderQueue.OPAQUE);
+        for(Entry entry : opaque) {
+            instanceBatcher.add(entry.renderer);
+        }
+        for(Entry entry : opaque) {
+            if(!instanceBatcher.submit(entry.renderer)) {
+                entry.renderer.render();
+            }
+        }
+        instanceBatcher.flush();
+
+        // Drawn at the far plane, so only pixels no opaque object covered pass the depth test
+        gl.glDepthMask(false);
+        for(Entry entry : this.getQueue(RenderQueue.SKYBOX)) {
+            entry.renderer.render();
+        }
+
+        gl.glEnable(GLES20.GL_BLEND);
+        for(Entry entry : this.getQueue(RenderQueue.TRANSPARENT)) {
+            entry.renderer.render();
+        }
+
+        if(beforeOverlay != null) {
+            beforeOverlay.run();
+        }
+        gl.glDisable(GLES20.GL_DEPTH_TEST);
+        for(Entry entry : this.getQueue(RenderQueue.OVERLAY)) {
+            entry.renderer.render();
+        }
+        spriteBatch.flush();
+
+        // glClear only clears depth while writing to it is enabled
+        gl.glEnable(GLES20.GL_DEPTH_TEST);
+        gl.glDepthMask(true);
+        this.clear();
+    }
+
+    private void sort(List<Renderer> renderers) {
+        Vector3d eye = RenderPasses.cameraPosition();
+        for(Renderer renderer : renderers) {
+            RenderQueue queue = renderer.getRenderQueue();
+            Entry entry = pool.isEmpty() ? new Entry() : pool.remove(pool.size() - 1);
+            entry.renderer = renderer;
+            entry.distance = 0.0f;
+            if(eye != null && (queue == RenderQueue.OPAQUE || queue == RenderQueue.TRANSPARENT)) {
+                Vector3d center = renderer.sortingCenter();
+                float dx = center.getX() - eye.getX();
+                float dy = center.getY() - eye.getY();
+                float dz = center.getZ() - eye.getZ();
+                entry.distance = dx * dx + dy * dy + dz * dz;
+            }
+            this.getQueue(queue).add(entry);
+        }
+        Collections.sort(this.getQueue(RenderQueue.OPAQUE), FRONT_TO_BACK);
+        Collections.sort(this.getQueue(RenderQueue.TRANSPARENT), BACK_TO_FRONT);
+    }
+
+    private void clear() {
+        for(List<Entry> queue : queues) {
+            for(Entry entry : queue) {
+                entry.renderer = null;
+                pool.add(entry);
+            }
+            queue.clear();
+        }
+    }
+
+    private List<Entry> getQueue(RenderQueue queue) {
+        return queues.get(queue.ordinal());
+    }
+
+    private static Vector3d cameraPosition() {
+        Camera camera = Camera.getActiveCamera();
+        if(camera == null || camera.getGameObject() == null) {
+            return null;
+        }
+        Transform transform = camera.getGameObject().getComponent(Transform.class);
+        return (transform != null) ? transform.getPosition() : null;
+    }
+
+    // --------------------------------------------------
+
+    private static class Entry {
+        private Renderer renderer;
+        private float distance;
+    }
+}
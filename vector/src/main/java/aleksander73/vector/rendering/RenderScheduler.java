@@ -0,0 +1,181 @@
+package aleksander73.vector.rendering;
+
+import java.util.List;
+
+import aleksander73.vector.animation.Animation;
+import aleksander73.vector.core.GameObject;
+import aleksander73.vector.core.Transform;
+import aleksander73.vector.rendering.materials.Colour;
+import aleksander73.vector.rendering.materials.Material;
+import aleksander73.vector.rendering.mesh.DynamicMesh;
+import aleksander73.vector.rendering.mesh.Mesh;
+import aleksander73.vector.rendering.particles.ParticleEmitter;
+import aleksander73.vector.rendering.renderers.MeshRenderer;
+import aleksander73.vector.rendering.renderers.Renderer;
+import aleksander73.vector.rendering.shaders.ShaderCompiler;
+import aleksander73.vector.scene.Scene;
+import aleksander73.vector.time.Time;
+
+/**
+ * Decides on every game tick whether a new frame has to be rendered.
+ * In continuous mode every tick is rendered. In on-demand mode a frame is only rendered if the scene changed since
+ * the last one: a transform, material, colour or active flag, an update of a DynamicMesh, the set of game objects,
+ * the camera, or an animation is playing or a particle emitter is alive. Frames also keep coming while shaders wait to be compiled, as compiling happens at the start
+ * of frames and renderers using an uncompiled shader are skipped until then.
+ * In both modes an optional frame rate cap drops ticks that come too soon after the last frame.
+ * Apart from forceRefresh(), must only be used on the game thread.
+ */
+public class RenderScheduler {
+    private static final long FRAME_SLACK = 4000000L;
+
+    private boolean onDemand = false;
+    private long minRefreshInterval = 0L;
+    private long frameInterval = 0L;
+    private volatile boolean refreshForced = true;
+    private long lastFingerprint;
+    private long lastRenderTime;
+    private int renderedFrames;
+    private int skippedFrames;
+
+    /**
+     * Returns whether the tick should be rendered and if so, remembers the state of the scene.
+     */
+    public boolean shouldRender(Scene scene) {
+        long now = Time.currentTime();
+        if(frameInterval > 0L && now - lastRenderTime < frameInterval - FRAME_SLACK) {
+            skippedFrames++;
+            return false;
+        }
+        if(!onDemand) {
+            lastRenderTime = now;
+            renderedFrames++;
+            return true;
+        }
+        if(!refreshForced && now - lastRenderTime < minRefreshInterval) {
+            // Changes made in the meantime are still picked up once the interval has passed
+            skippedFrames++;
+            return false;
+        }
+        long fingerprint = RenderScheduler.fingerprint(scene);
+        if(!refreshForced && fingerprint == lastFingerprint && !RenderScheduler.isAnimating(scene) && ShaderCompiler.getPendingCount() == 0) {
+            skippedFrames++;
+            return false;
+        }
+        refreshForced = false;
+        lastFingerprint = fingerprint;
+        lastRenderTime = now;
+        renderedFrames++;
+        return true;
+    }
+
+    /**
+     * Renders the next tick even if nothing changed, e.g. after modifying state the scheduler doesn't track.
+     */
+    public void forceRefresh() {
+        refreshForced = true;
+    }
+
+    private static long fingerprint(Scene scene) {
+        long hash = System.identityHashCode(scene);
+        List<GameObject> gameObjects = scene.getGameObjects();
+        for(int i = 0; i < gameObjects.size(); i++) {
+            GameObject gameObject = gameObjects.get(i);
+            hash = 31 * hash + System.identityHashCode(gameObject);
+            if(!gameObject.isActive()) {
+                continue;
+            }
+            Transform transform = gameObject.getComponent(Transform.class);
+            Material material = gameObject.getComponent(Material.class);
+            hash = 31 * hash + ((transform != null) ? transform.getVersion() : 0);
+            hash = 31 * hash + ((material != null) ? material.getVersion() : 0);
+            if(material != null) {
+                // Colours are mutable, so their setters don't change the material's version
+                Colour colour = material.getColour();
+                hash = 31 * hash + ((colour.getRed() << 24) | (colour.getGreen() << 16) | (colour.getBlue() << 8) | colour.getAlpha());
+            }
+            for(Renderer renderer : gameObject.getComponents(Renderer.class)) {
+                hash = 31 * hash + (renderer.isActive() ? 1 : 2);
+                if(renderer instanceof MeshRenderer) {
+                    hash = 31 * hash + RenderScheduler.meshVersion(((MeshRenderer)renderer).getMesh());
+                }
+            }
+            hash = 31 * hash + RenderScheduler.meshVersion(gameObject.getComponent(Mesh.class));
+        }
+
+        Camera camera = Camera.getActiveCamera();
+        if(camera != null) {
+            hash = 31 * hash + System.identityHashCode(camera);
+            hash = 31 * hash + Float.floatToIntBits(camera.getWidth());
+            hash = 31 * hash + Float.floatToIntBits(camera.getHeight());
+            hash = 31 * hash + Float.floatToIntBits(camera.getFov());
+            Transform transform = (camera.getGameObject() != null) ? camera.getGameObject().getComponent(Transform.class) : null;
+            hash = 31 * hash + ((transform != null) ? transform.getVersion() : 0);
+        }
+        return hash;
+    }
+
+    private static int meshVersion(Mesh mesh) {
+        return (mesh instanceof DynamicMesh) ? ((DynamicMesh)mesh).getVersion() : 0;
+    }
+
+    private static boolean isAnimating(Scene scene) {
+        List<GameObject> gameObjects = scene.getGameObjects();
+        for(int i = 0; i < gameObjects.size(); i++) {
+            GameObject gameObject = gameObjects.get(i);
+            if(!gameObject.isActive()) {
+                continue;
+            }
+            for(Animation animation : gameObject.getComponents(Animation.class)) {
+                if(animation.isPlaying()) {
+                    return true;
+                }
+            }
+            for(ParticleEmitter emitter : gameObject.getComponents(ParticleEmitter.class)) {
+                if(emitter.isActive() && emitter.isAlive()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public boolean isOnDemand() {
+        return onDemand;
+    }
+
+    public void setOnDemand(boolean onDemand) {
+        this.onDemand = onDemand;
+        refreshForced = true;
+    }
+
+    public float getMinRefreshInterval() {
+        return minRefreshInterval / 1000000000.0f;
+    }
+
+    /**
+     * @param seconds - the shortest time between two on-demand frames, 0 to render every tick the scene changed
+     */
+    public void setMinRefreshInterval(float seconds) {
+        minRefreshInterval = (long)(seconds * 1000000000L);
+    }
+
+    public int getFrameRateCap() {
+        return (frameInterval > 0L) ? (int)(1000000000L / frameInterval) : 0;
+    }
+
+    /**
+     * Limits frames to the given rate in both modes; the game loop keeps ticking at its own rate.
+     * @param fps - 0 for no limit besides the game loop's tick rate
+     */
+    public void setFrameRateCap(int fps) {
+        frameInterval = (fps > 0) ? 1000000000L / fps : 0L;
+    }
+
+    public int getRenderedFrames() {
+        return renderedFrames;
+    }
+
+    public int getSkippedFrames() {
+        return skippedFrames;
+    }
+}
@@ -0,0 +1,217 @@
+package aleksander73.vector.rendering;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Per-frame counters of the work submitted to OpenGL ES, kept for the last few frames.
+ * The counters are filled in by a StatisticsBackend on the OpenGL thread and can be read from any thread.
+ */
+public class RenderStatistics {
+    public static final int DEFAULT_FRAME_COUNT = 120;
+
+    private final Frame[] frames;
+    private int next;
+    private int recorded;
+
+    // OpenGL thread only
+    private final Frame current = new Frame();
+    private long frameStart;
+    private int currentProgram;
+
+    public RenderStatistics(int frameCount) {
+        frames = new Frame[Math.max(1, frameCount)];
+        for(int i = 0; i < frames.length; i++) {
+            frames[i] = new Frame();
+        }
+    }
+
+    public void beginFrame() {
+        current.clear();
+        frameStart = System.nanoTime();
+    }
+
+    public void endFrame() {
+        current.frameTime = System.nanoTime() - frameStart;
+        synchronized(this) {
+            frames[next].set(current);
+            next = (next + 1) % frames.length;
+            recorded = Math.min(recorded + 1, frames.length);
+        }
+    }
+
+    public void drawCall(int triangles) {
+        current.drawCalls++;
+        current.triangles += triangles;
+    }
+
+    /**
+     * Only counts programs that differ from the one in use.
+     */
+    public void useProgram(int program) {
+        if(program != currentProgram) {
+            current.programSwitches++;
+            currentProgram = program;
+        }
+    }
+
+    public void textureBind() {
+        current.textureBinds++;
+    }
+
+    public void bufferBind() {
+        current.bufferBinds++;
+    }
+
+    public void uniformUpload() {
+        current.uniformUploads++;
+    }
+
+    public void upload(long bytes) {
+        current.bytesUploaded += bytes;
+    }
+
+    /**
+     * Returns a copy of a recorded frame, 0 being the last completed one, or null if it hasn't been recorded.
+     */
+    public synchronized Frame getFrame(int age) {
+        if(age < 0 || age >= recorded) {
+            return null;
+        }
+        Frame frame = new Frame();
+        frame.set(frames[(next - 1 - age + frames.length) % frames.length]);
+        return frame;
+    }
+
+    /**
+     * Returns copies of the recorded frames, oldest first.
+     */
+    public synchronized List<Frame> getFrames() {
+        List<Frame> result = new ArrayList<>(recorded);
+        for(int age = recorded - 1; age >= 0; age--) {
+            result.add(this.getFrame(age));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the mean of the recorded frames.
+     */
+    public synchronized Frame average() {
+        Frame sum = new Frame();
+        for(int age = 0; age < recorded; age++) {
+            sum.add(frames[(next - 1 - age + frames.length) % frames.length]);
+        }
+        if(recorded > 0) {
+            sum.divide(recorded);
+        }
+        return sum;
+    }
+
+    public synchronized int getRecordedFrames() {
+        return recorded;
+    }
+
+    public int getCapacity() {
+        return frames.length;
+    }
+
+    @Override
+    public String toString() {
+        Frame average = this.average();
+        return "Render statistics over " + this.getRecordedFrames() + " frames: " + average;
+    }
+
+    // --------------------------------------------------
+
+    public static class Frame {
+        private int drawCalls;
+        private long triangles;
+        private int programSwitches;
+        private int textureBinds;
+        private int bufferBinds;
+        private int uniformUploads;
+        private long bytesUploaded;
+        private long frameTime;
+
+        private void clear() {
+            drawCalls = 0;
+            triangles = 0;
+            programSwitches = 0;
+            textureBinds = 0;
+            bufferBinds = 0;
+            uniformUploads = 0;
+            bytesUploaded = 0;
+            frameTime = 0;
+        }
+
+        private void set(Frame frame) {
+            this.clear();
+            this.add(frame);
+        }
+
+        private void add(Frame frame) {
+            drawCalls += frame.drawCalls;
+            triangles += frame.triangles;
+            programSwitches += frame.programSwitches;
+            textureBinds += frame.textureBinds;
+            bufferBinds += frame.bufferBinds;
+            uniformUploads += frame.uniformUploads;
+            bytesUploaded += frame.bytesUploaded;
+            frameTime += frame.frameTime;
+        }
+
+        private void divide(int n) {
+            drawCalls /= n;
+            triangles /= n;
+            programSwitches /= n;
+            textureBinds /= n;
+            bufferBinds /= n;
+            uniformUploads /= n;
+            bytesUploaded /= n;
+            frameTime /= n;
+        }
+
+        public int getDrawCalls() {
+            return drawCalls;
+        }
+
+        public long getTriangles() {
+            return triangles;
+        }
+
+        public int getProgramSwitches() {
+            return programSwitches;
+        }
+
+        public int getTextureBinds() {
+            return textureBinds;
+        }
+
+        public int getBufferBinds() {
+            return bufferBinds;
+        }
+
+        public int getUniformUploads() {
+            return uniformUploads;
+        }
+
+        public long getBytesUploaded() {
+            return bytesUploaded;
+        }
+
+        /**
+         * Time spent on the OpenGL thread between beginFrame() and endFrame(), in nanoseconds.
+         */
+        public long getFrameTime() {
+            return frameTime;
+        }
+
+        @Override
+        public String toString() {
+            return drawCalls + " draw calls, " + triangles + " triangles, " + programSwitches + " program switches, "
+                    + textureBinds + " texture binds, " + bufferBinds + " buffer binds, " + uniformUploads + " uniform uploads, "
+                    + bytesUploaded + " bytes uploaded, " + (frameTime / 1000) + " us";
+        }
+    }
+}
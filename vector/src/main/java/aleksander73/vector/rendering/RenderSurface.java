@@ -0,0 +1,29 @@
+package aleksander73.vector.rendering;
+
+import android.view.View;
+
+/**
+ * The view frames are presented on, owning the OpenGL thread.
+ */
+public interface RenderSurface {
+    void setRenderingSystem(RenderingSystem renderingSystem);
+
+    /**
+     * Asks for a frame to be drawn with RenderingSystem.drawFrame(). Requests made before the frame starts are merged.
+     */
+    void requestRender();
+
+    /**
+     * Runs the runnable on the OpenGL thread before the next frame.
+     */
+    void queueEvent(Runnable runnable);
+
+    void setOnTouchListener(View.OnTouchListener listener);
+
+    /**
+     * Ends the OpenGL thread and destroys the context once the game is shut down. The surface can't be used afterwards.
+     */
+    void release();
+
+    View getView();
+}
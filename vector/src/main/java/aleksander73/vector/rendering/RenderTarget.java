@@ -0,0 +1,123 @@
+package aleksander73.vector.rendering;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+import aleksander73.vector.rendering.backend.RenderBackend;
+import aleksander73.vector.rendering.materials.Texture;
+
+/**
+ * An offscreen framebuffer with a colour texture and a depth renderbuffer.
+ * Must only be used on the OpenGL thread.
+ */
+public class RenderTarget implements GPUResource, Restorable {
+    private final int width;
+    private final int height;
+    private int framebuffer;
+    private int depthbuffer;
+    private final Texture texture;
+    private int generation = GPUResourceRegistry.getGeneration();
+
+    public RenderTarget(int width, int height) {
+        this.width = width;
+        this.height = height;
+        // Framebuffer rows start at the bottom, images at the top
+        texture = new Texture(this.createColourTexture(), 0.0f, 1.0f, 1.0f, -1.0f);
+        texture.setSource(new Texture.Source() {
+            @Override
+            public int create() {
+                return RenderTarget.this.createColourTexture();
+            }
+        });
+        this.createFramebuffer();
+        GPUResourceRegistry.register(this);
+    }
+
+    private int createColourTexture() {
+        RenderBackend gl = RenderingSystem.getBackend();
+        int[] names = new int[1];
+        gl.glGenTextures(1, names, 0);
+        gl.glBindTexture(GLES20.GL_TEXTURE_2D, names[0]);
+        gl.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, width, height, 0, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null);
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        gl.glBindTexture(GLES20.GL_TEXTURE_2D, 0);
+        return names[0];
+    }
+
+    private void createFramebuffer() {
+        RenderBackend gl = RenderingSystem.getBackend();
+        int[] names = new int[1];
+        gl.glGenRenderbuffers(1, names, 0);
+        depthbuffer = names[0];
+        gl.glBindRenderbuffer(GLES20.GL_RENDERBUFFER, depthbuffer);
+        gl.glRenderbufferStorage(GLES20.GL_RENDERBUFFER, GLES20.GL_DEPTH_COMPONENT16, width, height);
+        gl.glBindRenderbuffer(GLES20.GL_RENDERBUFFER, 0);
+
+        gl.glGenFramebuffers(1, names, 0);
+        framebuffer = names[0];
+        gl.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffer);
+        gl.glFramebufferTexture2D(GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0, GLES20.GL_TEXTURE_2D, texture.getId(), 0);
+        gl.glFramebufferRenderbuffer(GLES20.GL_FRAMEBUFFER, GLES20.GL_DEPTH_ATTACHMENT, GLES20.GL_RENDERBUFFER, depthbuffer);
+        int status = gl.glCheckFramebufferStatus(GLES20.GL_FRAMEBUFFER);
+        if(status != GLES20.GL_FRAMEBUFFER_COMPLETE) {
+            Log.d("game_engine", "error: Incomplete framebuffer " + width + "x" + height + " (status 0x" + Integer.toHexString(status) + ")");
+        }
+        gl.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+    }
+
+    /**
+     * Re-creates the framebuffer after a context loss; the colour texture restores itself when it is attached. The contents are lost.
+     */
+    @Override
+    public void restore() {
+        this.createFramebuffer();
+    }
+
+    /**
+     * Directs rendering into the target and sets the viewport to its size.
+     */
+    public void bind() {
+        RenderBackend gl = RenderingSystem.getBackend();
+        if(generation != GPUResourceRegistry.getGeneration()) {
+            generation = GPUResourceRegistry.getGeneration();
+            GPUResourceRegistry.restore(this);
+        }
+        gl.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, framebuffer);
+        gl.glViewport(0, 0, width, height);
+    }
+
+    @Override
+    public void delete() {
+        RenderBackend gl = RenderingSystem.getBackend();
+        if(!GPUResourceRegistry.release(this)) {
+            texture.delete();
+            return;
+        }
+        gl.glDeleteFramebuffers(1, new int[] { framebuffer }, 0);
+        gl.glDeleteRenderbuffers(1, new int[] { depthbuffer }, 0);
+        texture.delete();
+    }
+
+    @Override
+    public long getGPUBytes() {
+        return (long)width * height * (4 + 2);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * The colour attachment, with its region flipped so that it is drawn upright by the GUI shader.
+     */
+    public Texture getTexture() {
+        return texture;
+    }
+}
@@ -0,0 +1,368 @@
+package aleksander73.vector.rendering;
+
+import android.opengl.EGL14;
+import android.opengl.EGLConfig;
+import android.opengl.EGLContext;
+import android.opengl.EGLDisplay;
+import android.opengl.EGLSurface;
+import android.opengl.GLES30;
+import android.util.Log;
+import android.view.Surface;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import aleksander73.vector.rendering.backend.RenderBackend;
+
+/**
+ * The OpenGL thread of an EGLSurfaceView. It owns the EGL context and window surface and draws a frame whenever one is requested.
+ * At most getFramesInFlight() frames are queued on the GPU: before a frame is drawn the thread waits for the fence
+ * of the frame that many frames back, so the CPU never runs ahead and overwrites buffers the GPU still reads.
+ * OpenGL ES 2.0 contexts have no fences; there a single frame in flight is enforced with glFinish and more are left to the driver.
+ * The context survives the window surface being destroyed, so the app can go to the background without reloading resources.
+ */
+public class RenderThread extends Thread {
+    public static final int MAX_FRAMES_IN_FLIGHT = 3;
+    private static final int EGL_OPENGL_ES3_BIT_KHR = 0x40;
+    private static final long FENCE_TIMEOUT = 100000000L;
+
+    private final RenderingSystem renderingSystem;
+    private final Object lock = new Object();
+    private final List<Runnable> events = new ArrayList<>();
+    private final List<Runnable> runningEvents = new ArrayList<>();
+    private Surface window;
+    private Surface pendingSurface;
+    private boolean releaseRequested;
+    private boolean resized;
+    private int width;
+    private int height;
+    private boolean frameRequested;
+    private boolean exiting;
+    private int requestedFrames;
+    private int renderedFrames;
+
+    private volatile int framesInFlight = 2;
+    private volatile int swapInterval = 1;
+    private int appliedSwapInterval = -1;
+
+    private EGLDisplay display = EGL14.EGL_NO_DISPLAY;
+    private EGLConfig config;
+    private EGLContext context = EGL14.EGL_NO_CONTEXT;
+    private EGLSurface surface = EGL14.EGL_NO_SURFACE;
+    private boolean contextInitialized;
+    private final long[] fences = new long[MAX_FRAMES_IN_FLIGHT];
+    private int oldestFence;
+    private int fenceCount;
+
+    public RenderThread(RenderingSystem renderingSystem) {
+        super("render_thread");
+        this.renderingSystem = renderingSystem;
+    }
+
+    @Override
+    public void run() {
+        try {
+            this.loop();
+        } catch(InterruptedException e) {
+            Log.d("game_engine", "error: Render thread interrupted");
+        } finally {
+            this.releaseSurface();
+            this.releaseContext();
+        }
+    }
+
+    private void loop() throws InterruptedException {
+        while(true) {
+            Surface newSurface = null;
+            boolean resize;
+            boolean draw;
+            int frameWidth;
+            int frameHeight;
+            synchronized(lock) {
+                while(true) {
+                    if(exiting) {
+                        return;
+                    }
+                    if(releaseRequested) {
+                        this.releaseSurface();
+                        releaseRequested = false;
+                        lock.notifyAll();
+                        continue;
+                    }
+                    if(pendingSurface != null) {
+                        newSurface = pendingSurface;
+                        pendingSurface = null;
+                        break;
+                    }
+                    if(surface != EGL14.EGL_NO_SURFACE && (!events.isEmpty() || resized || frameRequested)) {
+                        break;
+                    }
+                    lock.wait();
+                }
+                runningEvents.addAll(events);
+                events.clear();
+                resize = resized;
+                resized = false;
+                frameWidth = width;
+                frameHeight = height;
+                draw = frameRequested;
+                frameRequested = false;
+            }
+
+            if(newSurface != null) {
+                this.createSurface(newSurface);
+                continue;
+            }
+            for(Runnable event : runningEvents) {
+                event.run();
+            }
+            runningEvents.clear();
+            if(resize) {
+                renderingSystem.setViewport(frameWidth, frameHeight);
+                draw = true;
+            }
+            if(draw) {
+                this.drawFrame();
+            }
+        }
+    }
+
+    private void drawFrame() {
+        RenderBackend gl = RenderingSystem.getBackend();
+        if(appliedSwapInterval != swapInterval) {
+            appliedSwapInterval = swapInterval;
+            EGL14.eglSwapInterval(display, appliedSwapInterval);
+        }
+        boolean fenced = GLCapabilities.isGLES3();
+        while(fenced && fenceCount >= framesInFlight) {
+            this.waitForOldestFence();
+        }
+
+        long inputTime = renderingSystem.drawFrame();
+        if(fenced) {
+            fences[(oldestFence + fenceCount) % MAX_FRAMES_IN_FLIGHT] = gl.glFenceSync(GLES30.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+            fenceCount++;
+        }
+        if(!EGL14.eglSwapBuffers(display, surface)) {
+            int error = EGL14.eglGetError();
+            Log.d("game_engine", "error: eglSwapBuffers failed (0x" + Integer.toHexString(error) + ")");
+            if(error == EGL14.EGL_CONTEXT_LOST) {
+                // Start over with a new context on the same window
+                this.releaseSurface();
+                this.releaseContext();
+                synchronized(lock) {
+                    if(pendingSurface == null) {
+                        pendingSurface = window;
+                    }
+                }
+            }
+            return;
+        }
+        if(!fenced && framesInFlight == 1) {
+            gl.glFinish();
+        }
+        renderingSystem.framePresented(inputTime);
+        synchronized(lock) {
+            renderedFrames++;
+        }
+    }
+
+    private void waitForOldestFence() {
+        RenderBackend gl = RenderingSystem.getBackend();
+        long fence = fences[oldestFence];
+        int result = gl.glClientWaitSync(fence, GLES30.GL_SYNC_FLUSH_COMMANDS_BIT, FENCE_TIMEOUT);
+        if(result == GLES30.GL_TIMEOUT_EXPIRED) {
+            // Keep waiting: moving on would let the CPU overwrite a buffer the GPU still reads
+            return;
+        }
+        gl.glDeleteSync(fence);
+        oldestFence = (oldestFence + 1) % MAX_FRAMES_IN_FLIGHT;
+        fenceCount--;
+    }
+
+    private void createSurface(Surface window) {
+        this.window = window;
+        if(context == EGL14.EGL_NO_CONTEXT && !this.createContext()) {
+            return;
+        }
+        surface = EGL14.eglCreateWindowSurface(display, config, window, new int[] { EGL14.EGL_NONE }, 0);
+        if(surface == null || surface == EGL14.EGL_NO_SURFACE) {
+            Log.d("game_engine", "error: eglCreateWindowSurface failed (0x" + Integer.toHexString(EGL14.eglGetError()) + ")");
+            surface = EGL14.EGL_NO_SURFACE;
+            return;
+        }
+        EGL14.eglMakeCurrent(display, surface, surface, context);
+        appliedSwapInterval = -1;
+        if(!contextInitialized) {
+            renderingSystem.initialize();
+            contextInitialized = true;
+        }
+    }
+
+    /**
+     * Creates an OpenGL ES 3.0 context and falls back to OpenGL ES 2.0 if the device doesn't support it.
+     */
+    private boolean createContext() {
+        display = EGL14.eglGetDisplay(EGL14.EGL_DEFAULT_DISPLAY);
+        int[] version = new int[2];
+        if(!EGL14.eglInitialize(display, version, 0, version, 1)) {
+            Log.d("game_engine", "error: eglInitialize failed (0x" + Integer.toHexString(EGL14.eglGetError()) + ")");
+            display = EGL14.EGL_NO_DISPLAY;
+            return false;
+        }
+        for(int clientVersion = 3; clientVersion >= 2; clientVersion--) {
+            config = this.chooseConfig(clientVersion == 3 ? EGL_OPENGL_ES3_BIT_KHR : EGL14.EGL_OPENGL_ES2_BIT);
+            if(config == null) {
+                continue;
+            }
+            int[] attributes = new int[] { EGL14.EGL_CONTEXT_CLIENT_VERSION, clientVersion, EGL14.EGL_NONE };
+            context = EGL14.eglCreateContext(display, config, EGL14.EGL_NO_CONTEXT, attributes, 0);
+            if(context != null && context != EGL14.EGL_NO_CONTEXT) {
+                contextInitialized = false;
+                fenceCount = 0;
+                return true;
+            }
+        }
+        Log.d("game_engine", "error: Could not create an OpenGL ES context (0x" + Integer.toHexString(EGL14.eglGetError()) + ")");
+        context = EGL14.EGL_NO_CONTEXT;
+        return false;
+    }
+
+    private EGLConfig chooseConfig(int renderableType) {
+        int[] attributes = new int[] {
+            EGL14.EGL_RED_SIZE, 8,
+            EGL14.EGL_GREEN_SIZE, 8,
+            EGL14.EGL_BLUE_SIZE, 8,
+            EGL14.EGL_DEPTH_SIZE, 16,
+            EGL14.EGL_RENDERABLE_TYPE, renderableType,
+            EGL14.EGL_SURFACE_TYPE, EGL14.EGL_WINDOW_BIT,
+            EGL14.EGL_NONE
+        };
+        EGLConfig[] configs = new EGLConfig[1];
+        int[] count = new int[1];
+        if(!EGL14.eglChooseConfig(display, attributes, 0, configs, 0, configs.length, count, 0) || count[0] == 0) {
+            return null;
+        }
+        return configs[0];
+    }
+
+    private void releaseSurface() {
+        if(surface != EGL14.EGL_NO_SURFACE) {
+            EGL14.eglMakeCurrent(display, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_SURFACE, EGL14.EGL_NO_CONTEXT);
+            EGL14.eglDestroySurface(display, surface);
+            surface = EGL14.EGL_NO_SURFACE;
+        }
+    }
+
+    private void releaseContext() {
+        if(context != EGL14.EGL_NO_CONTEXT) {
+            EGL14.eglDestroyContext(display, context);
+            context = EGL14.EGL_NO_CONTEXT;
+        }
+        if(display != EGL14.EGL_NO_DISPLAY) {
+            EGL14.eglTerminate(display);
+            display = EGL14.EGL_NO_DISPLAY;
+        }
+        EGL14.eglReleaseThread();
+        fenceCount = 0;
+    }
+
+    // --------------------------------------------------
+
+    public void setSurface(Surface window) {
+        synchronized(lock) {
+            pendingSurface = window;
+            lock.notifyAll();
+        }
+    }
+
+    public void setSize(int width, int height) {
+        synchronized(lock) {
+            this.width = width;
+            this.height = height;
+            resized = true;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Destroys the window surface and waits until it is released, as Android requires before surfaceDestroyed returns.
+     */
+    public void releaseSurfaceAndWait() {
+        synchronized(lock) {
+            pendingSurface = null;
+            releaseRequested = true;
+            lock.notifyAll();
+            while(releaseRequested && this.isAlive()) {
+                try {
+                    lock.wait();
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    public void requestRender() {
+        synchronized(lock) {
+            frameRequested = true;
+            requestedFrames++;
+            lock.notifyAll();
+        }
+    }
+
+    public void queueEvent(Runnable runnable) {
+        synchronized(lock) {
+            events.add(runnable);
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Releases the context and ends the thread once the current frame is done.
+     */
+    public void quit() {
+        synchronized(lock) {
+            exiting = true;
+            lock.notifyAll();
+        }
+    }
+
+    public int getFramesInFlight() {
+        return framesInFlight;
+    }
+
+    /**
+     * @param framesInFlight - 1 to 3; fewer frames lower the latency, more smooth out uneven frame times
+     */
+    public void setFramesInFlight(int framesInFlight) {
+        this.framesInFlight = Math.max(1, Math.min(MAX_FRAMES_IN_FLIGHT, framesInFlight));
+    }
+
+    public int getSwapInterval() {
+        return swapInterval;
+    }
+
+    /**
+     * @param swapInterval - vertical blanks per presented frame, e.g. 2 to present at 30 fps on a 60 Hz display; 0 doesn't wait for vsync
+     */
+    public void setSwapInterval(int swapInterval) {
+        this.swapInterval = Math.max(0, swapInterval);
+    }
+
+    /**
+     * Requests merged into a frame that was already requested, i.e. simulation ticks that were never presented.
+     */
+    public int getDroppedFrames() {
+        synchronized(lock) {
+            return Math.max(0, requestedFrames - renderedFrames);
+        }
+    }
+
+    public int getRenderedFrames() {
+        synchronized(lock) {
+            return renderedFrames;
+        }
+    }
+}
@@ -1,32 +1,117 @@
 package aleksander73.vector.rendering;
 
 import android.opengl.GLES20;
+import android.util.Log;
 
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import aleksander73.vector.core.Game;
 import aleksander73.vector.core.GameEngine;
 import aleksander73.vector.core.System;
+import aleksander73.vector.rendering.backend.GLESBackend;
+import aleksander73.vector.rendering.backend.RenderBackend;
+import aleksander73.vector.rendering.backend.StatisticsBackend;
+import aleksander73.vector.rendering.batching.InstanceBatcher;
+import aleksander73.vector.rendering.batching.ParticleBatch;
+import aleksander73.vector.rendering.batching.SpriteBatch;
+import aleksander73.vector.rendering.culling.OcclusionCuller;
+import aleksander73.vector.rendering.renderers.Renderer;
+import aleksander73.vector.rendering.shaders.ShaderCompiler;
+import aleksander73.vector.scene.Scene;
+import aleksander73.vector.time.Time;
 
 public class RenderingSystem extends System {
-    private final SurfaceView surfaceView;
+    private static final long RESTORE_BUDGET = 2000000L;
+    private static volatile RenderBackend backend = new GLESBackend();
+    private static final BufferPool bufferPool = new BufferPool(BufferPool.DEFAULT_RETAINED_BYTES);
+
+    private final RenderSurface surface;
+    private final FrameAllocator frameAllocator = new FrameAllocator(bufferPool, FrameAllocator.DEFAULT_CAPACITY);
+    private final SpriteBatch spriteBatch = new SpriteBatch(frameAllocator);
+    private final InstanceBatcher instanceBatcher = new InstanceBatcher(frameAllocator);
+    private final ParticleBatch particleBatch = new ParticleBatch(frameAllocator);
+    private final RenderStatistics statistics = new RenderStatistics(RenderStatistics.DEFAULT_FRAME_COUNT);
+    private volatile StatisticsOverlay statisticsOverlay;
+    private final RenderPasses renderPasses = new RenderPasses();
+    private final RenderScheduler renderScheduler = new RenderScheduler();
+    private volatile QualityGovernor qualityGovernor;
+    private final GPUTimer gpuTimer = new GPUTimer();
+    private volatile ResolutionScaler resolutionScaler;
+    private volatile OcclusionCuller occlusionCuller;
+    private final AtomicLong pendingInputTime = new AtomicLong();
+    private final FrameLatency inputLatency = new FrameLatency(60);
+    private int surfaceWidth;
+    private int surfaceHeight;
+    private long frameStart;
+    private long contextLostTime;
+    private final Runnable resolve = new Runnable() {
+        @Override
+        public void run() {
+            ResolutionScaler scaler = resolutionScaler;
+            if(scaler != null) {
+                scaler.resolve(surfaceWidth, surfaceHeight);
+            }
+        }
+    };
 
-    public RenderingSystem(GameEngine gameEngine, SurfaceView surfaceView) {
+    /**
+     * @param surface - null to render without a surface, e.g. with a HeadlessBackend; OpenGL work then runs on the calling thread
+     */
+    public RenderingSystem(GameEngine gameEngine, RenderSurface surface) {
         super(gameEngine);
-        this.surfaceView = surfaceView;
-        this.surfaceView.setRenderingSystem(this);
+        this.surface = surface;
+        if(surface != null) {
+            this.surface.setRenderingSystem(this);
+        }
+    }
+
+    /**
+     * Returns the backend all OpenGL ES calls go through.
+     */
+    public static RenderBackend getBackend() {
+        return backend;
+    }
+
+    /**
+     * Staging buffers for uploads, shared by every thread.
+     */
+    public static BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Must be called before the rendering system is initialized.
+     */
+    public static void setBackend(RenderBackend backend) {
+        RenderingSystem.backend = backend;
     }
 
+    /**
+     * Called on the OpenGL thread for every new context. If the rendering system is already initialized, the previous context
+     * has been lost: shaders are relinked right away, everything else is restored when first used or within a few frames.
+     */
     @Override
     public void initialize() {
-        GLES20.glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
-        GLES20.glEnable(GLES20.GL_DEPTH_TEST);
-        GLES20.glDepthFunc(GLES20.GL_LEQUAL);
-        GLES20.glEnable(GLES20.GL_BLEND);
-        GLES20.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
+        RenderBackend gl = RenderingSystem.getBackend();
+        if(this.isReady()) {
+            contextLostTime = Time.currentTime();
+            GPUResourceRegistry.contextLost();
+        }
+        GLCapabilities.initialize();
+        gl.glClearColor(0.0f, 0.0f, 0.0f, 1.0f);
+        gl.glEnable(GLES20.GL_DEPTH_TEST);
+        gl.glDepthFunc(GLES20.GL_LEQUAL);
+        gl.glBlendFunc(GLES20.GL_SRC_ALPHA, GLES20.GL_ONE_MINUS_SRC_ALPHA);
         Shaders.initShaders();
         this.setReady(true);
     }
 
     public void setViewport(int width, int height) {
-        GLES20.glViewport(0, 0, width, height);
+        RenderBackend gl = RenderingSystem.getBackend();
+        surfaceWidth = width;
+        surfaceHeight = height;
+        gl.glViewport(0, 0, width, height);
         Camera activeCamera = Camera.getActiveCamera();
         if(activeCamera == null) {
             Camera defaultCamera = new Camera(width, height, 45.0f, 0.1f, 1000.0f);
@@ -37,15 +122,268 @@ public class RenderingSystem extends System {
         GameEngine.getInputSystem().initScreenToNDCMatrix(width, height);
     }
 
+    /**
+     * Renders a frame of the running game. Called by the render surface on the OpenGL thread.
+     * Returns the time of the oldest input the frame reflects, or 0 if there was none.
+     */
+    public long drawFrame() {
+        Game game = this.getGameEngine().getGame();
+        if(game == null || !game.isRunning()) {
+            return 0L;
+        }
+        long inputTime = pendingInputTime.getAndSet(0L);
+        this.beginFrame();
+        this.clearScreen();
+        game.render();
+        this.endFrame();
+        return inputTime;
+    }
+
+    /**
+     * Called by the render surface once the frame drawn by drawFrame() has been handed over for presentation.
+     */
+    public void framePresented(long inputTime) {
+        if(inputTime != 0L) {
+            inputLatency.record(Time.currentTime() - inputTime);
+        }
+        if(contextLostTime != 0L) {
+            Log.d("game_engine", "Resumed " + (Time.currentTime() - contextLostTime) / 1000000 + " ms after the context loss");
+            contextLostTime = 0L;
+        }
+    }
+
+    /**
+     * Called on the OpenGL thread before anything of the frame is rendered.
+     */
+    public void beginFrame() {
+        frameAllocator.reset();
+        ShaderCompiler.compilePending();
+        statistics.beginFrame();
+        frameStart = Time.currentTime();
+        QualityGovernor governor = qualityGovernor;
+        ResolutionScaler scaler = resolutionScaler;
+        if(governor != null && scaler != null) {
+            scaler.begin(surfaceWidth, surfaceHeight, governor.getLevel().getRenderScale());
+        }
+        if(governor != null && GPUTimer.isSupported()) {
+            gpuTimer.begin();
+        }
+    }
+
+    /**
+     * Called on the OpenGL thread after the frame has been rendered. The overlay isn't counted in the statistics.
+     */
+    public void endFrame() {
+        resolve.run();
+        statistics.endFrame();
+        GPUResourceRegistry.restorePending(RESTORE_BUDGET);
+        QualityGovernor governor = qualityGovernor;
+        gpuTimer.end();
+        if(governor != null) {
+            long gpuTime = GPUTimer.isSupported() ? gpuTimer.poll() : -1L;
+            if(gpuTime >= 0L) {
+                governor.reportGPUTime(gpuTime);
+            }
+            governor.reportFrame(Time.currentTime() - frameStart);
+        }
+        StatisticsOverlay overlay = statisticsOverlay;
+        if(overlay != null) {
+            overlay.render(spriteBatch);
+        }
+    }
+
+    /**
+     * Draws the renderers in their render passes, see RenderPasses.
+     * A frame rendered at reduced resolution is upscaled before the overlay pass, so the GUI stays sharp.
+     * With an occlusion culler set, renderers hidden behind occluders are skipped.
+     */
+    public void render(List<Renderer> renderers) {
+        OcclusionCuller culler = occlusionCuller;
+        Camera camera = Camera.getActiveCamera();
+        if(culler != null && camera != null && camera.getGameObject() != null) {
+            renderers = culler.cull(renderers, Scene.getCurrentScene().getGameObjects(), camera);
+        }
+        renderPasses.render(renderers, instanceBatcher, spriteBatch, resolve);
+    }
+
+    /**
+     * Wraps the backend in a StatisticsBackend, which counts the work of every frame into getStatistics().
+     * The backend is swapped on the OpenGL thread between frames, so a frame is always counted by one backend.
+     */
+    public void setStatisticsEnabled(final boolean enabled) {
+        this.runOnOpenGLThread(new Runnable() {
+            @Override
+            public void run() {
+                if(enabled && !RenderingSystem.this.isStatisticsEnabled()) {
+                    RenderingSystem.setBackend(new StatisticsBackend(backend, statistics));
+                } else if(!enabled && RenderingSystem.this.isStatisticsEnabled()) {
+                    RenderingSystem.setBackend(((StatisticsBackend)backend).getBackend());
+                }
+            }
+        });
+    }
+
+    public boolean isStatisticsEnabled() {
+        return backend instanceof StatisticsBackend;
+    }
+
+    /**
+     * Shows the recorded statistics on screen and enables them if needed. Must not be called on the OpenGL thread.
+     */
+    public void setStatisticsOverlayEnabled(boolean enabled) {
+        if(enabled && statisticsOverlay == null) {
+            this.setStatisticsEnabled(true);
+            statisticsOverlay = new StatisticsOverlay(statistics);
+        } else if(!enabled && statisticsOverlay != null) {
+            statisticsOverlay = null;
+        }
+    }
+
+    public boolean isStatisticsOverlayEnabled() {
+        return statisticsOverlay != null;
+    }
+
+    public RenderStatistics getStatistics() {
+        return statistics;
+    }
+
+    public FrameLatency getInputLatency() {
+        return inputLatency;
+    }
+
+    public RenderSurface getSurface() {
+        return surface;
+    }
+
     public void requestRender() {
-        surfaceView.requestRender();
+        if(surface != null) {
+            surface.requestRender();
+        }
+    }
+
+    /**
+     * Requests a frame of the scene unless on-demand rendering is enabled and nothing changed since the last one.
+     */
+    public void requestRender(Scene scene) {
+        QualityGovernor governor = qualityGovernor;
+        if(governor != null) {
+            renderScheduler.setFrameRateCap(governor.getLevel().getFrameRateCap());
+        }
+        if(renderScheduler.shouldRender(scene)) {
+            long inputTime = GameEngine.getInputSystem().takeInputTime();
+            if(inputTime != 0L) {
+                pendingInputTime.compareAndSet(0L, inputTime);
+            }
+            this.requestRender();
+        }
+    }
+
+    /**
+     * Only renders frames when the scene changed, which saves battery on static screens.
+     * State the scheduler doesn't track, e.g. a texture's contents, needs forceRefresh().
+     */
+    public void setOnDemandRendering(boolean enabled) {
+        renderScheduler.setOnDemand(enabled);
+    }
+
+    public boolean isOnDemandRendering() {
+        return renderScheduler.isOnDemand();
+    }
+
+    /**
+     * Makes the next game tick render a frame. May be called from any thread.
+     */
+    public void forceRefresh() {
+        renderScheduler.forceRefresh();
+    }
+
+    /**
+     * @param seconds - the shortest time between two frames in on-demand mode
+     */
+    public void setMinRefreshInterval(float seconds) {
+        renderScheduler.setMinRefreshInterval(seconds);
+    }
+
+    /**
+     * Lets the governor adapt the render resolution and frame rate cap to the measured frame times; null turns it off.
+     * Must not be called on the OpenGL thread.
+     */
+    public void setQualityGovernor(QualityGovernor governor) {
+        if(governor != null && resolutionScaler == null) {
+            resolutionScaler = new ResolutionScaler();
+        } else if(governor == null && resolutionScaler != null) {
+            final ResolutionScaler scaler = resolutionScaler;
+            resolutionScaler = null;
+            renderScheduler.setFrameRateCap(0);
+            this.runOnOpenGLThread(new Runnable() {
+                @Override
+                public void run() {
+                    scaler.delete();
+                    gpuTimer.delete();
+                }
+            });
+        }
+        qualityGovernor = governor;
+    }
+
+    public QualityGovernor getQualityGovernor() {
+        return qualityGovernor;
+    }
+
+    /**
+     * Culls renderers hidden behind Occluder game objects before they are drawn; null turns occlusion culling off.
+     */
+    public void setOcclusionCuller(OcclusionCuller culler) {
+        final OcclusionCuller previous = occlusionCuller;
+        occlusionCuller = culler;
+        if(previous != null && previous != culler) {
+            // The previous culler may be in use by the frame being rendered
+            this.runOnOpenGLThread(new Runnable() {
+                @Override
+                public void run() {
+                    previous.shutdown();
+                }
+            });
+        }
+    }
+
+    public OcclusionCuller getOcclusionCuller() {
+        return occlusionCuller;
+    }
+
+    public RenderScheduler getRenderScheduler() {
+        return renderScheduler;
     }
 
     public void clearScreen() {
-        GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+        RenderBackend gl = RenderingSystem.getBackend();
+        gl.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+    }
+
+    public SpriteBatch getSpriteBatch() {
+        return spriteBatch;
+    }
+
+    public InstanceBatcher getInstanceBatcher() {
+        return instanceBatcher;
+    }
+
+    public ParticleBatch getParticleBatch() {
+        return particleBatch;
+    }
+
+    /**
+     * Per-frame staging memory, OpenGL thread only.
+     */
+    public FrameAllocator getFrameAllocator() {
+        return frameAllocator;
     }
 
     public void runOnOpenGLThread(Runnable runnable) {
-        surfaceView.queueEvent(runnable);
+        if(surface != null) {
+            surface.queueEvent(runnable);
+        } else {
+            runnable.run();
+        }
     }
 }
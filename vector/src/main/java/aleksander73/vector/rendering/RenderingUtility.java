@@ -3,11 +3,13 @@ package aleksander73.vector.rendering;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import java.nio.ShortBuffer;
 
 public class RenderingUtility {
     public static final int BYTES_PER_FLOAT = 4;
     public static final int BYTES_PER_SHORT = 2;
+    public static final int BYTES_PER_INT = 4;
 
     public static FloatBuffer asFloatBuffer(float[] data) {
         FloatBuffer buffer = ByteBuffer.allocateDirect(data.length * BYTES_PER_FLOAT).order(ByteOrder.nativeOrder()).asFloatBuffer();
@@ -20,4 +22,10 @@ public class RenderingUtility {
         buffer.put(data).position(0);
         return buffer;
     }
+
+    public static IntBuffer asIntBuffer(int[] data) {
+        IntBuffer buffer = ByteBuffer.allocateDirect(data.length * BYTES_PER_INT).order(ByteOrder.nativeOrder()).asIntBuffer();
+        buffer.put(data).position(0);
+        return buffer;
+    }
 }
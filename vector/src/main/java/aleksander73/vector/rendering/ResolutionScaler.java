@@ -0,0 +1,97 @@
+package aleksander73.vector.rendering;
+
+import android.opengl.GLES20;
+
+import aleksander73.vector.core.GameObject;
+import aleksander73.vector.core.Transform;
+import aleksander73.vector.rendering.backend.RenderBackend;
+import aleksander73.vector.rendering.materials.Colour;
+import aleksander73.vector.rendering.materials.Material;
+import aleksander73.vector.rendering.mesh.Mesh;
+import aleksander73.vector.rendering.shaders.Shader;
+import aleksander73.vector.rendering.shaders.ShaderInput;
+import aleksander73.math.linear_algebra.Vector3d;
+
+/**
+ * Renders the scene into an offscreen target smaller than the surface and upscales it onto the surface with bilinear filtering.
+ * At a scale of 1 the surface is rendered to directly and the target is released.
+ */
+public class ResolutionScaler extends GameObject {
+    private final Mesh quad;
+    private final Material material;
+    private RenderTarget target;
+    private boolean resolved = true;
+
+    /**
+     * Creates the quad's buffers, so it must not be created on the OpenGL thread.
+     */
+    public ResolutionScaler() {
+        super("resolution_scaler");
+        quad = Mesh.generateGUITexture(1.0f, 1.0f);
+        material = new Material(Colour.DEFAULT, null, Shaders.getGuiShader());
+        this.addComponents(new Transform(Vector3d.zeroVector, Vector3d.zeroVector, new Vector3d(2.0f, 2.0f, 1.0f)), material);
+    }
+
+    /**
+     * Called on the OpenGL thread at the start of a frame: directs rendering into a target of the scaled surface size.
+     */
+    public void begin(int surfaceWidth, int surfaceHeight, float scale) {
+        int width = Math.max(1, Math.round(surfaceWidth * scale));
+        int height = Math.max(1, Math.round(surfaceHeight * scale));
+        if(scale >= 1.0f || width >= surfaceWidth && height >= surfaceHeight) {
+            this.release();
+            return;
+        }
+        if(target == null || target.getWidth() != width || target.getHeight() != height) {
+            this.release();
+            target = new RenderTarget(width, height);
+            material.setTexture(target.getTexture());
+        }
+        target.bind();
+        resolved = false;
+    }
+
+    /**
+     * Draws the target onto the surface. Does nothing if the frame wasn't scaled or has already been resolved.
+     */
+    public void resolve(int surfaceWidth, int surfaceHeight) {
+        if(resolved) {
+            return;
+        }
+        resolved = true;
+        RenderBackend gl = RenderingSystem.getBackend();
+        gl.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0);
+        gl.glViewport(0, 0, surfaceWidth, surfaceHeight);
+        // Clearing tells tiled GPUs the previous contents needn't be loaded
+        gl.glDepthMask(true);
+        gl.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
+        gl.glDisable(GLES20.GL_DEPTH_TEST);
+        gl.glDisable(GLES20.GL_BLEND);
+        Shader shader = Shaders.getGuiShader();
+        shader.use();
+        shader.setShaderInput(new ShaderInput(this, quad));
+        shader.passUniforms();
+        quad.draw(shader);
+        gl.glEnable(GLES20.GL_BLEND);
+        gl.glEnable(GLES20.GL_DEPTH_TEST);
+    }
+
+    public RenderTarget getTarget() {
+        return target;
+    }
+
+    private void release() {
+        if(target != null) {
+            target.delete();
+            target = null;
+        }
+    }
+
+    /**
+     * Must be called on the OpenGL thread.
+     */
+    public void delete() {
+        this.release();
+        quad.delete();
+    }
+}
@@ -0,0 +1,13 @@
+package aleksander73.vector.rendering;
+
+/**
+ * OpenGL object owner that keeps enough on the CPU side to re-create its objects after the context has been lost.
+ * See GPUResourceRegistry.
+ */
+public interface Restorable {
+    /**
+     * Re-creates the OpenGL objects in the current context. Called on the OpenGL thread;
+     * the old names belonged to the lost context and must not be deleted.
+     */
+    void restore();
+}
@@ -1,25 +1,100 @@
 package aleksander73.vector.rendering;
 
+import android.util.Log;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import aleksander73.vector.core.GameEngine;
 import aleksander73.vector.rendering.shaders.GUIShader;
+import aleksander73.vector.rendering.shaders.InstancedShader;
+import aleksander73.vector.rendering.shaders.ParticleShader;
+import aleksander73.vector.rendering.shaders.ProgramBinaryCache;
+import aleksander73.vector.rendering.shaders.PseudoInstancedShader;
 import aleksander73.vector.rendering.shaders.Shader;
+import aleksander73.vector.rendering.shaders.ShaderCompiler;
 import aleksander73.vector.rendering.shaders.SkyboxShader;
+import aleksander73.vector.rendering.shaders.SpriteShader;
 import aleksander73.vector.rendering.shaders.StandardShader;
 
 public class Shaders {
     private static Shader standardShader;
     private static Shader guiShader;
     private static Shader skyboxShader;
+    private static SpriteShader spriteShader;
+    private static InstancedShader instancedShader;
+    private static PseudoInstancedShader pseudoInstancedShader;
+    private static ParticleShader particleShader;
+    private static final Map<String, StandardShader> standardVariants = new HashMap<>();
 
+    /**
+     * Linked programs are cached on disk where the device allows it, so only the first launch compiles them.
+     * Called again for a new context, the existing shaders are relinked in place, as materials refer to them.
+     */
     public static void initShaders() {
-        standardShader = new StandardShader();
-        guiShader = new GUIShader();
-        skyboxShader = new SkyboxShader();
+        long start = System.nanoTime();
+        File cacheDir = GameEngine.getResourceSystem().getCacheDir();
+        Shader.setProgramBinaryCache((cacheDir != null && GLCapabilities.supportsProgramBinaries()) ? new ProgramBinaryCache(cacheDir) : null);
+        if(standardShader == null) {
+            standardShader = new StandardShader();
+            guiShader = new GUIShader();
+            skyboxShader = new SkyboxShader();
+            spriteShader = new SpriteShader();
+            particleShader = new ParticleShader();
+        }
+        if(GLCapabilities.isGLES3()) {
+            instancedShader = (instancedShader != null) ? instancedShader : new InstancedShader();
+            pseudoInstancedShader = null;
+        } else {
+            instancedShader = null;
+            pseudoInstancedShader = (pseudoInstancedShader != null) ? pseudoInstancedShader : new PseudoInstancedShader();
+        }
+        for(Shader shader : new Shader[] { standardShader, guiShader, skyboxShader, spriteShader, particleShader, instancedShader, pseudoInstancedShader }) {
+            if(shader != null) {
+                GPUResourceRegistry.restore(shader);
+            }
+        }
+        ProgramBinaryCache cache = Shader.getProgramBinaryCache();
+        Log.d("game_engine", "Shaders ready in " + (System.nanoTime() - start) / 1000000 + " ms" + ((cache != null) ? " (program cache: " + cache + ")" : ""));
     }
 
     public static Shader getStandardShader() {
         return standardShader;
     }
 
+    /**
+     * Returns the standard shader variant with the given keywords, see StandardShader.
+     * Variants other than the built-in textured one are compiled by the ShaderCompiler; until then MeshRenderer skips them.
+     */
+    public static synchronized StandardShader getStandardShader(String... keywords) {
+        String[] sorted = keywords.clone();
+        Arrays.sort(sorted);
+        StringBuilder key = new StringBuilder();
+        for(String keyword : sorted) {
+            key.append(keyword).append(' ');
+        }
+        if(key.toString().equals(StandardShader.TEXTURED + " ") && standardShader != null) {
+            return (StandardShader)standardShader;
+        }
+        StandardShader variant = standardVariants.get(key.toString());
+        if(variant == null) {
+            variant = new StandardShader(true, sorted);
+            standardVariants.put(key.toString(), variant);
+        }
+        return variant;
+    }
+
+    /**
+     * Queues the standard shader variants to be compiled ahead of their first use, e.g. while a loading screen is shown.
+     */
+    public static void warmUp(String[]... variants) {
+        for(String[] keywords : variants) {
+            ShaderCompiler.warmUp(Shaders.getStandardShader(keywords));
+        }
+    }
+
     public static Shader getGuiShader() {
         return guiShader;
     }
@@ -27,4 +102,26 @@ public class Shaders {
     public static Shader getSkyboxShader() {
         return skyboxShader;
     }
+
+    public static SpriteShader getSpriteShader() {
+        return spriteShader;
+    }
+
+    public static ParticleShader getParticleShader() {
+        return particleShader;
+    }
+
+    /**
+     * Returns null on OpenGL ES 2.0 contexts.
+     */
+    public static InstancedShader getInstancedShader() {
+        return instancedShader;
+    }
+
+    /**
+     * Returns null on OpenGL ES 3.0 contexts.
+     */
+    public static PseudoInstancedShader getPseudoInstancedShader() {
+        return pseudoInstancedShader;
+    }
 }
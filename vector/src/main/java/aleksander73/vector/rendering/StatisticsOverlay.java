@@ -0,0 +1,87 @@
+package aleksander73.vector.rendering;
+
+import android.opengl.GLES20;
+
+import java.util.List;
+
+import aleksander73.vector.core.GameEngine;
+import aleksander73.vector.rendering.backend.RenderBackend;
+import aleksander73.vector.rendering.batching.SpriteBatch;
+import aleksander73.vector.rendering.materials.Colour;
+import aleksander73.vector.rendering.materials.Texture;
+import aleksander73.vector.rendering.shaders.SpriteShader;
+
+/**
+ * Draws the recorded frames of RenderStatistics as bar graphs in the bottom left corner of the screen.
+ * From the bottom: draw calls, triangles and bytes uploaded, each scaled to its peak over the recorded frames.
+ * The bars are submitted to the SpriteBatch, so all graphs take a single draw call.
+ */
+public class StatisticsOverlay {
+    private static final float LEFT = -0.95f;
+    private static final float BOTTOM = -0.95f;
+    private static final float WIDTH = 0.9f;
+    private static final float GRAPH_HEIGHT = 0.15f;
+    private static final float GRAPH_GAP = 0.03f;
+    private static final int GRAPHS = 3;
+    private static final Colour[] COLOURS = new Colour[] {
+        new Colour(90, 210, 90, 200),
+        new Colour(90, 160, 240, 200),
+        new Colour(240, 150, 60, 200)
+    };
+
+    private final RenderStatistics statistics;
+    private final Texture texture;
+
+    /**
+     * Loads the default texture, so it must not be created on the OpenGL thread.
+     */
+    public StatisticsOverlay(RenderStatistics statistics) {
+        this.statistics = statistics;
+        texture = GameEngine.getResourceSystem().getDefaultTex();
+    }
+
+    /**
+     * Must be called on the OpenGL thread once the frame's own sprites have been flushed.
+     */
+    public void render(SpriteBatch spriteBatch) {
+        List<RenderStatistics.Frame> frames = statistics.getFrames();
+        if(frames.isEmpty()) {
+            return;
+        }
+        SpriteShader shader = Shaders.getSpriteShader();
+        float barWidth = WIDTH / statistics.getCapacity();
+        for(int graph = 0; graph < GRAPHS; graph++) {
+            long peak = 0;
+            for(int i = 0; i < frames.size(); i++) {
+                peak = Math.max(peak, StatisticsOverlay.value(frames.get(i), graph));
+            }
+            if(peak == 0) {
+                continue;
+            }
+            float graphBottom = BOTTOM + graph * (GRAPH_HEIGHT + GRAPH_GAP);
+            for(int i = 0; i < frames.size(); i++) {
+                float height = GRAPH_HEIGHT * StatisticsOverlay.value(frames.get(i), graph) / peak;
+                if(height <= 0.0f) {
+                    continue;
+                }
+                spriteBatch.submit(LEFT + (i + 0.5f) * barWidth, graphBottom + height / 2.0f, barWidth, height, COLOURS[graph], texture, 0, shader);
+            }
+        }
+
+        RenderBackend gl = RenderingSystem.getBackend();
+        gl.glDisable(GLES20.GL_DEPTH_TEST);
+        spriteBatch.flush();
+        gl.glEnable(GLES20.GL_DEPTH_TEST);
+    }
+
+    private static long value(RenderStatistics.Frame frame, int graph) {
+        switch(graph) {
+            case 0:
+                return frame.getDrawCalls();
+            case 1:
+                return frame.getTriangles();
+            default:
+                return frame.getBytesUploaded();
+        }
+    }
+}
@@ -2,18 +2,24 @@ package aleksander73.vector.rendering;
 
 import android.content.Context;
 import android.opengl.GLSurfaceView;
+import android.view.View;
 
+import javax.microedition.khronos.egl.EGL10;
 import javax.microedition.khronos.egl.EGLConfig;
+import javax.microedition.khronos.egl.EGLContext;
+import javax.microedition.khronos.egl.EGLDisplay;
 import javax.microedition.khronos.opengles.GL10;
 
-import aleksander73.vector.core.Game;
-
-public class SurfaceView extends GLSurfaceView {
+/**
+ * Render surface built on GLSurfaceView, used where the engine can't drive EGL itself.
+ */
+public class SurfaceView extends GLSurfaceView implements RenderSurface {
     private RenderingSystem renderingSystem;
 
     public SurfaceView(Context context) {
         super(context);
         this.setEGLContextClientVersion(2);
+        this.setEGLContextFactory(new ContextFactory());
         this.setRenderer(new GLRenderer());
         this.setRenderMode(RENDERMODE_WHEN_DIRTY);
     }
@@ -23,6 +29,27 @@ public class SurfaceView extends GLSurfaceView {
         return super.performClick();
     }
 
+    /**
+     * Requests an OpenGL ES 3.0 context and falls back to OpenGL ES 2.0 if the device doesn't support it.
+     */
+    private static class ContextFactory implements GLSurfaceView.EGLContextFactory {
+        private static final int EGL_CONTEXT_CLIENT_VERSION = 0x3098;
+
+        @Override
+        public EGLContext createContext(EGL10 egl, EGLDisplay display, EGLConfig eglConfig) {
+            EGLContext context = egl.eglCreateContext(display, eglConfig, EGL10.EGL_NO_CONTEXT, new int[] { EGL_CONTEXT_CLIENT_VERSION, 3, EGL10.EGL_NONE });
+            if(context == null || context == EGL10.EGL_NO_CONTEXT) {
+                context = egl.eglCreateContext(display, eglConfig, EGL10.EGL_NO_CONTEXT, new int[] { EGL_CONTEXT_CLIENT_VERSION, 2, EGL10.EGL_NONE });
+            }
+            return context;
+        }
+
+        @Override
+        public void destroyContext(EGL10 egl, EGLDisplay display, EGLContext context) {
+            egl.eglDestroyContext(display, context);
+        }
+    }
+
     private class GLRenderer implements GLSurfaceView.Renderer {
         @Override
         public void onSurfaceCreated(GL10 glUnused, EGLConfig eglConfig) {
@@ -34,18 +61,28 @@ public class SurfaceView extends GLSurfaceView {
             renderingSystem.setViewport(width, height);
         }
 
+        /**
+         * GLSurfaceView swaps after this returns, so the latency is recorded slightly early.
+         */
         @Override
         public void onDrawFrame(GL10 glUnused) {
-            Game game = renderingSystem.getGameEngine().getGame();
-            if(game == null || !game.isRunning()) {
-                return;
-            }
-            renderingSystem.clearScreen();
-            game.render();
+            renderingSystem.framePresented(renderingSystem.drawFrame());
         }
     }
 
+    @Override
     public void setRenderingSystem(RenderingSystem renderingSystem) {
         this.renderingSystem = renderingSystem;
     }
+
+    /**
+     * GLSurfaceView ends its thread itself when the view is detached.
+     */
+    @Override
+    public void release() {}
+
+    @Override
+    public View getView() {
+        return this;
+    }
 }
@@ -0,0 +1,668 @@
+package aleksander73.vector.rendering.backend;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+import java.nio.Buffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Backend without a GPU, e.g. for benchmarks and tests on machines without a display.
+ * It records the command stream and keeps track of the objects it hands out and the current bindings,
+ * so that draw calls and resource usage can be asserted on. Compilation and linking always succeed.
+ */
+public class HeadlessBackend implements RenderBackend {
+    private final String version;
+    private final Set<String> extensions;
+    private boolean recording = true;
+
+    private final List<String> commands = new ArrayList<>();
+    private final Map<String, Integer> callCounts = new HashMap<>();
+    private int drawCalls;
+    private long triangles;
+
+    private int nextName = 1;
+    private final Map<Integer, Integer> buffers = new HashMap<>();  // name -> size in bytes
+    private final Map<Integer, int[]> textures = new HashMap<>();  // name -> { width, height }
+    private final Set<Integer> vertexArrays = new HashSet<>();
+    private final Set<Integer> framebuffers = new HashSet<>();
+    private final Set<Integer> renderbuffers = new HashSet<>();
+    private final Set<Integer> queries = new HashSet<>();
+    private final Set<Integer> programs = new HashSet<>();
+    private final Map<Integer, String> shaders = new HashMap<>();
+    private final Map<String, Integer> locations = new HashMap<>();  // "program:name" -> location
+
+    private final Map<Integer, Integer> boundBuffers = new HashMap<>();  // target -> name
+    private final Map<Integer, Integer> boundTextures = new HashMap<>();  // unit -> name
+    private int activeTexture = GLES20.GL_TEXTURE0;
+    private int currentProgram;
+    private int boundVertexArray;
+    private int boundFramebuffer;
+    private final Set<Integer> enabledCapabilities = new HashSet<>();
+
+    public HeadlessBackend() {
+        this(2, 0);
+    }
+
+    /**
+     * @param majorVersion - OpenGL ES version reported by glGetString, which decides the code paths the engine takes
+     */
+    public HeadlessBackend(int majorVersion, int minorVersion, String... extensions) {
+        this.version = "OpenGL ES " + majorVersion + "." + minorVersion + " headless";
+        this.extensions = new HashSet<>(Arrays.asList(extensions));
+    }
+
+    private void record(String name, Object... args) {
+        Integer count = callCounts.get(name);
+        callCounts.put(name, (count != null) ? count + 1 : 1);
+        if(recording) {
+            StringBuilder builder = new StringBuilder(name).append('(');
+            for(int i = 0; i < args.length; i++) {
+                builder.append((i > 0) ? ", " : "").append(args[i]);
+            }
+            commands.add(builder.append(')').toString());
+        }
+    }
+
+    private void generate(int n, int[] names, int offset) {
+        for(int i = 0; i < n; i++) {
+            names[offset + i] = nextName++;
+        }
+    }
+
+    private void countDraw(int mode, int count, int instances) {
+        drawCalls++;
+        if(mode == GLES20.GL_TRIANGLES) {
+            triangles += (long)(count / 3) * instances;
+        }
+    }
+
+    @Override
+    public void glActiveTexture(int texture) {
+        this.record("glActiveTexture", texture);
+        activeTexture = texture;
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader) {
+        this.record("glAttachShader", program, shader);
+    }
+
+    @Override
+    public void glBeginQuery(int target, int id) {
+        this.record("glBeginQuery", target, id);
+    }
+
+    @Override
+    public void glBindAttribLocation(int program, int index, String name) {
+        this.record("glBindAttribLocation", program, index, name);
+        locations.put(program + ":" + name, index);
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+        this.record("glBindBuffer", target, buffer);
+        boundBuffers.put(target, buffer);
+    }
+
+    @Override
+    public void glBindFramebuffer(int target, int framebuffer) {
+        this.record("glBindFramebuffer", target, framebuffer);
+        boundFramebuffer = framebuffer;
+    }
+
+    @Override
+    public void glBindRenderbuffer(int target, int renderbuffer) {
+        this.record("glBindRenderbuffer", target, renderbuffer);
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture) {
+        this.record("glBindTexture", target, texture);
+        boundTextures.put(activeTexture, texture);
+    }
+
+    @Override
+    public void glBindVertexArray(int array) {
+        this.record("glBindVertexArray", array);
+        boundVertexArray = array;
+    }
+
+    @Override
+    public void glBlendFunc(int sfactor, int dfactor) {
+        this.record("glBlendFunc", sfactor, dfactor);
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage) {
+        this.record("glBufferData", target, size, usage);
+        Integer buffer = boundBuffers.get(target);
+        if(buffer != null && buffer != 0) {
+            buffers.put(buffer, size);
+        }
+    }
+
+    @Override
+    public void glBufferSubData(int target, int offset, int size, Buffer data) {
+        this.record("glBufferSubData", target, offset, size);
+    }
+
+    @Override
+    public int glCheckFramebufferStatus(int target) {
+        this.record("glCheckFramebufferStatus", target);
+        return GLES20.GL_FRAMEBUFFER_COMPLETE;
+    }
+
+    @Override
+    public void glClear(int mask) {
+        this.record("glClear", mask);
+    }
+
+    @Override
+    public void glClearColor(float red, float green, float blue, float alpha) {
+        this.record("glClearColor", red, green, blue, alpha);
+    }
+
+    @Override
+    public int glClientWaitSync(long sync, int flags, long timeout) {
+        this.record("glClientWaitSync", sync, flags, timeout);
+        return GLES30.GL_ALREADY_SIGNALED;
+    }
+
+    @Override
+    public void glCompileShader(int shader) {
+        this.record("glCompileShader", shader);
+    }
+
+    @Override
+    public void glCompressedTexImage2D(int target, int level, int internalformat, int width, int height, int border, int imageSize, Buffer data) {
+        this.record("glCompressedTexImage2D", target, level, internalformat, width, height, imageSize);
+        Integer texture = boundTextures.get(activeTexture);
+        if(texture != null && level == 0 && textures.containsKey(texture)) {
+            textures.put(texture, new int[] { width, height });
+        }
+    }
+
+    @Override
+    public int glCreateProgram() {
+        this.record("glCreateProgram");
+        int program = nextName++;
+        programs.add(program);
+        return program;
+    }
+
+    @Override
+    public int glCreateShader(int type) {
+        this.record("glCreateShader", type);
+        int shader = nextName++;
+        shaders.put(shader, "");
+        return shader;
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] names, int offset) {
+        this.record("glDeleteBuffers", n);
+        for(int i = 0; i < n; i++) {
+            buffers.remove(names[offset + i]);
+        }
+    }
+
+    @Override
+    public void glDeleteFramebuffers(int n, int[] framebuffers, int offset) {
+        this.record("glDeleteFramebuffers", n);
+        for(int i = 0; i < n; i++) {
+            this.framebuffers.remove(framebuffers[offset + i]);
+        }
+    }
+
+    @Override
+    public void glDeleteProgram(int program) {
+        this.record("glDeleteProgram", program);
+        programs.remove(program);
+    }
+
+    @Override
+    public void glDeleteQueries(int n, int[] names, int offset) {
+        this.record("glDeleteQueries", n);
+        for(int i = 0; i < n; i++) {
+            queries.remove(names[offset + i]);
+        }
+    }
+
+    @Override
+    public void glDeleteRenderbuffers(int n, int[] renderbuffers, int offset) {
+        this.record("glDeleteRenderbuffers", n);
+        for(int i = 0; i < n; i++) {
+            this.renderbuffers.remove(renderbuffers[offset + i]);
+        }
+    }
+
+    @Override
+    public void glDeleteShader(int shader) {
+        this.record("glDeleteShader", shader);
+        shaders.remove(shader);
+    }
+
+    @Override
+    public void glDeleteSync(long sync) {
+        this.record("glDeleteSync", sync);
+    }
+
+    @Override
+    public void glDeleteTextures(int n, int[] names, int offset) {
+        this.record("glDeleteTextures", n);
+        for(int i = 0; i < n; i++) {
+            textures.remove(names[offset + i]);
+        }
+    }
+
+    @Override
+    public void glDeleteVertexArrays(int n, int[] names, int offset) {
+        this.record("glDeleteVertexArrays", n);
+        for(int i = 0; i < n; i++) {
+            vertexArrays.remove(names[offset + i]);
+        }
+    }
+
+    @Override
+    public void glDepthFunc(int func) {
+        this.record("glDepthFunc", func);
+    }
+
+    @Override
+    public void glDepthMask(boolean flag) {
+        this.record("glDepthMask", flag);
+    }
+
+    @Override
+    public void glDisable(int cap) {
+        this.record("glDisable", cap);
+        enabledCapabilities.remove(cap);
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index) {
+        this.record("glDisableVertexAttribArray", index);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset) {
+        this.record("glDrawElements", mode, count, type, offset);
+        this.countDraw(mode, count, 1);
+    }
+
+    @Override
+    public void glDrawElementsInstanced(int mode, int count, int type, int offset, int instanceCount) {
+        this.record("glDrawElementsInstanced", mode, count, type, offset, instanceCount);
+        this.countDraw(mode, count, instanceCount);
+    }
+
+    @Override
+    public void glEnable(int cap) {
+        this.record("glEnable", cap);
+        enabledCapabilities.add(cap);
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+        this.record("glEnableVertexAttribArray", index);
+    }
+
+    @Override
+    public void glEndQuery(int target) {
+        this.record("glEndQuery", target);
+    }
+
+    @Override
+    public long glFenceSync(int condition, int flags) {
+        this.record("glFenceSync", condition, flags);
+        return nextName++;
+    }
+
+    @Override
+    public void glFinish() {
+        this.record("glFinish");
+    }
+
+    @Override
+    public void glFramebufferRenderbuffer(int target, int attachment, int renderbuffertarget, int renderbuffer) {
+        this.record("glFramebufferRenderbuffer", target, attachment, renderbuffer);
+    }
+
+    @Override
+    public void glFramebufferTexture2D(int target, int attachment, int textarget, int texture, int level) {
+        this.record("glFramebufferTexture2D", target, attachment, texture, level);
+    }
+
+    @Override
+    public void glGenBuffers(int n, int[] names, int offset) {
+        this.record("glGenBuffers", n);
+        this.generate(n, names, offset);
+        for(int i = 0; i < n; i++) {
+            buffers.put(names[offset + i], 0);
+        }
+    }
+
+    @Override
+    public void glGenFramebuffers(int n, int[] framebuffers, int offset) {
+        this.record("glGenFramebuffers", n);
+        this.generate(n, framebuffers, offset);
+        for(int i = 0; i < n; i++) {
+            this.framebuffers.add(framebuffers[offset + i]);
+        }
+    }
+
+    @Override
+    public void glGenQueries(int n, int[] names, int offset) {
+        this.record("glGenQueries", n);
+        this.generate(n, names, offset);
+        for(int i = 0; i < n; i++) {
+            queries.add(names[offset + i]);
+        }
+    }
+
+    @Override
+    public void glGenRenderbuffers(int n, int[] renderbuffers, int offset) {
+        this.record("glGenRenderbuffers", n);
+        this.generate(n, renderbuffers, offset);
+        for(int i = 0; i < n; i++) {
+            this.renderbuffers.add(renderbuffers[offset + i]);
+        }
+    }
+
+    @Override
+    public void glGenTextures(int n, int[] names, int offset) {
+        this.record("glGenTextures", n);
+        this.generate(n, names, offset);
+        for(int i = 0; i < n; i++) {
+            textures.put(names[offset + i], new int[2]);
+        }
+    }
+
+    @Override
+    public void glGenVertexArrays(int n, int[] names, int offset) {
+        this.record("glGenVertexArrays", n);
+        this.generate(n, names, offset);
+        for(int i = 0; i < n; i++) {
+            vertexArrays.add(names[offset + i]);
+        }
+    }
+
+    @Override
+    public void glGenerateMipmap(int target) {
+        this.record("glGenerateMipmap", target);
+    }
+
+    @Override
+    public int glGetAttribLocation(int program, String name) {
+        return this.location(program, name);
+    }
+
+    @Override
+    public void glGetFloatv(int pname, float[] params, int offset) {
+        params[offset] = 0.0f;
+    }
+
+    @Override
+    public void glGetIntegerv(int pname, int[] params, int offset) {
+        params[offset] = (pname == GLES20.GL_MAX_TEXTURE_SIZE) ? 4096 : 0;
+    }
+
+    /**
+     * There is nothing to serialize, so programs never report a binary.
+     */
+    @Override
+    public void glGetProgramBinary(int program, int bufSize, int[] length, int lengthOffset, int[] binaryFormat, int binaryFormatOffset, Buffer binary) {
+        length[lengthOffset] = 0;
+        binaryFormat[binaryFormatOffset] = 0;
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+        params[offset] = (pname == GLES20.GL_LINK_STATUS) ? 1 : 0;
+    }
+
+    /**
+     * Queries are always available and, without a GPU, measure no time.
+     */
+    @Override
+    public void glGetQueryObjectuiv(int id, int pname, int[] params, int offset) {
+        params[offset] = (pname == GLES30.GL_QUERY_RESULT_AVAILABLE) ? 1 : 0;
+    }
+
+    @Override
+    public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+        params[offset] = (pname == GLES20.GL_COMPILE_STATUS) ? 1 : 0;
+    }
+
+    @Override
+    public String glGetString(int name) {
+        switch(name) {
+            case GLES20.GL_VERSION : return version;
+            case GLES20.GL_EXTENSIONS : {
+                StringBuilder builder = new StringBuilder();
+                for(String extension : extensions) {
+                    builder.append(extension).append(' ');
+                }
+                return builder.toString();
+            }
+            default : return "headless";
+        }
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name) {
+        return this.location(program, name);
+    }
+
+    private int location(int program, String name) {
+        String key = program + ":" + name;
+        Integer location = locations.get(key);
+        if(location == null) {
+            location = locations.size();
+            locations.put(key, location);
+        }
+        return location;
+    }
+
+    @Override
+    public void glLinkProgram(int program) {
+        this.record("glLinkProgram", program);
+    }
+
+    @Override
+    public void glProgramBinary(int program, int binaryFormat, Buffer binary, int length) {
+        this.record("glProgramBinary", program, binaryFormat, length);
+    }
+
+    @Override
+    public void glProgramParameteri(int program, int pname, int value) {
+        this.record("glProgramParameteri", program, pname, value);
+    }
+
+    @Override
+    public void glRenderbufferStorage(int target, int internalformat, int width, int height) {
+        this.record("glRenderbufferStorage", target, internalformat, width, height);
+    }
+
+    @Override
+    public void glShaderSource(int shader, String source) {
+        this.record("glShaderSource", shader);
+        shaders.put(shader, source);
+    }
+
+    @Override
+    public void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format, int type, Buffer pixels) {
+        this.record("glTexImage2D", target, level, internalformat, width, height);
+        Integer texture = boundTextures.get(activeTexture);
+        if(texture != null && level == 0 && textures.containsKey(texture)) {
+            textures.put(texture, new int[] { width, height });
+        }
+    }
+
+    @Override
+    public void glTexParameterf(int target, int pname, float param) {
+        this.record("glTexParameterf", target, pname, param);
+    }
+
+    @Override
+    public void glTexParameteri(int target, int pname, int param) {
+        this.record("glTexParameteri", target, pname, param);
+    }
+
+    @Override
+    public void glUniform1i(int location, int x) {
+        this.record("glUniform1i", location, x);
+    }
+
+    @Override
+    public void glUniform3fv(int location, int count, float[] v, int offset) {
+        this.record("glUniform3fv", location, count);
+    }
+
+    @Override
+    public void glUniform4fv(int location, int count, float[] v, int offset) {
+        this.record("glUniform4fv", location, count);
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+        this.record("glUniformMatrix4fv", location, count);
+    }
+
+    @Override
+    public void glUseProgram(int program) {
+        this.record("glUseProgram", program);
+        currentProgram = program;
+    }
+
+    @Override
+    public void glVertexAttrib4f(int index, float x, float y, float z, float w) {
+        this.record("glVertexAttrib4f", index, x, y, z, w);
+    }
+
+    @Override
+    public void glVertexAttribDivisor(int index, int divisor) {
+        this.record("glVertexAttribDivisor", index, divisor);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset) {
+        this.record("glVertexAttribPointer", index, size, type, normalized, stride, offset);
+    }
+
+    @Override
+    public void glViewport(int x, int y, int width, int height) {
+        this.record("glViewport", x, y, width, height);
+    }
+
+    @Override
+    public void texImage2D(int target, int level, Bitmap bitmap, int border) {
+        this.record("texImage2D", target, level, bitmap.getWidth(), bitmap.getHeight());
+        Integer texture = boundTextures.get(activeTexture);
+        if(texture != null && level == 0 && textures.containsKey(texture)) {
+            textures.put(texture, new int[] { bitmap.getWidth(), bitmap.getHeight() });
+        }
+    }
+
+    // --------------------------------------------------
+
+    /**
+     * Clears the recorded commands and counters, e.g. at the start of a frame. Resource state is kept.
+     */
+    public void reset() {
+        commands.clear();
+        callCounts.clear();
+        drawCalls = 0;
+        triangles = 0;
+    }
+
+    /**
+     * Long benchmarks can turn off recording the command stream; calls are still counted.
+     */
+    public void setRecording(boolean recording) {
+        this.recording = recording;
+    }
+
+    public List<String> getCommands() {
+        return commands;
+    }
+
+    public int getCallCount(String name) {
+        Integer count = callCounts.get(name);
+        return (count != null) ? count : 0;
+    }
+
+    public int getDrawCalls() {
+        return drawCalls;
+    }
+
+    public long getTriangles() {
+        return triangles;
+    }
+
+    public int getLiveBuffers() {
+        return buffers.size();
+    }
+
+    public long getBufferBytes() {
+        long total = 0;
+        for(int size : buffers.values()) {
+            total += size;
+        }
+        return total;
+    }
+
+    public int getLiveTextures() {
+        return textures.size();
+    }
+
+    public int getLiveVertexArrays() {
+        return vertexArrays.size();
+    }
+
+    public int getLiveQueries() {
+        return queries.size();
+    }
+
+    public int getPrograms() {
+        return programs.size();
+    }
+
+    public String getShaderSource(int shader) {
+        return shaders.get(shader);
+    }
+
+    public int getBoundBuffer(int target) {
+        Integer buffer = boundBuffers.get(target);
+        return (buffer != null) ? buffer : 0;
+    }
+
+    public int getBoundTexture(int unit) {
+        Integer texture = boundTextures.get(unit);
+        return (texture != null) ? texture : 0;
+    }
+
+    public int getCurrentProgram() {
+        return currentProgram;
+    }
+
+    public int getBoundVertexArray() {
+        return boundVertexArray;
+    }
+
+    public int getBoundFramebuffer() {
+        return boundFramebuffer;
+    }
+
+    public boolean isEnabled(int cap) {
+        return enabledCapabilities.contains(cap);
+    }
+}
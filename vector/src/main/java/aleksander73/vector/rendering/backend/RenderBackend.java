@@ -0,0 +1,166 @@
+package aleksander73.vector.rendering.backend;
+
+import android.graphics.Bitmap;
+
+import java.nio.Buffer;
+
+/**
+ * The OpenGL ES calls the engine makes, so that the render path can run against something other than the driver.
+ * Methods mirror their GLES20/GLES30 counterparts; OpenGL ES 3.0 methods must only be called where GLCapabilities allows it.
+ */
+public interface RenderBackend {
+    void glActiveTexture(int texture);
+
+    void glAttachShader(int program, int shader);
+
+    void glBeginQuery(int target, int id);
+
+    void glBindAttribLocation(int program, int index, String name);
+
+    void glBindBuffer(int target, int buffer);
+
+    void glBindFramebuffer(int target, int framebuffer);
+
+    void glBindRenderbuffer(int target, int renderbuffer);
+
+    void glBindTexture(int target, int texture);
+
+    void glBindVertexArray(int array);
+
+    void glBlendFunc(int sfactor, int dfactor);
+
+    void glBufferData(int target, int size, Buffer data, int usage);
+
+    void glBufferSubData(int target, int offset, int size, Buffer data);
+
+    int glCheckFramebufferStatus(int target);
+
+    void glClear(int mask);
+
+    void glClearColor(float red, float green, float blue, float alpha);
+
+    int glClientWaitSync(long sync, int flags, long timeout);
+
+    void glCompileShader(int shader);
+
+    void glCompressedTexImage2D(int target, int level, int internalformat, int width, int height, int border, int imageSize, Buffer data);
+
+    int glCreateProgram();
+
+    int glCreateShader(int type);
+
+    void glDeleteBuffers(int n, int[] buffers, int offset);
+
+    void glDeleteFramebuffers(int n, int[] framebuffers, int offset);
+
+    void glDeleteProgram(int program);
+
+    void glDeleteQueries(int n, int[] ids, int offset);
+
+    void glDeleteRenderbuffers(int n, int[] renderbuffers, int offset);
+
+    void glDeleteShader(int shader);
+
+    void glDeleteSync(long sync);
+
+    void glDeleteTextures(int n, int[] textures, int offset);
+
+    void glDeleteVertexArrays(int n, int[] arrays, int offset);
+
+    void glDepthFunc(int func);
+
+    void glDepthMask(boolean flag);
+
+    void glDisable(int cap);
+
+    void glDisableVertexAttribArray(int index);
+
+    void glDrawElements(int mode, int count, int type, int offset);
+
+    void glDrawElementsInstanced(int mode, int count, int type, int offset, int instanceCount);
+
+    void glEnable(int cap);
+
+    void glEnableVertexAttribArray(int index);
+
+    void glEndQuery(int target);
+
+    long glFenceSync(int condition, int flags);
+
+    void glFinish();
+
+    void glFramebufferRenderbuffer(int target, int attachment, int renderbuffertarget, int renderbuffer);
+
+    void glFramebufferTexture2D(int target, int attachment, int textarget, int texture, int level);
+
+    void glGenBuffers(int n, int[] buffers, int offset);
+
+    void glGenFramebuffers(int n, int[] framebuffers, int offset);
+
+    void glGenQueries(int n, int[] ids, int offset);
+
+    void glGenRenderbuffers(int n, int[] renderbuffers, int offset);
+
+    void glGenTextures(int n, int[] textures, int offset);
+
+    void glGenVertexArrays(int n, int[] arrays, int offset);
+
+    void glGenerateMipmap(int target);
+
+    int glGetAttribLocation(int program, String name);
+
+    void glGetFloatv(int pname, float[] params, int offset);
+
+    void glGetIntegerv(int pname, int[] params, int offset);
+
+    void glGetProgramBinary(int program, int bufSize, int[] length, int lengthOffset, int[] binaryFormat, int binaryFormatOffset, Buffer binary);
+
+    void glGetProgramiv(int program, int pname, int[] params, int offset);
+
+    void glGetQueryObjectuiv(int id, int pname, int[] params, int offset);
+
+    void glGetShaderiv(int shader, int pname, int[] params, int offset);
+
+    String glGetString(int name);
+
+    int glGetUniformLocation(int program, String name);
+
+    void glLinkProgram(int program);
+
+    void glProgramBinary(int program, int binaryFormat, Buffer binary, int length);
+
+    void glProgramParameteri(int program, int pname, int value);
+
+    void glRenderbufferStorage(int target, int internalformat, int width, int height);
+
+    void glShaderSource(int shader, String source);
+
+    void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format, int type, Buffer pixels);
+
+    void glTexParameterf(int target, int pname, float param);
+
+    void glTexParameteri(int target, int pname, int param);
+
+    void glUniform1i(int location, int x);
+
+    void glUniform3fv(int location, int count, float[] v, int offset);
+
+    void glUniform4fv(int location, int count, float[] v, int offset);
+
+    void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset);
+
+    void glUseProgram(int program);
+
+    void glVertexAttrib4f(int index, float x, float y, float z, float w);
+
+    void glVertexAttribDivisor(int index, int divisor);
+
+    void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset);
+
+    void glViewport(int x, int y, int width, int height);
+
+    /**
+     * Uploads a bitmap like GLUtils.texImage2D.
+     */
+    void texImage2D(int target, int level, Bitmap bitmap, int border);
+}
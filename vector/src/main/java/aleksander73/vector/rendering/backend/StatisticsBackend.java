@@ -0,0 +1,428 @@
+package aleksander73.vector.rendering.backend;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+
+import java.nio.Buffer;
+
+import aleksander73.vector.rendering.RenderStatistics;
+
+/**
+ * Forwards every call to another backend and counts the work it submits into RenderStatistics.
+ */
+public class StatisticsBackend implements RenderBackend {
+    private final RenderBackend backend;
+    private final RenderStatistics statistics;
+
+    public StatisticsBackend(RenderBackend backend, RenderStatistics statistics) {
+        this.backend = backend;
+        this.statistics = statistics;
+    }
+
+    private static int triangles(int mode, int count) {
+        return (mode == GLES20.GL_TRIANGLES) ? count / 3 : Math.max(0, count - 2);
+    }
+
+    @Override
+    public void glActiveTexture(int texture) {
+        backend.glActiveTexture(texture);
+    }
+
+    @Override
+    public void glAttachShader(int program, int shader) {
+        backend.glAttachShader(program, shader);
+    }
+
+    @Override
+    public void glBeginQuery(int target, int id) {
+        backend.glBeginQuery(target, id);
+    }
+
+    @Override
+    public void glBindAttribLocation(int program, int index, String name) {
+        backend.glBindAttribLocation(program, index, name);
+    }
+
+    @Override
+    public void glBindBuffer(int target, int buffer) {
+        if(buffer != 0) {
+            statistics.bufferBind();
+        }
+        backend.glBindBuffer(target, buffer);
+    }
+
+    @Override
+    public void glBindFramebuffer(int target, int framebuffer) {
+        backend.glBindFramebuffer(target, framebuffer);
+    }
+
+    @Override
+    public void glBindRenderbuffer(int target, int renderbuffer) {
+        backend.glBindRenderbuffer(target, renderbuffer);
+    }
+
+    @Override
+    public void glBindTexture(int target, int texture) {
+        if(texture != 0) {
+            statistics.textureBind();
+        }
+        backend.glBindTexture(target, texture);
+    }
+
+    @Override
+    public void glBindVertexArray(int array) {
+        backend.glBindVertexArray(array);
+    }
+
+    @Override
+    public void glBlendFunc(int sfactor, int dfactor) {
+        backend.glBlendFunc(sfactor, dfactor);
+    }
+
+    @Override
+    public void glBufferData(int target, int size, Buffer data, int usage) {
+        if(data != null) {
+            statistics.upload(size);
+        }
+        backend.glBufferData(target, size, data, usage);
+    }
+
+    @Override
+    public void glBufferSubData(int target, int offset, int size, Buffer data) {
+        statistics.upload(size);
+        backend.glBufferSubData(target, offset, size, data);
+    }
+
+    @Override
+    public int glCheckFramebufferStatus(int target) {
+        return backend.glCheckFramebufferStatus(target);
+    }
+
+    @Override
+    public void glClear(int mask) {
+        backend.glClear(mask);
+    }
+
+    @Override
+    public void glClearColor(float red, float green, float blue, float alpha) {
+        backend.glClearColor(red, green, blue, alpha);
+    }
+
+    @Override
+    public int glClientWaitSync(long sync, int flags, long timeout) {
+        return backend.glClientWaitSync(sync, flags, timeout);
+    }
+
+    @Override
+    public void glCompileShader(int shader) {
+        backend.glCompileShader(shader);
+    }
+
+    @Override
+    public void glCompressedTexImage2D(int target, int level, int internalformat, int width, int height, int border, int imageSize, Buffer data) {
+        statistics.upload(imageSize);
+        backend.glCompressedTexImage2D(target, level, internalformat, width, height, border, imageSize, data);
+    }
+
+    @Override
+    public int glCreateProgram() {
+        return backend.glCreateProgram();
+    }
+
+    @Override
+    public int glCreateShader(int type) {
+        return backend.glCreateShader(type);
+    }
+
+    @Override
+    public void glDeleteBuffers(int n, int[] buffers, int offset) {
+        backend.glDeleteBuffers(n, buffers, offset);
+    }
+
+    @Override
+    public void glDeleteFramebuffers(int n, int[] framebuffers, int offset) {
+        backend.glDeleteFramebuffers(n, framebuffers, offset);
+    }
+
+    @Override
+    public void glDeleteProgram(int program) {
+        backend.glDeleteProgram(program);
+    }
+
+    @Override
+    public void glDeleteQueries(int n, int[] ids, int offset) {
+        backend.glDeleteQueries(n, ids, offset);
+    }
+
+    @Override
+    public void glDeleteRenderbuffers(int n, int[] renderbuffers, int offset) {
+        backend.glDeleteRenderbuffers(n, renderbuffers, offset);
+    }
+
+    @Override
+    public void glDeleteShader(int shader) {
+        backend.glDeleteShader(shader);
+    }
+
+    @Override
+    public void glDeleteSync(long sync) {
+        backend.glDeleteSync(sync);
+    }
+
+    @Override
+    public void glDeleteTextures(int n, int[] textures, int offset) {
+        backend.glDeleteTextures(n, textures, offset);
+    }
+
+    @Override
+    public void glDeleteVertexArrays(int n, int[] arrays, int offset) {
+        backend.glDeleteVertexArrays(n, arrays, offset);
+    }
+
+    @Override
+    public void glDepthFunc(int func) {
+        backend.glDepthFunc(func);
+    }
+
+    @Override
+    public void glDepthMask(boolean flag) {
+        backend.glDepthMask(flag);
+    }
+
+    @Override
+    public void glDisable(int cap) {
+        backend.glDisable(cap);
+    }
+
+    @Override
+    public void glDisableVertexAttribArray(int index) {
+        backend.glDisableVertexAttribArray(index);
+    }
+
+    @Override
+    public void glDrawElements(int mode, int count, int type, int offset) {
+        statistics.drawCall(StatisticsBackend.triangles(mode, count));
+        backend.glDrawElements(mode, count, type, offset);
+    }
+
+    @Override
+    public void glDrawElementsInstanced(int mode, int count, int type, int offset, int instanceCount) {
+        statistics.drawCall(StatisticsBackend.triangles(mode, count) * instanceCount);
+        backend.glDrawElementsInstanced(mode, count, type, offset, instanceCount);
+    }
+
+    @Override
+    public void glEnable(int cap) {
+        backend.glEnable(cap);
+    }
+
+    @Override
+    public void glEnableVertexAttribArray(int index) {
+        backend.glEnableVertexAttribArray(index);
+    }
+
+    @Override
+    public void glEndQuery(int target) {
+        backend.glEndQuery(target);
+    }
+
+    @Override
+    public long glFenceSync(int condition, int flags) {
+        return backend.glFenceSync(condition, flags);
+    }
+
+    @Override
+    public void glFinish() {
+        backend.glFinish();
+    }
+
+    @Override
+    public void glFramebufferRenderbuffer(int target, int attachment, int renderbuffertarget, int renderbuffer) {
+        backend.glFramebufferRenderbuffer(target, attachment, renderbuffertarget, renderbuffer);
+    }
+
+    @Override
+    public void glFramebufferTexture2D(int target, int attachment, int textarget, int texture, int level) {
+        backend.glFramebufferTexture2D(target, attachment, textarget, texture, level);
+    }
+
+    @Override
+    public void glGenBuffers(int n, int[] buffers, int offset) {
+        backend.glGenBuffers(n, buffers, offset);
+    }
+
+    @Override
+    public void glGenFramebuffers(int n, int[] framebuffers, int offset) {
+        backend.glGenFramebuffers(n, framebuffers, offset);
+    }
+
+    @Override
+    public void glGenQueries(int n, int[] ids, int offset) {
+        backend.glGenQueries(n, ids, offset);
+    }
+
+    @Override
+    public void glGenRenderbuffers(int n, int[] renderbuffers, int offset) {
+        backend.glGenRenderbuffers(n, renderbuffers, offset);
+    }
+
+    @Override
+    public void glGenTextures(int n, int[] textures, int offset) {
+        backend.glGenTextures(n, textures, offset);
+    }
+
+    @Override
+    public void glGenVertexArrays(int n, int[] arrays, int offset) {
+        backend.glGenVertexArrays(n, arrays, offset);
+    }
+
+    @Override
+    public void glGenerateMipmap(int target) {
+        backend.glGenerateMipmap(target);
+    }
+
+    @Override
+    public int glGetAttribLocation(int program, String name) {
+        return backend.glGetAttribLocation(program, name);
+    }
+
+    @Override
+    public void glGetFloatv(int pname, float[] params, int offset) {
+        backend.glGetFloatv(pname, params, offset);
+    }
+
+    @Override
+    public void glGetIntegerv(int pname, int[] params, int offset) {
+        backend.glGetIntegerv(pname, params, offset);
+    }
+
+    @Override
+    public void glGetProgramBinary(int program, int bufSize, int[] length, int lengthOffset, int[] binaryFormat, int binaryFormatOffset, Buffer binary) {
+        backend.glGetProgramBinary(program, bufSize, length, lengthOffset, binaryFormat, binaryFormatOffset, binary);
+    }
+
+    @Override
+    public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+        backend.glGetProgramiv(program, pname, params, offset);
+    }
+
+    @Override
+    public void glGetQueryObjectuiv(int id, int pname, int[] params, int offset) {
+        backend.glGetQueryObjectuiv(id, pname, params, offset);
+    }
+
+    @Override
+    public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+        backend.glGetShaderiv(shader, pname, params, offset);
+    }
+
+    @Override
+    public String glGetString(int name) {
+        return backend.glGetString(name);
+    }
+
+    @Override
+    public int glGetUniformLocation(int program, String name) {
+        return backend.glGetUniformLocation(program, name);
+    }
+
+    @Override
+    public void glLinkProgram(int program) {
+        backend.glLinkProgram(program);
+    }
+
+    @Override
+    public void glProgramBinary(int program, int binaryFormat, Buffer binary, int length) {
+        backend.glProgramBinary(program, binaryFormat, binary, length);
+    }
+
+    @Override
+    public void glProgramParameteri(int program, int pname, int value) {
+        backend.glProgramParameteri(program, pname, value);
+    }
+
+    @Override
+    public void glRenderbufferStorage(int target, int internalformat, int width, int height) {
+        backend.glRenderbufferStorage(target, internalformat, width, height);
+    }
+
+    @Override
+    public void glShaderSource(int shader, String source) {
+        backend.glShaderSource(shader, source);
+    }
+
+    @Override
+    public void glTexImage2D(int target, int level, int internalformat, int width, int height, int border, int format, int type, Buffer pixels) {
+        backend.glTexImage2D(target, level, internalformat, width, height, border, format, type, pixels);
+    }
+
+    @Override
+    public void glTexParameterf(int target, int pname, float param) {
+        backend.glTexParameterf(target, pname, param);
+    }
+
+    @Override
+    public void glTexParameteri(int target, int pname, int param) {
+        backend.glTexParameteri(target, pname, param);
+    }
+
+    @Override
+    public void glUniform1i(int location, int x) {
+        statistics.uniformUpload();
+        backend.glUniform1i(location, x);
+    }
+
+    @Override
+    public void glUniform3fv(int location, int count, float[] v, int offset) {
+        statistics.uniformUpload();
+        backend.glUniform3fv(location, count, v, offset);
+    }
+
+    @Override
+    public void glUniform4fv(int location, int count, float[] v, int offset) {
+        statistics.uniformUpload();
+        backend.glUniform4fv(location, count, v, offset);
+    }
+
+    @Override
+    public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+        statistics.uniformUpload();
+        backend.glUniformMatrix4fv(location, count, transpose, value, offset);
+    }
+
+    @Override
+    public void glUseProgram(int program) {
+        statistics.useProgram(program);
+        backend.glUseProgram(program);
+    }
+
+    @Override
+    public void glVertexAttrib4f(int index, float x, float y, float z, float w) {
+        backend.glVertexAttrib4f(index, x, y, z, w);
+    }
+
+    @Override
+    public void glVertexAttribDivisor(int index, int divisor) {
+        backend.glVertexAttribDivisor(index, divisor);
+    }
+
+    @Override
+    public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset) {
+        backend.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+    }
+
+    @Override
+    public void glViewport(int x, int y, int width, int height) {
+        backend.glViewport(x, y, width, height);
+    }
+
+    @Override
+    public void texImage2D(int target, int level, Bitmap bitmap, int border) {
+        statistics.upload((long)bitmap.getRowBytes() * bitmap.getHeight());
+        backend.texImage2D(target, level, bitmap, border);
+    }
+
+    public RenderBackend getBackend() {
+        return backend;
+    }
+}
@@ -0,0 +1,324 @@
+package aleksander73.vector.rendering.batching;
+
+import android.opengl.GLES20;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import aleksander73.vector.core.GameObject;
+import aleksander73.vector.core.Transform;
+import aleksander73.vector.rendering.BufferPool;
+import aleksander73.vector.rendering.FrameAllocator;
+import aleksander73.vector.rendering.GLCapabilities;
+import aleksander73.vector.rendering.GPUResourceRegistry;
+import aleksander73.vector.rendering.RenderingSystem;
+import aleksander73.vector.rendering.RenderingUtility;
+import aleksander73.vector.rendering.Shaders;
+import aleksander73.vector.rendering.backend.RenderBackend;
+import aleksander73.vector.rendering.materials.Material;
+import aleksander73.vector.rendering.materials.Texture;
+import aleksander73.vector.rendering.mesh.DynamicMesh;
+import aleksander73.vector.rendering.mesh.Mesh;
+import aleksander73.vector.rendering.mesh.MeshData;
+import aleksander73.vector.rendering.mesh.VertexAttribute;
+import aleksander73.vector.rendering.renderers.MeshRenderer;
+import aleksander73.vector.rendering.renderers.Renderer;
+import aleksander73.vector.rendering.shaders.InstancedShader;
+import aleksander73.vector.rendering.shaders.PseudoInstancedShader;
+
+/**
+ * Groups the opaque standard-shaded mesh renderers of a frame by mesh and texture and draws every group
+ * large enough with instancing: glDrawElementsInstanced on OpenGL ES 3.0 and uniform-array pseudo-instancing
+ * on OpenGL ES 2.0. Groups too small to be worth it are left to the caller, so they keep their place in the draw order.
+ * Must only be used on the OpenGL thread.
+ */
+public class InstanceBatcher {
+    private static final int MIN_INSTANCES = 4;
+
+    private final Map<Mesh, List<InstanceGroup>> groups = new LinkedHashMap<>();
+    private final Map<Mesh, ReplicatedMesh> replicatedMeshes = new WeakHashMap<>();
+    // Keeps the replicas reachable until their mesh has been collected and their buffers deleted
+    private final Set<ReplicatedMesh> replicas = new HashSet<>();
+    private final ReferenceQueue<Mesh> collectedMeshes = new ReferenceQueue<>();
+    private boolean enabled = true;
+
+    private int instanceBuffer;
+    private int generation = GPUResourceRegistry.getGeneration();
+    private final FrameAllocator frameAllocator;
+    private final float[] modelMatrices = new float[PseudoInstancedShader.MAX_INSTANCES * 16];
+    private final float[] colours = new float[PseudoInstancedShader.MAX_INSTANCES * 4];
+
+    /**
+     * @param frameAllocator - provides the staging memory for the instance attributes of each frame
+     */
+    public InstanceBatcher(FrameAllocator frameAllocator) {
+        this.frameAllocator = frameAllocator;
+    }
+
+    /**
+     * Adds the renderer to its instance group if it can be instanced. Every renderer of a pass has to be added before the first is submitted.
+     */
+    public void add(Renderer renderer) {
+        InstanceGroup group = this.findGroup(renderer, true);
+        if(group != null) {
+            group.renderers.add((MeshRenderer)renderer);
+        }
+    }
+
+    /**
+     * Returns false if the renderer isn't drawn instanced and has to be rendered by the caller.
+     * A group is drawn when its first renderer is submitted, so it takes the place of its frontmost member in a sorted pass.
+     */
+    public boolean submit(Renderer renderer) {
+        InstanceGroup group = this.findGroup(renderer, false);
+        if(group == null || group.renderers.size() < MIN_INSTANCES) {
+            return false;
+        }
+        if(!group.drawn) {
+            group.drawn = true;
+            this.prepareBuffers();
+            if(GLCapabilities.isGLES3()) {
+                this.drawInstanced(group);
+            } else {
+                this.drawPseudoInstanced(group);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Forgets the groups of the pass.
+     */
+    public void flush() {
+        groups.clear();
+    }
+
+    private InstanceGroup findGroup(Renderer renderer, boolean create) {
+        if(!enabled || renderer.getClass() != MeshRenderer.class) {
+            return null;
+        }
+        GameObject go = renderer.getGameObject();
+        Material material = go.getComponent(Material.class);
+        if(material == null || material.getShader() != Shaders.getStandardShader() || material.getColour().getAlpha() != 255) {
+            return null;
+        }
+
+        Mesh mesh = ((MeshRenderer)renderer).getMesh();
+        if(mesh.getChunkCount() > 1 || mesh instanceof DynamicMesh) {
+            return null;
+        }
+        List<InstanceGroup> meshGroups = groups.get(mesh);
+        if(meshGroups == null) {
+            if(!create) {
+                return null;
+            }
+            meshGroups = new ArrayList<>();
+            groups.put(mesh, meshGroups);
+        }
+        for(InstanceGroup meshGroup : meshGroups) {
+            if(meshGroup.texture == material.getTexture()) {
+                return meshGroup;
+            }
+        }
+        if(!create) {
+            return null;
+        }
+        InstanceGroup group = new InstanceGroup(mesh, material.getTexture());
+        meshGroups.add(group);
+        return group;
+    }
+
+    /**
+     * Forgets the buffers of a lost context and deletes the replicas of meshes that have been garbage collected.
+     */
+    private void prepareBuffers() {
+        RenderBackend gl = RenderingSystem.getBackend();
+        if(generation != GPUResourceRegistry.getGeneration()) {
+            // The buffers belonged to the lost context
+            generation = GPUResourceRegistry.getGeneration();
+            instanceBuffer = 0;
+            replicatedMeshes.clear();
+            replicas.clear();
+        }
+        ReplicatedMesh collected;
+        while((collected = (ReplicatedMesh)collectedMeshes.poll()) != null) {
+            if(replicas.remove(collected) && collected.copies > 0) {
+                gl.glDeleteBuffers(2, new int[] { collected.vbo, collected.ibo }, 0);
+            }
+        }
+    }
+
+    private void drawInstanced(InstanceGroup group) {
+        RenderBackend gl = RenderingSystem.getBackend();
+        int count = group.renderers.size();
+        int size = count * InstancedShader.INSTANCE_STRIDE;
+        ByteBuffer instanceData = frameAllocator.allocate(size);
+        for(MeshRenderer renderer : group.renderers) {
+            GameObject go = renderer.getGameObject();
+            float[] m = go.getComponent(Transform.class).modelMatrix().getValues();
+            for(int column = 0; column < 4; column++) {
+                for(int row = 0; row < 4; row++) {
+                    instanceData.putFloat(m[row * 4 + column]);
+                }
+            }
+            go.getComponent(Material.class).getColour().normalize(colours, 0);
+            for(int c = 0; c < 4; c++) {
+                instanceData.put((byte)Math.round(colours[c] * 255.0f));
+            }
+        }
+        instanceData.position(0);
+
+        if(instanceBuffer == 0) {
+            int[] buffers = new int[1];
+            gl.glGenBuffers(1, buffers, 0);
+            instanceBuffer = buffers[0];
+        }
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, instanceBuffer);
+        gl.glBufferData(GLES20.GL_ARRAY_BUFFER, size, instanceData, GLES20.GL_STREAM_DRAW);
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+
+        InstancedShader shader = Shaders.getInstancedShader();
+        shader.setInstances(group.mesh, group.texture, instanceBuffer);
+        shader.use();
+        shader.passUniforms();
+        shader.enableAttributes();
+        shader.passAttributes();
+
+        gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, group.mesh.getIBO());
+        gl.glDrawElementsInstanced(GLES20.GL_TRIANGLES, group.mesh.getIndexCount(), group.mesh.getIndexType(), 0, count);
+        gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+
+        shader.disableAttributes();
+    }
+
+    private void drawPseudoInstanced(InstanceGroup group) {
+        RenderBackend gl = RenderingSystem.getBackend();
+        ReplicatedMesh replicated = replicatedMeshes.get(group.mesh);
+        if(replicated == null) {
+            replicated = new ReplicatedMesh(group.mesh, collectedMeshes);
+            replicatedMeshes.put(group.mesh, replicated);
+            replicas.add(replicated);
+        }
+        if(replicated.copies == 0) {
+            for(MeshRenderer renderer : group.renderers) {
+                renderer.render();
+            }
+            return;
+        }
+
+        PseudoInstancedShader shader = Shaders.getPseudoInstancedShader();
+        shader.setReplicatedMesh(replicated.vbo, group.texture);
+        shader.use();
+        shader.passUniforms();
+        shader.enableAttributes();
+        shader.passAttributes();
+        gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, replicated.ibo);
+
+        int indicesPerCopy = group.mesh.getIndexCount();
+        List<MeshRenderer> renderers = group.renderers;
+        for(int start = 0; start < renderers.size(); start += replicated.copies) {
+            int count = Math.min(replicated.copies, renderers.size() - start);
+            for(int i = 0; i < count; i++) {
+                GameObject go = renderers.get(start + i).getGameObject();
+                float[] m = go.getComponent(Transform.class).modelMatrix().getValues();
+                for(int column = 0; column < 4; column++) {
+                    for(int row = 0; row < 4; row++) {
+                        modelMatrices[i * 16 + column * 4 + row] = m[row * 4 + column];
+                    }
+                }
+                go.getComponent(Material.class).getColour().normalize(colours, i * 4);
+            }
+            shader.passInstances(modelMatrices, colours, count);
+            gl.glDrawElements(GLES20.GL_TRIANGLES, count * indicesPerCopy, GLES20.GL_UNSIGNED_SHORT, 0);
+        }
+
+        gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+        shader.disableAttributes();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    // --------------------------------------------------
+
+    private static class InstanceGroup {
+        private final Mesh mesh;
+        private final Texture texture;
+        private final List<MeshRenderer> renderers = new ArrayList<>();
+        private boolean drawn;
+
+        public InstanceGroup(Mesh mesh, Texture texture) {
+            this.mesh = mesh;
+            this.texture = texture;
+        }
+    }
+
+    /**
+     * Refers to its mesh weakly, so it is enqueued once the mesh has been collected.
+     */
+    private static class ReplicatedMesh extends WeakReference<Mesh> {
+        private final int copies;
+        private int vbo;
+        private int ibo;
+
+        public ReplicatedMesh(Mesh mesh, ReferenceQueue<Mesh> queue) {
+            super(mesh, queue);
+            RenderBackend gl = RenderingSystem.getBackend();
+            MeshData data = mesh.getData();
+            int vertexCount = data.getVertexCount();
+            int[] indices = data.getIndices();
+            float[] positions = data.getAttribute(VertexAttribute.POSITION);
+            float[] textureCoords = data.getAttribute(VertexAttribute.TEXTURE_COORD);
+            // Indices are stored as unsigned shorts
+            copies = Math.min(PseudoInstancedShader.MAX_INSTANCES, 65536 / Math.max(1, vertexCount));
+            if(copies == 0) {
+                return;
+            }
+
+            BufferPool pool = RenderingSystem.getBufferPool();
+            ByteBuffer vertexData = pool.acquire(copies * vertexCount * PseudoInstancedShader.VERTEX_ELEMENTS * RenderingUtility.BYTES_PER_FLOAT);
+            ByteBuffer indicesData = pool.acquire(copies * indices.length * RenderingUtility.BYTES_PER_SHORT);
+            for(int copy = 0; copy < copies; copy++) {
+                for(int vertex = 0; vertex < vertexCount; vertex++) {
+                    vertexData.putFloat(positions[vertex * 3]);
+                    vertexData.putFloat(positions[vertex * 3 + 1]);
+                    vertexData.putFloat(positions[vertex * 3 + 2]);
+                    vertexData.putFloat((textureCoords != null) ? textureCoords[vertex * 2] : 0.0f);
+                    vertexData.putFloat((textureCoords != null) ? textureCoords[vertex * 2 + 1] : 0.0f);
+                    vertexData.putFloat(copy);
+                }
+                for(int index : indices) {
+                    indicesData.putShort((short)(copy * vertexCount + index));
+                }
+            }
+            vertexData.position(0);
+            indicesData.position(0);
+
+            int[] buffers = new int[2];
+            gl.glGenBuffers(2, buffers, 0);
+            vbo = buffers[0];
+            ibo = buffers[1];
+            gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
+            gl.glBufferData(GLES20.GL_ARRAY_BUFFER, vertexData.limit(), vertexData, GLES20.GL_STATIC_DRAW);
+            gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+            gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, ibo);
+            gl.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, indicesData.limit(), indicesData, GLES20.GL_STATIC_DRAW);
+            gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+            pool.release(vertexData);
+            pool.release(indicesData);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package aleksander73.vector.rendering.batching;
+
+import android.opengl.GLES20;
+
+import java.nio.ByteBuffer;
+
+import aleksander73.vector.rendering.BufferPool;
+import aleksander73.vector.rendering.FrameAllocator;
+import aleksander73.vector.rendering.GLCapabilities;
+import aleksander73.vector.rendering.GPUResourceRegistry;
+import aleksander73.vector.rendering.RenderingSystem;
+import aleksander73.vector.rendering.RenderingUtility;
+import aleksander73.vector.rendering.Shaders;
+import aleksander73.vector.rendering.backend.RenderBackend;
+import aleksander73.vector.rendering.materials.Texture;
+import aleksander73.vector.rendering.shaders.ParticleShader;
+
+/**
+ * Draws the particles of an emitter, laid out as ParticleShader instances, in one draw call.
+ * On OpenGL ES 3.0 the instances are uploaded as they are and drawn instanced; on OpenGL ES 2.0
+ * each is expanded into four vertices, in draws of at most 16384 particles as indices are unsigned shorts.
+ * Must only be used on the OpenGL thread.
+ */
+public class ParticleBatch {
+    private static final int VERTICES_PER_PARTICLE = 4;
+    private static final int INDICES_PER_PARTICLE = 6;
+    private static final int MAX_EXPANDED = 65536 / VERTICES_PER_PARTICLE;
+    private static final int INSTANCE_INTS = ParticleShader.INSTANCE_STRIDE / 4;
+    private static final int VERTEX_INTS = ParticleShader.VERTEX_STRIDE / 4;
+
+    private static final float[] CORNERS = new float[] { -0.5f, -0.5f, 0.5f, -0.5f, 0.5f, 0.5f, -0.5f, 0.5f };
+    private static final int[] CORNER_BITS = new int[CORNERS.length];
+    static {
+        for(int i = 0; i < CORNERS.length; i++) {
+            CORNER_BITS[i] = Float.floatToRawIntBits(CORNERS[i]);
+        }
+    }
+
+    private final FrameAllocator frameAllocator;
+    private int vbo;
+    private int ibo;
+    private int cornerBuffer;
+    private int indexedQuads;
+    private int generation = GPUResourceRegistry.getGeneration();
+    private int[] expanded = new int[0];
+
+    /**
+     * @param frameAllocator - provides the staging memory for the particles of each frame
+     */
+    public ParticleBatch(FrameAllocator frameAllocator) {
+        this.frameAllocator = frameAllocator;
+    }
+
+    /**
+     * @param instances - INSTANCE_STRIDE bytes per particle, as ints in native byte order
+     */
+    public void draw(int[] instances, int count, Texture texture) {
+        if(count == 0) {
+            return;
+        }
+        if(generation != GPUResourceRegistry.getGeneration()) {
+            // The buffers belonged to the lost context
+            generation = GPUResourceRegistry.getGeneration();
+            vbo = 0;
+        }
+        if(vbo == 0) {
+            this.createBuffers();
+        }
+        // The capabilities can change with a new context, so the index buffer is sized for the path taken now
+        boolean instanced = GLCapabilities.isGLES3();
+        int quads = instanced ? 1 : MAX_EXPANDED;
+        if(indexedQuads < quads) {
+            this.fillIndices(quads);
+        }
+        ParticleShader shader = Shaders.getParticleShader();
+        shader.setTexture(texture);
+        shader.use();
+        shader.passUniforms();
+        if(instanced) {
+            this.drawInstanced(shader, instances, count);
+        } else {
+            for(int start = 0; start < count; start += MAX_EXPANDED) {
+                this.drawExpanded(shader, instances, start, Math.min(count, start + MAX_EXPANDED));
+            }
+        }
+    }
+
+    private void drawInstanced(ParticleShader shader, int[] instances, int count) {
+        RenderBackend gl = RenderingSystem.getBackend();
+        int size = count * ParticleShader.INSTANCE_STRIDE;
+        ByteBuffer data = frameAllocator.allocate(size);
+        data.asIntBuffer().put(instances, 0, count * INSTANCE_INTS);
+        // Re-specifying the whole store every frame lets the driver orphan the buffer still in use by the GPU
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
+        gl.glBufferData(GLES20.GL_ARRAY_BUFFER, size, data, GLES20.GL_STREAM_DRAW);
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+
+        shader.setInstances(vbo, cornerBuffer);
+        shader.enableAttributes();
+        shader.passAttributes();
+        gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, ibo);
+        gl.glDrawElementsInstanced(GLES20.GL_TRIANGLES, INDICES_PER_PARTICLE, GLES20.GL_UNSIGNED_SHORT, 0, count);
+        gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+        shader.disableAttributes();
+    }
+
+    private void drawExpanded(ParticleShader shader, int[] instances, int start, int end) {
+        RenderBackend gl = RenderingSystem.getBackend();
+        int count = end - start;
+        int ints = count * VERTICES_PER_PARTICLE * VERTEX_INTS;
+        if(expanded.length < ints) {
+            expanded = new int[ints];
+        }
+        int v = 0;
+        for(int p = start; p < end; p++) {
+            int instance = p * INSTANCE_INTS;
+            for(int corner = 0; corner < VERTICES_PER_PARTICLE; corner++) {
+                System.arraycopy(instances, instance, expanded, v, INSTANCE_INTS);
+                expanded[v + INSTANCE_INTS] = CORNER_BITS[corner * 2];
+                expanded[v + INSTANCE_INTS + 1] = CORNER_BITS[corner * 2 + 1];
+                v += VERTEX_INTS;
+            }
+        }
+        ByteBuffer data = frameAllocator.allocate(ints * 4);
+        data.asIntBuffer().put(expanded, 0, ints);
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
+        gl.glBufferData(GLES20.GL_ARRAY_BUFFER, ints * 4, data, GLES20.GL_STREAM_DRAW);
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+
+        shader.setVertices(vbo, 0);
+        shader.enableAttributes();
+        shader.passAttributes();
+        gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, ibo);
+        gl.glDrawElements(GLES20.GL_TRIANGLES, count * INDICES_PER_PARTICLE, GLES20.GL_UNSIGNED_SHORT, 0);
+        gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+        shader.disableAttributes();
+    }
+
+    private void createBuffers() {
+        RenderBackend gl = RenderingSystem.getBackend();
+        int[] buffers = new int[3];
+        gl.glGenBuffers(3, buffers, 0);
+        vbo = buffers[0];
+        ibo = buffers[1];
+        cornerBuffer = buffers[2];
+        indexedQuads = 0;
+
+        BufferPool pool = RenderingSystem.getBufferPool();
+        ByteBuffer corners = pool.acquire(CORNERS);
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, cornerBuffer);
+        gl.glBufferData(GLES20.GL_ARRAY_BUFFER, corners.limit(), corners, GLES20.GL_STATIC_DRAW);
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        pool.release(corners);
+    }
+
+    /**
+     * Instanced draws only use the first quad of the index buffer, expanded draws up to MAX_EXPANDED quads.
+     */
+    private void fillIndices(int quads) {
+        RenderBackend gl = RenderingSystem.getBackend();
+        BufferPool pool = RenderingSystem.getBufferPool();
+        ByteBuffer indices = pool.acquire(quads * INDICES_PER_PARTICLE * RenderingUtility.BYTES_PER_SHORT);
+        for(int i = 0; i < quads; i++) {
+            int v = i * VERTICES_PER_PARTICLE;
+            indices.putShort((short)v);
+            indices.putShort((short)(v + 1));
+            indices.putShort((short)(v + 2));
+            indices.putShort((short)v);
+            indices.putShort((short)(v + 2));
+            indices.putShort((short)(v + 3));
+        }
+        indices.position(0);
+        gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, ibo);
+        gl.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, indices.limit(), indices, GLES20.GL_STATIC_DRAW);
+        gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+        pool.release(indices);
+        indexedQuads = quads;
+    }
+}
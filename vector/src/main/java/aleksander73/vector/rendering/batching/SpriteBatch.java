@@ -0,0 +1,255 @@
+package aleksander73.vector.rendering.batching;
+
+import android.opengl.GLES20;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import aleksander73.vector.rendering.BufferPool;
+import aleksander73.vector.rendering.FrameAllocator;
+import aleksander73.vector.rendering.GPUResourceRegistry;
+import aleksander73.vector.rendering.RenderingSystem;
+import aleksander73.vector.rendering.RenderingUtility;
+import aleksander73.vector.rendering.Shaders;
+import aleksander73.vector.rendering.backend.RenderBackend;
+import aleksander73.vector.rendering.materials.Colour;
+import aleksander73.vector.rendering.materials.Texture;
+import aleksander73.vector.rendering.shaders.SpriteShader;
+import aleksander73.math.linear_algebra.Matrix;
+
+/**
+ * Collects textured quads during a frame and draws them with as few draw calls as possible.
+ * Quads are transformed on the CPU and streamed into a single vertex buffer, so a draw call
+ * is only issued when the GL texture or the shader changes between consecutive quads. Atlas regions of the same page
+ * are therefore drawn together.
+ * Must only be used on the OpenGL thread.
+ */
+public class SpriteBatch {
+    private static final int VERTICES_PER_SPRITE = 4;
+    private static final int INDICES_PER_SPRITE = 6;
+    // Indices are stored as unsigned shorts
+    private static final int MAX_SPRITES = 65536 / VERTICES_PER_SPRITE;
+
+    private static final float[][] CORNERS = new float[][] {
+        { -0.5f, -0.5f, 0.0f, 1.0f },
+        { -0.5f, 0.5f, 0.0f, 0.0f },
+        { 0.5f, 0.5f, 1.0f, 0.0f },
+        { 0.5f, -0.5f, 1.0f, 1.0f }
+    };
+
+    private final List<Sprite> pool = new ArrayList<>();
+    private final List<Sprite> sprites = new ArrayList<>();
+    private final Comparator<Sprite> byLayer = new Comparator<Sprite>() {
+        @Override
+        public int compare(Sprite s1, Sprite s2) {
+            return s1.layer < s2.layer ? -1 : (s1.layer == s2.layer ? 0 : 1);
+        }
+    };
+
+    private int vbo;
+    private int ibo;
+    private int indexCapacity;
+    private int generation = GPUResourceRegistry.getGeneration();
+    private final FrameAllocator frameAllocator;
+    private int drawCalls;
+
+    /**
+     * @param frameAllocator - provides the staging memory for the vertices of each frame
+     */
+    public SpriteBatch(FrameAllocator frameAllocator) {
+        this.frameAllocator = frameAllocator;
+    }
+
+    public void submit(Matrix modelMatrix, float width, float height, Colour colour, Texture texture, int layer) {
+        this.submit(modelMatrix, width, height, colour, texture, layer, Shaders.getSpriteShader());
+    }
+
+    /**
+     * @param shader - takes the vertex layout of SpriteShader; changing shaders between consecutive quads costs a draw call
+     */
+    public void submit(Matrix modelMatrix, float width, float height, Colour colour, Texture texture, int layer, SpriteShader shader) {
+        Sprite sprite = this.obtain(colour, texture, layer, shader);
+        float[] m = modelMatrix.getValues();
+        for(int i = 0; i < VERTICES_PER_SPRITE; i++) {
+            float x = CORNERS[i][0] * width;
+            float y = CORNERS[i][1] * height;
+            sprite.positions[i * 3] = m[0] * x + m[1] * y + m[3];
+            sprite.positions[i * 3 + 1] = m[4] * x + m[5] * y + m[7];
+            sprite.positions[i * 3 + 2] = m[8] * x + m[9] * y + m[11];
+        }
+        sprites.add(sprite);
+    }
+
+    /**
+     * Submits an axis-aligned quad centred at (x, y), without a model matrix.
+     */
+    public void submit(float x, float y, float width, float height, Colour colour, Texture texture, int layer, SpriteShader shader) {
+        Sprite sprite = this.obtain(colour, texture, layer, shader);
+        for(int i = 0; i < VERTICES_PER_SPRITE; i++) {
+            sprite.positions[i * 3] = x + CORNERS[i][0] * width;
+            sprite.positions[i * 3 + 1] = y + CORNERS[i][1] * height;
+            sprite.positions[i * 3 + 2] = 0.0f;
+        }
+        sprites.add(sprite);
+    }
+
+    private Sprite obtain(Colour colour, Texture texture, int layer, SpriteShader shader) {
+        if(sprites.size() == pool.size()) {
+            pool.add(new Sprite());
+        }
+        Sprite sprite = pool.get(sprites.size());
+        sprite.texture = texture;
+        sprite.shader = shader;
+        sprite.layer = layer;
+        colour.normalize(sprite.colour, 0);
+        return sprite;
+    }
+
+    /**
+     * Draws all sprites submitted since the previous flush, ordered by layer.
+     * Sprites on the same layer keep their submission order.
+     */
+    public void flush() {
+        RenderBackend gl = RenderingSystem.getBackend();
+        drawCalls = 0;
+        if(sprites.isEmpty()) {
+            return;
+        }
+        if(generation != GPUResourceRegistry.getGeneration()) {
+            // The buffers belonged to the lost context
+            generation = GPUResourceRegistry.getGeneration();
+            vbo = 0;
+            ibo = 0;
+            indexCapacity = 0;
+        }
+        if(vbo == 0) {
+            int[] buffers = new int[2];
+            gl.glGenBuffers(2, buffers, 0);
+            vbo = buffers[0];
+            ibo = buffers[1];
+        }
+        Collections.sort(sprites, byLayer);
+
+        for(int start = 0; start < sprites.size(); start += MAX_SPRITES) {
+            int end = Math.min(sprites.size(), start + MAX_SPRITES);
+            this.drawSegment(start, end);
+        }
+
+        for(Sprite sprite : sprites) {
+            sprite.texture = null;
+            sprite.shader = null;
+        }
+        sprites.clear();
+    }
+
+    private void drawSegment(int start, int end) {
+        RenderBackend gl = RenderingSystem.getBackend();
+        int count = end - start;
+        this.ensureIndexCapacity(count);
+        this.uploadVertices(start, end);
+        gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, ibo);
+
+        SpriteShader shader = null;
+        int runStart = start;
+        for(int i = start + 1; i <= end; i++) {
+            Sprite first = sprites.get(runStart);
+            if(i == end || sprites.get(i).texture.getId() != first.texture.getId() || sprites.get(i).shader != first.shader) {
+                if(first.shader != shader) {
+                    if(shader != null) {
+                        shader.disableAttributes();
+                    }
+                    shader = first.shader;
+                    shader.use();
+                    shader.setVertexBuffer(vbo);
+                    shader.enableAttributes();
+                    shader.passAttributes();
+                }
+                shader.setTexture(first.texture);
+                shader.passUniforms();
+                int firstIndex = (runStart - start) * INDICES_PER_SPRITE;
+                gl.glDrawElements(GLES20.GL_TRIANGLES, (i - runStart) * INDICES_PER_SPRITE, GLES20.GL_UNSIGNED_SHORT, firstIndex * RenderingUtility.BYTES_PER_SHORT);
+                drawCalls++;
+                runStart = i;
+            }
+        }
+
+        gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+        shader.disableAttributes();
+    }
+
+    private void uploadVertices(int start, int end) {
+        RenderBackend gl = RenderingSystem.getBackend();
+        int size = (end - start) * VERTICES_PER_SPRITE * SpriteShader.STRIDE;
+        ByteBuffer vertexData = frameAllocator.allocate(size);
+        for(int s = start; s < end; s++) {
+            Sprite sprite = sprites.get(s);
+            float[] region = sprite.texture.getRegion();
+            for(int i = 0; i < VERTICES_PER_SPRITE; i++) {
+                vertexData.putFloat(sprite.positions[i * 3]);
+                vertexData.putFloat(sprite.positions[i * 3 + 1]);
+                vertexData.putFloat(sprite.positions[i * 3 + 2]);
+                vertexData.putFloat(region[0] + CORNERS[i][2] * region[2]);
+                vertexData.putFloat(region[1] + CORNERS[i][3] * region[3]);
+                for(int c = 0; c < 4; c++) {
+                    vertexData.put((byte)Math.round(sprite.colour[c] * 255.0f));
+                }
+            }
+        }
+        vertexData.position(0);
+
+        // Re-specifying the whole store every frame lets the driver orphan the buffer still in use by the GPU
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
+        gl.glBufferData(GLES20.GL_ARRAY_BUFFER, size, vertexData, GLES20.GL_STREAM_DRAW);
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    }
+
+    private void ensureIndexCapacity(int count) {
+        RenderBackend gl = RenderingSystem.getBackend();
+        if(count <= indexCapacity) {
+            return;
+        }
+        int capacity = Math.max(64, indexCapacity);
+        while(capacity < count) {
+            capacity *= 2;
+        }
+        capacity = Math.min(capacity, MAX_SPRITES);
+
+        BufferPool pool = RenderingSystem.getBufferPool();
+        ByteBuffer indices = pool.acquire(capacity * INDICES_PER_SPRITE * RenderingUtility.BYTES_PER_SHORT);
+        for(int i = 0; i < capacity; i++) {
+            int v = i * VERTICES_PER_SPRITE;
+            indices.putShort((short)v);
+            indices.putShort((short)(v + 1));
+            indices.putShort((short)(v + 2));
+            indices.putShort((short)v);
+            indices.putShort((short)(v + 2));
+            indices.putShort((short)(v + 3));
+        }
+        indices.position(0);
+        gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, ibo);
+        gl.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, indices.limit(), indices, GLES20.GL_STATIC_DRAW);
+        gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+        pool.release(indices);
+        indexCapacity = capacity;
+    }
+
+    /**
+     * Returns the number of draw calls issued by the last flush.
+     */
+    public int getDrawCalls() {
+        return drawCalls;
+    }
+
+    // --------------------------------------------------
+
+    private static class Sprite {
+        private final float[] positions = new float[VERTICES_PER_SPRITE * 3];
+        private final float[] colour = new float[4];
+        private Texture texture;
+        private SpriteShader shader;
+        private int layer;
+    }
+}
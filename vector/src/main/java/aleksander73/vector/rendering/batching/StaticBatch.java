@@ -0,0 +1,23 @@
+package aleksander73.vector.rendering.batching;
+
+import aleksander73.vector.core.GameObject;
+import aleksander73.vector.core.Transform;
+import aleksander73.vector.rendering.materials.Material;
+import aleksander73.vector.rendering.mesh.Mesh;
+
+/**
+ * Game object holding the combined, world-space mesh of a group of static game objects.
+ */
+public class StaticBatch extends GameObject {
+    private final int batchedObjects;
+
+    public StaticBatch(String name, Mesh mesh, Material material, int batchedObjects) {
+        super(name);
+        this.batchedObjects = batchedObjects;
+        this.addComponents(new Transform(), mesh, material, new StaticBatchRenderer(mesh));
+    }
+
+    public int getBatchedObjects() {
+        return batchedObjects;
+    }
+}
@@ -0,0 +1,20 @@
+package aleksander73.vector.rendering.batching;
+
+import aleksander73.vector.rendering.Camera;
+import aleksander73.vector.rendering.mesh.Mesh;
+import aleksander73.vector.rendering.renderers.MeshRenderer;
+
+public class StaticBatchRenderer extends MeshRenderer {
+    public StaticBatchRenderer(Mesh mesh) {
+        super(mesh);
+    }
+
+    @Override
+    public void render() {
+        // The batch's mesh is already in world space, so its bounds can be tested against the frustum directly
+        Camera camera = Camera.getActiveCamera();
+        if(camera == null || camera.frustum().intersects(this.getMesh().getBounds())) {
+            super.render();
+        }
+    }
+}
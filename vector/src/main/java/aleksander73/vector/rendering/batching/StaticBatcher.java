@@ -0,0 +1,253 @@
+package aleksander73.vector.rendering.batching;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import aleksander73.vector.core.GameObject;
+import aleksander73.vector.core.Transform;
+import aleksander73.vector.rendering.materials.Colour;
+import aleksander73.vector.rendering.materials.Material;
+import aleksander73.vector.rendering.materials.Texture;
+import aleksander73.vector.rendering.mesh.Bounds;
+import aleksander73.vector.rendering.mesh.DynamicMesh;
+import aleksander73.vector.rendering.mesh.Mesh;
+import aleksander73.vector.rendering.mesh.MeshData;
+import aleksander73.vector.rendering.mesh.VertexAttribute;
+import aleksander73.vector.rendering.renderers.MeshRenderer;
+import aleksander73.vector.rendering.shaders.Shader;
+import aleksander73.vector.scene.Scene;
+import aleksander73.math.linear_algebra.Vector3d;
+
+public class StaticBatcher {
+    // Indices are stored as unsigned shorts
+    private static final int MAX_VERTICES = 65535;
+    private static float cellSize = 50.0f;
+
+    /**
+     * Merges the meshes of the active static game objects which share a material into combined world-space meshes
+     * and adds them to the scene as StaticBatch game objects, deactivating the original renderers.
+     * Batches are split along a grid of cellSize so that each one can be frustum-culled on its own.
+     */
+    public static List<StaticBatch> combine(Scene scene) {
+        Map<MaterialKey, Map<String, List<GameObject>>> groups = new LinkedHashMap<>();
+        for(GameObject gameObject : scene.getGameObjects()) {
+            if(!gameObject.isStatic() || !gameObject.isActive()) {
+                continue;
+            }
+            MeshRenderer renderer = gameObject.getComponent(MeshRenderer.class);
+            Mesh mesh = gameObject.getComponent(Mesh.class);
+            Material material = gameObject.getComponent(Material.class);
+            Transform transform = gameObject.getComponent(Transform.class);
+            if(renderer == null || !renderer.isActive() || mesh == null || material == null || transform == null) {
+                continue;
+            }
+            if(mesh.getVertexCount() > MAX_VERTICES || mesh instanceof DynamicMesh) {
+                continue;
+            }
+
+            MaterialKey key = new MaterialKey(material);
+            Map<String, List<GameObject>> cells = groups.get(key);
+            if(cells == null) {
+                cells = new LinkedHashMap<>();
+                groups.put(key, cells);
+            }
+
+            Vector3d center = mesh.getBounds().transform(transform.modelMatrix().getValues()).getCenter();
+            String cell = (int)Math.floor(center.getX() / cellSize) + ":" + (int)Math.floor(center.getY() / cellSize) + ":" + (int)Math.floor(center.getZ() / cellSize);
+            List<GameObject> cellObjects = cells.get(cell);
+            if(cellObjects == null) {
+                cellObjects = new ArrayList<>();
+                cells.put(cell, cellObjects);
+            }
+            cellObjects.add(gameObject);
+        }
+
+        List<StaticBatch> batches = new ArrayList<>();
+        for(MaterialKey key : groups.keySet()) {
+            for(List<GameObject> cellObjects : groups.get(key).values()) {
+                List<GameObject> chunk = new ArrayList<>();
+                int chunkVertices = 0;
+                for(GameObject gameObject : cellObjects) {
+                    int meshVertices = gameObject.getComponent(Mesh.class).getVertexCount();
+                    if(chunkVertices + meshVertices > MAX_VERTICES) {
+                        batches.add(StaticBatcher.buildBatch(chunk, key, batches.size()));
+                        chunk = new ArrayList<>();
+                        chunkVertices = 0;
+                    }
+                    chunk.add(gameObject);
+                    chunkVertices += meshVertices;
+                }
+                if(!chunk.isEmpty()) {
+                    batches.add(StaticBatcher.buildBatch(chunk, key, batches.size()));
+                }
+            }
+        }
+
+        for(StaticBatch batch : batches) {
+            scene.addGameObject(batch);
+        }
+
+        return batches;
+    }
+
+    private static StaticBatch buildBatch(List<GameObject> gameObjects, MaterialKey key, int index) {
+        int vertexCount = 0;
+        int indexCount = 0;
+        // Only attributes every merged mesh provides can be kept
+        Set<VertexAttribute> attributes = EnumSet.allOf(VertexAttribute.class);
+        for(GameObject gameObject : gameObjects) {
+            MeshData data = gameObject.getComponent(Mesh.class).getData();
+            vertexCount += data.getVertexCount();
+            indexCount += data.getIndexCount();
+            attributes.retainAll(data.getAttributes());
+        }
+
+        int[] indices = new int[indexCount];
+        Map<VertexAttribute, float[]> merged = new EnumMap<>(VertexAttribute.class);
+        for(VertexAttribute attribute : attributes) {
+            merged.put(attribute, new float[vertexCount * attribute.getComponents()]);
+        }
+        int v = 0;
+        int i = 0;
+        for(GameObject gameObject : gameObjects) {
+            MeshData data = gameObject.getComponent(Mesh.class).getData();
+            float[] m = gameObject.getComponent(Transform.class).modelMatrix().getValues();
+            for(VertexAttribute attribute : attributes) {
+                float[] source = data.getAttribute(attribute);
+                float[] target = merged.get(attribute);
+                int offset = v * attribute.getComponents();
+                switch(attribute) {
+                    case POSITION : StaticBatcher.transformPositions(m, source, target, offset); break;
+                    case NORMAL : StaticBatcher.transformNormals(m, source, target, offset); break;
+                    case TANGENT : StaticBatcher.transformTangents(m, source, target, offset); break;
+                    default : System.arraycopy(source, 0, target, offset, source.length); break;
+                }
+            }
+            for(int sourceIndex : data.getIndices()) {
+                indices[i++] = v + sourceIndex;
+            }
+            v += data.getVertexCount();
+
+            gameObject.getComponent(MeshRenderer.class).setActive(false);
+        }
+
+        MeshData data = new MeshData(vertexCount, indices);
+        for(VertexAttribute attribute : merged.keySet()) {
+            data.setAttribute(attribute, merged.get(attribute));
+        }
+        Material material = new Material(new Colour(key.red, key.green, key.blue, key.alpha), key.texture, key.shader);
+        return new StaticBatch("static_batch_" + index, new Mesh(data), material, gameObjects.size());
+    }
+
+    private static void transformPositions(float[] m, float[] source, float[] target, int offset) {
+        for(int s = 0; s < source.length; s += 3) {
+            float x = source[s];
+            float y = source[s + 1];
+            float z = source[s + 2];
+            target[offset + s] = m[0] * x + m[1] * y + m[2] * z + m[3];
+            target[offset + s + 1] = m[4] * x + m[5] * y + m[6] * z + m[7];
+            target[offset + s + 2] = m[8] * x + m[9] * y + m[10] * z + m[11];
+        }
+    }
+
+    /**
+     * Normals are transformed by the cofactor matrix of the upper 3x3 part, which keeps them perpendicular
+     * to the surface under non-uniform scaling.
+     */
+    private static void transformNormals(float[] m, float[] source, float[] target, int offset) {
+        float[] c = new float[] {
+            m[5] * m[10] - m[6] * m[9], m[6] * m[8] - m[4] * m[10], m[4] * m[9] - m[5] * m[8],
+            m[9] * m[2] - m[10] * m[1], m[10] * m[0] - m[8] * m[2], m[8] * m[1] - m[9] * m[0],
+            m[1] * m[6] - m[2] * m[5], m[2] * m[4] - m[0] * m[6], m[0] * m[5] - m[1] * m[4]
+        };
+        float det = m[0] * c[0] + m[1] * c[1] + m[2] * c[2];
+        float sign = (det < 0.0f) ? -1.0f : 1.0f;
+        for(int s = 0; s < source.length; s += 3) {
+            float x = source[s];
+            float y = source[s + 1];
+            float z = source[s + 2];
+            float nx = c[0] * x + c[3] * y + c[6] * z;
+            float ny = c[1] * x + c[4] * y + c[7] * z;
+            float nz = c[2] * x + c[5] * y + c[8] * z;
+            float length = (float)Math.sqrt(nx * nx + ny * ny + nz * nz);
+            float scale = (length > 0.0f) ? sign / length : 0.0f;
+            target[offset + s] = nx * scale;
+            target[offset + s + 1] = ny * scale;
+            target[offset + s + 2] = nz * scale;
+        }
+    }
+
+    private static void transformTangents(float[] m, float[] source, float[] target, int offset) {
+        float det = m[0] * (m[5] * m[10] - m[6] * m[9]) - m[1] * (m[4] * m[10] - m[6] * m[8]) + m[2] * (m[4] * m[9] - m[5] * m[8]);
+        for(int s = 0; s < source.length; s += 4) {
+            float x = source[s];
+            float y = source[s + 1];
+            float z = source[s + 2];
+            float tx = m[0] * x + m[1] * y + m[2] * z;
+            float ty = m[4] * x + m[5] * y + m[6] * z;
+            float tz = m[8] * x + m[9] * y + m[10] * z;
+            float length = (float)Math.sqrt(tx * tx + ty * ty + tz * tz);
+            float scale = (length > 0.0f) ? 1.0f / length : 0.0f;
+            target[offset + s] = tx * scale;
+            target[offset + s + 1] = ty * scale;
+            target[offset + s + 2] = tz * scale;
+            // Mirroring flips the handedness of the tangent space
+            target[offset + s + 3] = (det < 0.0f) ? -source[s + 3] : source[s + 3];
+        }
+    }
+
+    public static float getCellSize() {
+        return cellSize;
+    }
+
+    public static void setCellSize(float cellSize) {
+        StaticBatcher.cellSize = cellSize;
+    }
+
+    // --------------------------------------------------
+
+    private static class MaterialKey {
+        private final Shader shader;
+        private final Texture texture;
+        private final int red;
+        private final int green;
+        private final int blue;
+        private final int alpha;
+
+        public MaterialKey(Material material) {
+            Colour colour = material.getColour();
+            shader = material.getShader();
+            texture = material.getTexture();
+            red = colour.getRed();
+            green = colour.getGreen();
+            blue = colour.getBlue();
+            alpha = colour.getAlpha();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(!(o instanceof MaterialKey)) {
+                return false;
+            }
+            MaterialKey other = (MaterialKey)o;
+            return shader == other.shader && texture == other.texture
+                    && red == other.red && green == other.green && blue == other.blue && alpha == other.alpha;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = System.identityHashCode(shader);
+            hash = 31 * hash + System.identityHashCode(texture);
+            hash = 31 * hash + red;
+            hash = 31 * hash + green;
+            hash = 31 * hash + blue;
+            hash = 31 * hash + alpha;
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package aleksander73.vector.rendering.culling;
+
+import java.util.Arrays;
+
+/**
+ * Software rasterizer writing occluder triangles into a small depth buffer, against which bounding boxes are tested.
+ * Depth is stored as 1/w, which interpolates linearly in screen space; larger values are nearer and 0 means nothing was drawn.
+ * After the occluders have been drawn, buildHierarchy() reduces the buffer into a hierarchical-Z pyramid
+ * whose texels keep the farthest depth below them, so that a box is tested against only a few texels at any size.
+ * Triangles crossing the near plane are skipped and boxes crossing it are visible, which keeps the test conservative,
+ * except that occluders are sampled at pixel centres: objects peeking out by less than a buffer pixel may be culled.
+ * Pure Java; nothing is allocated while drawing and testing except when a mesh larger than any before is drawn.
+ */
+public class DepthRasterizer {
+    private static final float NEAR_W = 0.001f;
+
+    private final int width;
+    private final int height;
+    private final float[][] levels;
+    private final int[] levelWidths;
+    private final int[] levelHeights;
+    private final float[] viewProjection = new float[16];
+    private final float[] modelViewProjection = new float[16];
+    private float[] screen = new float[0];  // x, y, 1/w per vertex; 1/w < 0 marks vertices behind the near plane
+    private int triangles;
+
+    public DepthRasterizer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        int count = 1;
+        for(int w = width, h = height; w > 1 || h > 1; w = (w + 1) / 2, h = (h + 1) / 2) {
+            count++;
+        }
+        levels = new float[count][];
+        levelWidths = new int[count];
+        levelHeights = new int[count];
+        for(int l = 0, w = width, h = height; l < count; l++, w = (w + 1) / 2, h = (h + 1) / 2) {
+            levels[l] = new float[w * h];
+            levelWidths[l] = w;
+            levelHeights[l] = h;
+        }
+    }
+
+    /**
+     * Clears the buffer and sets the row-major view-projection matrix used by the following draws and tests.
+     */
+    public void begin(float[] viewProjection) {
+        System.arraycopy(viewProjection, 0, this.viewProjection, 0, 16);
+        Arrays.fill(levels[0], 0.0f);
+        triangles = 0;
+    }
+
+    /**
+     * Draws an indexed triangle mesh.
+     * @param positions - x, y, z per vertex in object space
+     * @param model - row-major model matrices, the one used starting at modelOffset
+     */
+    public void drawMesh(float[] positions, int[] indices, float[] model, int modelOffset) {
+        DepthRasterizer.multiply(viewProjection, 0, model, modelOffset, modelViewProjection);
+        float[] m = modelViewProjection;
+        int vertexCount = positions.length / 3;
+        if(screen.length < vertexCount * 3) {
+            screen = new float[vertexCount * 3];
+        }
+        float halfWidth = width * 0.5f;
+        float halfHeight = height * 0.5f;
+        for(int v = 0; v < vertexCount; v++) {
+            float x = positions[v * 3];
+            float y = positions[v * 3 + 1];
+            float z = positions[v * 3 + 2];
+            float cw = m[12] * x + m[13] * y + m[14] * z + m[15];
+            if(cw <= NEAR_W) {
+                screen[v * 3 + 2] = -1.0f;
+                continue;
+            }
+            float iw = 1.0f / cw;
+            screen[v * 3] = ((m[0] * x + m[1] * y + m[2] * z + m[3]) * iw + 1.0f) * halfWidth;
+            screen[v * 3 + 1] = ((m[4] * x + m[5] * y + m[6] * z + m[7]) * iw + 1.0f) * halfHeight;
+            screen[v * 3 + 2] = iw;
+        }
+        for(int i = 0; i + 2 < indices.length; i += 3) {
+            int a = indices[i] * 3;
+            int b = indices[i + 1] * 3;
+            int c = indices[i + 2] * 3;
+            if(screen[a + 2] < 0.0f || screen[b + 2] < 0.0f || screen[c + 2] < 0.0f) {
+                continue;
+            }
+            this.drawTriangle(screen[a], screen[a + 1], screen[a + 2], screen[b], screen[b + 1], screen[b + 2], screen[c], screen[c + 1], screen[c + 2]);
+        }
+    }
+
+    private void drawTriangle(float x0, float y0, float z0, float x1, float y1, float z1, float x2, float y2, float z2) {
+        float area = (x1 - x0) * (y2 - y0) - (y1 - y0) * (x2 - x0);
+        if(area > -1e-6f && area < 1e-6f) {
+            return;
+        }
+        int minX = Math.max(0, (int)Math.floor(Math.min(x0, Math.min(x1, x2))));
+        int maxX = Math.min(width - 1, (int)Math.ceil(Math.max(x0, Math.max(x1, x2))));
+        int minY = Math.max(0, (int)Math.floor(Math.min(y0, Math.min(y1, y2))));
+        int maxY = Math.min(height - 1, (int)Math.ceil(Math.max(y0, Math.max(y1, y2))));
+        if(minX > maxX || minY > maxY) {
+            return;
+        }
+        triangles++;
+
+        // Edge functions, each weighting the vertex opposite its edge; flipped so that the inside is positive for either winding
+        float sign = (area > 0.0f) ? 1.0f : -1.0f;
+        float inverseArea = 1.0f / (area * sign);
+        float a0 = -(y2 - y1) * sign, b0 = (x2 - x1) * sign;
+        float a1 = -(y0 - y2) * sign, b1 = (x0 - x2) * sign;
+        float a2 = -(y1 - y0) * sign, b2 = (x1 - x0) * sign;
+        float dz = (a0 * z0 + a1 * z1 + a2 * z2) * inverseArea;
+
+        float[] depth = levels[0];
+        float px = minX + 0.5f;
+        for(int y = minY; y <= maxY; y++) {
+            float py = y + 0.5f;
+            float e0 = a0 * (px - x1) + b0 * (py - y1);
+            float e1 = a1 * (px - x2) + b1 * (py - y2);
+            float e2 = a2 * (px - x0) + b2 * (py - y0);
+            float z = (e0 * z0 + e1 * z1 + e2 * z2) * inverseArea;
+            int index = y * width + minX;
+            for(int x = minX; x <= maxX; x++) {
+                if(e0 >= 0.0f && e1 >= 0.0f && e2 >= 0.0f && z > depth[index]) {
+                    depth[index] = z;
+                }
+                e0 += a0;
+                e1 += a1;
+                e2 += a2;
+                z += dz;
+                index++;
+            }
+        }
+    }
+
+    /**
+     * Builds the coarser levels from the drawn depth. Must be called after drawing and before testing.
+     */
+    public void buildHierarchy() {
+        for(int l = 1; l < levels.length; l++) {
+            float[] source = levels[l - 1];
+            float[] target = levels[l];
+            int sourceWidth = levelWidths[l - 1];
+            int sourceHeight = levelHeights[l - 1];
+            int targetWidth = levelWidths[l];
+            for(int y = 0; y < levelHeights[l]; y++) {
+                int y0 = y * 2;
+                int y1 = Math.min(y0 + 1, sourceHeight - 1);
+                for(int x = 0; x < targetWidth; x++) {
+                    int x0 = x * 2;
+                    int x1 = Math.min(x0 + 1, sourceWidth - 1);
+                    float farthest = Math.min(
+                        Math.min(source[y0 * sourceWidth + x0], source[y0 * sourceWidth + x1]),
+                        Math.min(source[y1 * sourceWidth + x0], source[y1 * sourceWidth + x1])
+                    );
+                    target[y * targetWidth + x] = farthest;
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests a world-space bounding box against the hierarchy. Boxes outside the screen are reported visible, frustum culling decides those.
+     */
+    public boolean isVisible(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        float[] m = viewProjection;
+        float screenMinX = Float.POSITIVE_INFINITY, screenMaxX = Float.NEGATIVE_INFINITY;
+        float screenMinY = Float.POSITIVE_INFINITY, screenMaxY = Float.NEGATIVE_INFINITY;
+        float nearest = 0.0f;
+        for(int i = 0; i < 8; i++) {
+            float x = ((i & 1) == 0) ? minX : maxX;
+            float y = ((i & 2) == 0) ? minY : maxY;
+            float z = ((i & 4) == 0) ? minZ : maxZ;
+            float cw = m[12] * x + m[13] * y + m[14] * z + m[15];
+            if(cw <= NEAR_W) {
+                return true;
+            }
+            float iw = 1.0f / cw;
+            float sx = ((m[0] * x + m[1] * y + m[2] * z + m[3]) * iw + 1.0f) * width * 0.5f;
+            float sy = ((m[4] * x + m[5] * y + m[6] * z + m[7]) * iw + 1.0f) * height * 0.5f;
+            screenMinX = Math.min(screenMinX, sx);
+            screenMaxX = Math.max(screenMaxX, sx);
+            screenMinY = Math.min(screenMinY, sy);
+            screenMaxY = Math.max(screenMaxY, sy);
+            nearest = Math.max(nearest, iw);
+        }
+        if(screenMaxX < 0.0f || screenMaxY < 0.0f || screenMinX >= width || screenMinY >= height) {
+            return true;
+        }
+        int x0 = Math.max(0, (int)screenMinX);
+        int x1 = Math.min(width - 1, (int)screenMaxX);
+        int y0 = Math.max(0, (int)screenMinY);
+        int y1 = Math.min(height - 1, (int)screenMaxY);
+
+        // The finest level at which the box covers at most 4x4 texels
+        int l = 0;
+        while(l < levels.length - 1 && ((x1 >> l) - (x0 >> l) > 3 || (y1 >> l) - (y0 >> l) > 3)) {
+            l++;
+        }
+        float[] level = levels[l];
+        int levelWidth = levelWidths[l];
+        for(int y = y0 >> l; y <= y1 >> l; y++) {
+            for(int x = x0 >> l; x <= x1 >> l; x++) {
+                if(level[y * levelWidth + x] <= nearest) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void multiply(float[] a, int aOffset, float[] b, int bOffset, float[] result) {
+        for(int row = 0; row < 4; row++) {
+            for(int column = 0; column < 4; column++) {
+                float sum = 0.0f;
+                for(int k = 0; k < 4; k++) {
+                    sum += a[aOffset + row * 4 + k] * b[bOffset + k * 4 + column];
+                }
+                result[row * 4 + column] = sum;
+            }
+        }
+    }
+
+    /**
+     * Returns the full-resolution buffer, row by row from the bottom of the screen.
+     */
+    public float[] getDepth() {
+        return levels[0];
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getLevelCount() {
+        return levels.length;
+    }
+
+    /**
+     * The number of triangles drawn since begin() which covered the buffer.
+     */
+    public int getTriangles() {
+        return triangles;
+    }
+}
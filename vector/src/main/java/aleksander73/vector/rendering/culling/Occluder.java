@@ -0,0 +1,52 @@
+package aleksander73.vector.rendering.culling;
+
+import aleksander73.vector.core.Component;
+import aleksander73.vector.rendering.mesh.MeshData;
+import aleksander73.vector.rendering.mesh.VertexAttribute;
+import aleksander73.vector.rendering.renderers.MeshRenderer;
+
+/**
+ * Marks a game object as hiding what lies behind it, e.g. a wall. Its triangles are drawn into the occlusion buffer every frame,
+ * so large, simple meshes work best; a dedicated low-poly mesh can be given instead of the rendered one.
+ */
+public class Occluder extends Component {
+    private float[] positions;
+    private int[] indices;
+
+    /**
+     * Uses the mesh of the game object's MeshRenderer.
+     */
+    public Occluder() {}
+
+    public Occluder(MeshData mesh) {
+        this.positions = mesh.getAttribute(VertexAttribute.POSITION);
+        this.indices = mesh.getIndices();
+    }
+
+    /**
+     * Returns false if no mesh was given and the game object has no MeshRenderer.
+     */
+    public boolean hasMesh() {
+        if(positions == null) {
+            MeshRenderer renderer = this.getGameObject().getComponent(MeshRenderer.class);
+            if(renderer == null) {
+                return false;
+            }
+            MeshData data = renderer.getMesh().getData();
+            positions = data.getAttribute(VertexAttribute.POSITION);
+            indices = data.getIndices();
+        }
+        return true;
+    }
+
+    /**
+     * x, y, z per vertex in object space.
+     */
+    public float[] getPositions() {
+        return positions;
+    }
+
+    public int[] getIndices() {
+        return indices;
+    }
+}
@@ -0,0 +1,141 @@
+package aleksander73.vector.rendering.culling;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import aleksander73.vector.core.GameObject;
+import aleksander73.vector.core.Transform;
+import aleksander73.vector.rendering.Camera;
+import aleksander73.vector.rendering.materials.RenderQueue;
+import aleksander73.vector.rendering.mesh.Bounds;
+import aleksander73.vector.rendering.renderers.Renderer;
+
+/**
+ * Removes renderers hidden behind occluders from a frame.
+ * The occluders among the frame's renderers are drawn into a DepthRasterizer on a worker thread,
+ * while the calling thread computes the bounds of the other renderers, which are then tested against the result.
+ * Occluders themselves, the skybox, the overlay and renderers without bounds are never culled.
+ */
+public class OcclusionCuller {
+    public static final int DEFAULT_WIDTH = 256;
+    public static final int DEFAULT_HEIGHT = 128;
+
+    private final DepthRasterizer rasterizer;
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "occlusion_culling");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    private final List<Occluder> occluders = new ArrayList<>();
+    private float[] models = new float[16 * 16];
+    private final float[] viewProjection = new float[16];
+    private final List<Bounds> candidateBounds = new ArrayList<>();
+    private final List<Renderer> visible = new ArrayList<>();
+    private int culled;
+    private final Runnable rasterize = new Runnable() {
+        @Override
+        public void run() {
+            rasterizer.begin(viewProjection);
+            for(int i = 0; i < occluders.size(); i++) {
+                Occluder occluder = occluders.get(i);
+                rasterizer.drawMesh(occluder.getPositions(), occluder.getIndices(), models, i * 16);
+            }
+            rasterizer.buildHierarchy();
+        }
+    };
+
+    public OcclusionCuller() {
+        this(DEFAULT_WIDTH, DEFAULT_HEIGHT);
+    }
+
+    public OcclusionCuller(int width, int height) {
+        rasterizer = new DepthRasterizer(width, height);
+    }
+
+    /**
+     * Returns the renderers which may be visible from the camera, in their original order.
+     * Occluders are taken from the active game objects rather than from the renderers, so the static objects
+     * merged by the StaticBatcher, whose own renderers are deactivated, still occlude.
+     * The returned list is reused by the next call.
+     */
+    public List<Renderer> cull(List<Renderer> renderers, List<GameObject> gameObjects, Camera camera) {
+        occluders.clear();
+        for(int i = 0; i < gameObjects.size(); i++) {
+            GameObject gameObject = gameObjects.get(i);
+            Occluder occluder = gameObject.getComponent(Occluder.class);
+            if(occluder != null && gameObject.isActive() && occluder.hasMesh()) {
+                if(models.length < (occluders.size() + 1) * 16) {
+                    float[] grown = new float[models.length * 2];
+                    System.arraycopy(models, 0, grown, 0, models.length);
+                    models = grown;
+                }
+                float[] model = gameObject.getComponent(Transform.class).modelMatrix().getValues();
+                System.arraycopy(model, 0, models, occluders.size() * 16, 16);
+                occluders.add(occluder);
+            }
+        }
+        culled = 0;
+        if(occluders.isEmpty()) {
+            return renderers;
+        }
+        System.arraycopy(camera.projectionMatrix().mul(camera.viewMatrix()).getValues(), 0, viewProjection, 0, 16);
+        Future<?> job = worker.submit(rasterize);
+
+        candidateBounds.clear();
+        for(Renderer renderer : renderers) {
+            RenderQueue queue = renderer.getRenderQueue();
+            boolean candidate = (queue == RenderQueue.OPAQUE || queue == RenderQueue.TRANSPARENT)
+                    && renderer.getGameObject().getComponent(Occluder.class) == null;
+            candidateBounds.add(candidate ? renderer.worldBounds() : null);
+        }
+
+        try {
+            job.get();
+        } catch(InterruptedException | ExecutionException e) {
+            Log.d("game_engine", "error: Occlusion culling failed: " + e.getMessage());
+            return renderers;
+        }
+        visible.clear();
+        for(int i = 0; i < renderers.size(); i++) {
+            Bounds bounds = candidateBounds.get(i);
+            if(bounds == null || rasterizer.isVisible(bounds.getMinX(), bounds.getMinY(), bounds.getMinZ(), bounds.getMaxX(), bounds.getMaxY(), bounds.getMaxZ())) {
+                visible.add(renderers.get(i));
+            } else {
+                culled++;
+            }
+        }
+        return visible;
+    }
+
+    /**
+     * Stops the worker thread; the culler can't be used afterwards.
+     */
+    public void shutdown() {
+        worker.shutdown();
+    }
+
+    public DepthRasterizer getRasterizer() {
+        return rasterizer;
+    }
+
+    public int getOccluderCount() {
+        return occluders.size();
+    }
+
+    /**
+     * The number of renderers culled by the last call to cull().
+     */
+    public int getCulledCount() {
+        return culled;
+    }
+}
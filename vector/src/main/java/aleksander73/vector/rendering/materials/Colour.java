@@ -14,6 +14,16 @@ public class Colour {
         return rgba.mul(1.0f / 255.0f).toVector4d();
     }
 
+    /**
+     * Writes the normalized RGBA values into the given array without allocating.
+     */
+    public void normalize(float[] target, int offset) {
+        float[] values = rgba.getValues();
+        for(int i = 0; i < 4; i++) {
+            target[offset + i] = values[i] / 255.0f;
+        }
+    }
+
     public int getRed() {
         return (int) rgba.getW();
     }
@@ -2,12 +2,16 @@ package aleksander73.vector.rendering.materials;
 
 import aleksander73.vector.core.Component;
 import aleksander73.vector.core.GameEngine;
+import aleksander73.vector.rendering.Shaders;
 import aleksander73.vector.rendering.shaders.Shader;
+import aleksander73.vector.rendering.shaders.SpriteShader;
 
 public class Material extends Component {
     private Colour colour;
     private Texture texture;
     private Shader shader;
+    private RenderQueue renderQueue;
+    private int version;
 
     public Material(Colour colour, Texture texture, Shader shader) {
         this.colour = (colour != null) ? colour : Colour.DEFAULT;
@@ -21,6 +25,7 @@ public class Material extends Component {
 
     public void setColour(Colour colour) {
         this.colour = colour;
+        version++;
     }
 
     public Texture getTexture() {
@@ -29,9 +34,45 @@ public class Material extends Component {
 
     public void setTexture(Texture texture) {
         this.texture = texture;
+        version++;
     }
 
     public Shader getShader() {
         return shader;
     }
+
+    /**
+     * Unless set explicitly, the queue follows from the shader, the colour's alpha and whether the texture has translucent pixels.
+     */
+    public RenderQueue getRenderQueue() {
+        if(renderQueue != null) {
+            return renderQueue;
+        }
+        if(shader == Shaders.getSkyboxShader()) {
+            return RenderQueue.SKYBOX;
+        }
+        if(shader == Shaders.getGuiShader() || shader instanceof SpriteShader) {
+            return RenderQueue.OVERLAY;
+        }
+        if(colour.getAlpha() < 255 || texture.hasAlpha()) {
+            return RenderQueue.TRANSPARENT;
+        }
+        return RenderQueue.OPAQUE;
+    }
+
+    /**
+     * Overrides the derived queue, e.g. to draw a compressed texture whose alpha channel is fully opaque in the opaque pass. null restores it.
+     */
+    public void setRenderQueue(RenderQueue renderQueue) {
+        this.renderQueue = renderQueue;
+        version++;
+    }
+
+    /**
+     * Incremented whenever the colour, texture or render queue is replaced. Changes made through the Colour's own setters
+     * don't count.
+     */
+    public int getVersion() {
+        return version;
+    }
 }
@@ -0,0 +1,23 @@
+package aleksander73.vector.rendering.materials;
+
+/**
+ * The render pass a material is drawn in. Passes are drawn in declaration order.
+ */
+public enum RenderQueue {
+    /**
+     * Sorted front-to-back with blending off, so that hidden surfaces are rejected by the depth test.
+     */
+    OPAQUE,
+    /**
+     * Drawn at the far plane after the opaque pass, shading only the pixels nothing else covers.
+     */
+    SKYBOX,
+    /**
+     * Sorted back-to-front with blending on and depth writes off.
+     */
+    TRANSPARENT,
+    /**
+     * GUI drawn last, with the depth test off.
+     */
+    OVERLAY
+}
@@ -2,14 +2,137 @@ package aleksander73.vector.rendering.materials;
 
 import android.opengl.GLES20;
 
-public class Texture {
-    private final int id;
+import aleksander73.vector.rendering.GPUResource;
+import aleksander73.vector.rendering.GPUResourceRegistry;
+import aleksander73.vector.rendering.RenderingSystem;
+import aleksander73.vector.rendering.Restorable;
+import aleksander73.vector.rendering.backend.RenderBackend;
+
+public class Texture implements GPUResource, Restorable {
+    private int id;
+    private final Texture page;
+    private final float[] region;
+    private Source source;
+    private int generation = GPUResourceRegistry.getGeneration();
+    private long gpuBytes;
+    private boolean alpha;
 
     public Texture(int id) {
+        this(id, 0.0f, 0.0f, 1.0f, 1.0f);
+    }
+
+    public Texture(int id, long gpuBytes) {
+        this(id);
+        this.gpuBytes = gpuBytes;
+    }
+
+    /**
+     * Creates a texture referring to a sub-region of the GL texture, e.g. an image packed into an atlas.
+     * Texture coordinates in [0, 1] are mapped to offset + uv * scale by the shaders.
+     */
+    public Texture(int id, float offsetU, float offsetV, float scaleU, float scaleV) {
         this.id = id;
+        this.page = null;
+        this.region = new float[] { offsetU, offsetV, scaleU, scaleV };
+    }
+
+    /**
+     * Creates a region of another texture. The region follows the page's GL texture when it is restored after a context loss.
+     */
+    public Texture(Texture page, float offsetU, float offsetV, float scaleU, float scaleV) {
+        this.page = page;
+        this.region = new float[] { offsetU, offsetV, scaleU, scaleV };
     }
 
     public void bind() {
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, id);
+        RenderBackend gl = RenderingSystem.getBackend();
+        gl.glBindTexture(GLES20.GL_TEXTURE_2D, this.getId());
+    }
+
+    /**
+     * Deletes the GL texture, which invalidates every region of it too.
+     */
+    @Override
+    public void delete() {
+        RenderBackend gl = RenderingSystem.getBackend();
+        if(page != null) {
+            page.delete();
+            return;
+        }
+        if(GPUResourceRegistry.release(this)) {
+            gl.glDeleteTextures(1, new int[] { id }, 0);
+        }
+    }
+
+    /**
+     * Re-creates the GL texture from its source. Textures without a source can't be restored and become 0.
+     */
+    @Override
+    public void restore() {
+        id = (source != null) ? source.create() : 0;
+    }
+
+    /**
+     * Regions don't own their GL texture and report 0.
+     */
+    @Override
+    public long getGPUBytes() {
+        return gpuBytes;
+    }
+
+    /**
+     * Textures with pixels that are not fully opaque are drawn in the transparent pass by default.
+     * Decoded images are scanned when loaded; compressed ones count as translucent if their format has an alpha channel.
+     */
+    public boolean hasAlpha() {
+        return alpha;
+    }
+
+    public void setAlpha(boolean alpha) {
+        this.alpha = alpha;
+    }
+
+    public int getId() {
+        if(page != null) {
+            return page.getId();
+        }
+        if(generation != GPUResourceRegistry.getGeneration()) {
+            generation = GPUResourceRegistry.getGeneration();
+            GPUResourceRegistry.restore(this);
+        }
+        return id;
+    }
+
+    /**
+     * Sets what re-creates the GL texture after a context loss and starts tracking the texture for restoring.
+     */
+    public void setSource(Source source) {
+        this.source = source;
+        if(source != null) {
+            GPUResourceRegistry.register(this);
+        }
+    }
+
+    public Source getSource() {
+        return source;
+    }
+
+    /**
+     * Returns { offsetU, offsetV, scaleU, scaleV }.
+     */
+    public float[] getRegion() {
+        return region;
+    }
+
+    // --------------------------------------------------
+
+    /**
+     * CPU-side description of a texture, e.g. the asset it was loaded from.
+     */
+    public interface Source {
+        /**
+         * Creates and fills a GL texture on the OpenGL thread and returns its name.
+         */
+        int create();
     }
 }
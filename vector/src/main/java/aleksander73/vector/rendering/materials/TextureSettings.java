@@ -0,0 +1,104 @@
+package aleksander73.vector.rendering.materials;
+
+import android.opengl.GLES20;
+
+import aleksander73.vector.rendering.GLCapabilities;
+import aleksander73.vector.rendering.backend.RenderBackend;
+
+/**
+ * Import settings of a texture: whether it gets mipmaps, how it is filtered and how it wraps.
+ */
+public class TextureSettings {
+    private static final int GL_TEXTURE_MAX_ANISOTROPY_EXT = 0x84FE;
+
+    public static final TextureSettings DEFAULT = new TextureSettings(true, Filter.TRILINEAR, 1.0f, GLES20.GL_REPEAT, GLES20.GL_REPEAT);
+    /**
+     * Sharp texels and no mipmaps, for pixel art and GUI images drawn at their native size.
+     */
+    public static final TextureSettings PIXELATED = new TextureSettings(false, Filter.NEAREST, 1.0f, GLES20.GL_CLAMP_TO_EDGE, GLES20.GL_CLAMP_TO_EDGE);
+
+    private final boolean mipmaps;
+    private final Filter filter;
+    private final float anisotropy;
+    private final int wrapS;
+    private final int wrapT;
+
+    /**
+     * @param mipmaps - generated with glGenerateMipmap for images, taken from the file for pre-compressed textures
+     * @param anisotropy - 1 disables anisotropic filtering, values above the device maximum are clamped
+     * @param wrapS - GL_REPEAT, GL_MIRRORED_REPEAT or GL_CLAMP_TO_EDGE
+     */
+    public TextureSettings(boolean mipmaps, Filter filter, float anisotropy, int wrapS, int wrapT) {
+        this.mipmaps = mipmaps;
+        this.filter = filter;
+        this.anisotropy = anisotropy;
+        this.wrapS = wrapS;
+        this.wrapT = wrapT;
+    }
+
+    /**
+     * Sets the sampling parameters of the texture bound to GL_TEXTURE_2D.
+     * @param mipmapped - whether the texture actually has a complete mipmap chain
+     * @param powerOfTwo - repeating wrap modes fall back to clamping on non-power-of-two textures where they are unsupported
+     */
+    public void apply(RenderBackend gl, boolean mipmapped, boolean powerOfTwo) {
+        int minFilter;
+        if(filter == Filter.NEAREST) {
+            minFilter = mipmapped ? GLES20.GL_NEAREST_MIPMAP_NEAREST : GLES20.GL_NEAREST;
+        } else if(filter == Filter.BILINEAR) {
+            minFilter = mipmapped ? GLES20.GL_LINEAR_MIPMAP_NEAREST : GLES20.GL_LINEAR;
+        } else {
+            minFilter = mipmapped ? GLES20.GL_LINEAR_MIPMAP_LINEAR : GLES20.GL_LINEAR;
+        }
+        int magFilter = (filter == Filter.NEAREST) ? GLES20.GL_NEAREST : GLES20.GL_LINEAR;
+        boolean canRepeat = powerOfTwo || GLCapabilities.supportsNonPowerOfTwoMipmaps();
+
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, minFilter);
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, magFilter);
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, canRepeat ? wrapS : GLES20.GL_CLAMP_TO_EDGE);
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, canRepeat ? wrapT : GLES20.GL_CLAMP_TO_EDGE);
+        if(anisotropy > 1.0f && GLCapabilities.getMaxAnisotropy() > 1.0f) {
+            gl.glTexParameterf(GLES20.GL_TEXTURE_2D, GL_TEXTURE_MAX_ANISOTROPY_EXT, Math.min(anisotropy, GLCapabilities.getMaxAnisotropy()));
+        }
+    }
+
+    /**
+     * Mipmaps can only be used where the device allows them for the texture's dimensions,
+     * whether they are generated or come with a compressed image.
+     */
+    public boolean canGenerateMipmaps(int width, int height) {
+        return mipmaps && (TextureSettings.isPowerOfTwo(width, height) || GLCapabilities.supportsNonPowerOfTwoMipmaps());
+    }
+
+    public static boolean isPowerOfTwo(int width, int height) {
+        return (width & (width - 1)) == 0 && (height & (height - 1)) == 0;
+    }
+
+    public boolean hasMipmaps() {
+        return mipmaps;
+    }
+
+    public Filter getFilter() {
+        return filter;
+    }
+
+    public float getAnisotropy() {
+        return anisotropy;
+    }
+
+    public int getWrapS() {
+        return wrapS;
+    }
+
+    public int getWrapT() {
+        return wrapT;
+    }
+
+    // --------------------------------------------------
+
+    public enum Filter {
+        NEAREST,
+        BILINEAR,
+        TRILINEAR
+    }
+}
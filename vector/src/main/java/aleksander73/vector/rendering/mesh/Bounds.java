@@ -0,0 +1,104 @@
+package aleksander73.vector.rendering.mesh;
+
+import aleksander73.math.linear_algebra.Vector3d;
+
+/**
+ * Axis-aligned bounding box.
+ */
+public class Bounds {
+    private float minX = Float.POSITIVE_INFINITY;
+    private float minY = Float.POSITIVE_INFINITY;
+    private float minZ = Float.POSITIVE_INFINITY;
+    private float maxX = Float.NEGATIVE_INFINITY;
+    private float maxY = Float.NEGATIVE_INFINITY;
+    private float maxZ = Float.NEGATIVE_INFINITY;
+
+    public Bounds() {}
+
+    public Bounds(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        this.minX = minX;
+        this.minY = minY;
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.maxZ = maxZ;
+    }
+
+    public void clear() {
+        minX = minY = minZ = Float.POSITIVE_INFINITY;
+        maxX = maxY = maxZ = Float.NEGATIVE_INFINITY;
+    }
+
+    public void include(float x, float y, float z) {
+        minX = Math.min(minX, x);
+        minY = Math.min(minY, y);
+        minZ = Math.min(minZ, z);
+        maxX = Math.max(maxX, x);
+        maxY = Math.max(maxY, y);
+        maxZ = Math.max(maxZ, z);
+    }
+
+    public void include(Bounds bounds) {
+        if(!bounds.isEmpty()) {
+            this.include(bounds.minX, bounds.minY, bounds.minZ);
+            this.include(bounds.maxX, bounds.maxY, bounds.maxZ);
+        }
+    }
+
+    /**
+     * Returns the bounds of this box transformed by a row-major 4x4 matrix.
+     */
+    public Bounds transform(float[] m) {
+        Bounds result = new Bounds();
+        if(this.isEmpty()) {
+            return result;
+        }
+        for(int i = 0; i < 8; i++) {
+            float x = ((i & 1) == 0) ? minX : maxX;
+            float y = ((i & 2) == 0) ? minY : maxY;
+            float z = ((i & 4) == 0) ? minZ : maxZ;
+            result.include(
+                m[0] * x + m[1] * y + m[2] * z + m[3],
+                m[4] * x + m[5] * y + m[6] * z + m[7],
+                m[8] * x + m[9] * y + m[10] * z + m[11]
+            );
+        }
+        return result;
+    }
+
+    public boolean isEmpty() {
+        return minX > maxX;
+    }
+
+    public Vector3d getCenter() {
+        return new Vector3d((minX + maxX) / 2.0f, (minY + maxY) / 2.0f, (minZ + maxZ) / 2.0f);
+    }
+
+    public Vector3d getSize() {
+        return new Vector3d(maxX - minX, maxY - minY, maxZ - minZ);
+    }
+
+    public float getMinX() {
+        return minX;
+    }
+
+    public float getMinY() {
+        return minY;
+    }
+
+    public float getMinZ() {
+        return minZ;
+    }
+
+    public float getMaxX() {
+        return maxX;
+    }
+
+    public float getMaxY() {
+        return maxY;
+    }
+
+    public float getMaxZ() {
+        return maxZ;
+    }
+}
@@ -0,0 +1,324 @@
+package aleksander73.vector.rendering.mesh;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import aleksander73.vector.core.GameEngine;
+import aleksander73.vector.rendering.GLCapabilities;
+import aleksander73.vector.rendering.RenderingSystem;
+import aleksander73.vector.rendering.RenderingUtility;
+import aleksander73.vector.rendering.backend.RenderBackend;
+import aleksander73.vector.rendering.shaders.Shader;
+
+/**
+ * Mesh whose vertices and indices can be rewritten every frame, for water surfaces, trails or destructible geometry.
+ * The game thread writes into the staging arrays and calls updateVertices()/updateIndices(), which encode the changes.
+ * The OpenGL thread uploads them right before the next draw.
+ * Vertices rotate through a ring of buffers so that the GPU can still read the previous frames while the next one is written.
+ * With a single buffer, complete rewrites orphan the buffer's storage instead.
+ */
+public class DynamicMesh extends Mesh {
+    public static final int DEFAULT_RING_SIZE = 3;
+
+    private final int maxVertices;
+    private final int maxIndices;
+    private final int usage;
+    private final int bytesPerIndex;
+    private final int vertexBytes;
+    private final int indexBytes;
+
+    // Guarded by this: the encoded copy of everything updated so far and what each ring buffer is missing of it.
+    // The staging buffers are null once the mesh has been deleted.
+    private ByteBuffer vertexData;
+    private ByteBuffer indexData;
+    private final Bounds pendingBounds = new Bounds();
+    private final int[] dirtyStart;
+    private final int[] dirtyEnd;
+    private int usedVertices;
+    private int pendingIndexCount;
+    private boolean indicesDirty;
+    private int vertexVersion;
+    private int indexVersion;
+
+    // OpenGL thread only
+    private int uploadedVersion;
+    private int current;
+    private int drawIndexCount;
+
+    public DynamicMesh(int maxVertices, int maxIndices, VertexAttribute... attributes) {
+        this(maxVertices, maxIndices, VertexFormat.STANDARD, GLES20.GL_DYNAMIC_DRAW, DEFAULT_RING_SIZE, attributes);
+    }
+
+    /**
+     * @param usage GL_DYNAMIC_DRAW for data partially updated over time or GL_STREAM_DRAW for data rewritten every frame
+     * @param ringSize number of vertex buffers to rotate through; 1 relies on orphaning alone
+     */
+    public DynamicMesh(int maxVertices, int maxIndices, VertexFormat format, int usage, int ringSize, VertexAttribute... attributes) {
+        super(DynamicMesh.staging(maxVertices, maxIndices, attributes), DynamicMesh.dynamicFormat(format, maxVertices, attributes),
+                DynamicMesh.indexType(maxVertices), Math.max(1, ringSize));
+        this.maxVertices = maxVertices;
+        this.maxIndices = maxIndices;
+        this.usage = usage;
+        bytesPerIndex = (this.getIndexType() == GLES20.GL_UNSIGNED_INT) ? RenderingUtility.BYTES_PER_INT : RenderingUtility.BYTES_PER_SHORT;
+        if(this.getIndexType() == GLES20.GL_UNSIGNED_SHORT && maxVertices > MAX_SHORT_INDEXED_VERTICES) {
+            Log.d("game_engine", "error: Dynamic meshes above " + MAX_SHORT_INDEXED_VERTICES + " vertices need 32-bit index support");
+        }
+
+        // Pooled, so that streamed meshes reuse the staging memory of deleted ones
+        vertexBytes = maxVertices * this.getFormat().getStride();
+        indexBytes = maxIndices * bytesPerIndex;
+        vertexData = RenderingSystem.getBufferPool().acquire(vertexBytes);
+        indexData = RenderingSystem.getBufferPool().acquire(indexBytes);
+        dirtyStart = new int[this.getChunkCount()];
+        dirtyEnd = new int[this.getChunkCount()];
+        Arrays.fill(dirtyStart, Integer.MAX_VALUE);
+
+        GameEngine.getRenderingSystem().runOnOpenGLThread(new Runnable() {
+            @Override
+            public void run() {
+                DynamicMesh.this.createBuffers();
+            }
+        });
+    }
+
+    private static MeshData staging(int maxVertices, int maxIndices, VertexAttribute[] attributes) {
+        MeshData data = new MeshData(maxVertices, new int[maxIndices]);
+        data.setAttribute(VertexAttribute.POSITION, new float[maxVertices * VertexAttribute.POSITION.getComponents()]);
+        for(VertexAttribute attribute : attributes) {
+            if(!data.hasAttribute(attribute)) {
+                data.setAttribute(attribute, new float[maxVertices * attribute.getComponents()]);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Positions can't be quantized to bounds that change every frame, so normalized position encodings become floats.
+     * Texture coordinates keep their encoding and must stay within [0, 1] if it is normalized.
+     */
+    private static VertexFormat dynamicFormat(VertexFormat format, int maxVertices, VertexAttribute[] attributes) {
+        VertexFormat resolved = format.resolve(DynamicMesh.staging(0, 0, attributes));
+        VertexFormat.Element[] elements = resolved.getElements().clone();
+        for(int i = 0; i < elements.length; i++) {
+            if(elements[i].getAttribute() == VertexAttribute.POSITION && elements[i].getEncoding().isNormalized()) {
+                elements[i] = new VertexFormat.Element(VertexAttribute.POSITION, VertexEncoding.FLOAT);
+            }
+        }
+        return new VertexFormat(elements);
+    }
+
+    private static int indexType(int maxVertices) {
+        boolean needsInt = maxVertices > MAX_SHORT_INDEXED_VERTICES && GLCapabilities.supportsUnsignedIntIndices();
+        return needsInt ? GLES20.GL_UNSIGNED_INT : GLES20.GL_UNSIGNED_SHORT;
+    }
+
+    private void createBuffers() {
+        RenderBackend gl = RenderingSystem.getBackend();
+        int chunkCount = this.getChunkCount();
+        int[] buffers = new int[chunkCount + 1];
+        gl.glGenBuffers(buffers.length, buffers, 0);
+        int ibo = buffers[chunkCount];
+        for(int i = 0; i < chunkCount; i++) {
+            this.setChunkBuffers(i, buffers[i], ibo);
+            gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, buffers[i]);
+            gl.glBufferData(GLES20.GL_ARRAY_BUFFER, vertexBytes, null, usage);
+        }
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, ibo);
+        gl.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexBytes, null, usage);
+        gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Re-creates the buffers after a context loss and uploads everything updated so far into each of them again.
+     */
+    @Override
+    public void restore() {
+        this.invalidateVertexArrays();
+        this.createBuffers();
+        synchronized(this) {
+            Arrays.fill(dirtyStart, 0);
+            Arrays.fill(dirtyEnd, usedVertices);
+            vertexVersion++;
+            if(!indicesDirty) {
+                pendingIndexCount = drawIndexCount;
+                indicesDirty = true;
+            }
+        }
+    }
+
+    /**
+     * Staging array of an attribute, to be written on the game thread. Attribute i of vertex v is at v * components + i.
+     */
+    public float[] getAttribute(VertexAttribute attribute) {
+        return this.getData().getAttribute(attribute);
+    }
+
+    /**
+     * Staging index array, to be written on the game thread.
+     */
+    public int[] getIndices() {
+        return this.getData().getIndices();
+    }
+
+    public void updateVertices() {
+        this.updateVertices(0, maxVertices);
+    }
+
+    /**
+     * Publishes the staging values of the given vertex range. Only the range is encoded and uploaded.
+     * The bounds follow once the vertices have been uploaded, so they always match what is drawn.
+     */
+    public void updateVertices(int first, int count) {
+        if(first < 0 || count < 0 || first + count > maxVertices) {
+            Log.d("game_engine", "error: Vertex range " + first + "+" + count + " exceeds the dynamic mesh capacity of " + maxVertices);
+            return;
+        }
+        synchronized(this) {
+            if(vertexData == null) {
+                return;
+            }
+            this.getFormat().encode(this.getData(), first, count, vertexData, this.getPositionScale(), this.getPositionOffset());
+            for(int i = 0; i < dirtyStart.length; i++) {
+                dirtyStart[i] = Math.min(dirtyStart[i], first);
+                dirtyEnd[i] = Math.max(dirtyEnd[i], first + count);
+            }
+            usedVertices = Math.max(usedVertices, first + count);
+            vertexVersion++;
+
+            pendingBounds.clear();
+            float[] positions = this.getData().getAttribute(VertexAttribute.POSITION);
+            for(int i = 0; i < usedVertices * 3; i += 3) {
+                pendingBounds.include(positions[i], positions[i + 1], positions[i + 2]);
+            }
+        }
+    }
+
+    /**
+     * Publishes the first count staging indices; only those are drawn from then on.
+     */
+    public void updateIndices(int count) {
+        if(count < 0 || count > maxIndices) {
+            Log.d("game_engine", "error: " + count + " indices exceed the dynamic mesh capacity of " + maxIndices);
+            return;
+        }
+        int[] indices = this.getData().getIndices();
+        synchronized(this) {
+            if(indexData == null) {
+                return;
+            }
+            for(int i = 0; i < count; i++) {
+                if(bytesPerIndex == RenderingUtility.BYTES_PER_INT) {
+                    indexData.putInt(i * bytesPerIndex, indices[i]);
+                } else {
+                    indexData.putShort(i * bytesPerIndex, (short)indices[i]);
+                }
+            }
+            pendingIndexCount = count;
+            indicesDirty = true;
+            indexVersion++;
+        }
+    }
+
+    /**
+     * Changes whenever vertices or indices are published.
+     */
+    public synchronized int getVersion() {
+        return vertexVersion + indexVersion;
+    }
+
+    /**
+     * Uploads whatever has been updated since the last draw and publishes the bounds of the uploaded vertices.
+     * Runs on the OpenGL thread, where the bounds are read for culling and sorting.
+     */
+    private synchronized void upload() {
+        RenderBackend gl = RenderingSystem.getBackend();
+        if(vertexData == null) {
+            return;
+        }
+        if(vertexVersion != uploadedVersion) {
+            // Move on to the buffer used longest ago, which the GPU is most likely done with
+            current = (current + 1) % this.getChunkCount();
+            int start = dirtyStart[current];
+            int end = dirtyEnd[current];
+            if(start < end) {
+                int stride = this.getFormat().getStride();
+                gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, this.getChunkVBO(current));
+                if(start == 0 && end >= usedVertices) {
+                    // A complete rewrite: detach the old storage instead of waiting for the GPU to release it
+                    gl.glBufferData(GLES20.GL_ARRAY_BUFFER, vertexBytes, null, usage);
+                }
+                vertexData.position(start * stride);
+                gl.glBufferSubData(GLES20.GL_ARRAY_BUFFER, start * stride, (end - start) * stride, vertexData);
+                vertexData.position(0);
+                gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+            }
+            dirtyStart[current] = Integer.MAX_VALUE;
+            dirtyEnd[current] = 0;
+            uploadedVersion = vertexVersion;
+
+            Bounds bounds = this.getBounds();
+            bounds.clear();
+            bounds.include(pendingBounds);
+        }
+        if(indicesDirty) {
+            gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, this.getChunkIBO(0));
+            gl.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexBytes, null, usage);
+            indexData.position(0);
+            gl.glBufferSubData(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0, pendingIndexCount * bytesPerIndex, indexData);
+            gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+            drawIndexCount = pendingIndexCount;
+            indicesDirty = false;
+        }
+    }
+
+    @Override
+    public void draw(Shader shader) {
+        RenderBackend gl = RenderingSystem.getBackend();
+        this.ensureRestored();
+        this.upload();
+        if(drawIndexCount == 0) {
+            return;
+        }
+        this.bindAttributes(shader, current);
+        gl.glDrawElements(GLES20.GL_TRIANGLES, drawIndexCount, this.getIndexType(), 0);
+        this.unbindAttributes(shader);
+    }
+
+    /**
+     * Also returns the staging buffers to the buffer pool, once; updates after that are ignored.
+     */
+    @Override
+    public void delete() {
+        super.delete();
+        synchronized(this) {
+            if(vertexData != null) {
+                RenderingSystem.getBufferPool().release(vertexData);
+                RenderingSystem.getBufferPool().release(indexData);
+                vertexData = null;
+                indexData = null;
+            }
+        }
+    }
+
+    @Override
+    public long getGPUBytes() {
+        return (long)vertexBytes * this.getChunkCount() + indexBytes;
+    }
+
+    @Override
+    public int getIndexCount() {
+        return drawIndexCount;
+    }
+
+    public int getMaxVertices() {
+        return maxVertices;
+    }
+
+    public int getMaxIndices() {
+        return maxIndices;
+    }
+}
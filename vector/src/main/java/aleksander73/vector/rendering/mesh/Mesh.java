@@ -1,100 +1,301 @@
 package aleksander73.vector.rendering.mesh;
 
 import android.opengl.GLES20;
+import android.util.Log;
 
-import java.nio.FloatBuffer;
-import java.nio.ShortBuffer;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import aleksander73.vector.core.Component;
 import aleksander73.vector.core.GameEngine;
+import aleksander73.vector.rendering.BufferPool;
+import aleksander73.vector.rendering.GLCapabilities;
+import aleksander73.vector.rendering.GPUResource;
+import aleksander73.vector.rendering.GPUResourceRegistry;
+import aleksander73.vector.rendering.RenderingSystem;
 import aleksander73.vector.rendering.RenderingUtility;
-import aleksander73.math.linear_algebra.Vector2d;
+import aleksander73.vector.rendering.Restorable;
+import aleksander73.vector.rendering.backend.RenderBackend;
+import aleksander73.vector.rendering.shaders.Shader;
 import aleksander73.math.linear_algebra.Vector3d;
 
-public class Mesh extends Component {
-    private final Vertex[] vertices;
-    private final Face[] faces;
+public class Mesh extends Component implements GPUResource, Restorable {
+    public static final int MAX_SHORT_INDEXED_VERTICES = 65536;
+    private static VertexFormat defaultFormat = VertexFormat.STANDARD;
 
-    private int vbo;
-    private int ibo;
+    private final MeshData data;
+    private final VertexFormat format;
+    private final float[] positionScale = new float[3];
+    private final float[] positionOffset = new float[3];
+    private final Bounds bounds;
+    private Vertex[] vertices;
+    private Face[] faces;
+
+    private final int indexType;
+    private final List<MeshData> parts;
+    private final Chunk[] chunks;
+    private long gpuBytes;
+    private int boundChunk;
+    private int generation = GPUResourceRegistry.getGeneration();
 
     public Mesh(Vertex[] vertices, Face[] faces) {
+        this(MeshData.fromVertices(vertices, faces));
         this.vertices = vertices;
         this.faces = faces;
+    }
 
-        this.bufferOnGPU(vertices, faces);
+    public Mesh(MeshData data) {
+        this(data, defaultFormat);
     }
 
-    private void bufferOnGPU(Vertex[] vertices, Face[] faces) {
-        float[] vertexData = new float[vertices.length * Vertex.VERTEX_ELEMENTS];
-        int i = 0;
-        for(Vertex vertex : vertices) {
-            Vector3d position = vertex.getPosition();
-            Vector2d textureCoord = vertex.getTextureCoord();
+    /**
+     * Meshes with more vertices than 16-bit indices can address use 32-bit indices where the device supports them.
+     * Otherwise they are split into chunks drawn one after another, all sharing the bounds and the position decoding.
+     * The mesh data is kept, so the buffers can be encoded again after a context loss.
+     */
+    public Mesh(MeshData data, VertexFormat format) {
+        this.data = data;
+        this.format = format.resolve(data);
+        bounds = data.bounds();
 
-            vertexData[i++] = position.getX();
-            vertexData[i++] = position.getY();
-            vertexData[i++] = position.getZ();
-            vertexData[i++] = textureCoord.getX();
-            vertexData[i++] = textureCoord.getY();
+        if(data.getVertexCount() <= MAX_SHORT_INDEXED_VERTICES) {
+            indexType = GLES20.GL_UNSIGNED_SHORT;
+            parts = Collections.singletonList(data);
+        } else if(GLCapabilities.supportsUnsignedIntIndices()) {
+            indexType = GLES20.GL_UNSIGNED_INT;
+            parts = Collections.singletonList(data);
+        } else {
+            indexType = GLES20.GL_UNSIGNED_SHORT;
+            parts = data.split(MAX_SHORT_INDEXED_VERTICES);
+            Log.d("game_engine", "Split a mesh of " + data.getVertexCount() + " vertices into " + parts.size() + " chunks");
         }
-
-        short[] indicesData = new short[faces.length * Face.VERTICES_COUNT];
-        i = 0;
-        for(Face face : faces) {
-            for(Vertex vertex : face.getVertices()) {
-                indicesData[i++] = (short)vertex.getId();
-            }
+        chunks = new Chunk[parts.size()];
+        for(int i = 0; i < chunks.length; i++) {
+            chunks[i] = new Chunk(parts.get(i).getIndexCount());
         }
 
-        final FloatBuffer vertexBuffer = RenderingUtility.asFloatBuffer(vertexData);
-        final ShortBuffer indicesBuffer = RenderingUtility.asShortBuffer(indicesData);
+        this.bufferOnGPU();
+        GPUResourceRegistry.register(this);
+    }
+
+    /**
+     * For subclasses managing their own buffers: only creates the chunk records, nothing is uploaded.
+     * Positions are stored unquantized.
+     */
+    protected Mesh(MeshData data, VertexFormat format, int indexType, int chunkCount) {
+        this.data = data;
+        this.format = format;
+        this.indexType = indexType;
+        parts = null;
+        bounds = new Bounds();
+        for(int i = 0; i < 3; i++) {
+            positionScale[i] = 1.0f;
+        }
+        chunks = new Chunk[chunkCount];
+        for(int i = 0; i < chunkCount; i++) {
+            chunks[i] = new Chunk(0);
+        }
+        GPUResourceRegistry.register(this);
+    }
 
+    private void bufferOnGPU() {
+        final ByteBuffer[] vertexBuffers = new ByteBuffer[parts.size()];
+        final ByteBuffer[] indexBuffers = new ByteBuffer[parts.size()];
+        this.encode(vertexBuffers, indexBuffers);
         GameEngine.getRenderingSystem().runOnOpenGLThread(new Runnable() {
             @Override
             public void run() {
-                int[] buffers = new int[1];
-                GLES20.glGenBuffers(1, buffers, 0);
-                vbo = buffers[0];
+                Mesh.this.upload(vertexBuffers, indexBuffers);
+            }
+        });
+    }
 
-                GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
-                GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, vertexBuffer.capacity() * RenderingUtility.BYTES_PER_FLOAT, vertexBuffer, GLES20.GL_STATIC_DRAW);
-                GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    /**
+     * Staging buffers come from the buffer pool and are released by upload().
+     */
+    private void encode(ByteBuffer[] vertexBuffers, ByteBuffer[] indexBuffers) {
+        BufferPool pool = RenderingSystem.getBufferPool();
+        int bytesPerIndex = this.getBytesPerIndex();
+        gpuBytes = 0;
+        for(int c = 0; c < parts.size(); c++) {
+            MeshData part = parts.get(c);
+            vertexBuffers[c] = format.encode(part, bounds, positionScale, positionOffset);
 
-                int[] buffers2 = new int[1];
-                GLES20.glGenBuffers(1, buffers2, 0);
-                ibo = buffers2[0];
+            int[] indices = part.getIndices();
+            indexBuffers[c] = pool.acquire(indices.length * bytesPerIndex);
+            for(int index : indices) {
+                if(indexType == GLES20.GL_UNSIGNED_INT) {
+                    indexBuffers[c].putInt(index);
+                } else {
+                    indexBuffers[c].putShort((short)index);
+                }
+            }
+            indexBuffers[c].position(0);
+            gpuBytes += vertexBuffers[c].limit() + indexBuffers[c].limit();
+        }
+    }
+
+    private void upload(ByteBuffer[] vertexBuffers, ByteBuffer[] indexBuffers) {
+        RenderBackend gl = RenderingSystem.getBackend();
+        BufferPool pool = RenderingSystem.getBufferPool();
+        for(int c = 0; c < chunks.length; c++) {
+            int[] buffers = new int[2];
+            gl.glGenBuffers(2, buffers, 0);
+            chunks[c].vbo = buffers[0];
+            chunks[c].ibo = buffers[1];
+
+            gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, chunks[c].vbo);
+            gl.glBufferData(GLES20.GL_ARRAY_BUFFER, vertexBuffers[c].limit(), vertexBuffers[c], GLES20.GL_STATIC_DRAW);
+            gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+
+            gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, chunks[c].ibo);
+            gl.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexBuffers[c].limit(), indexBuffers[c], GLES20.GL_STATIC_DRAW);
+            gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+
+            pool.release(vertexBuffers[c]);
+            pool.release(indexBuffers[c]);
+        }
+    }
+
+    private int getBytesPerIndex() {
+        return (indexType == GLES20.GL_UNSIGNED_INT) ? RenderingUtility.BYTES_PER_INT : RenderingUtility.BYTES_PER_SHORT;
+    }
 
-                GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, ibo);
-                GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, indicesBuffer.capacity() * RenderingUtility.BYTES_PER_SHORT, indicesBuffer, GLES20.GL_STATIC_DRAW);
-                GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+    /**
+     * Encodes the retained mesh data again and uploads it on the calling OpenGL thread.
+     * Vertex array objects of the lost context are forgotten and recorded anew on the next bind.
+     */
+    @Override
+    public void restore() {
+        this.invalidateVertexArrays();
+        ByteBuffer[] vertexBuffers = new ByteBuffer[parts.size()];
+        ByteBuffer[] indexBuffers = new ByteBuffer[parts.size()];
+        this.encode(vertexBuffers, indexBuffers);
+        this.upload(vertexBuffers, indexBuffers);
+    }
+
+    protected void invalidateVertexArrays() {
+        for(Chunk chunk : chunks) {
+            chunk.vertexArrays.clear();
+        }
+    }
+
+    /**
+     * Restores the buffers first if the context has been lost since they were created.
+     */
+    protected void ensureRestored() {
+        if(generation != GPUResourceRegistry.getGeneration()) {
+            generation = GPUResourceRegistry.getGeneration();
+            GPUResourceRegistry.restore(this);
+        }
+    }
+
+    public void bindAttributes(Shader shader) {
+        this.bindAttributes(shader, 0);
+    }
+
+    /**
+     * Sets up the vertex attributes and the index buffer for drawing a chunk of the mesh with the given shader.
+     * Where vertex array objects are supported the setup is recorded once per chunk and shader attribute layout and replayed afterwards.
+     */
+    public void bindAttributes(Shader shader, int chunk) {
+        RenderBackend gl = RenderingSystem.getBackend();
+        this.ensureRestored();
+        boundChunk = chunk;
+        if(GLCapabilities.supportsVertexArrayObjects()) {
+            // The mesh's format is fixed, so the shader's attribute layout alone identifies the setup
+            String layout = shader.getAttributeLayout();
+            Map<String, Integer> vertexArrays = chunks[chunk].vertexArrays;
+            Integer vao = vertexArrays.get(layout);
+            if(vao != null) {
+                gl.glBindVertexArray(vao);
+            } else {
+                int[] arrays = new int[1];
+                gl.glGenVertexArrays(1, arrays, 0);
+                vertexArrays.put(layout, arrays[0]);
+
+                gl.glBindVertexArray(arrays[0]);
+                this.specifyAttributes(shader);
             }
-        });
+        } else {
+            this.specifyAttributes(shader);
+        }
+    }
+
+    public void unbindAttributes(Shader shader) {
+        RenderBackend gl = RenderingSystem.getBackend();
+        if(GLCapabilities.supportsVertexArrayObjects()) {
+            gl.glBindVertexArray(0);
+        } else {
+            gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+            shader.disableAttributes();
+        }
+    }
+
+    private void specifyAttributes(Shader shader) {
+        RenderBackend gl = RenderingSystem.getBackend();
+        shader.enableAttributes();
+        shader.passAttributes();
+        gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, chunks[boundChunk].ibo);
+    }
+
+    /**
+     * Draws all chunks of the mesh with the given shader, whose uniforms must already have been passed.
+     */
+    public void draw(Shader shader) {
+        RenderBackend gl = RenderingSystem.getBackend();
+        for(int c = 0; c < chunks.length; c++) {
+            this.bindAttributes(shader, c);
+            gl.glDrawElements(GLES20.GL_TRIANGLES, chunks[c].indexCount, indexType, 0);
+            this.unbindAttributes(shader);
+        }
+    }
+
+    /**
+     * Deletes the buffers and vertex array objects of all chunks.
+     */
+    @Override
+    public void delete() {
+        RenderBackend gl = RenderingSystem.getBackend();
+        if(!GPUResourceRegistry.release(this)) {
+            this.invalidateVertexArrays();
+            return;
+        }
+        Set<Integer> buffers = new HashSet<>();
+        for(Chunk chunk : chunks) {
+            buffers.add(chunk.vbo);
+            buffers.add(chunk.ibo);
+            for(int vao : chunk.vertexArrays.values()) {
+                gl.glDeleteVertexArrays(1, new int[] { vao }, 0);
+            }
+            chunk.vertexArrays.clear();
+        }
+        for(int buffer : buffers) {
+            gl.glDeleteBuffers(1, new int[] { buffer }, 0);
+        }
+    }
+
+    @Override
+    public long getGPUBytes() {
+        return gpuBytes;
     }
 
     public static Mesh generateGUITexture(float width, float height) {
-        float w = width / 2.0f;
-        float h = height / 2.0f;
-        Vertex[] vertices = new Vertex[] {
-                new Vertex(0, new Vector3d(-w, -h, 0.0f), new Vector2d(0.0f, 1.0f)),
-                new Vertex(1, new Vector3d(-w, h, 0.0f), new Vector2d(0.0f, 0.0f)),
-                new Vertex(2, new Vector3d(w, h, 0.0f), new Vector2d(1.0f, 0.0f)),
-                new Vertex(3, new Vector3d(w, -h, 0.0f), new Vector2d(1.0f, 1.0f))
-        };
-        Face[] faces = new Face[] {
-                new Face(new Vertex[] {vertices[0], vertices[1], vertices[2]}),
-                new Face(new Vertex[] {vertices[0], vertices[2], vertices[3]})
-        };
-        return new Mesh(vertices, faces);
+        return new MeshBuilder(4, 6).quad(width, height).buildMesh();
     }
 
     public Vector3d dimensions() {
         float minX = 0.0f, maxX = 0.0f, minY = 0.0f, maxY = 0.0f, minZ = 0.0f, maxZ = 0.0f;
-        for(Vertex v : vertices) {
-            Vector3d position = v.getPosition();
-            float x = position.getX();
-            float y = position.getY();
-            float z = position.getZ();
+        float[] positions = data.getAttribute(VertexAttribute.POSITION);
+        for(int i = 0; i < positions.length; i += 3) {
+            float x = positions[i];
+            float y = positions[i + 1];
+            float z = positions[i + 2];
 
             if(x < minX) {
                 minX = x;
@@ -115,15 +316,120 @@ public class Mesh extends Component {
         return new Vector3d(maxX - minX, maxY - minY, maxZ - minZ);
     }
 
+    /**
+     * Returns the bounds of the mesh in model space.
+     */
+    public Bounds getBounds() {
+        return bounds;
+    }
+
+    public MeshData getData() {
+        return data;
+    }
+
+    /**
+     * Returns the format the vertex buffer has actually been encoded in.
+     */
+    public VertexFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Scale and offset reconstructing model-space positions from the values stored in the vertex buffer.
+     */
+    public float[] getPositionScale() {
+        return positionScale;
+    }
+
+    public float[] getPositionOffset() {
+        return positionOffset;
+    }
+
+    public int getVertexCount() {
+        return data.getVertexCount();
+    }
+
+    public int getIndexCount() {
+        return data.getIndexCount();
+    }
+
+    /**
+     * Vertex and face objects are only created on demand for meshes built from MeshData.
+     */
+    public Vertex[] getVertices() {
+        if(vertices == null) {
+            vertices = data.toVertices();
+        }
+        return vertices;
+    }
+
     public Face[] getFaces() {
+        if(faces == null) {
+            faces = data.toFaces(this.getVertices());
+        }
         return faces;
     }
 
+    public int getChunkCount() {
+        return chunks.length;
+    }
+
+    protected int getChunkVBO(int chunk) {
+        return chunks[chunk].vbo;
+    }
+
+    protected int getChunkIBO(int chunk) {
+        return chunks[chunk].ibo;
+    }
+
+    /**
+     * For subclasses managing their own buffers. Chunks may share an index buffer, which delete() then deletes once.
+     */
+    protected void setChunkBuffers(int chunk, int vbo, int ibo) {
+        chunks[chunk].vbo = vbo;
+        chunks[chunk].ibo = ibo;
+    }
+
+    /**
+     * GL_UNSIGNED_SHORT or GL_UNSIGNED_INT.
+     */
+    public int getIndexType() {
+        return indexType;
+    }
+
+    /**
+     * Returns the vertex buffer of the chunk most recently bound with bindAttributes().
+     */
     public int getVBO() {
-        return vbo;
+        return chunks[boundChunk].vbo;
     }
 
     public int getIBO() {
-        return ibo;
+        return chunks[boundChunk].ibo;
+    }
+
+    public static VertexFormat getDefaultFormat() {
+        return defaultFormat;
+    }
+
+    /**
+     * Sets the format of meshes created without one. Custom shaders have to decode compact positions
+     * with the u_position_scale and u_position_offset uniforms.
+     */
+    public static void setDefaultFormat(VertexFormat format) {
+        defaultFormat = format;
+    }
+
+    // --------------------------------------------------
+
+    private static class Chunk {
+        private final int indexCount;
+        private int vbo;
+        private int ibo;
+        private final Map<String, Integer> vertexArrays = new HashMap<>();
+
+        public Chunk(int indexCount) {
+            this.indexCount = indexCount;
+        }
     }
 }
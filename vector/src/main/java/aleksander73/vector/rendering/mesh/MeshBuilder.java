@@ -0,0 +1,295 @@
+package aleksander73.vector.rendering.mesh;
+
+import android.util.Log;
+
+import java.util.Arrays;
+
+/**
+ * Builds mesh data straight into primitive arrays, for geometry generated at runtime such as terrain patches, text or debug shapes.
+ * Unlike building Vertex and Face objects, no object is created per vertex; the arrays grow by doubling and can be reused with clear().
+ * Attributes are set on the vertex added last. An attribute first set part-way through starts with its default value for the earlier vertices.
+ */
+public class MeshBuilder {
+    private static final VertexAttribute[] ATTRIBUTES = VertexAttribute.values();
+
+    private final float[][] attributes = new float[ATTRIBUTES.length][];
+    private int[] indices;
+    private int vertexCount;
+    private int indexCount;
+
+    public MeshBuilder() {
+        this(64, 96);
+    }
+
+    public MeshBuilder(int vertexCapacity, int indexCapacity) {
+        attributes[VertexAttribute.POSITION.ordinal()] = new float[Math.max(1, vertexCapacity) * VertexAttribute.POSITION.getComponents()];
+        indices = new int[Math.max(3, indexCapacity)];
+    }
+
+    /**
+     * Returns the index of the new vertex.
+     */
+    public int addVertex(float x, float y, float z) {
+        this.ensureVertexCapacity(vertexCount + 1);
+        float[] positions = attributes[VertexAttribute.POSITION.ordinal()];
+        positions[vertexCount * 3] = x;
+        positions[vertexCount * 3 + 1] = y;
+        positions[vertexCount * 3 + 2] = z;
+        for(VertexAttribute attribute : ATTRIBUTES) {
+            float[] values = attributes[attribute.ordinal()];
+            if(attribute != VertexAttribute.POSITION && values != null) {
+                System.arraycopy(attribute.getDefaultValue(), 0, values, vertexCount * attribute.getComponents(), attribute.getComponents());
+            }
+        }
+        return vertexCount++;
+    }
+
+    public MeshBuilder setTextureCoord(float u, float v) {
+        return this.set(VertexAttribute.TEXTURE_COORD, u, v, 0.0f, 0.0f);
+    }
+
+    public MeshBuilder setNormal(float x, float y, float z) {
+        return this.set(VertexAttribute.NORMAL, x, y, z, 0.0f);
+    }
+
+    /**
+     * Components in [0, 1].
+     */
+    public MeshBuilder setColour(float r, float g, float b, float a) {
+        return this.set(VertexAttribute.COLOUR, r, g, b, a);
+    }
+
+    public MeshBuilder setTangent(float x, float y, float z, float handedness) {
+        return this.set(VertexAttribute.TANGENT, x, y, z, handedness);
+    }
+
+    private MeshBuilder set(VertexAttribute attribute, float c0, float c1, float c2, float c3) {
+        if(vertexCount == 0) {
+            Log.d("game_engine", "error: Add a vertex before setting its " + attribute);
+            return this;
+        }
+        int components = attribute.getComponents();
+        float[] values = attributes[attribute.ordinal()];
+        if(values == null) {
+            values = new float[attributes[VertexAttribute.POSITION.ordinal()].length / 3 * components];
+            for(int v = 0; v < vertexCount; v++) {
+                System.arraycopy(attribute.getDefaultValue(), 0, values, v * components, components);
+            }
+            attributes[attribute.ordinal()] = values;
+        }
+        int offset = (vertexCount - 1) * components;
+        values[offset] = c0;
+        values[offset + 1] = c1;
+        if(components > 2) {
+            values[offset + 2] = c2;
+        }
+        if(components > 3) {
+            values[offset + 3] = c3;
+        }
+        return this;
+    }
+
+    public void addTriangle(int a, int b, int c) {
+        this.ensureIndexCapacity(indexCount + 3);
+        indices[indexCount++] = a;
+        indices[indexCount++] = b;
+        indices[indexCount++] = c;
+    }
+
+    /**
+     * Two triangles, a-b-c and a-c-d.
+     */
+    public void addQuad(int a, int b, int c, int d) {
+        this.addTriangle(a, b, c);
+        this.addTriangle(a, c, d);
+    }
+
+    private void ensureVertexCapacity(int count) {
+        int capacity = attributes[VertexAttribute.POSITION.ordinal()].length / 3;
+        if(count <= capacity) {
+            return;
+        }
+        while(capacity < count) {
+            capacity *= 2;
+        }
+        for(VertexAttribute attribute : ATTRIBUTES) {
+            float[] values = attributes[attribute.ordinal()];
+            if(values != null) {
+                attributes[attribute.ordinal()] = Arrays.copyOf(values, capacity * attribute.getComponents());
+            }
+        }
+    }
+
+    private void ensureIndexCapacity(int count) {
+        if(count <= indices.length) {
+            return;
+        }
+        int capacity = indices.length;
+        while(capacity < count) {
+            capacity *= 2;
+        }
+        indices = Arrays.copyOf(indices, capacity);
+    }
+
+    // --------------------------------------------------
+
+    /**
+     * A rectangle in the XY plane facing +Z, centred on the origin. Texture coordinates have their origin at the top left.
+     */
+    public MeshBuilder quad(float width, float height) {
+        float w = width / 2.0f;
+        float h = height / 2.0f;
+        int first = this.addVertex(-w, -h, 0.0f);
+        this.setTextureCoord(0.0f, 1.0f).setNormal(0.0f, 0.0f, 1.0f);
+        this.addVertex(w, -h, 0.0f);
+        this.setTextureCoord(1.0f, 1.0f).setNormal(0.0f, 0.0f, 1.0f);
+        this.addVertex(w, h, 0.0f);
+        this.setTextureCoord(1.0f, 0.0f).setNormal(0.0f, 0.0f, 1.0f);
+        this.addVertex(-w, h, 0.0f);
+        this.setTextureCoord(0.0f, 0.0f).setNormal(0.0f, 0.0f, 1.0f);
+        this.addQuad(first, first + 1, first + 2, first + 3);
+        return this;
+    }
+
+    /**
+     * A box centred on the origin. Every face has its own vertices, so normals and texture coordinates are per face.
+     */
+    public MeshBuilder box(float width, float height, float depth) {
+        float w = width / 2.0f;
+        float h = height / 2.0f;
+        float d = depth / 2.0f;
+        // Per face: normal, then the right and up axes of the face scaled to its half extents
+        float[][] faces = {
+            { 0, 0, 1,    w, 0, 0,    0, h, 0 },
+            { 0, 0, -1,   -w, 0, 0,   0, h, 0 },
+            { 1, 0, 0,    0, 0, -d,   0, h, 0 },
+            { -1, 0, 0,   0, 0, d,    0, h, 0 },
+            { 0, 1, 0,    w, 0, 0,    0, 0, -d },
+            { 0, -1, 0,   w, 0, 0,    0, 0, d }
+        };
+        float[] extents = { w, h, d };
+        for(float[] face : faces) {
+            // Distance from the centre to the face along its normal
+            float distance = Math.abs(face[0]) * extents[0] + Math.abs(face[1]) * extents[1] + Math.abs(face[2]) * extents[2];
+            int first = vertexCount;
+            for(int corner = 0; corner < 4; corner++) {
+                float right = (corner == 1 || corner == 2) ? 1.0f : -1.0f;
+                float up = (corner >= 2) ? 1.0f : -1.0f;
+                this.addVertex(
+                    face[0] * distance + face[3] * right + face[6] * up,
+                    face[1] * distance + face[4] * right + face[7] * up,
+                    face[2] * distance + face[5] * right + face[8] * up
+                );
+                this.setTextureCoord((right + 1.0f) / 2.0f, (1.0f - up) / 2.0f).setNormal(face[0], face[1], face[2]);
+            }
+            this.addQuad(first, first + 1, first + 2, first + 3);
+        }
+        return this;
+    }
+
+    /**
+     * A UV sphere centred on the origin. The seam and the poles get duplicate vertices so that texture coordinates don't wrap.
+     * @param segments - divisions around the Y axis, at least 3
+     * @param rings - divisions from pole to pole, at least 2
+     */
+    public MeshBuilder sphere(float radius, int segments, int rings) {
+        segments = Math.max(3, segments);
+        rings = Math.max(2, rings);
+        int first = vertexCount;
+        for(int ring = 0; ring <= rings; ring++) {
+            double polar = Math.PI * ring / rings;
+            float y = (float)Math.cos(polar);
+            float ringRadius = (float)Math.sin(polar);
+            for(int segment = 0; segment <= segments; segment++) {
+                double azimuth = 2.0 * Math.PI * segment / segments;
+                float x = ringRadius * (float)Math.sin(azimuth);
+                float z = ringRadius * (float)Math.cos(azimuth);
+                this.addVertex(x * radius, y * radius, z * radius);
+                this.setTextureCoord((float)segment / segments, (float)ring / rings).setNormal(x, y, z);
+            }
+        }
+        int columns = segments + 1;
+        for(int ring = 0; ring < rings; ring++) {
+            for(int segment = 0; segment < segments; segment++) {
+                int topLeft = first + ring * columns + segment;
+                int bottomLeft = topLeft + columns;
+                this.addQuad(bottomLeft, bottomLeft + 1, topLeft + 1, topLeft);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * A flat grid in the XZ plane facing +Y, centred on the origin, e.g. the base of a terrain patch whose heights are set afterwards.
+     * Texture coordinates span [0, 1] over the whole grid.
+     */
+    public MeshBuilder grid(float width, float depth, int columns, int rows) {
+        columns = Math.max(1, columns);
+        rows = Math.max(1, rows);
+        int first = vertexCount;
+        for(int row = 0; row <= rows; row++) {
+            float v = (float)row / rows;
+            for(int column = 0; column <= columns; column++) {
+                float u = (float)column / columns;
+                this.addVertex((u - 0.5f) * width, 0.0f, (v - 0.5f) * depth);
+                this.setTextureCoord(u, v).setNormal(0.0f, 1.0f, 0.0f);
+            }
+        }
+        for(int row = 0; row < rows; row++) {
+            for(int column = 0; column < columns; column++) {
+                int a = first + row * (columns + 1) + column;
+                int b = a + columns + 1;
+                this.addQuad(a, b, b + 1, a + 1);
+            }
+        }
+        return this;
+    }
+
+    // --------------------------------------------------
+
+    /**
+     * Copies what has been built into mesh data of the exact size. The builder can be reused afterwards.
+     */
+    public MeshData build() {
+        MeshData data = new MeshData(vertexCount, Arrays.copyOf(indices, indexCount));
+        for(VertexAttribute attribute : ATTRIBUTES) {
+            float[] values = attributes[attribute.ordinal()];
+            if(values != null) {
+                data.setAttribute(attribute, Arrays.copyOf(values, vertexCount * attribute.getComponents()));
+            }
+        }
+        return data;
+    }
+
+    public Mesh buildMesh() {
+        return new Mesh(this.build());
+    }
+
+    public Mesh buildMesh(VertexFormat format) {
+        return new Mesh(this.build(), format);
+    }
+
+    /**
+     * Removes all vertices and indices but keeps the capacity. Attributes set before stay enabled.
+     */
+    public void clear() {
+        vertexCount = 0;
+        indexCount = 0;
+    }
+
+    /**
+     * Positions of the vertices built so far, to be edited in place, e.g. to apply heights to a grid.
+     * The array may be longer than needed and is replaced when the builder grows.
+     */
+    public float[] getPositions() {
+        return attributes[VertexAttribute.POSITION.ordinal()];
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    public int getIndexCount() {
+        return indexCount;
+    }
+}
@@ -0,0 +1,255 @@
+package aleksander73.vector.rendering.mesh;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import aleksander73.vector.rendering.materials.Colour;
+import aleksander73.math.linear_algebra.Vector2d;
+import aleksander73.math.linear_algebra.Vector3d;
+import aleksander73.math.linear_algebra.Vector4d;
+
+/**
+ * Vertex attributes and triangle indices of a mesh, stored in flat arrays.
+ * Attribute i of vertex v starts at v * components in the attribute's array.
+ */
+public class MeshData {
+    private final int vertexCount;
+    private final int[] indices;
+    private final Map<VertexAttribute, float[]> attributes = new EnumMap<>(VertexAttribute.class);
+
+    public MeshData(int vertexCount, int[] indices) {
+        this.vertexCount = vertexCount;
+        this.indices = indices;
+    }
+
+    public MeshData(float[] positions, int[] indices) {
+        this(positions.length / VertexAttribute.POSITION.getComponents(), indices);
+        this.setAttribute(VertexAttribute.POSITION, positions);
+    }
+
+    public static MeshData fromVertices(Vertex[] vertices, Face[] faces) {
+        int[] indices = new int[faces.length * Face.VERTICES_COUNT];
+        int i = 0;
+        for(Face face : faces) {
+            for(Vertex vertex : face.getVertices()) {
+                indices[i++] = vertex.getId();
+            }
+        }
+
+        MeshData data = new MeshData(vertices.length, indices);
+        float[] positions = new float[vertices.length * 3];
+        float[] textureCoords = null;
+        float[] normals = null;
+        float[] colours = null;
+        float[] tangents = null;
+        for(int v = 0; v < vertices.length; v++) {
+            Vertex vertex = vertices[v];
+            Vector3d position = vertex.getPosition();
+            positions[v * 3] = position.getX();
+            positions[v * 3 + 1] = position.getY();
+            positions[v * 3 + 2] = position.getZ();
+            if(vertex.getTextureCoord() != null) {
+                if(textureCoords == null) {
+                    textureCoords = new float[vertices.length * 2];
+                }
+                Vector2d textureCoord = vertex.getTextureCoord();
+                textureCoords[v * 2] = textureCoord.getX();
+                textureCoords[v * 2 + 1] = textureCoord.getY();
+            }
+            if(vertex.getNormal() != null) {
+                if(normals == null) {
+                    normals = new float[vertices.length * 3];
+                }
+                Vector3d normal = vertex.getNormal();
+                normals[v * 3] = normal.getX();
+                normals[v * 3 + 1] = normal.getY();
+                normals[v * 3 + 2] = normal.getZ();
+            }
+            if(vertex.getColour() != null) {
+                if(colours == null) {
+                    colours = new float[vertices.length * 4];
+                }
+                vertex.getColour().normalize(colours, v * 4);
+            }
+            if(vertex.getTangent() != null) {
+                if(tangents == null) {
+                    tangents = new float[vertices.length * 4];
+                }
+                Vector4d tangent = vertex.getTangent();
+                tangents[v * 4] = tangent.getX();
+                tangents[v * 4 + 1] = tangent.getY();
+                tangents[v * 4 + 2] = tangent.getZ();
+                tangents[v * 4 + 3] = tangent.getW();
+            }
+        }
+        data.setAttribute(VertexAttribute.POSITION, positions);
+        if(textureCoords != null) {
+            data.setAttribute(VertexAttribute.TEXTURE_COORD, textureCoords);
+        }
+        if(normals != null) {
+            data.setAttribute(VertexAttribute.NORMAL, normals);
+        }
+        if(colours != null) {
+            data.setAttribute(VertexAttribute.COLOUR, colours);
+        }
+        if(tangents != null) {
+            data.setAttribute(VertexAttribute.TANGENT, tangents);
+        }
+        return data;
+    }
+
+    public Vertex[] toVertices() {
+        float[] positions = attributes.get(VertexAttribute.POSITION);
+        float[] textureCoords = attributes.get(VertexAttribute.TEXTURE_COORD);
+        float[] normals = attributes.get(VertexAttribute.NORMAL);
+        float[] colours = attributes.get(VertexAttribute.COLOUR);
+        float[] tangents = attributes.get(VertexAttribute.TANGENT);
+
+        Vertex[] vertices = new Vertex[vertexCount];
+        for(int v = 0; v < vertexCount; v++) {
+            Vertex vertex = new Vertex(v, new Vector3d(positions[v * 3], positions[v * 3 + 1], positions[v * 3 + 2]));
+            if(textureCoords != null) {
+                vertex.setTextureCoord(new Vector2d(textureCoords[v * 2], textureCoords[v * 2 + 1]));
+            }
+            if(normals != null) {
+                vertex.setNormal(new Vector3d(normals[v * 3], normals[v * 3 + 1], normals[v * 3 + 2]));
+            }
+            if(colours != null) {
+                vertex.setColour(new Colour(
+                    Math.round(colours[v * 4] * 255.0f),
+                    Math.round(colours[v * 4 + 1] * 255.0f),
+                    Math.round(colours[v * 4 + 2] * 255.0f),
+                    Math.round(colours[v * 4 + 3] * 255.0f)
+                ));
+            }
+            if(tangents != null) {
+                vertex.setTangent(new Vector4d(tangents[v * 4], tangents[v * 4 + 1], tangents[v * 4 + 2], tangents[v * 4 + 3]));
+            }
+            vertices[v] = vertex;
+        }
+        return vertices;
+    }
+
+    public Face[] toFaces(Vertex[] vertices) {
+        Face[] faces = new Face[indices.length / Face.VERTICES_COUNT];
+        for(int f = 0; f < faces.length; f++) {
+            faces[f] = new Face(new Vertex[] {
+                vertices[indices[f * 3]],
+                vertices[indices[f * 3 + 1]],
+                vertices[indices[f * 3 + 2]]
+            });
+        }
+        return faces;
+    }
+
+    /**
+     * Splits the triangles, in order, into parts referencing at most maxVertices vertices each.
+     * Vertices shared by triangles of different parts are duplicated.
+     */
+    public List<MeshData> split(int maxVertices) {
+        List<MeshData> parts = new ArrayList<>();
+        int[] remap = new int[vertexCount];
+        Arrays.fill(remap, -1);
+        int[] partVertices = new int[maxVertices];
+        int[] partIndices = new int[indices.length];
+
+        int start = 0;
+        int used = 0;
+        int indexCount = 0;
+        for(int t = 0; t <= indices.length; t += Face.VERTICES_COUNT) {
+            boolean fits = false;
+            if(t < indices.length) {
+                int added = 0;
+                for(int c = 0; c < Face.VERTICES_COUNT; c++) {
+                    if(remap[indices[t + c]] < 0) {
+                        added++;
+                    }
+                }
+                fits = used + added <= maxVertices;
+            }
+            if(!fits && t > start) {
+                parts.add(this.extract(partVertices, used, Arrays.copyOf(partIndices, indexCount)));
+                for(int v = 0; v < used; v++) {
+                    remap[partVertices[v]] = -1;
+                }
+                start = t;
+                used = 0;
+                indexCount = 0;
+            }
+            if(t < indices.length) {
+                for(int c = 0; c < Face.VERTICES_COUNT; c++) {
+                    int vertex = indices[t + c];
+                    if(remap[vertex] < 0) {
+                        remap[vertex] = used;
+                        partVertices[used++] = vertex;
+                    }
+                    partIndices[indexCount++] = remap[vertex];
+                }
+            }
+        }
+        return parts;
+    }
+
+    private MeshData extract(int[] vertices, int count, int[] partIndices) {
+        MeshData part = new MeshData(count, partIndices);
+        for(VertexAttribute attribute : attributes.keySet()) {
+            int components = attribute.getComponents();
+            float[] source = attributes.get(attribute);
+            float[] values = new float[count * components];
+            for(int v = 0; v < count; v++) {
+                System.arraycopy(source, vertices[v] * components, values, v * components, components);
+            }
+            part.setAttribute(attribute, values);
+        }
+        return part;
+    }
+
+    public Bounds bounds() {
+        Bounds bounds = new Bounds();
+        float[] positions = attributes.get(VertexAttribute.POSITION);
+        if(positions != null) {
+            for(int i = 0; i < positions.length; i += 3) {
+                bounds.include(positions[i], positions[i + 1], positions[i + 2]);
+            }
+        }
+        return bounds;
+    }
+
+    public void setAttribute(VertexAttribute attribute, float[] values) {
+        if(values.length != vertexCount * attribute.getComponents()) {
+            Log.d("game_engine", "error: Expected " + vertexCount * attribute.getComponents() + " values for the " + attribute.name() + " attribute, got " + values.length);
+            return;
+        }
+        attributes.put(attribute, values);
+    }
+
+    public float[] getAttribute(VertexAttribute attribute) {
+        return attributes.get(attribute);
+    }
+
+    public boolean hasAttribute(VertexAttribute attribute) {
+        return attributes.containsKey(attribute);
+    }
+
+    public Set<VertexAttribute> getAttributes() {
+        return attributes.keySet();
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    public int[] getIndices() {
+        return indices;
+    }
+
+    public int getIndexCount() {
+        return indices.length;
+    }
+}
@@ -1,14 +1,22 @@
 package aleksander73.vector.rendering.mesh;
 
+import aleksander73.vector.rendering.materials.Colour;
 import aleksander73.math.linear_algebra.Vector2d;
 import aleksander73.math.linear_algebra.Vector3d;
+import aleksander73.math.linear_algebra.Vector4d;
 
 public class Vertex {
+    /**
+     * Floats per vertex of a position and texture coordinate in the STANDARD vertex format.
+     */
     public static final int VERTEX_ELEMENTS = 5;
 
     private final int id;
     private final Vector3d position;
     private Vector2d textureCoord;
+    private Vector3d normal;
+    private Colour colour;
+    private Vector4d tangent;
 
     public Vertex(int id, Vector3d position) {
         this.id = id;
@@ -35,4 +43,31 @@ public class Vertex {
     public void setTextureCoord(Vector2d textureCoord) {
         this.textureCoord = textureCoord;
     }
+
+    public Vector3d getNormal() {
+        return normal;
+    }
+
+    public void setNormal(Vector3d normal) {
+        this.normal = normal;
+    }
+
+    public Colour getColour() {
+        return colour;
+    }
+
+    public void setColour(Colour colour) {
+        this.colour = colour;
+    }
+
+    /**
+     * The w component holds the handedness of the tangent space (1 or -1).
+     */
+    public Vector4d getTangent() {
+        return tangent;
+    }
+
+    public void setTangent(Vector4d tangent) {
+        this.tangent = tangent;
+    }
 }
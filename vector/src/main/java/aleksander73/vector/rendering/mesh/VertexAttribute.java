@@ -0,0 +1,46 @@
+package aleksander73.vector.rendering.mesh;
+
+public enum VertexAttribute {
+    POSITION(3, "a_position", 0.0f, 0.0f, 0.0f, 1.0f),
+    TEXTURE_COORD(2, "a_texture_xy", 0.0f, 0.0f, 0.0f, 1.0f),
+    NORMAL(3, "a_normal", 0.0f, 0.0f, 1.0f, 0.0f),
+    COLOUR(4, "a_colour", 1.0f, 1.0f, 1.0f, 1.0f),
+    TANGENT(4, "a_tangent", 1.0f, 0.0f, 0.0f, 1.0f);
+
+    private final int components;
+    private final String shaderName;
+    private final float[] defaultValue;
+
+    VertexAttribute(int components, String shaderName, float... defaultValue) {
+        this.components = components;
+        this.shaderName = shaderName;
+        this.defaultValue = defaultValue;
+    }
+
+    /**
+     * Returns the attribute bound to the shader variable with the given name, or null if it's not a mesh attribute.
+     */
+    public static VertexAttribute forShaderName(String shaderName) {
+        for(VertexAttribute attribute : values()) {
+            if(attribute.shaderName.equals(shaderName)) {
+                return attribute;
+            }
+        }
+        return null;
+    }
+
+    public int getComponents() {
+        return components;
+    }
+
+    public String getShaderName() {
+        return shaderName;
+    }
+
+    /**
+     * Value the shader reads for this attribute when a mesh doesn't provide it.
+     */
+    public float[] getDefaultValue() {
+        return defaultValue;
+    }
+}
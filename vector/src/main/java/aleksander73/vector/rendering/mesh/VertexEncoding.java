@@ -0,0 +1,80 @@
+package aleksander73.vector.rendering.mesh;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+import aleksander73.vector.rendering.GLCapabilities;
+
+public enum VertexEncoding {
+    FLOAT(4, false),
+    HALF_FLOAT(2, false),
+    NORMALIZED_SHORT(2, true),
+    NORMALIZED_UNSIGNED_SHORT(2, true),
+    NORMALIZED_BYTE(1, true),
+    NORMALIZED_UNSIGNED_BYTE(1, true),
+    // Three signed 10-bit components and a signed 2-bit w packed into 4 bytes
+    PACKED_INT_2_10_10_10(0, true);
+
+    private static final int GL_HALF_FLOAT_OES = 0x8D61;
+
+    private final int bytesPerComponent;
+    private final boolean normalized;
+
+    VertexEncoding(int bytesPerComponent, boolean normalized) {
+        this.bytesPerComponent = bytesPerComponent;
+        this.normalized = normalized;
+    }
+
+    /**
+     * Returns the size of an attribute with the given number of components, padded to a multiple of 4 bytes.
+     */
+    public int size(int components) {
+        if(this == PACKED_INT_2_10_10_10) {
+            return 4;
+        }
+        return (components * bytesPerComponent + 3) / 4 * 4;
+    }
+
+    /**
+     * Returns the size to pass to glVertexAttribPointer. Packed attributes always have four components,
+     * as OpenGL ES rejects any other size for them; shaders may still declare them as vec3.
+     */
+    public int getPointerSize(int components) {
+        return (this == PACKED_INT_2_10_10_10) ? 4 : components;
+    }
+
+    public int getGLType() {
+        switch(this) {
+            case FLOAT : return GLES20.GL_FLOAT;
+            case HALF_FLOAT : return GLCapabilities.isGLES3() ? GLES30.GL_HALF_FLOAT : GL_HALF_FLOAT_OES;
+            case NORMALIZED_SHORT : return GLES20.GL_SHORT;
+            case NORMALIZED_UNSIGNED_SHORT : return GLES20.GL_UNSIGNED_SHORT;
+            case NORMALIZED_BYTE : return GLES20.GL_BYTE;
+            case NORMALIZED_UNSIGNED_BYTE : return GLES20.GL_UNSIGNED_BYTE;
+            default : return GLES30.GL_INT_2_10_10_10_REV;
+        }
+    }
+
+    public boolean isNormalized() {
+        return normalized;
+    }
+
+    public boolean isSupported() {
+        switch(this) {
+            case HALF_FLOAT : return GLCapabilities.isGLES3() || GLCapabilities.hasExtension("GL_OES_vertex_half_float");
+            case PACKED_INT_2_10_10_10 : return GLCapabilities.isGLES3();
+            default : return true;
+        }
+    }
+
+    /**
+     * Encoding used instead of this one where the device doesn't support it.
+     */
+    public VertexEncoding fallback() {
+        switch(this) {
+            case HALF_FLOAT : return FLOAT;
+            case PACKED_INT_2_10_10_10 : return NORMALIZED_BYTE;
+            default : return this;
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package aleksander73.vector.rendering.mesh;
+
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import aleksander73.vector.rendering.RenderingSystem;
+
+/**
+ * Describes the interleaved layout of a vertex buffer: which attributes it stores, in which encoding and at which offset.
+ * Every attribute is padded to a multiple of 4 bytes.
+ */
+public class VertexFormat {
+    /**
+     * 32-bit floats everywhere except for the colour. Matches the layout meshes have always used.
+     */
+    public static final VertexFormat STANDARD = new VertexFormat(
+        new Element(VertexAttribute.POSITION, VertexEncoding.FLOAT),
+        new Element(VertexAttribute.TEXTURE_COORD, VertexEncoding.FLOAT),
+        new Element(VertexAttribute.NORMAL, VertexEncoding.FLOAT),
+        new Element(VertexAttribute.COLOUR, VertexEncoding.NORMALIZED_UNSIGNED_BYTE),
+        new Element(VertexAttribute.TANGENT, VertexEncoding.FLOAT)
+    );
+
+    /**
+     * Positions quantized to the mesh bounds, 16-bit texture coordinates and packed normals and tangents.
+     * A textured mesh takes 12 instead of 20 bytes per vertex.
+     */
+    public static final VertexFormat COMPACT = new VertexFormat(
+        new Element(VertexAttribute.POSITION, VertexEncoding.NORMALIZED_SHORT),
+        new Element(VertexAttribute.TEXTURE_COORD, VertexEncoding.NORMALIZED_UNSIGNED_SHORT),
+        new Element(VertexAttribute.NORMAL, VertexEncoding.PACKED_INT_2_10_10_10),
+        new Element(VertexAttribute.COLOUR, VertexEncoding.NORMALIZED_UNSIGNED_BYTE),
+        new Element(VertexAttribute.TANGENT, VertexEncoding.PACKED_INT_2_10_10_10)
+    );
+
+    private final Element[] elements;
+    private final int[] offsets;
+    private final int stride;
+    private final String key;
+
+    public VertexFormat(Element... elements) {
+        this.elements = elements;
+        offsets = new int[elements.length];
+        int offset = 0;
+        StringBuilder builder = new StringBuilder();
+        for(int i = 0; i < elements.length; i++) {
+            offsets[i] = offset;
+            offset += elements[i].encoding.size(elements[i].attribute.getComponents());
+            builder.append(elements[i].attribute.name()).append(':').append(elements[i].encoding.name()).append(',');
+        }
+        stride = offset;
+        key = builder.toString();
+    }
+
+    /**
+     * Returns the format actually used for the given data: attributes the data doesn't provide are dropped
+     * and encodings the device doesn't support are replaced by their fallbacks.
+     * Texture coordinates outside of [0, 1] can't be stored as unsigned normalized values and are kept as floats.
+     */
+    public VertexFormat resolve(MeshData data) {
+        List<Element> resolved = new ArrayList<>();
+        for(Element element : elements) {
+            if(!data.hasAttribute(element.attribute)) {
+                continue;
+            }
+            VertexEncoding encoding = element.encoding;
+            if(encoding == VertexEncoding.NORMALIZED_UNSIGNED_SHORT || encoding == VertexEncoding.NORMALIZED_UNSIGNED_BYTE) {
+                for(float value : data.getAttribute(element.attribute)) {
+                    if(value < 0.0f || value > 1.0f) {
+                        encoding = VertexEncoding.FLOAT;
+                        break;
+                    }
+                }
+            }
+            while(!encoding.isSupported()) {
+                encoding = encoding.fallback();
+            }
+            resolved.add((encoding == element.encoding) ? element : new Element(element.attribute, encoding));
+        }
+        return new VertexFormat(resolved.toArray(new Element[0]));
+    }
+
+    /**
+     * Interleaves the data into a vertex buffer.
+     * Quantized positions are stored relative to the bounds of the data; the shader reconstructs them as
+     * position * positionScale + positionOffset, so both arrays are filled with the values to pass.
+     * The buffer comes from the rendering system's buffer pool and should be released to it once uploaded.
+     */
+    public ByteBuffer encode(MeshData data, float[] positionScale, float[] positionOffset) {
+        return this.encode(data, data.bounds(), positionScale, positionOffset);
+    }
+
+    /**
+     * Quantizes positions relative to the given bounds, so that parts of one mesh can share the decoding parameters.
+     */
+    public ByteBuffer encode(MeshData data, Bounds bounds, float[] positionScale, float[] positionOffset) {
+        for(int i = 0; i < 3; i++) {
+            positionScale[i] = 1.0f;
+            positionOffset[i] = 0.0f;
+        }
+        Element position = this.getElement(VertexAttribute.POSITION);
+        if(position != null && position.encoding != VertexEncoding.FLOAT && !bounds.isEmpty()) {
+            float[] min = { bounds.getMinX(), bounds.getMinY(), bounds.getMinZ() };
+            float[] max = { bounds.getMaxX(), bounds.getMaxY(), bounds.getMaxZ() };
+            for(int i = 0; i < 3; i++) {
+                positionOffset[i] = (min[i] + max[i]) / 2.0f;
+                if(position.encoding.isNormalized()) {
+                    positionScale[i] = Math.max((max[i] - min[i]) / 2.0f, 1e-6f);
+                }
+            }
+        }
+
+        ByteBuffer buffer = RenderingSystem.getBufferPool().acquire(data.getVertexCount() * stride);
+        this.encode(data, 0, data.getVertexCount(), buffer, positionScale, positionOffset);
+        return buffer;
+    }
+
+    /**
+     * Encodes a range of vertices into their place in the target buffer, with the given position decoding.
+     */
+    public void encode(MeshData data, int firstVertex, int vertexCount, ByteBuffer target, float[] positionScale, float[] positionOffset) {
+        float[] value = new float[4];
+        for(int e = 0; e < elements.length; e++) {
+            Element element = elements[e];
+            int components = element.attribute.getComponents();
+            float[] values = data.getAttribute(element.attribute);
+            for(int v = firstVertex; v < firstVertex + vertexCount; v++) {
+                for(int c = 0; c < components; c++) {
+                    value[c] = values[v * components + c];
+                    if(element.attribute == VertexAttribute.POSITION) {
+                        value[c] = (value[c] - positionOffset[c]) / positionScale[c];
+                    }
+                }
+                target.position(v * stride + offsets[e]);
+                VertexFormat.put(target, element.encoding, value, components);
+            }
+        }
+        target.position(0);
+    }
+
+    private static void put(ByteBuffer buffer, VertexEncoding encoding, float[] value, int components) {
+        switch(encoding) {
+            case FLOAT : {
+                for(int c = 0; c < components; c++) {
+                    buffer.putFloat(value[c]);
+                }
+                break;
+            }
+            case HALF_FLOAT : {
+                for(int c = 0; c < components; c++) {
+                    buffer.putShort(VertexFormat.toHalf(value[c]));
+                }
+                break;
+            }
+            case NORMALIZED_SHORT : {
+                for(int c = 0; c < components; c++) {
+                    buffer.putShort((short)Math.round(VertexFormat.clamp(value[c], -1.0f, 1.0f) * 32767.0f));
+                }
+                break;
+            }
+            case NORMALIZED_UNSIGNED_SHORT : {
+                for(int c = 0; c < components; c++) {
+                    buffer.putShort((short)Math.round(VertexFormat.clamp(value[c], 0.0f, 1.0f) * 65535.0f));
+                }
+                break;
+            }
+            case NORMALIZED_BYTE : {
+                for(int c = 0; c < components; c++) {
+                    buffer.put((byte)Math.round(VertexFormat.clamp(value[c], -1.0f, 1.0f) * 127.0f));
+                }
+                break;
+            }
+            case NORMALIZED_UNSIGNED_BYTE : {
+                for(int c = 0; c < components; c++) {
+                    buffer.put((byte)Math.round(VertexFormat.clamp(value[c], 0.0f, 1.0f) * 255.0f));
+                }
+                break;
+            }
+            case PACKED_INT_2_10_10_10 : {
+                int packed = 0;
+                for(int c = 0; c < 3; c++) {
+                    int component = (c < components) ? Math.round(VertexFormat.clamp(value[c], -1.0f, 1.0f) * 511.0f) : 0;
+                    packed |= (component & 0x3FF) << (10 * c);
+                }
+                int w = (components > 3) ? Math.round(VertexFormat.clamp(value[3], -1.0f, 1.0f)) : 0;
+                packed |= (w & 0x3) << 30;
+                buffer.putInt(packed);
+                break;
+            }
+        }
+    }
+
+    private static float clamp(float value, float min, float max) {
+        return Math.min(Math.max(value, min), max);
+    }
+
+    /**
+     * Converts to IEEE 754 half precision, rounding to nearest. android.util.Half needs API level 26.
+     */
+    private static short toHalf(float value) {
+        int bits = Float.floatToIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = ((bits >>> 23) & 0xFF) - 127 + 15;
+        int mantissa = bits & 0x7FFFFF;
+        if((bits & 0x7FFFFFFF) > 0x7F800000) {
+            return (short)(sign | 0x7E00);
+        }
+        if(exponent >= 31) {
+            return (short)(sign | 0x7C00);
+        }
+        if(exponent <= 0) {
+            if(exponent < -10) {
+                return (short)sign;
+            }
+            mantissa = (mantissa | 0x800000) >> (1 - exponent);
+            return (short)(sign | ((mantissa + 0x1000) >> 13));
+        }
+        // A carry out of the mantissa correctly bumps the exponent
+        return (short)(sign | ((exponent << 10) + ((mantissa + 0x1000) >> 13)));
+    }
+
+    public Element getElement(VertexAttribute attribute) {
+        for(Element element : elements) {
+            if(element.attribute == attribute) {
+                return element;
+            }
+        }
+        return null;
+    }
+
+    public int getOffset(VertexAttribute attribute) {
+        for(int i = 0; i < elements.length; i++) {
+            if(elements[i].attribute == attribute) {
+                return offsets[i];
+            }
+        }
+        Log.d("game_engine", "error: The vertex format has no " + attribute.name() + " attribute");
+        return -1;
+    }
+
+    public Element[] getElements() {
+        return elements;
+    }
+
+    public int getStride() {
+        return stride;
+    }
+
+    /**
+     * Formats with equal keys have identical layouts.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    // --------------------------------------------------
+
+    public static class Element {
+        private final VertexAttribute attribute;
+        private final VertexEncoding encoding;
+
+        public Element(VertexAttribute attribute, VertexEncoding encoding) {
+            this.attribute = attribute;
+            this.encoding = encoding;
+        }
+
+        public VertexAttribute getAttribute() {
+            return attribute;
+        }
+
+        public VertexEncoding getEncoding() {
+            return encoding;
+        }
+    }
+}
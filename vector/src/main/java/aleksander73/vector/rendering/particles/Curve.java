@@ -0,0 +1,57 @@
+package aleksander73.vector.rendering.particles;
+
+import android.util.Log;
+
+/**
+ * A piecewise-linear function over [0, 1], e.g. a particle's size over its normalized age.
+ * Keys are baked into a lookup table, so evaluating costs the same however many keys there are.
+ */
+public class Curve {
+    private static final int SAMPLES = 64;
+
+    private final float[] table = new float[SAMPLES + 1];
+
+    /**
+     * @param keys - pairs of time and value, with times in [0, 1] in increasing order.
+     *               The curve is constant before the first and after the last key.
+     */
+    public Curve(float... keys) {
+        if(keys.length < 2 || keys.length % 2 != 0) {
+            Log.d("game_engine", "error: A curve needs pairs of time and value");
+            return;
+        }
+        int key = 0;
+        for(int i = 0; i <= SAMPLES; i++) {
+            float t = (float)i / SAMPLES;
+            while(key + 2 < keys.length && keys[key + 2] <= t) {
+                key += 2;
+            }
+            if(t <= keys[0]) {
+                table[i] = keys[1];
+            } else if(key + 2 >= keys.length) {
+                table[i] = keys[keys.length - 1];
+            } else {
+                float span = keys[key + 2] - keys[key];
+                float f = (span > 0.0f) ? (t - keys[key]) / span : 1.0f;
+                table[i] = keys[key + 1] + (keys[key + 3] - keys[key + 1]) * f;
+            }
+        }
+    }
+
+    public static Curve constant(float value) {
+        return new Curve(0.0f, value);
+    }
+
+    public static Curve linear(float from, float to) {
+        return new Curve(0.0f, from, 1.0f, to);
+    }
+
+    /**
+     * t is clamped to [0, 1].
+     */
+    public float evaluate(float t) {
+        float x = Math.min(Math.max(t, 0.0f), 1.0f) * SAMPLES;
+        int i = Math.min((int)x, SAMPLES - 1);
+        return table[i] + (table[i + 1] - table[i]) * (x - i);
+    }
+}
@@ -0,0 +1,424 @@
+package aleksander73.vector.rendering.particles;
+
+import android.util.Log;
+
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import aleksander73.vector.core.GameEngine;
+import aleksander73.vector.core.Transform;
+import aleksander73.vector.rendering.Camera;
+import aleksander73.vector.rendering.materials.Colour;
+import aleksander73.vector.rendering.materials.Material;
+import aleksander73.vector.rendering.materials.RenderQueue;
+import aleksander73.vector.rendering.materials.Texture;
+import aleksander73.vector.rendering.renderers.Renderer;
+import aleksander73.vector.rendering.shaders.ParticleShader;
+import aleksander73.vector.time.Time;
+
+/**
+ * Emits, simulates and draws particles without a game object per particle.
+ * Particles live in a fixed-capacity ParticlePool and are drawn with one draw call per emitter, see ParticleBatch.
+ * The simulation runs on the OpenGL thread as part of rendering, so the particle arrays are never shared with the game thread,
+ * which only changes the settings and requests bursts. Large emitters can split the simulation across worker threads.
+ * Particles are spawned at the emitter's transform and move in world space; gravity follows PhysicsSystem.getG().
+ * The texture is taken from the game object's material, if it has one.
+ */
+public class ParticleEmitter extends Renderer {
+    public static final int DEFAULT_CAPACITY = 1024;
+    // Longer frames are simulated as this long, so particles don't jump after a pause
+    private static final float MAX_STEP = 0.1f;
+    // Below this many particles per thread, handing work to the workers costs more than it saves
+    private static final int MIN_PARALLEL_PARTICLES = 4096;
+    private static final int INSTANCE_INTS = ParticleShader.INSTANCE_STRIDE / 4;
+    private static final boolean LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+
+    private static ExecutorService workers;
+    private static int workerCount;
+
+    private final ParticlePool pool;
+    private final int[] instances;
+    private final List<Chunk> chunks = new ArrayList<>();
+    private final List<Future<?>> jobs = new ArrayList<>();
+    private long lastTime;
+    private int seed = (int)Time.currentTime() | 1;
+    private volatile int liveCount;
+    private volatile boolean clearRequested;
+
+    private volatile boolean emitting = true;
+    private volatile float rate;
+    private float accumulator;
+    private final AtomicInteger pendingBurst = new AtomicInteger();
+
+    private float minLifetime = 1.0f;
+    private float maxLifetime = 1.0f;
+    private float minSpeed = 1.0f;
+    private float maxSpeed = 1.0f;
+    private float[] direction = { 0.0f, 1.0f, 0.0f };
+    private float spread = (float)Math.PI;
+    private float minSize = 0.1f;
+    private float maxSize = 0.1f;
+    private Colour colour = Colour.DEFAULT;
+    private float gravityScale = 1.0f;
+    private Curve sizeOverLife = Curve.constant(1.0f);
+    private Curve alphaOverLife = Curve.constant(1.0f);
+    private boolean parallel;
+
+    public ParticleEmitter() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity - the most particles alive at once; particles emitted beyond it are dropped
+     */
+    public ParticleEmitter(int capacity) {
+        pool = new ParticlePool(capacity);
+        instances = new int[capacity * INSTANCE_INTS];
+    }
+
+    @Override
+    public void render() {
+        long now = Time.currentTime();
+        float dt = (lastTime == 0L) ? 0.0f : Math.min((now - lastTime) * 0.000000001f, MAX_STEP);
+        lastTime = now;
+        if(clearRequested) {
+            clearRequested = false;
+            pool.clear();
+            accumulator = 0.0f;
+        }
+
+        this.removeExpired(dt);
+        this.emit(dt);
+        this.simulate(dt, GameEngine.getPhysicsSystem().getG() * gravityScale * dt);
+        liveCount = pool.getCount();
+
+        if(Camera.getActiveCamera() == null) {
+            return;
+        }
+        Material material = this.getGameObject().getComponent(Material.class);
+        Texture texture = (material != null) ? material.getTexture() : GameEngine.getResourceSystem().getDefaultTex();
+        GameEngine.getRenderingSystem().getParticleBatch().draw(instances, pool.getCount(), texture);
+    }
+
+    private void removeExpired(float dt) {
+        float[] ages = pool.ages;
+        float[] lifetimes = pool.lifetimes;
+        int i = 0;
+        while(i < pool.getCount()) {
+            if(ages[i] + dt >= lifetimes[i]) {
+                pool.remove(i);
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private void emit(float dt) {
+        int count = pendingBurst.getAndSet(0);
+        if(emitting) {
+            accumulator += rate * dt;
+            int due = (int)accumulator;
+            accumulator -= due;
+            count += due;
+        }
+        if(count == 0) {
+            return;
+        }
+        float[] m = this.getGameObject().getComponent(Transform.class).modelMatrix().getValues();
+        // The emission direction rotates with the transform
+        float dx = m[0] * direction[0] + m[1] * direction[1] + m[2] * direction[2];
+        float dy = m[4] * direction[0] + m[5] * direction[1] + m[6] * direction[2];
+        float dz = m[8] * direction[0] + m[9] * direction[1] + m[10] * direction[2];
+        float length = (float)Math.sqrt(dx * dx + dy * dy + dz * dz);
+        if(length == 0.0f) {
+            dx = 0.0f;
+            dy = 1.0f;
+            dz = 0.0f;
+        } else {
+            dx /= length;
+            dy /= length;
+            dz /= length;
+        }
+        // Two axes perpendicular to the direction, spanning the cone's base
+        float ax = (Math.abs(dx) < 0.9f) ? 1.0f : 0.0f;
+        float ay = 1.0f - ax;
+        float ux = ay * dz;
+        float uy = -ax * dz;
+        float uz = ax * dy - ay * dx;
+        float uLength = (float)Math.sqrt(ux * ux + uy * uy + uz * uz);
+        ux /= uLength;
+        uy /= uLength;
+        uz /= uLength;
+        float wx = dy * uz - dz * uy;
+        float wy = dz * ux - dx * uz;
+        float wz = dx * uy - dy * ux;
+
+        float cosSpread = (float)Math.cos(spread);
+        int packedColour = colour.getRed() | (colour.getGreen() << 8) | (colour.getBlue() << 16) | (colour.getAlpha() << 24);
+        for(int n = 0; n < count; n++) {
+            int i = pool.add();
+            if(i < 0) {
+                break;
+            }
+            // Uniform over the spherical cap around the direction
+            float cosTheta = 1.0f - this.random() * (1.0f - cosSpread);
+            float sinTheta = (float)Math.sqrt(Math.max(0.0f, 1.0f - cosTheta * cosTheta));
+            double phi = 2.0 * Math.PI * this.random();
+            float a = sinTheta * (float)Math.cos(phi);
+            float b = sinTheta * (float)Math.sin(phi);
+            float speed = this.random(minSpeed, maxSpeed);
+            pool.positions[i * 3] = m[3];
+            pool.positions[i * 3 + 1] = m[7];
+            pool.positions[i * 3 + 2] = m[11];
+            pool.velocities[i * 3] = (ux * a + wx * b + dx * cosTheta) * speed;
+            pool.velocities[i * 3 + 1] = (uy * a + wy * b + dy * cosTheta) * speed;
+            pool.velocities[i * 3 + 2] = (uz * a + wz * b + dz * cosTheta) * speed;
+            pool.lifetimes[i] = this.random(minLifetime, maxLifetime);
+            pool.sizes[i] = this.random(minSize, maxSize);
+            pool.colours[i] = packedColour;
+        }
+    }
+
+    private void simulate(float dt, float gravity) {
+        int count = pool.getCount();
+        int chunkCount = 1;
+        if(parallel && count >= 2 * MIN_PARALLEL_PARTICLES) {
+            ExecutorService executor = ParticleEmitter.getWorkers();
+            chunkCount = Math.min(workerCount + 1, count / MIN_PARALLEL_PARTICLES);
+            int chunkSize = (count + chunkCount - 1) / chunkCount;
+            jobs.clear();
+            for(int c = 1; c < chunkCount; c++) {
+                if(chunks.size() < c) {
+                    chunks.add(new Chunk());
+                }
+                Chunk chunk = chunks.get(c - 1);
+                chunk.start = c * chunkSize;
+                chunk.end = Math.min(count, chunk.start + chunkSize);
+                chunk.dt = dt;
+                chunk.gravity = gravity;
+                jobs.add(executor.submit(chunk));
+            }
+            this.simulate(0, chunkSize, dt, gravity);
+            for(Future<?> job : jobs) {
+                try {
+                    job.get();
+                } catch(InterruptedException | ExecutionException e) {
+                    Log.d("game_engine", "error: Particle simulation failed: " + e.getMessage());
+                }
+            }
+            jobs.clear();
+        } else {
+            this.simulate(0, count, dt, gravity);
+        }
+    }
+
+    /**
+     * Advances the particles in [start, end) and writes them out as ParticleShader instances.
+     */
+    private void simulate(int start, int end, float dt, float gravity) {
+        float[] positions = pool.positions;
+        float[] velocities = pool.velocities;
+        float[] ages = pool.ages;
+        float[] lifetimes = pool.lifetimes;
+        float[] sizes = pool.sizes;
+        int[] colours = pool.colours;
+        for(int i = start; i < end; i++) {
+            int v = i * 3;
+            velocities[v + 1] -= gravity;
+            positions[v] += velocities[v] * dt;
+            positions[v + 1] += velocities[v + 1] * dt;
+            positions[v + 2] += velocities[v + 2] * dt;
+            float age = ages[i] + dt;
+            ages[i] = age;
+            float t = age / lifetimes[i];
+
+            int colour = colours[i];
+            int alpha = (int)((colour >>> 24) * alphaOverLife.evaluate(t));
+            colour = (colour & 0x00FFFFFF) | (Math.min(Math.max(alpha, 0), 255) << 24);
+            int o = i * INSTANCE_INTS;
+            instances[o] = Float.floatToRawIntBits(positions[v]);
+            instances[o + 1] = Float.floatToRawIntBits(positions[v + 1]);
+            instances[o + 2] = Float.floatToRawIntBits(positions[v + 2]);
+            instances[o + 3] = Float.floatToRawIntBits(sizes[i] * sizeOverLife.evaluate(t));
+            instances[o + 4] = LITTLE_ENDIAN ? colour : Integer.reverseBytes(colour);
+        }
+    }
+
+    /**
+     * xorshift, in [0, 1)
+     */
+    private float random() {
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return (seed >>> 8) * (1.0f / (1 << 24));
+    }
+
+    private float random(float min, float max) {
+        return min + (max - min) * this.random();
+    }
+
+    private static synchronized ExecutorService getWorkers() {
+        if(workers == null) {
+            workerCount = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+            workers = Executors.newFixedThreadPool(workerCount, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "particles");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return workers;
+    }
+
+    // --------------------------------------------------
+
+    /**
+     * Emits the particles at the start of the next frame. May be called from any thread.
+     */
+    public void burst(int count) {
+        pendingBurst.addAndGet(count);
+    }
+
+    /**
+     * @param rate - particles per second emitted while emitting
+     */
+    public void setRate(float rate) {
+        this.rate = rate;
+    }
+
+    public float getRate() {
+        return rate;
+    }
+
+    /**
+     * Stops or resumes emission at the rate. Bursts are emitted either way and live particles keep moving.
+     */
+    public void setEmitting(boolean emitting) {
+        this.emitting = emitting;
+    }
+
+    public boolean isEmitting() {
+        return emitting;
+    }
+
+    /**
+     * Seconds, chosen per particle in [min, max].
+     */
+    public void setLifetime(float min, float max) {
+        minLifetime = min;
+        maxLifetime = max;
+    }
+
+    public void setSpeed(float min, float max) {
+        minSpeed = min;
+        maxSpeed = max;
+    }
+
+    /**
+     * The centre of the emission cone, in the emitter's local space.
+     */
+    public void setDirection(float x, float y, float z) {
+        direction = new float[] { x, y, z };
+    }
+
+    /**
+     * @param spread - the angle between the direction and the cone's edge in radians; 0 emits along the direction, pi in all directions
+     */
+    public void setSpread(float spread) {
+        this.spread = spread;
+    }
+
+    /**
+     * World-space size of the particles' quads at spawn, chosen per particle in [min, max].
+     */
+    public void setSize(float min, float max) {
+        minSize = min;
+        maxSize = max;
+    }
+
+    public void setColour(Colour colour) {
+        this.colour = colour;
+    }
+
+    /**
+     * 0 for particles that ignore gravity, negative for particles that rise.
+     */
+    public void setGravityScale(float gravityScale) {
+        this.gravityScale = gravityScale;
+    }
+
+    /**
+     * Multiplies the particles' size over their normalized age.
+     */
+    public void setSizeOverLife(Curve sizeOverLife) {
+        this.sizeOverLife = sizeOverLife;
+    }
+
+    /**
+     * Multiplies the particles' alpha over their normalized age, e.g. Curve.linear(1.0f, 0.0f) to fade out.
+     */
+    public void setAlphaOverLife(Curve alphaOverLife) {
+        this.alphaOverLife = alphaOverLife;
+    }
+
+    /**
+     * Splits the simulation of large emitters across worker threads.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Removes all live particles at the start of the next frame.
+     */
+    public void clear() {
+        pendingBurst.set(0);
+        clearRequested = true;
+    }
+
+    /**
+     * The particles drawn by the last frame.
+     */
+    public int getParticleCount() {
+        return liveCount;
+    }
+
+    /**
+     * Whether the emitter has particles to draw or is about to emit some.
+     */
+    public boolean isAlive() {
+        return liveCount > 0 || pendingBurst.get() > 0 || (emitting && rate > 0.0f);
+    }
+
+    /**
+     * Particles are blended and don't write depth, and are sorted with the other transparent renderers by the emitter's position.
+     */
+    @Override
+    public RenderQueue getRenderQueue() {
+        return RenderQueue.TRANSPARENT;
+    }
+
+    // --------------------------------------------------
+
+    private class Chunk implements Runnable {
+        private int start;
+        private int end;
+        private float dt;
+        private float gravity;
+
+        @Override
+        public void run() {
+            ParticleEmitter.this.simulate(start, end, dt, gravity);
+        }
+    }
+}
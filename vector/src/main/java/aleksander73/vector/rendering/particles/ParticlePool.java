@@ -0,0 +1,71 @@
+package aleksander73.vector.rendering.particles;
+
+/**
+ * Fixed-capacity storage for the particles of an emitter, one array per attribute.
+ * Live particles are kept packed at the start of the arrays; a dead particle is replaced by the last live one,
+ * so nothing is allocated after construction and a pass over the particles touches only contiguous memory.
+ */
+public class ParticlePool {
+    private final int capacity;
+    final float[] positions;
+    final float[] velocities;
+    final float[] ages;
+    final float[] lifetimes;
+    final float[] sizes;
+    // RGBA8, red in the lowest byte
+    final int[] colours;
+    private int count;
+
+    public ParticlePool(int capacity) {
+        this.capacity = capacity;
+        positions = new float[capacity * 3];
+        velocities = new float[capacity * 3];
+        ages = new float[capacity];
+        lifetimes = new float[capacity];
+        sizes = new float[capacity];
+        colours = new int[capacity];
+    }
+
+    /**
+     * Returns the index of the new particle, or -1 if the pool is full. Its attributes have to be set by the caller.
+     */
+    int add() {
+        if(count == capacity) {
+            return -1;
+        }
+        ages[count] = 0.0f;
+        return count++;
+    }
+
+    /**
+     * Moves the last live particle into the slot of the removed one.
+     */
+    void remove(int i) {
+        int last = --count;
+        if(i == last) {
+            return;
+        }
+        positions[i * 3] = positions[last * 3];
+        positions[i * 3 + 1] = positions[last * 3 + 1];
+        positions[i * 3 + 2] = positions[last * 3 + 2];
+        velocities[i * 3] = velocities[last * 3];
+        velocities[i * 3 + 1] = velocities[last * 3 + 1];
+        velocities[i * 3 + 2] = velocities[last * 3 + 2];
+        ages[i] = ages[last];
+        lifetimes[i] = lifetimes[last];
+        sizes[i] = sizes[last];
+        colours[i] = colours[last];
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
@@ -1,13 +1,14 @@
 package aleksander73.vector.rendering.renderers;
 
-import android.opengl.GLES20;
-
 import aleksander73.vector.core.GameObject;
+import aleksander73.vector.core.Transform;
 import aleksander73.vector.rendering.materials.Material;
-import aleksander73.vector.rendering.mesh.Face;
+import aleksander73.vector.rendering.mesh.Bounds;
 import aleksander73.vector.rendering.mesh.Mesh;
 import aleksander73.vector.rendering.shaders.Shader;
+import aleksander73.vector.rendering.shaders.ShaderCompiler;
 import aleksander73.vector.rendering.shaders.ShaderInput;
+import aleksander73.math.linear_algebra.Vector3d;
 
 public class MeshRenderer extends Renderer {
     private final Mesh mesh;
@@ -21,16 +22,45 @@ public class MeshRenderer extends Renderer {
         GameObject go = this.getGameObject();
 
         Shader shader = go.getComponent(Material.class).getShader();
-        shader.setShaderInput(new ShaderInput(go));
+        if(!shader.isCompiled()) {
+            // Drawn once the variant has been compiled in the background, rather than stalling this frame
+            ShaderCompiler.request(shader);
+            return;
+        }
+        shader.setShaderInput(new ShaderInput(go, mesh));
         shader.use();
         shader.passUniforms();
-        shader.enableAttributes();
-        shader.passAttributes();
+        mesh.draw(shader);
+    }
 
-        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mesh.getIBO());
-        GLES20.glDrawElements(GLES20.GL_TRIANGLES, mesh.getFaces().length * Face.VERTICES_COUNT, GLES20.GL_UNSIGNED_SHORT, 0);
-        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+    /**
+     * The centre of the mesh's bounds, which for static batches in world space differs from the transform's position.
+     */
+    @Override
+    public Vector3d sortingCenter() {
+        Bounds bounds = mesh.getBounds();
+        if(bounds.isEmpty()) {
+            return super.sortingCenter();
+        }
+        Vector3d c = bounds.getCenter();
+        float[] m = this.getGameObject().getComponent(Transform.class).modelMatrix().getValues();
+        return new Vector3d(
+            m[0] * c.getX() + m[1] * c.getY() + m[2] * c.getZ() + m[3],
+            m[4] * c.getX() + m[5] * c.getY() + m[6] * c.getZ() + m[7],
+            m[8] * c.getX() + m[9] * c.getY() + m[10] * c.getZ() + m[11]
+        );
+    }
+
+    @Override
+    public Bounds worldBounds() {
+        Bounds bounds = mesh.getBounds();
+        if(bounds.isEmpty()) {
+            return null;
+        }
+        return bounds.transform(this.getGameObject().getComponent(Transform.class).modelMatrix().getValues());
+    }
 
-        shader.disableAttributes();
+    public Mesh getMesh() {
+        return mesh;
     }
 }
@@ -1,12 +1,36 @@
 package aleksander73.vector.rendering.renderers;
 
 import aleksander73.vector.core.Component;
+import aleksander73.vector.core.Transform;
+import aleksander73.vector.rendering.materials.Material;
+import aleksander73.vector.rendering.materials.RenderQueue;
+import aleksander73.vector.rendering.mesh.Bounds;
+import aleksander73.math.linear_algebra.Vector3d;
 
 public abstract class Renderer extends Component {
     private boolean active = true;
 
     public abstract void render();
 
+    public RenderQueue getRenderQueue() {
+        Material material = this.getGameObject().getComponent(Material.class);
+        return (material != null) ? material.getRenderQueue() : RenderQueue.OPAQUE;
+    }
+
+    /**
+     * World-space point by which the renderer is sorted within its render pass.
+     */
+    public Vector3d sortingCenter() {
+        return this.getGameObject().getComponent(Transform.class).getPosition();
+    }
+
+    /**
+     * World-space bounds for occlusion culling, or null if the renderer must never be culled.
+     */
+    public Bounds worldBounds() {
+        return null;
+    }
+
     public boolean isActive() {
         return active;
     }
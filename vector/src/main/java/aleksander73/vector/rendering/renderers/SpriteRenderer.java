@@ -0,0 +1,59 @@
+package aleksander73.vector.rendering.renderers;
+
+import aleksander73.vector.core.GameEngine;
+import aleksander73.vector.core.GameObject;
+import aleksander73.vector.core.Transform;
+import aleksander73.vector.rendering.materials.Material;
+import aleksander73.vector.rendering.materials.RenderQueue;
+import aleksander73.vector.rendering.mesh.Mesh;
+import aleksander73.vector.rendering.shaders.Shader;
+import aleksander73.vector.rendering.shaders.ShaderInput;
+import aleksander73.vector.rendering.shaders.SpriteShader;
+
+/**
+ * Submits a textured quad to the rendering system's sprite batch instead of drawing it immediately.
+ * The batch draws with the material's shader if it is a SpriteShader. Any other shader draws the game object's mesh
+ * right away, the way a MeshRenderer would, which puts it below all batched sprites.
+ */
+public class SpriteRenderer extends Renderer {
+    private final float width;
+    private final float height;
+    private final int layer;
+
+    public SpriteRenderer(float width, float height, int layer) {
+        this.width = width;
+        this.height = height;
+        this.layer = layer;
+    }
+
+    @Override
+    public void render() {
+        GameObject go = this.getGameObject();
+        Transform transform = go.getComponent(Transform.class);
+        Material material = go.getComponent(Material.class);
+        Shader shader = material.getShader();
+        if(shader instanceof SpriteShader) {
+            GameEngine.getRenderingSystem().getSpriteBatch().submit(transform.modelMatrix(), width, height, material.getColour(), material.getTexture(), layer, (SpriteShader)shader);
+            return;
+        }
+        Mesh mesh = go.getComponent(Mesh.class);
+        if(mesh != null) {
+            shader.setShaderInput(new ShaderInput(go, mesh));
+            shader.use();
+            shader.passUniforms();
+            mesh.draw(shader);
+        }
+    }
+
+    /**
+     * Sprites are drawn in screen space by the sprite batch, which is flushed in the overlay pass.
+     */
+    @Override
+    public RenderQueue getRenderQueue() {
+        return RenderQueue.OVERLAY;
+    }
+
+    public int getLayer() {
+        return layer;
+    }
+}
@@ -0,0 +1,87 @@
+package aleksander73.vector.rendering.shaders;
+
+import android.opengl.GLES20;
+
+import aleksander73.vector.core.GameEngine;
+import aleksander73.vector.rendering.Camera;
+import aleksander73.vector.rendering.RenderingSystem;
+import aleksander73.vector.rendering.RenderingUtility;
+import aleksander73.vector.rendering.backend.RenderBackend;
+import aleksander73.vector.rendering.materials.Texture;
+import aleksander73.vector.rendering.mesh.Mesh;
+
+/**
+ * Instanced variant of the standard shader, reading the model matrix and colour from a per-instance vertex buffer.
+ * Requires OpenGL ES 3.0 for vertex attribute divisors.
+ */
+public class InstancedShader extends Shader {
+    // Column-major model matrix followed by an RGBA8 colour
+    public static final int INSTANCE_STRIDE = 16 * RenderingUtility.BYTES_PER_FLOAT + 4;
+    private static final int COLOUR_OFFSET = 16 * RenderingUtility.BYTES_PER_FLOAT;
+
+    private static final String VIEW_MATRIX = "u_view";
+    private static final String PROJECTION_MATRIX = "u_projection";
+    private static final String TEXTURE = "u_texture";
+    private static final String TEXTURE_REGION = "u_texture_region";
+
+    private static final String POSITION = "a_position";
+    private static final String TEXTURE_XY = "a_texture_xy";
+    private static final String[] MODEL_COLUMNS = { "a_model_0", "a_model_1", "a_model_2", "a_model_3" };
+    private static final String COLOUR = "a_instance_colour";
+
+    private Mesh mesh;
+    private Texture texture;
+    private int instanceBuffer;
+
+    public InstancedShader() {
+        super(
+            Shader.define(GameEngine.getResourceSystem().loadShader("std.vert"), StandardShader.TEXTURED, StandardShader.INSTANCED),
+            Shader.define(GameEngine.getResourceSystem().loadShader("std.frag"), StandardShader.TEXTURED, StandardShader.INSTANCED),
+            new String[] { VIEW_MATRIX, PROJECTION_MATRIX, TEXTURE, TEXTURE_REGION, POSITION_SCALE, POSITION_OFFSET },
+            new String[] { POSITION, TEXTURE_XY, MODEL_COLUMNS[0], MODEL_COLUMNS[1], MODEL_COLUMNS[2], MODEL_COLUMNS[3], COLOUR }
+        );
+    }
+
+    public void setInstances(Mesh mesh, Texture texture, int instanceBuffer) {
+        this.mesh = mesh;
+        this.texture = texture;
+        this.instanceBuffer = instanceBuffer;
+    }
+
+    @Override
+    public void passUniforms() {
+        RenderBackend gl = RenderingSystem.getBackend();
+        this.setMatrix(VIEW_MATRIX, Camera.getActiveCamera().viewMatrix());
+        this.setMatrix(PROJECTION_MATRIX, Camera.getActiveCamera().projectionMatrix());
+        gl.glActiveTexture(GLES20.GL_TEXTURE0);
+        texture.bind();
+        this.setInteger(TEXTURE, 0);
+        this.setVector4d(TEXTURE_REGION, texture.getRegion());
+        this.passPositionDecoding(mesh);
+    }
+
+    @Override
+    public void passAttributes() {
+        RenderBackend gl = RenderingSystem.getBackend();
+        this.passMeshAttributes(mesh);
+
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, instanceBuffer);
+        for(int i = 0; i < MODEL_COLUMNS.length; i++) {
+            this.setAttributePointer(MODEL_COLUMNS[i], 4, GLES20.GL_FLOAT, false, INSTANCE_STRIDE, i * 4 * RenderingUtility.BYTES_PER_FLOAT);
+            this.setAttributeDivisor(MODEL_COLUMNS[i], 1);
+        }
+        this.setAttributePointer(COLOUR, 4, GLES20.GL_UNSIGNED_BYTE, true, INSTANCE_STRIDE, COLOUR_OFFSET);
+        this.setAttributeDivisor(COLOUR, 1);
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    }
+
+    @Override
+    public void disableAttributes() {
+        super.disableAttributes();
+        // Divisors are part of the default vertex array state, so they would leak into the following draws
+        for(String column : MODEL_COLUMNS) {
+            this.setAttributeDivisor(column, 0);
+        }
+        this.setAttributeDivisor(COLOUR, 0);
+    }
+}
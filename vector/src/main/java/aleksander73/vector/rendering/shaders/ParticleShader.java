@@ -0,0 +1,111 @@
+package aleksander73.vector.rendering.shaders;
+
+import android.opengl.GLES20;
+
+import aleksander73.vector.core.GameEngine;
+import aleksander73.vector.rendering.Camera;
+import aleksander73.vector.rendering.RenderingSystem;
+import aleksander73.vector.rendering.backend.RenderBackend;
+import aleksander73.vector.rendering.materials.Texture;
+
+/**
+ * Draws particles as camera-facing quads. Each particle is a centre, a size and an RGBA8 colour;
+ * on OpenGL ES 3.0 these are per-instance attributes of one quad, on OpenGL ES 2.0 they are repeated for all four corners.
+ */
+public class ParticleShader extends Shader {
+    // Centre, size and colour
+    public static final int INSTANCE_STRIDE = 20;
+    // Instance followed by the corner
+    public static final int VERTEX_STRIDE = 28;
+    private static final int SIZE_OFFSET = 12;
+    private static final int COLOUR_OFFSET = 16;
+    private static final int CORNER_OFFSET = 20;
+
+    private static final String VIEW_MATRIX = "u_view";
+    private static final String PROJECTION_MATRIX = "u_projection";
+    private static final String TEXTURE = "u_texture";
+    private static final String TEXTURE_REGION = "u_texture_region";
+
+    private static final String CENTER = "a_center";
+    private static final String SIZE = "a_size";
+    private static final String COLOUR = "a_colour";
+    private static final String CORNER = "a_corner";
+
+    private Texture texture;
+    private int vbo;
+    private int offset;
+    private int cornerBuffer;
+
+    public ParticleShader() {
+        super(
+            GameEngine.getResourceSystem().loadShader("particle.vert"),
+            GameEngine.getResourceSystem().loadShader("particle.frag"),
+            new String[] { VIEW_MATRIX, PROJECTION_MATRIX, TEXTURE, TEXTURE_REGION },
+            new String[] { CENTER, SIZE, COLOUR, CORNER }
+        );
+    }
+
+    /**
+     * Instanced drawing: per-instance attributes from the instance buffer, corners from a buffer of four vec2s.
+     */
+    public void setInstances(int instanceBuffer, int cornerBuffer) {
+        this.vbo = instanceBuffer;
+        this.offset = 0;
+        this.cornerBuffer = cornerBuffer;
+    }
+
+    /**
+     * Expanded quads: all attributes from the vertex buffer, starting at the offset in bytes.
+     */
+    public void setVertices(int vertexBuffer, int offset) {
+        this.vbo = vertexBuffer;
+        this.offset = offset;
+        this.cornerBuffer = 0;
+    }
+
+    public void setTexture(Texture texture) {
+        this.texture = texture;
+    }
+
+    @Override
+    public void passUniforms() {
+        RenderBackend gl = RenderingSystem.getBackend();
+        this.setMatrix(VIEW_MATRIX, Camera.getActiveCamera().viewMatrix());
+        this.setMatrix(PROJECTION_MATRIX, Camera.getActiveCamera().projectionMatrix());
+        gl.glActiveTexture(GLES20.GL_TEXTURE0);
+        texture.bind();
+        this.setInteger(TEXTURE, 0);
+        this.setVector4d(TEXTURE_REGION, texture.getRegion());
+    }
+
+    @Override
+    public void passAttributes() {
+        RenderBackend gl = RenderingSystem.getBackend();
+        int stride = (cornerBuffer != 0) ? INSTANCE_STRIDE : VERTEX_STRIDE;
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
+        this.setAttributePointer(CENTER, 3, GLES20.GL_FLOAT, false, stride, offset);
+        this.setAttributePointer(SIZE, 1, GLES20.GL_FLOAT, false, stride, offset + SIZE_OFFSET);
+        this.setAttributePointer(COLOUR, 4, GLES20.GL_UNSIGNED_BYTE, true, stride, offset + COLOUR_OFFSET);
+        if(cornerBuffer != 0) {
+            this.setAttributeDivisor(CENTER, 1);
+            this.setAttributeDivisor(SIZE, 1);
+            this.setAttributeDivisor(COLOUR, 1);
+            gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, cornerBuffer);
+            this.setAttributePointer(CORNER, 2, GLES20.GL_FLOAT, false, 0, 0);
+        } else {
+            this.setAttributePointer(CORNER, 2, GLES20.GL_FLOAT, false, stride, offset + CORNER_OFFSET);
+        }
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    }
+
+    @Override
+    public void disableAttributes() {
+        super.disableAttributes();
+        if(cornerBuffer != 0) {
+            // Divisors are part of the default vertex array state, so they would leak into the following draws
+            this.setAttributeDivisor(CENTER, 0);
+            this.setAttributeDivisor(SIZE, 0);
+            this.setAttributeDivisor(COLOUR, 0);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package aleksander73.vector.rendering.shaders;
+
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+import android.util.Log;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import aleksander73.vector.rendering.BufferPool;
+import aleksander73.vector.rendering.RenderingSystem;
+import aleksander73.vector.rendering.backend.RenderBackend;
+
+/**
+ * Keeps linked program binaries on disk, so that later launches and recreated contexts skip compiling and linking.
+ * Binaries are only valid for the driver that produced them, so entries are keyed by the shader sources,
+ * the attribute bindings and the GPU vendor, renderer and driver version.
+ * A binary the driver rejects is deleted and the program compiled from source instead.
+ * The directory is capped at a size: binaries that haven't been used for longest, e.g. those of an old driver
+ * or of variants the game no longer uses, are deleted when the cache is created.
+ * Requires OpenGL ES 3.0 and must only be used on the OpenGL thread.
+ */
+public class ProgramBinaryCache {
+    public static final long DEFAULT_MAX_BYTES = 8L * 1024 * 1024;
+    private static final Comparator<File> LEAST_RECENTLY_USED = new Comparator<File>() {
+        @Override
+        public int compare(File a, File b) {
+            return Long.compare(a.lastModified(), b.lastModified());
+        }
+    };
+
+    private final File directory;
+    private final String driver;
+    private int hits;
+    private int misses;
+    private int rejected;
+
+    public ProgramBinaryCache(File cacheDir) {
+        this(cacheDir, DEFAULT_MAX_BYTES);
+    }
+
+    public ProgramBinaryCache(File cacheDir, long maxBytes) {
+        RenderBackend gl = RenderingSystem.getBackend();
+        directory = new File(cacheDir, "programs");
+        driver = gl.glGetString(GLES20.GL_VENDOR) + "|" + gl.glGetString(GLES20.GL_RENDERER) + "|" + gl.glGetString(GLES20.GL_VERSION);
+        this.prune(maxBytes);
+    }
+
+    /**
+     * Deletes leftover temporary files and the least recently used binaries until the rest fits into maxBytes.
+     */
+    public void prune(long maxBytes) {
+        File[] files = directory.listFiles();
+        if(files == null) {
+            return;
+        }
+        Arrays.sort(files, LEAST_RECENTLY_USED);
+        long total = 0L;
+        for(File file : files) {
+            total += file.length();
+        }
+        for(File file : files) {
+            if(total <= maxBytes && file.getName().endsWith(".bin")) {
+                break;
+            }
+            long length = file.length();
+            if(file.delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    /**
+     * Returns null if no key can be computed, which disables caching of the program.
+     */
+    public String key(String vertexSrc, String fragmentSrc, String[] attributes) {
+        StringBuilder builder = new StringBuilder(driver);
+        builder.append('\0').append(vertexSrc).append('\0').append(fragmentSrc);
+        for(String attribute : attributes) {
+            builder.append('\0').append(attribute);
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(builder.toString().getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder();
+            for(byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch(NoSuchAlgorithmException | IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns a linked program created from the cached binary, or 0 if there is none or the driver rejected it.
+     */
+    public int load(String key) {
+        File file = new File(directory, key + ".bin");
+        if(!file.exists()) {
+            misses++;
+            return 0;
+        }
+        int format;
+        ByteBuffer binary;
+        try {
+            DataInputStream input = new DataInputStream(new FileInputStream(file));
+            format = input.readInt();
+            byte[] bytes = new byte[input.readInt()];
+            input.readFully(bytes);
+            input.close();
+            binary = RenderingSystem.getBufferPool().acquire(bytes.length);
+            binary.put(bytes).position(0);
+        } catch(IOException e) {
+            Log.d("game_engine", "error: Could not read the cached program " + key);
+            file.delete();
+            misses++;
+            return 0;
+        }
+
+        RenderBackend gl = RenderingSystem.getBackend();
+        int program = gl.glCreateProgram();
+        gl.glProgramBinary(program, format, binary, binary.limit());
+        RenderingSystem.getBufferPool().release(binary);
+        int[] linkStatus = new int[1];
+        gl.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
+        if(linkStatus[0] == 0) {
+            // Usually a driver update
+            gl.glDeleteProgram(program);
+            file.delete();
+            rejected++;
+            return 0;
+        }
+        // Marks the binary as recently used for pruning
+        file.setLastModified(System.currentTimeMillis());
+        hits++;
+        return program;
+    }
+
+    /**
+     * The program should have been linked with GL_PROGRAM_BINARY_RETRIEVABLE_HINT set. Programs that failed to link aren't stored.
+     */
+    public void store(int program, String key) {
+        RenderBackend gl = RenderingSystem.getBackend();
+        int[] linkStatus = new int[1];
+        gl.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
+        if(linkStatus[0] == 0) {
+            return;
+        }
+        int[] length = new int[1];
+        gl.glGetProgramiv(program, GLES30.GL_PROGRAM_BINARY_LENGTH, length, 0);
+        if(length[0] <= 0) {
+            return;
+        }
+        BufferPool pool = RenderingSystem.getBufferPool();
+        ByteBuffer binary = pool.acquire(length[0]);
+        int[] format = new int[1];
+        gl.glGetProgramBinary(program, length[0], length, 0, format, 0, binary);
+        if(length[0] <= 0) {
+            pool.release(binary);
+            return;
+        }
+        byte[] bytes = new byte[length[0]];
+        binary.position(0);
+        binary.get(bytes);
+        pool.release(binary);
+
+        if(!directory.exists() && !directory.mkdirs()) {
+            return;
+        }
+        // Written to a temporary file first, so that a crash never leaves a truncated binary behind
+        File temporary = new File(directory, key + ".tmp");
+        try {
+            DataOutputStream output = new DataOutputStream(new FileOutputStream(temporary));
+            output.writeInt(format[0]);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+            output.close();
+            if(!temporary.renameTo(new File(directory, key + ".bin"))) {
+                temporary.delete();
+            }
+        } catch(IOException e) {
+            Log.d("game_engine", "error: Could not cache the program " + key);
+            temporary.delete();
+        }
+    }
+
+    /**
+     * Deletes every cached binary.
+     */
+    public void clear() {
+        File[] files = directory.listFiles();
+        if(files != null) {
+            for(File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    public int getRejected() {
+        return rejected;
+    }
+
+    @Override
+    public String toString() {
+        return hits + " hits, " + misses + " misses, " + rejected + " rejected";
+    }
+}
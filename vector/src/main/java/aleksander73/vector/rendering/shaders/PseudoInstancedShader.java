@@ -0,0 +1,74 @@
+package aleksander73.vector.rendering.shaders;
+
+import android.opengl.GLES20;
+
+import aleksander73.vector.core.GameEngine;
+import aleksander73.vector.rendering.Camera;
+import aleksander73.vector.rendering.RenderingSystem;
+import aleksander73.vector.rendering.RenderingUtility;
+import aleksander73.vector.rendering.backend.RenderBackend;
+import aleksander73.vector.rendering.materials.Texture;
+
+/**
+ * OpenGL ES 2.0 fallback for instancing. The mesh is replicated MAX_INSTANCES times in one vertex buffer
+ * with an instance index per vertex, which selects the model matrix and colour from uniform arrays.
+ */
+public class PseudoInstancedShader extends Shader {
+    // Must match the array sizes in std_pseudo_instanced.vert
+    public static final int MAX_INSTANCES = 20;
+    public static final int VERTEX_ELEMENTS = 6;
+
+    private static final String VIEW_MATRIX = "u_view";
+    private static final String PROJECTION_MATRIX = "u_projection";
+    private static final String TEXTURE = "u_texture";
+    private static final String TEXTURE_REGION = "u_texture_region";
+    private static final String MODEL_MATRICES = "u_models";
+    private static final String COLOURS = "u_colours";
+
+    private static final String POSITION = "a_position";
+    private static final String TEXTURE_XY = "a_texture_xy";
+    private static final String INSTANCE = "a_instance";
+
+    private int vbo;
+    private Texture texture;
+
+    public PseudoInstancedShader() {
+        super(
+            GameEngine.getResourceSystem().loadShader("std_pseudo_instanced.vert"),
+            GameEngine.getResourceSystem().loadShader("std_pseudo_instanced.frag"),
+            new String[] { VIEW_MATRIX, PROJECTION_MATRIX, TEXTURE, TEXTURE_REGION, MODEL_MATRICES, COLOURS },
+            new String[] { POSITION, TEXTURE_XY, INSTANCE }
+        );
+    }
+
+    public void setReplicatedMesh(int vbo, Texture texture) {
+        this.vbo = vbo;
+        this.texture = texture;
+    }
+
+    public void passInstances(float[] modelMatrices, float[] colours, int count) {
+        this.setMatrixArray(MODEL_MATRICES, modelMatrices, count);
+        this.setVector4dArray(COLOURS, colours, count);
+    }
+
+    @Override
+    public void passUniforms() {
+        RenderBackend gl = RenderingSystem.getBackend();
+        this.setMatrix(VIEW_MATRIX, Camera.getActiveCamera().viewMatrix());
+        this.setMatrix(PROJECTION_MATRIX, Camera.getActiveCamera().projectionMatrix());
+        gl.glActiveTexture(GLES20.GL_TEXTURE0);
+        texture.bind();
+        this.setInteger(TEXTURE, 0);
+        this.setVector4d(TEXTURE_REGION, texture.getRegion());
+    }
+
+    @Override
+    public void passAttributes() {
+        RenderBackend gl = RenderingSystem.getBackend();
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
+        this.setAttributePointer(POSITION, 3, GLES20.GL_FLOAT, false, VERTEX_ELEMENTS * RenderingUtility.BYTES_PER_FLOAT, 0);
+        this.setAttributePointer(TEXTURE_XY, 2, GLES20.GL_FLOAT, false, VERTEX_ELEMENTS * RenderingUtility.BYTES_PER_FLOAT, 12);
+        this.setAttributePointer(INSTANCE, 1, GLES20.GL_FLOAT, false, VERTEX_ELEMENTS * RenderingUtility.BYTES_PER_FLOAT, 20);
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    }
+}
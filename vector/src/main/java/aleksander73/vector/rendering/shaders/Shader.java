@@ -1,52 +1,174 @@
 package aleksander73.vector.rendering.shaders;
 
 import android.opengl.GLES20;
+import android.opengl.GLES30;
 import android.util.Log;
 
 import java.util.HashMap;
 import java.util.Map;
 
+import aleksander73.vector.rendering.GPUResourceRegistry;
+import aleksander73.vector.rendering.RenderingSystem;
+import aleksander73.vector.rendering.Restorable;
+import aleksander73.vector.rendering.backend.RenderBackend;
+import aleksander73.vector.rendering.mesh.Mesh;
+import aleksander73.vector.rendering.mesh.VertexAttribute;
+import aleksander73.vector.rendering.mesh.VertexFormat;
 import aleksander73.math.linear_algebra.Matrix;
 import aleksander73.math.linear_algebra.Vector4d;
 
-public abstract class Shader {
-    private final int program;
+public abstract class Shader implements Restorable {
+    protected static final String POSITION_SCALE = "u_position_scale";
+    protected static final String POSITION_OFFSET = "u_position_offset";
+
+    private static ProgramBinaryCache programBinaryCache;
+
+    private final String vertexSrc;
+    private final String fragmentSrc;
+    private final String[] uniformNames;
+    private final String[] attributeNames;
+    private int program;
     private Map<String, Integer> uniforms = new HashMap<>();
     private Map<String, Integer> attributes = new HashMap<>();
+    private String attributeLayout;
     private ShaderInput shaderInput;
+    private boolean compiled;
+    private int generation = GPUResourceRegistry.getGeneration();
 
     public Shader(String vertexSrc, String fragmentSrc, String[] uniforms, String[] attributes) {
+        this(vertexSrc, fragmentSrc, uniforms, attributes, false);
+    }
+
+    /**
+     * A deferred shader doesn't touch OpenGL until compile() is called, so it can be created on any thread.
+     * Uniforms and attributes missing from the program, e.g. optimized out by the driver, are ignored.
+     */
+    protected Shader(String vertexSrc, String fragmentSrc, String[] uniforms, String[] attributes, boolean deferred) {
+        this.vertexSrc = vertexSrc;
+        this.fragmentSrc = fragmentSrc;
+        this.uniformNames = uniforms;
+        this.attributeNames = attributes;
+        if(!deferred) {
+            this.compile();
+        }
+    }
+
+    /**
+     * Compiles and links the program unless that has been done already. Must be called on the OpenGL thread.
+     */
+    public void compile() {
+        if(compiled) {
+            return;
+        }
+        generation = GPUResourceRegistry.getGeneration();
+        this.createProgram();
+        compiled = true;
+        GPUResourceRegistry.register(this);
+    }
+
+    public boolean isCompiled() {
+        return compiled;
+    }
+
+    /**
+     * Adds a #define for every keyword to the source, after the #version directive if there is one.
+     */
+    protected static String define(String source, String... keywords) {
+        StringBuilder defines = new StringBuilder();
+        for(String keyword : keywords) {
+            defines.append("#define ").append(keyword).append('\n');
+        }
+        if(!source.startsWith("#version")) {
+            return defines.append(source).toString();
+        }
+        int end = source.indexOf('\n') + 1;
+        if(end == 0) {
+            return source + '\n' + defines;
+        }
+        return source.substring(0, end) + defines + source.substring(end);
+    }
+
+    private void createProgram() {
+        RenderBackend gl = RenderingSystem.getBackend();
+        ProgramBinaryCache cache = programBinaryCache;
+        String key = (cache != null) ? cache.key(vertexSrc, fragmentSrc, attributeNames) : null;
+        int cachedProgram = (key != null) ? cache.load(key) : 0;
+        if(cachedProgram != 0) {
+            program = cachedProgram;
+        } else {
+            program = this.linkProgram(vertexSrc, fragmentSrc, attributeNames, key != null);
+            if(key != null) {
+                cache.store(program, key);
+            }
+        }
+        for(String uniform : uniformNames) {
+            this.uniforms.put(uniform, gl.glGetUniformLocation(program, uniform));
+        }
+        StringBuilder layout = new StringBuilder();
+        for(String attribute : attributeNames) {
+            int location = gl.glGetAttribLocation(program, attribute);
+            this.attributes.put(attribute, location);
+            layout.append(attribute).append('@').append(location).append(';');
+        }
+        attributeLayout = layout.toString();
+    }
+
+    /**
+     * Links the program again from the retained sources, normally straight from the program binary cache.
+     * The shader object stays the same, so materials keep referring to it.
+     */
+    @Override
+    public void restore() {
+        this.createProgram();
+    }
+
+    private int linkProgram(String vertexSrc, String fragmentSrc, String[] attributes, boolean retrievable) {
+        RenderBackend gl = RenderingSystem.getBackend();
         int vertexShader = this.loadShader(GLES20.GL_VERTEX_SHADER, vertexSrc);
         int fragmentShader = this.loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentSrc);
-        program = GLES20.glCreateProgram();
+        int program = gl.glCreateProgram();
         if(program == 0) {
             Log.d("game_engine", "error: Program has not been created");
         }
-        GLES20.glAttachShader(program, vertexShader);
-        GLES20.glAttachShader(program, fragmentShader);
+        gl.glAttachShader(program, vertexShader);
+        gl.glAttachShader(program, fragmentShader);
         for(int i = 0; i < attributes.length; i++) {
-            GLES20.glBindAttribLocation(program, i, attributes[i]);
+            gl.glBindAttribLocation(program, i, attributes[i]);
         }
-        GLES20.glLinkProgram(program);
+        if(retrievable) {
+            gl.glProgramParameteri(program, GLES30.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GLES20.GL_TRUE);
+        }
+        gl.glLinkProgram(program);
         final int[] linkStatus = new int[1];
-        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
+        gl.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
         if (linkStatus[0] == 0) {
             Log.d("game_engine", "error: Could not link the program");
         }
-        for(String uniform : uniforms) {
-            this.uniforms.put(uniform, GLES20.glGetUniformLocation(program, uniform));
-        }
-        for(String attribute : attributes) {
-            this.attributes.put(attribute, GLES20.glGetAttribLocation(program, attribute));
-        }
+        // The shader objects are freed together with the program
+        gl.glDeleteShader(vertexShader);
+        gl.glDeleteShader(fragmentShader);
+
+        return program;
+    }
+
+    /**
+     * Programs created from now on are looked up in and added to the cache. null disables caching.
+     */
+    public static void setProgramBinaryCache(ProgramBinaryCache cache) {
+        programBinaryCache = cache;
+    }
+
+    public static ProgramBinaryCache getProgramBinaryCache() {
+        return programBinaryCache;
     }
 
     private int loadShader(int type, String src) {
-        int shader = GLES20.glCreateShader(type);
-        GLES20.glShaderSource(shader, src);
-        GLES20.glCompileShader(shader);
+        RenderBackend gl = RenderingSystem.getBackend();
+        int shader = gl.glCreateShader(type);
+        gl.glShaderSource(shader, src);
+        gl.glCompileShader(shader);
         final int[] compileStatus = new int[1];
-        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compileStatus, 0);
+        gl.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compileStatus, 0);
         if (compileStatus[0] == 0) {
             Log.d("game_engine", "error: Could not compile the " + ((type == GLES20.GL_VERTEX_SHADER) ? "vertex" : "fragment") + " shader");
         }
@@ -55,42 +177,157 @@ public abstract class Shader {
     }
 
     public void enableAttributes() {
+        RenderBackend gl = RenderingSystem.getBackend();
         for(String attribute : attributes.keySet()) {
             int handle = attributes.get(attribute);
-            GLES20.glEnableVertexAttribArray(handle);
+            if(handle >= 0) {
+                gl.glEnableVertexAttribArray(handle);
+            }
         }
     }
 
     public void disableAttributes() {
+        RenderBackend gl = RenderingSystem.getBackend();
         for(String attribute : attributes.keySet()) {
             int handle = attributes.get(attribute);
-            GLES20.glDisableVertexAttribArray(handle);
+            if(handle >= 0) {
+                gl.glDisableVertexAttribArray(handle);
+            }
         }
     }
 
+    /**
+     * A deferred shader that hasn't been compiled yet is compiled on the spot, which can stall the frame.
+     */
     public void use() {
-        GLES20.glUseProgram(program);
+        RenderBackend gl = RenderingSystem.getBackend();
+        this.compile();
+        if(generation != GPUResourceRegistry.getGeneration()) {
+            generation = GPUResourceRegistry.getGeneration();
+            GPUResourceRegistry.restore(this);
+        }
+        gl.glUseProgram(program);
     }
 
     public abstract void passUniforms();
 
-    public abstract void passAttributes();
+    /**
+     * Binds the shader's mesh attributes to the vertex buffer of the mesh in the shader input.
+     */
+    public void passAttributes() {
+        this.passMeshAttributes(this.getShaderInput().getMesh());
+    }
+
+    /**
+     * Points every attribute named after a VertexAttribute at its place in the mesh's vertex format.
+     * Attributes the mesh doesn't store are disabled and read as the attribute's default value.
+     * Other attributes are left to the subclass.
+     */
+    protected void passMeshAttributes(Mesh mesh) {
+        RenderBackend gl = RenderingSystem.getBackend();
+        VertexFormat format = mesh.getFormat();
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mesh.getVBO());
+        for(String attribute : attributes.keySet()) {
+            VertexAttribute vertexAttribute = VertexAttribute.forShaderName(attribute);
+            int handle = attributes.get(attribute);
+            if(vertexAttribute == null || handle < 0) {
+                continue;
+            }
+            VertexFormat.Element element = format.getElement(vertexAttribute);
+            if(element != null) {
+                int size = element.getEncoding().getPointerSize(vertexAttribute.getComponents());
+                gl.glVertexAttribPointer(handle, size, element.getEncoding().getGLType(), element.getEncoding().isNormalized(), format.getStride(), format.getOffset(vertexAttribute));
+            } else {
+                gl.glDisableVertexAttribArray(handle);
+                float[] value = vertexAttribute.getDefaultValue();
+                gl.glVertexAttrib4f(handle, value[0], value[1], value[2], value[3]);
+            }
+        }
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Passes the scale and offset decoding the mesh's quantized positions, if the shader declares them.
+     */
+    protected void passPositionDecoding(Mesh mesh) {
+        RenderBackend gl = RenderingSystem.getBackend();
+        if(mesh == null) {
+            return;
+        }
+        if(uniforms.containsKey(POSITION_SCALE)) {
+            gl.glUniform3fv(uniforms.get(POSITION_SCALE), 1, mesh.getPositionScale(), 0);
+        }
+        if(uniforms.containsKey(POSITION_OFFSET)) {
+            gl.glUniform3fv(uniforms.get(POSITION_OFFSET), 1, mesh.getPositionOffset(), 0);
+        }
+    }
+
+    /**
+     * Shaders with equal attribute layouts must set up the vertex attributes of a mesh identically in passAttributes(),
+     * as they share the mesh's vertex array objects.
+     */
+    public String getAttributeLayout() {
+        return attributeLayout;
+    }
 
     protected int getAttribute(String attribute) {
         return attributes.get(attribute);
     }
 
+    /**
+     * Does nothing if the program doesn't use the attribute.
+     */
+    protected void setAttributePointer(String attribute, int size, int type, boolean normalized, int stride, int offset) {
+        RenderBackend gl = RenderingSystem.getBackend();
+        int handle = attributes.get(attribute);
+        if(handle >= 0) {
+            gl.glVertexAttribPointer(handle, size, type, normalized, stride, offset);
+        }
+    }
+
+    /**
+     * Does nothing if the program doesn't use the attribute.
+     */
+    protected void setAttributeDivisor(String attribute, int divisor) {
+        RenderBackend gl = RenderingSystem.getBackend();
+        int handle = attributes.get(attribute);
+        if(handle >= 0) {
+            gl.glVertexAttribDivisor(handle, divisor);
+        }
+    }
+
     protected void setInteger(String uniform, int n) {
-        GLES20.glUniform1i(uniforms.get(uniform), n);
+        RenderBackend gl = RenderingSystem.getBackend();
+        gl.glUniform1i(uniforms.get(uniform), n);
     }
 
     protected void setVector4d(String uniform, Vector4d v) {
-        GLES20.glUniform4fv(uniforms.get(uniform), 1, v.getValues(), 0);
+        RenderBackend gl = RenderingSystem.getBackend();
+        gl.glUniform4fv(uniforms.get(uniform), 1, v.getValues(), 0);
+    }
+
+    protected void setVector4d(String uniform, float[] v) {
+        RenderBackend gl = RenderingSystem.getBackend();
+        gl.glUniform4fv(uniforms.get(uniform), 1, v, 0);
     }
 
     protected void setMatrix(String uniform, Matrix matrix) {
+        RenderBackend gl = RenderingSystem.getBackend();
         // By default OpenGL ES 2.0 uses column-ordering with matrices while I use row-ordering
-        GLES20.glUniformMatrix4fv(uniforms.get(uniform), 1, false, matrix.transpose().getValues(), 0);
+        gl.glUniformMatrix4fv(uniforms.get(uniform), 1, false, matrix.transpose().getValues(), 0);
+    }
+
+    /**
+     * Values must already be in column-major order.
+     */
+    protected void setMatrixArray(String uniform, float[] values, int count) {
+        RenderBackend gl = RenderingSystem.getBackend();
+        gl.glUniformMatrix4fv(uniforms.get(uniform), count, false, values, 0);
+    }
+
+    protected void setVector4dArray(String uniform, float[] values, int count) {
+        RenderBackend gl = RenderingSystem.getBackend();
+        gl.glUniform4fv(uniforms.get(uniform), count, values, 0);
     }
 
     protected ShaderInput getShaderInput() {
@@ -0,0 +1,79 @@
+package aleksander73.vector.rendering.shaders;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import aleksander73.vector.time.Time;
+
+/**
+ * Compiles deferred shaders a few at a time at the start of frames, so that a new variant doesn't stall the frame that first needs it.
+ * Shaders requested for drawing go ahead of those queued to warm up, e.g. during a loading screen.
+ */
+public class ShaderCompiler {
+    public static final long DEFAULT_BUDGET = 4000000L;
+
+    private static final Deque<Shader> queue = new ArrayDeque<>();
+    private static volatile long budget = DEFAULT_BUDGET;
+
+    /**
+     * Queues the shader ahead of the ones warming up. Meant for shaders that are waiting to draw.
+     */
+    public static synchronized void request(Shader shader) {
+        if(shader.isCompiled()) {
+            return;
+        }
+        queue.remove(shader);
+        queue.addFirst(shader);
+    }
+
+    /**
+     * Queues the shader behind the others, to be compiled before it is needed.
+     */
+    public static synchronized void warmUp(Shader shader) {
+        if(!shader.isCompiled() && !queue.contains(shader)) {
+            queue.addLast(shader);
+        }
+    }
+
+    /**
+     * Compiles queued shaders until the budget is spent, and always at least one. Must be called on the OpenGL thread.
+     */
+    public static void compilePending() {
+        long start = Time.currentTime();
+        long end = start + budget;
+        int compiled = 0;
+        do {
+            Shader shader;
+            synchronized(ShaderCompiler.class) {
+                shader = queue.poll();
+            }
+            if(shader == null) {
+                break;
+            }
+            if(!shader.isCompiled()) {
+                shader.compile();
+                compiled++;
+            }
+        } while(Time.currentTime() < end);
+        if(compiled > 0) {
+            Log.d("game_engine", "Compiled " + compiled + " shaders in " + (Time.currentTime() - start) / 1000000 + " ms, " + ShaderCompiler.getPendingCount() + " pending");
+        }
+    }
+
+    /**
+     * Nanoseconds per frame. Can be raised while a loading screen is shown.
+     */
+    public static void setBudget(long budget) {
+        ShaderCompiler.budget = budget;
+    }
+
+    public static long getBudget() {
+        return budget;
+    }
+
+    public static synchronized int getPendingCount() {
+        return queue.size();
+    }
+}
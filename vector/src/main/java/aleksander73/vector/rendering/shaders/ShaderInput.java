@@ -1,15 +1,26 @@
 package aleksander73.vector.rendering.shaders;
 
 import aleksander73.vector.core.GameObject;
+import aleksander73.vector.rendering.mesh.Mesh;
 
 public class ShaderInput {
     private final GameObject gameObject;
+    private final Mesh mesh;
 
     public ShaderInput(GameObject gameObject) {
+        this(gameObject, gameObject.getComponent(Mesh.class));
+    }
+
+    public ShaderInput(GameObject gameObject, Mesh mesh) {
         this.gameObject = gameObject;
+        this.mesh = mesh;
     }
 
     public GameObject getGameObject() {
         return gameObject;
     }
+
+    public Mesh getMesh() {
+        return mesh;
+    }
 }
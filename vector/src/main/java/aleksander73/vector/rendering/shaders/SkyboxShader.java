@@ -5,11 +5,10 @@ import android.opengl.GLES20;
 import aleksander73.vector.core.GameEngine;
 import aleksander73.vector.core.GameObject;
 import aleksander73.vector.rendering.Camera;
-import aleksander73.vector.rendering.RenderingUtility;
+import aleksander73.vector.rendering.RenderingSystem;
+import aleksander73.vector.rendering.backend.RenderBackend;
 import aleksander73.vector.rendering.materials.Colour;
 import aleksander73.vector.rendering.materials.Material;
-import aleksander73.vector.rendering.mesh.Mesh;
-import aleksander73.vector.rendering.mesh.Vertex;
 import aleksander73.math.linear_algebra.Matrix;
 
 public class SkyboxShader extends Shader {
@@ -17,6 +16,7 @@ public class SkyboxShader extends Shader {
     private static final String PROJECTION_MATRIX = "u_projection";
     private static final String COLOUR = "u_colour";
     private static final String TEXTURE = "u_texture";
+    private static final String TEXTURE_REGION = "u_texture_region";
 
     private static final String POSITION = "a_position";
     private static final String TEXTURE_XY = "a_texture_xy";
@@ -25,13 +25,14 @@ public class SkyboxShader extends Shader {
         super(
                 GameEngine.getResourceSystem().loadShader("skybox.vert"),
                 GameEngine.getResourceSystem().loadShader("skybox.frag"),
-                new String[] {VIEW_CENTER_MATRIX, PROJECTION_MATRIX, COLOUR, TEXTURE },
+                new String[] {VIEW_CENTER_MATRIX, PROJECTION_MATRIX, COLOUR, TEXTURE, TEXTURE_REGION, POSITION_SCALE, POSITION_OFFSET },
                 new String[] { POSITION, TEXTURE_XY }
         );
     }
 
     @Override
     public void passUniforms() {
+        RenderBackend gl = RenderingSystem.getBackend();
         GameObject go = this.getShaderInput().getGameObject();
         Material material = go.getComponent(Material.class);
         Matrix rotateViewMatrix = Camera.getActiveCamera().rotateViewMatrix();
@@ -40,17 +41,10 @@ public class SkyboxShader extends Shader {
         this.setMatrix(PROJECTION_MATRIX, projectionMatrix);
         Colour colour = material.getColour();
         this.setVector4d(COLOUR, colour.normalize());
-        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        gl.glActiveTexture(GLES20.GL_TEXTURE0);
         material.getTexture().bind();
         this.setInteger(TEXTURE, 0);
-    }
-
-    @Override
-    public void passAttributes() {
-        int vbo = this.getShaderInput().getGameObject().getComponent(Mesh.class).getVBO();
-        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
-        GLES20.glVertexAttribPointer(this.getAttribute(POSITION), 3, GLES20.GL_FLOAT, false, Vertex.VERTEX_ELEMENTS * RenderingUtility.BYTES_PER_FLOAT, 0);
-        GLES20.glVertexAttribPointer(this.getAttribute(TEXTURE_XY), 2, GLES20.GL_FLOAT, false, Vertex.VERTEX_ELEMENTS * RenderingUtility.BYTES_PER_FLOAT, 12);
-        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        this.setVector4d(TEXTURE_REGION, material.getTexture().getRegion());
+        this.passPositionDecoding(this.getShaderInput().getMesh());
     }
 }
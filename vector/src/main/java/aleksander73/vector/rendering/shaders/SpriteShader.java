@@ -0,0 +1,71 @@
+package aleksander73.vector.rendering.shaders;
+
+import android.opengl.GLES20;
+
+import aleksander73.vector.core.GameEngine;
+import aleksander73.vector.rendering.RenderingSystem;
+import aleksander73.vector.rendering.backend.RenderBackend;
+import aleksander73.vector.rendering.materials.Texture;
+
+/**
+ * Draws pre-transformed, per-vertex coloured quads streamed by the SpriteBatch.
+ * Custom sprite shaders extend it with their own sources, which have to declare the same attributes.
+ */
+public class SpriteShader extends Shader {
+    public static final int STRIDE = 24;
+    private static final int TEXTURE_XY_OFFSET = 12;
+    private static final int COLOUR_OFFSET = 20;
+
+    private static final String TEXTURE = "u_texture";
+
+    private static final String POSITION = "a_position";
+    private static final String TEXTURE_XY = "a_texture_xy";
+    private static final String COLOUR = "a_colour";
+
+    private int vbo;
+    private Texture texture;
+
+    public SpriteShader() {
+        this(GameEngine.getResourceSystem().loadShader("sprite.vert"), GameEngine.getResourceSystem().loadShader("sprite.frag"), new String[0]);
+    }
+
+    /**
+     * @param uniforms - uniforms besides the texture, to be passed by the subclass's passUniforms()
+     */
+    protected SpriteShader(String vertexSrc, String fragmentSrc, String[] uniforms) {
+        super(vertexSrc, fragmentSrc, SpriteShader.withTexture(uniforms), new String[] { POSITION, TEXTURE_XY, COLOUR });
+    }
+
+    private static String[] withTexture(String[] uniforms) {
+        String[] all = new String[uniforms.length + 1];
+        all[0] = TEXTURE;
+        System.arraycopy(uniforms, 0, all, 1, uniforms.length);
+        return all;
+    }
+
+    @Override
+    public void passUniforms() {
+        RenderBackend gl = RenderingSystem.getBackend();
+        gl.glActiveTexture(GLES20.GL_TEXTURE0);
+        texture.bind();
+        this.setInteger(TEXTURE, 0);
+    }
+
+    @Override
+    public void passAttributes() {
+        RenderBackend gl = RenderingSystem.getBackend();
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
+        this.setAttributePointer(POSITION, 3, GLES20.GL_FLOAT, false, STRIDE, 0);
+        this.setAttributePointer(TEXTURE_XY, 2, GLES20.GL_FLOAT, false, STRIDE, TEXTURE_XY_OFFSET);
+        this.setAttributePointer(COLOUR, 4, GLES20.GL_UNSIGNED_BYTE, true, STRIDE, COLOUR_OFFSET);
+        gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    }
+
+    public void setVertexBuffer(int vbo) {
+        this.vbo = vbo;
+    }
+
+    public void setTexture(Texture texture) {
+        this.texture = texture;
+    }
+}
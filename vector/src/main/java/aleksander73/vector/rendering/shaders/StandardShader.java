@@ -6,34 +6,67 @@ import aleksander73.vector.core.GameEngine;
 import aleksander73.vector.core.GameObject;
 import aleksander73.vector.core.Transform;
 import aleksander73.vector.rendering.Camera;
-import aleksander73.vector.rendering.RenderingUtility;
+import aleksander73.vector.rendering.RenderingSystem;
+import aleksander73.vector.rendering.backend.RenderBackend;
 import aleksander73.vector.rendering.materials.Colour;
 import aleksander73.vector.rendering.materials.Material;
-import aleksander73.vector.rendering.mesh.Mesh;
-import aleksander73.vector.rendering.mesh.Vertex;
 import aleksander73.math.linear_algebra.Matrix;
 
+/**
+ * Variants are selected by keywords, each defined in std.vert and std.frag.
+ */
 public class StandardShader extends Shader {
+    public static final String TEXTURED = "TEXTURED";
+    public static final String VERTEX_COLOUR = "VERTEX_COLOUR";
+    public static final String INSTANCED = "INSTANCED";
+
     private static final String MODEL_MATRIX = "u_model";
     private static final String VIEW_MATRIX = "u_view";
     private static final String PROJECTION_MATRIX = "u_projection";
     private static final String COLOUR = "u_colour";
     private static final String TEXTURE = "u_texture";
+    private static final String TEXTURE_REGION = "u_texture_region";
 
     private static final String POSITION = "a_position";
     private static final String TEXTURE_XY = "a_texture_xy";
+    private static final String VERTEX_COLOUR_ATTRIBUTE = "a_colour";
+
+    private final boolean textured;
 
+    /**
+     * The textured variant, compiled straight away.
+     */
     public StandardShader() {
+        this(false, TEXTURED);
+    }
+
+    /**
+     * @param deferred - see Shader.compile()
+     * @param keywords - TEXTURED and VERTEX_COLOUR; INSTANCED is for InstancedShader
+     */
+    public StandardShader(boolean deferred, String... keywords) {
         super(
-            GameEngine.getResourceSystem().loadShader("std.vert"),
-            GameEngine.getResourceSystem().loadShader("std.frag"),
-            new String[] { MODEL_MATRIX, VIEW_MATRIX, PROJECTION_MATRIX, COLOUR, TEXTURE },
-            new String[] { POSITION, TEXTURE_XY }
+            Shader.define(GameEngine.getResourceSystem().loadShader("std.vert"), keywords),
+            Shader.define(GameEngine.getResourceSystem().loadShader("std.frag"), keywords),
+            new String[] { MODEL_MATRIX, VIEW_MATRIX, PROJECTION_MATRIX, COLOUR, TEXTURE, TEXTURE_REGION, POSITION_SCALE, POSITION_OFFSET },
+            StandardShader.hasKeyword(keywords, VERTEX_COLOUR) ? new String[] { POSITION, TEXTURE_XY, VERTEX_COLOUR_ATTRIBUTE } : new String[] { POSITION, TEXTURE_XY },
+            deferred
         );
+        textured = StandardShader.hasKeyword(keywords, TEXTURED);
+    }
+
+    private static boolean hasKeyword(String[] keywords, String keyword) {
+        for(String k : keywords) {
+            if(k.equals(keyword)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     @Override
     public void passUniforms() {
+        RenderBackend gl = RenderingSystem.getBackend();
         GameObject go = this.getShaderInput().getGameObject();
         Transform transform = go.getComponent(Transform.class);
         Material material = go.getComponent(Material.class);
@@ -45,17 +78,12 @@ public class StandardShader extends Shader {
         this.setMatrix(PROJECTION_MATRIX, projectionMatrix);
         Colour colour = material.getColour();
         this.setVector4d(COLOUR, colour.normalize());
-        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-        material.getTexture().bind();
-        this.setInteger(TEXTURE, 0);
-    }
-
-    @Override
-    public void passAttributes() {
-        int vbo = this.getShaderInput().getGameObject().getComponent(Mesh.class).getVBO();
-        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vbo);
-        GLES20.glVertexAttribPointer(this.getAttribute(POSITION), 3, GLES20.GL_FLOAT, false, Vertex.VERTEX_ELEMENTS * RenderingUtility.BYTES_PER_FLOAT, 0);
-        GLES20.glVertexAttribPointer(this.getAttribute(TEXTURE_XY), 2, GLES20.GL_FLOAT, false, Vertex.VERTEX_ELEMENTS * RenderingUtility.BYTES_PER_FLOAT, 12);
-        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        if(textured) {
+            gl.glActiveTexture(GLES20.GL_TEXTURE0);
+            material.getTexture().bind();
+            this.setInteger(TEXTURE, 0);
+            this.setVector4d(TEXTURE_REGION, material.getTexture().getRegion());
+        }
+        this.passPositionDecoding(this.getShaderInput().getMesh());
     }
 }
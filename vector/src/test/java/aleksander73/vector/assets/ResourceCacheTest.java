@@ -0,0 +1,110 @@
+package aleksander73.vector.assets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import aleksander73.vector.core.GameEngine;
+import aleksander73.vector.rendering.GLCapabilities;
+import aleksander73.vector.rendering.GPUResource;
+import aleksander73.vector.rendering.RenderingSystem;
+import aleksander73.vector.rendering.backend.GLESBackend;
+import aleksander73.vector.rendering.backend.HeadlessBackend;
+
+import static org.junit.Assert.*;
+
+public class ResourceCacheTest {
+    private static final long SIZE = 100L;
+
+    private ResourceCache cache;
+
+    @Before
+    public void setUp() {
+        RenderingSystem.setBackend(new HeadlessBackend());
+        GLCapabilities.initialize(2, 0);
+        // Deletions run on the calling thread without a surface
+        new GameEngine().initializeHeadless(null);
+        cache = new ResourceCache(2 * SIZE);
+    }
+
+    @After
+    public void tearDown() {
+        RenderingSystem.setBackend(new GLESBackend());
+    }
+
+    private FakeResource add(String key) {
+        FakeResource resource = new FakeResource();
+        cache.put(key, resource);
+        cache.acquire(key);
+        return resource;
+    }
+
+    @Test
+    public void referencedResourcesExceedTheBudget() {
+        this.add("a");
+        this.add("b");
+        this.add("c");
+
+        assertEquals(3 * SIZE, cache.getResidentBytes());
+        assertEquals(0, cache.getEvictions());
+    }
+
+    @Test
+    public void releasedResourcesAreEvictedLeastRecentlyUsedFirst() {
+        FakeResource a = this.add("a");
+        FakeResource b = this.add("b");
+        this.add("c");
+        cache.setBudget(3 * SIZE);
+        cache.release("a");
+        cache.release("b");
+        cache.get("a");
+
+        cache.setBudget(2 * SIZE);
+
+        assertFalse(a.deleted);
+        assertTrue(b.deleted);
+        assertEquals(2 * SIZE, cache.getResidentBytes());
+    }
+
+    @Test
+    public void pinnedResourcesAreNeverEvicted() {
+        FakeResource a = this.add("a");
+        cache.pin("a");
+        cache.release("a");
+
+        cache.evictUnused();
+
+        assertFalse(a.deleted);
+        assertNotNull(cache.peek("a"));
+    }
+
+    @Test
+    public void everyReferenceHasToBeReleased() {
+        FakeResource a = this.add("a");
+        cache.acquire("a");
+
+        cache.release("a");
+        cache.evictUnused();
+        assertFalse(a.deleted);
+
+        cache.release("a");
+        cache.evictUnused();
+        assertTrue(a.deleted);
+    }
+
+    // --------------------------------------------------
+
+    private static class FakeResource implements GPUResource {
+        private boolean deleted;
+
+        @Override
+        public long getGPUBytes() {
+            return SIZE;
+        }
+
+        @Override
+        public void delete() {
+            deleted = true;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package aleksander73.vector.rendering;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import aleksander73.vector.rendering.backend.GLESBackend;
+import aleksander73.vector.rendering.backend.HeadlessBackend;
+
+import static org.junit.Assert.*;
+
+public class GPUTimerTest {
+    private static final String EXTENSION = "GL_EXT_disjoint_timer_query";
+
+    private HeadlessBackend backend;
+
+    @Before
+    public void setUp() {
+        backend = new HeadlessBackend(3, 0, EXTENSION);
+        RenderingSystem.setBackend(backend);
+        GLCapabilities.initialize(3, 0, EXTENSION);
+    }
+
+    @After
+    public void tearDown() {
+        RenderingSystem.setBackend(new GLESBackend());
+    }
+
+    @Test
+    public void requiresTheExtension() {
+        assertTrue(GPUTimer.isSupported());
+        GLCapabilities.initialize(3, 0);
+        assertFalse(GPUTimer.isSupported());
+    }
+
+    @Test
+    public void reportsArrivedResultsOnce() {
+        GPUTimer timer = new GPUTimer();
+        assertEquals(-1L, timer.poll());
+
+        timer.begin();
+        timer.end();
+
+        // The headless backend measures no time
+        assertEquals(0L, timer.poll());
+        assertEquals(-1L, timer.poll());
+        assertEquals(1, backend.getCallCount("glBeginQuery"));
+    }
+
+    @Test
+    public void deletesItsQueries() {
+        GPUTimer timer = new GPUTimer();
+        timer.begin();
+        timer.end();
+        assertEquals(4, backend.getLiveQueries());
+
+        timer.delete();
+
+        assertEquals(0, backend.getLiveQueries());
+    }
+}
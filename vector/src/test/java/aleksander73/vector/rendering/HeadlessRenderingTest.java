@@ -0,0 +1,248 @@
+package aleksander73.vector.rendering;
+
+import android.opengl.GLES30;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import aleksander73.vector.core.GameEngine;
+import aleksander73.vector.core.GameObject;
+import aleksander73.vector.rendering.backend.GLESBackend;
+import aleksander73.vector.rendering.backend.HeadlessBackend;
+import aleksander73.vector.rendering.batching.SpriteBatch;
+import aleksander73.vector.rendering.materials.Colour;
+import aleksander73.vector.rendering.materials.Material;
+import aleksander73.vector.rendering.materials.Texture;
+import aleksander73.vector.rendering.mesh.Mesh;
+import aleksander73.vector.rendering.mesh.MeshBuilder;
+import aleksander73.vector.rendering.mesh.VertexFormat;
+import aleksander73.vector.rendering.renderers.MeshRenderer;
+import aleksander73.vector.rendering.renderers.Renderer;
+import aleksander73.vector.rendering.shaders.Shader;
+import aleksander73.vector.rendering.shaders.SpriteShader;
+
+import static org.junit.Assert.*;
+
+public class HeadlessRenderingTest {
+    private HeadlessBackend backend;
+    private RenderingSystem renderingSystem;
+    private Shader shader;
+    private Texture texture;
+
+    private void setUp(int majorVersion) {
+        backend = new HeadlessBackend(majorVersion, 0);
+        RenderingSystem.setBackend(backend);
+        GLCapabilities.initialize(majorVersion, 0);
+        new GameEngine().initializeHeadless(null);
+        renderingSystem = GameEngine.getRenderingSystem();
+        shader = new UnlitShader();
+        texture = new Texture(1);
+    }
+
+    @Before
+    public void setUp() {
+        this.setUp(2);
+    }
+
+    @After
+    public void tearDown() {
+        RenderingSystem.setBackend(new GLESBackend());
+    }
+
+    private Renderer createRenderer(Mesh mesh) {
+        return this.createRenderer(mesh, shader);
+    }
+
+    private Renderer createRenderer(Mesh mesh, Shader shader) {
+        GameObject go = new GameObject("object") {};
+        MeshRenderer renderer = new MeshRenderer(mesh);
+        go.addComponents(new Material(Colour.DEFAULT, texture, shader), renderer);
+        return renderer;
+    }
+
+    private List<Renderer> createScene() {
+        Mesh quad = new MeshBuilder().quad(1.0f, 1.0f).buildMesh();
+        Mesh box = new MeshBuilder().box(1.0f, 1.0f, 1.0f).buildMesh();
+        List<Renderer> renderers = new ArrayList<>();
+        renderers.add(this.createRenderer(quad));
+        renderers.add(this.createRenderer(quad));
+        renderers.add(this.createRenderer(box));
+        return renderers;
+    }
+
+    private void renderFrame(List<Renderer> renderers) {
+        renderingSystem.beginFrame();
+        renderingSystem.clearScreen();
+        renderingSystem.render(renderers);
+        renderingSystem.endFrame();
+    }
+
+    @Test
+    public void drawsEveryRendererOnce() {
+        List<Renderer> renderers = this.createScene();
+        backend.reset();
+
+        this.renderFrame(renderers);
+
+        assertEquals(3, backend.getDrawCalls());
+        // Two quads and a box with six quad faces
+        assertEquals(2 + 2 + 12, backend.getTriangles());
+        assertEquals(1, backend.getCallCount("glClear"));
+    }
+
+    @Test
+    public void uploadsMeshesOnce() {
+        List<Renderer> renderers = this.createScene();
+        assertEquals(4, backend.getLiveBuffers());
+        backend.reset();
+
+        this.renderFrame(renderers);
+        this.renderFrame(renderers);
+
+        assertEquals(0, backend.getCallCount("glBufferData"));
+        assertEquals(6, backend.getDrawCalls());
+        assertEquals(4, backend.getLiveBuffers());
+    }
+
+    @Test
+    public void replaysVertexArraysOnOpenGLES3() {
+        this.setUp(3);
+        List<Renderer> renderers = this.createScene();
+        backend.reset();
+
+        this.renderFrame(renderers);
+        this.renderFrame(renderers);
+
+        assertEquals(6, backend.getDrawCalls());
+        assertEquals(2 * (2 + 2 + 12), backend.getTriangles());
+        // One vertex array per mesh, recorded in the first frame
+        assertEquals(2, backend.getLiveVertexArrays());
+        assertEquals(2, backend.getCallCount("glGenVertexArrays"));
+    }
+
+    @Test
+    public void pointsPackedNormalsWithFourComponents() {
+        this.setUp(3);
+        Mesh box = new MeshBuilder().box(1.0f, 1.0f, 1.0f).buildMesh(VertexFormat.COMPACT);
+        List<Renderer> renderers = new ArrayList<>();
+        renderers.add(this.createRenderer(box, new NormalShader()));
+        backend.reset();
+
+        this.renderFrame(renderers);
+
+        String packedType = ", " + GLES30.GL_INT_2_10_10_10_REV + ", ";
+        int packedPointers = 0;
+        for(String command : backend.getCommands()) {
+            if(command.startsWith("glVertexAttribPointer(") && command.contains(packedType)) {
+                // OpenGL ES only accepts a size of 4 for packed attributes
+                assertTrue(command, command.matches("glVertexAttribPointer\\(\\d+, 4, .*"));
+                packedPointers++;
+            }
+        }
+        assertEquals(1, packedPointers);
+    }
+
+    @Test
+    public void countsFramesOnceStatisticsAreEnabled() {
+        List<Renderer> renderers = this.createScene();
+        renderingSystem.setStatisticsEnabled(true);
+        assertTrue(renderingSystem.isStatisticsEnabled());
+
+        this.renderFrame(renderers);
+
+        assertEquals(3, renderingSystem.getStatistics().getFrame(0).getDrawCalls());
+        renderingSystem.setStatisticsEnabled(false);
+        assertSame(backend, RenderingSystem.getBackend());
+    }
+
+    @Test
+    public void batchesSpritesOfOneTextureIntoOneDraw() {
+        SpriteBatch spriteBatch = renderingSystem.getSpriteBatch();
+        SpriteShader spriteShader = new UnlitSpriteShader();
+        backend.reset();
+
+        for(int i = 0; i < 100; i++) {
+            spriteBatch.submit(i * 0.01f, 0.0f, 0.01f, 0.5f, Colour.DEFAULT, texture, 0, spriteShader);
+        }
+        spriteBatch.flush();
+
+        assertEquals(1, backend.getDrawCalls());
+        assertEquals(200, backend.getTriangles());
+    }
+
+    // --------------------------------------------------
+
+    private static class UnlitShader extends Shader {
+        private static final String VERTEX_SOURCE =
+            "attribute vec3 a_position;\n" +
+            "void main() {\n" +
+            "    gl_Position = vec4(a_position, 1.0);\n" +
+            "}\n";
+        private static final String FRAGMENT_SOURCE =
+            "precision mediump float;\n" +
+            "void main() {\n" +
+            "    gl_FragColor = vec4(1.0);\n" +
+            "}\n";
+
+        private UnlitShader() {
+            super(VERTEX_SOURCE, FRAGMENT_SOURCE, new String[0], new String[] { "a_position" });
+        }
+
+        @Override
+        public void passUniforms() {}
+    }
+
+    // --------------------------------------------------
+
+    private static class NormalShader extends Shader {
+        private static final String VERTEX_SOURCE =
+            "attribute vec3 a_position;\n" +
+            "attribute vec3 a_normal;\n" +
+            "varying vec3 v_normal;\n" +
+            "void main() {\n" +
+            "    gl_Position = vec4(a_position, 1.0);\n" +
+            "    v_normal = a_normal;\n" +
+            "}\n";
+        private static final String FRAGMENT_SOURCE =
+            "precision mediump float;\n" +
+            "varying vec3 v_normal;\n" +
+            "void main() {\n" +
+            "    gl_FragColor = vec4(v_normal * 0.5 + 0.5, 1.0);\n" +
+            "}\n";
+
+        private NormalShader() {
+            super(VERTEX_SOURCE, FRAGMENT_SOURCE, new String[0], new String[] { "a_position", "a_normal" });
+        }
+
+        @Override
+        public void passUniforms() {}
+    }
+
+    // --------------------------------------------------
+
+    private static class UnlitSpriteShader extends SpriteShader {
+        private static final String VERTEX_SOURCE =
+            "attribute vec3 a_position;\n" +
+            "attribute vec2 a_texture_xy;\n" +
+            "attribute vec4 a_colour;\n" +
+            "varying vec4 v_colour;\n" +
+            "void main() {\n" +
+            "    gl_Position = vec4(a_position, 1.0);\n" +
+            "    v_colour = a_colour;\n" +
+            "}\n";
+        private static final String FRAGMENT_SOURCE =
+            "precision mediump float;\n" +
+            "varying vec4 v_colour;\n" +
+            "void main() {\n" +
+            "    gl_FragColor = v_colour;\n" +
+            "}\n";
+
+        private UnlitSpriteShader() {
+            super(VERTEX_SOURCE, FRAGMENT_SOURCE, new String[0]);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package aleksander73.vector.rendering;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class QualityGovernorTest {
+    // Frames averaged per evaluation
+    private static final int WINDOW_FRAMES = 30;
+    // Over 90% of the 60 fps budget
+    private static final long SLOW = 20000000L;
+    // Neither over budget nor fast enough for the next level up
+    private static final long STEADY = 12000000L;
+    // Well below the budget of the next level up, even with its extra pixels
+    private static final long FAST = 5000000L;
+
+    private QualityGovernor governor;
+
+    @Before
+    public void setUp() {
+        governor = new QualityGovernor();
+    }
+
+    private void feedWindows(int windows, long frameTime) {
+        for(int i = 0; i < windows * WINDOW_FRAMES; i++) {
+            governor.reportFrame(frameTime, 0L);
+        }
+    }
+
+    @Test
+    public void deterministicModeIgnoresFrameTimes() {
+        governor.setDeterministic(true);
+        governor.setLevel(2);
+
+        this.feedWindows(10, SLOW);
+        assertEquals(2, governor.getLevelIndex());
+        this.feedWindows(10, FAST);
+        assertEquals(2, governor.getLevelIndex());
+    }
+
+    @Test
+    public void slowWindowMovesDownOneLevel() {
+        this.feedWindows(1, SLOW);
+
+        assertEquals(1, governor.getLevelIndex());
+    }
+
+    @Test
+    public void cooldownDelaysNextDowngrade() {
+        this.feedWindows(1, SLOW);
+        // Two windows of cooldown after every change
+        this.feedWindows(2, SLOW);
+        assertEquals(1, governor.getLevelIndex());
+
+        this.feedWindows(1, SLOW);
+        assertEquals(2, governor.getLevelIndex());
+    }
+
+    @Test
+    public void upgradeNeedsConsecutiveFastWindows() {
+        governor.setLevel(1);
+        this.feedWindows(2, FAST);
+        this.feedWindows(3, FAST);
+        assertEquals(1, governor.getLevelIndex());
+
+        // An ordinary window starts the count over
+        this.feedWindows(1, STEADY);
+        this.feedWindows(3, FAST);
+        assertEquals(1, governor.getLevelIndex());
+
+        this.feedWindows(1, FAST);
+        assertEquals(0, governor.getLevelIndex());
+    }
+
+    @Test
+    public void steadyFramesKeepTheLevel() {
+        governor.setLevel(1);
+
+        this.feedWindows(20, STEADY);
+
+        assertEquals(1, governor.getLevelIndex());
+    }
+
+    @Test
+    public void gpuTimeCountsWhenSlowerThanTheCPU() {
+        governor.reportGPUTime(SLOW);
+        for(int i = 0; i < WINDOW_FRAMES; i++) {
+            governor.reportFrame(FAST);
+        }
+
+        assertEquals(1, governor.getLevelIndex());
+    }
+
+    @Test
+    public void thermalHintCapsTheLevel() {
+        governor.setThermalHint(1.0f);
+
+        this.feedWindows(1, FAST);
+
+        assertEquals(governor.getLevels().size() - 1, governor.getLevelIndex());
+    }
+}
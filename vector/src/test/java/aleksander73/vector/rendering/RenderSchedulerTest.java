@@ -0,0 +1,90 @@
+package aleksander73.vector.rendering;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import aleksander73.vector.core.GameEngine;
+import aleksander73.vector.core.GameObject;
+import aleksander73.vector.rendering.backend.GLESBackend;
+import aleksander73.vector.rendering.backend.HeadlessBackend;
+import aleksander73.vector.rendering.materials.Colour;
+import aleksander73.vector.rendering.materials.Material;
+import aleksander73.vector.rendering.materials.Texture;
+import aleksander73.vector.rendering.mesh.DynamicMesh;
+import aleksander73.vector.rendering.mesh.VertexAttribute;
+import aleksander73.vector.rendering.renderers.MeshRenderer;
+import aleksander73.vector.scene.Scene;
+
+import static org.junit.Assert.*;
+
+public class RenderSchedulerTest {
+    private RenderScheduler scheduler;
+    private Scene scene;
+    private Colour colour;
+    private DynamicMesh mesh;
+
+    @Before
+    public void setUp() {
+        RenderingSystem.setBackend(new HeadlessBackend(2, 0));
+        GLCapabilities.initialize(2, 0);
+        new GameEngine().initializeHeadless(null);
+
+        colour = new Colour(255, 255, 255, 255);
+        mesh = new DynamicMesh(4, 6, VertexAttribute.POSITION);
+        GameObject go = new GameObject("object") {};
+        go.addComponents(new Material(colour, new Texture(1), null), new MeshRenderer(mesh));
+        List<GameObject> gameObjects = new ArrayList<>();
+        gameObjects.add(go);
+        scene = new Scene(gameObjects);
+
+        scheduler = new RenderScheduler();
+        scheduler.setOnDemand(true);
+        assertTrue(scheduler.shouldRender(scene));
+    }
+
+    @After
+    public void tearDown() {
+        RenderingSystem.setBackend(new GLESBackend());
+    }
+
+    @Test
+    public void skipsUnchangedScene() {
+        assertFalse(scheduler.shouldRender(scene));
+        assertEquals(1, scheduler.getSkippedFrames());
+    }
+
+    @Test
+    public void rendersAfterColourSetter() {
+        colour.setAlpha(128);
+
+        assertTrue(scheduler.shouldRender(scene));
+        assertFalse(scheduler.shouldRender(scene));
+    }
+
+    @Test
+    public void rendersAfterDynamicMeshVertexUpdate() {
+        mesh.getAttribute(VertexAttribute.POSITION)[0] = 1.0f;
+        mesh.updateVertices();
+
+        assertTrue(scheduler.shouldRender(scene));
+        assertFalse(scheduler.shouldRender(scene));
+    }
+
+    @Test
+    public void rendersAfterDynamicMeshIndexUpdate() {
+        mesh.updateIndices(3);
+
+        assertTrue(scheduler.shouldRender(scene));
+    }
+
+    @Test
+    public void rendersWhenForced() {
+        scheduler.forceRefresh();
+
+        assertTrue(scheduler.shouldRender(scene));
+    }
+}
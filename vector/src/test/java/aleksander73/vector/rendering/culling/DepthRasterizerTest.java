@@ -0,0 +1,119 @@
+package aleksander73.vector.rendering.culling;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DepthRasterizerTest {
+    // Odd sizes, so that the coarser levels have partial texels at the right and top edges
+    private static final int WIDTH = 61;
+    private static final int HEIGHT = 33;
+
+    // Looks down +z with w = z, so a point at (x, y, z) lands at NDC (x / z, y / z)
+    private static final float[] VIEW_PROJECTION = {
+        1.0f, 0.0f, 0.0f, 0.0f,
+        0.0f, 1.0f, 0.0f, 0.0f,
+        0.0f, 0.0f, 0.0f, 0.0f,
+        0.0f, 0.0f, 1.0f, 0.0f
+    };
+    private static final float[] IDENTITY = {
+        1.0f, 0.0f, 0.0f, 0.0f,
+        0.0f, 1.0f, 0.0f, 0.0f,
+        0.0f, 0.0f, 1.0f, 0.0f,
+        0.0f, 0.0f, 0.0f, 1.0f
+    };
+    private static final int[] QUAD_INDICES = { 0, 1, 2, 0, 2, 3 };
+
+    private DepthRasterizer rasterizer;
+
+    @Before
+    public void setUp() {
+        rasterizer = new DepthRasterizer(WIDTH, HEIGHT);
+        rasterizer.begin(VIEW_PROJECTION);
+    }
+
+    private void drawWall(float minX, float maxX, float minY, float maxY, float z) {
+        float[] positions = {
+            minX, minY, z,
+            maxX, minY, z,
+            maxX, maxY, z,
+            minX, maxY, z
+        };
+        rasterizer.drawMesh(positions, QUAD_INDICES, IDENTITY, 0);
+    }
+
+    @Test
+    public void boxBehindOccluderIsRejected() {
+        // Covers the whole screen at z = 2
+        this.drawWall(-2.0f, 2.0f, -2.0f, 2.0f, 2.0f);
+        rasterizer.buildHierarchy();
+
+        assertFalse(rasterizer.isVisible(-0.5f, -0.5f, 4.0f, 0.5f, 0.5f, 5.0f));
+    }
+
+    @Test
+    public void boxPartlyInFrontOfOccluderIsKept() {
+        this.drawWall(-2.0f, 2.0f, -2.0f, 2.0f, 2.0f);
+        rasterizer.buildHierarchy();
+
+        assertTrue(rasterizer.isVisible(-0.5f, -0.5f, 1.0f, 0.5f, 0.5f, 5.0f));
+    }
+
+    @Test
+    public void boxWithoutOccluderIsKept() {
+        rasterizer.buildHierarchy();
+
+        assertTrue(rasterizer.isVisible(-0.5f, -0.5f, 4.0f, 0.5f, 0.5f, 5.0f));
+    }
+
+    @Test
+    public void largeBoxSeesUncoveredStripAtRightEdge() {
+        // Leaves the rightmost columns uncovered; a box spanning the screen is tested on a coarse level
+        this.drawWall(-2.0f, 1.9f, -2.0f, 2.0f, 2.0f);
+        rasterizer.buildHierarchy();
+        float[] depth = rasterizer.getDepth();
+        assertEquals(0.0f, depth[WIDTH - 1], 0.0f);
+
+        assertTrue(rasterizer.isVisible(-4.0f, -4.0f, 4.0f, 4.0f, 4.0f, 5.0f));
+    }
+
+    @Test
+    public void largeBoxSeesUncoveredStripAtTopEdge() {
+        this.drawWall(-2.0f, 2.0f, -2.0f, 1.9f, 2.0f);
+        rasterizer.buildHierarchy();
+
+        assertTrue(rasterizer.isVisible(-4.0f, -4.0f, 4.0f, 4.0f, 4.0f, 5.0f));
+    }
+
+    @Test
+    public void largeBoxBehindFullOccluderIsRejected() {
+        this.drawWall(-2.0f, 2.0f, -2.0f, 2.0f, 2.0f);
+        rasterizer.buildHierarchy();
+
+        // Reaches past every edge of the screen, so the clamped rectangle is tested on the coarsest levels
+        assertFalse(rasterizer.isVisible(-8.0f, -8.0f, 4.0f, 8.0f, 8.0f, 5.0f));
+    }
+
+    @Test
+    public void boxCrossingLeftEdgeBehindOccluderIsRejected() {
+        this.drawWall(-2.0f, 2.0f, -2.0f, 2.0f, 2.0f);
+        rasterizer.buildHierarchy();
+
+        assertFalse(rasterizer.isVisible(-4.4f, -0.5f, 4.0f, -3.6f, 0.5f, 5.0f));
+    }
+
+    @Test
+    public void boxOffScreenIsKept() {
+        this.drawWall(-2.0f, 2.0f, -2.0f, 2.0f, 2.0f);
+        rasterizer.buildHierarchy();
+
+        assertTrue(rasterizer.isVisible(10.0f, -0.5f, 4.0f, 11.0f, 0.5f, 5.0f));
+    }
+
+    @Test
+    public void levelsHalveDownToOneTexel() {
+        // 61x33, 31x17, 16x9, 8x5, 4x3, 2x2, 1x1
+        assertEquals(7, rasterizer.getLevelCount());
+    }
+}
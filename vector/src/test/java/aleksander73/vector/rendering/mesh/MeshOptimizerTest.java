@@ -0,0 +1,120 @@
+package aleksander73.vector.rendering.mesh;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MeshOptimizerTest {
+    private static final int CELLS = 24;
+
+    private MeshData grid;
+
+    /**
+     * A grid of CELLS x CELLS quads whose triangles are shuffled and don't share vertices, as a mesh exported without indexing would be.
+     */
+    @Before
+    public void setUp() {
+        List<int[]> triangles = new ArrayList<>();
+        for(int y = 0; y < CELLS; y++) {
+            for(int x = 0; x < CELLS; x++) {
+                int v = y * (CELLS + 1) + x;
+                triangles.add(new int[] { v, v + 1, v + CELLS + 2 });
+                triangles.add(new int[] { v, v + CELLS + 2, v + CELLS + 1 });
+            }
+        }
+        Collections.shuffle(triangles, new Random(42));
+
+        float[] positions = new float[triangles.size() * 9];
+        int[] indices = new int[triangles.size() * 3];
+        for(int t = 0; t < triangles.size(); t++) {
+            for(int corner = 0; corner < 3; corner++) {
+                int v = triangles.get(t)[corner];
+                int i = t * 3 + corner;
+                positions[i * 3] = v % (CELLS + 1);
+                positions[i * 3 + 1] = v / (CELLS + 1);
+                positions[i * 3 + 2] = 0.0f;
+                indices[i] = i;
+            }
+        }
+        grid = new MeshData(positions, indices);
+    }
+
+    /**
+     * Every triangle as its corner positions, starting at the smallest corner so the winding is kept.
+     */
+    private static List<String> triangles(MeshData data) {
+        float[] positions = data.getAttribute(VertexAttribute.POSITION);
+        int[] indices = data.getIndices();
+        List<String> triangles = new ArrayList<>();
+        for(int t = 0; t < indices.length; t += 3) {
+            String[] corners = new String[3];
+            int first = 0;
+            for(int corner = 0; corner < 3; corner++) {
+                int v = indices[t + corner];
+                corners[corner] = positions[v * 3] + "," + positions[v * 3 + 1] + "," + positions[v * 3 + 2];
+                if(corners[corner].compareTo(corners[first]) < 0) {
+                    first = corner;
+                }
+            }
+            triangles.add(corners[first] + " " + corners[(first + 1) % 3] + " " + corners[(first + 2) % 3]);
+        }
+        Collections.sort(triangles);
+        return triangles;
+    }
+
+    @Test
+    public void optimizeLowersAcmr() {
+        float before = MeshOptimizer.acmr(grid.getIndices(), grid.getVertexCount());
+        MeshData optimized = MeshOptimizer.optimize(grid, "grid");
+        float after = MeshOptimizer.acmr(optimized.getIndices(), optimized.getVertexCount());
+
+        assertEquals(3.0f, before, 0.0f);
+        assertTrue("ACMR " + after, after < 1.0f);
+    }
+
+    @Test
+    public void reorderingAloneLowersAcmr() {
+        MeshData welded = MeshOptimizer.weld(grid);
+        float before = MeshOptimizer.acmr(welded.getIndices(), welded.getVertexCount());
+        int[] reordered = MeshOptimizer.reorderTriangles(welded.getIndices(), welded.getVertexCount());
+        float after = MeshOptimizer.acmr(reordered, welded.getVertexCount());
+
+        assertTrue("ACMR " + before + " -> " + after, after < before * 0.75f);
+    }
+
+    @Test
+    public void optimizePreservesTriangles() {
+        MeshData optimized = MeshOptimizer.optimize(grid, "grid");
+
+        assertEquals(grid.getIndexCount(), optimized.getIndexCount());
+        assertEquals(MeshOptimizerTest.triangles(grid), MeshOptimizerTest.triangles(optimized));
+    }
+
+    @Test
+    public void weldMergesSharedCorners() {
+        MeshData welded = MeshOptimizer.weld(grid);
+
+        assertEquals((CELLS + 1) * (CELLS + 1), welded.getVertexCount());
+        assertEquals(MeshOptimizerTest.triangles(grid), MeshOptimizerTest.triangles(welded));
+    }
+
+    @Test
+    public void reorderVerticesFollowsFirstUse() {
+        MeshData reordered = MeshOptimizer.reorderVertices(MeshOptimizer.weld(grid));
+        int[] indices = reordered.getIndices();
+        int next = 0;
+        for(int index : indices) {
+            assertTrue(index <= next);
+            if(index == next) {
+                next++;
+            }
+        }
+        assertEquals(reordered.getVertexCount(), next);
+    }
+}
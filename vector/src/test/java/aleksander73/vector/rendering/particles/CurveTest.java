@@ -0,0 +1,58 @@
+package aleksander73.vector.rendering.particles;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CurveTest {
+    private static final float EPSILON = 1e-5f;
+
+    @Test
+    public void constantCurveIsFlat() {
+        Curve curve = Curve.constant(3.0f);
+
+        assertEquals(3.0f, curve.evaluate(0.0f), EPSILON);
+        assertEquals(3.0f, curve.evaluate(0.37f), EPSILON);
+        assertEquals(3.0f, curve.evaluate(1.0f), EPSILON);
+    }
+
+    @Test
+    public void linearCurveInterpolates() {
+        Curve curve = Curve.linear(2.0f, 4.0f);
+
+        assertEquals(2.0f, curve.evaluate(0.0f), EPSILON);
+        assertEquals(2.5f, curve.evaluate(0.25f), EPSILON);
+        assertEquals(3.0f, curve.evaluate(0.5f), EPSILON);
+        assertEquals(4.0f, curve.evaluate(1.0f), EPSILON);
+    }
+
+    @Test
+    public void evaluatesEveryKeySegment() {
+        Curve curve = new Curve(0.0f, 0.0f, 0.5f, 1.0f, 1.0f, 0.0f);
+
+        assertEquals(0.0f, curve.evaluate(0.0f), EPSILON);
+        assertEquals(0.5f, curve.evaluate(0.25f), EPSILON);
+        assertEquals(1.0f, curve.evaluate(0.5f), EPSILON);
+        assertEquals(0.5f, curve.evaluate(0.75f), EPSILON);
+        assertEquals(0.0f, curve.evaluate(1.0f), EPSILON);
+    }
+
+    @Test
+    public void isConstantOutsideKeys() {
+        Curve curve = new Curve(0.2f, 5.0f, 0.8f, 1.0f);
+
+        assertEquals(5.0f, curve.evaluate(0.0f), EPSILON);
+        assertEquals(5.0f, curve.evaluate(0.1f), EPSILON);
+        assertEquals(3.0f, curve.evaluate(0.5f), EPSILON);
+        assertEquals(1.0f, curve.evaluate(0.9f), EPSILON);
+        assertEquals(1.0f, curve.evaluate(1.0f), EPSILON);
+    }
+
+    @Test
+    public void clampsTime() {
+        Curve curve = Curve.linear(2.0f, 4.0f);
+
+        assertEquals(2.0f, curve.evaluate(-1.0f), EPSILON);
+        assertEquals(4.0f, curve.evaluate(2.0f), EPSILON);
+    }
+}
@@ -0,0 +1,88 @@
+package aleksander73.vector.rendering.particles;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ParticlePoolTest {
+    private ParticlePool pool;
+
+    @Before
+    public void setUp() {
+        pool = new ParticlePool(4);
+        for(int i = 0; i < 3; i++) {
+            this.addParticle(i);
+        }
+    }
+
+    // Every attribute of particle n is derived from n, so a moved particle can be recognized
+    private void addParticle(int n) {
+        int i = pool.add();
+        for(int c = 0; c < 3; c++) {
+            pool.positions[i * 3 + c] = n * 10 + c;
+            pool.velocities[i * 3 + c] = -(n * 10 + c);
+        }
+        pool.ages[i] = n + 0.5f;
+        pool.lifetimes[i] = n + 1.0f;
+        pool.sizes[i] = n * 2.0f;
+        pool.colours[i] = 0xFF000000 | n;
+    }
+
+    private void assertParticle(int n, int i) {
+        for(int c = 0; c < 3; c++) {
+            assertEquals(n * 10 + c, pool.positions[i * 3 + c], 0.0f);
+            assertEquals(-(n * 10 + c), pool.velocities[i * 3 + c], 0.0f);
+        }
+        assertEquals(n + 0.5f, pool.ages[i], 0.0f);
+        assertEquals(n + 1.0f, pool.lifetimes[i], 0.0f);
+        assertEquals(n * 2.0f, pool.sizes[i], 0.0f);
+        assertEquals(0xFF000000 | n, pool.colours[i]);
+    }
+
+    @Test
+    public void removeMovesLastParticleIntoSlot() {
+        pool.remove(0);
+
+        assertEquals(2, pool.getCount());
+        this.assertParticle(2, 0);
+        this.assertParticle(1, 1);
+    }
+
+    @Test
+    public void removeLastParticleLeavesOthers() {
+        pool.remove(2);
+
+        assertEquals(2, pool.getCount());
+        this.assertParticle(0, 0);
+        this.assertParticle(1, 1);
+    }
+
+    @Test
+    public void removeOnlyParticleEmptiesPool() {
+        pool.clear();
+        this.addParticle(7);
+
+        pool.remove(0);
+
+        assertEquals(0, pool.getCount());
+    }
+
+    @Test
+    public void addReusesRemovedSlotsAndResetsAge() {
+        pool.remove(1);
+        int i = pool.add();
+
+        assertEquals(2, i);
+        assertEquals(0.0f, pool.ages[i], 0.0f);
+        assertEquals(3, pool.getCount());
+    }
+
+    @Test
+    public void addFailsWhenFull() {
+        this.addParticle(3);
+
+        assertEquals(-1, pool.add());
+        assertEquals(4, pool.getCount());
+    }
+}